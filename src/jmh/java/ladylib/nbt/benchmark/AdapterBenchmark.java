@@ -0,0 +1,169 @@
+package ladylib.nbt.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.init.Items;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the adapters built by each factory of {@link ladylib.nbt.serialization.adapter} in isolation.
+ * <p>
+ * The capability factory is not covered, as it requires capabilities injected by Forge during mod loading.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdapterBenchmark {
+
+    @Param({"primitive", "string", "uuid", "blockPos", "itemStack", "nbtSelf", "array", "enum", "serializable",
+            "registryEntry", "fastutil", "immutableCollection", "collection", "map", "compactMap", "reflective"})
+    public String factory;
+
+    private NBTTypeAdapter<Object, NBTBase> adapter;
+    private Object value;
+    private NBTBase serialized;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        Bootstrap.register();
+        Random random = new Random(0x4c616479L);
+        Type type;
+        switch (factory) {
+            case "primitive":
+                type = int.class;
+                value = random.nextInt();
+                break;
+            case "string":
+                type = String.class;
+                value = Payloads.randomName(random);
+                break;
+            case "uuid":
+                type = UUID.class;
+                value = new UUID(random.nextLong(), random.nextLong());
+                break;
+            case "blockPos":
+                type = BlockPos.class;
+                value = new BlockPos(random.nextInt(1000), random.nextInt(256), random.nextInt(1000));
+                break;
+            case "itemStack":
+                type = ItemStack.class;
+                value = new ItemStack(Items.DIAMOND_SWORD, 1, 42);
+                break;
+            case "nbtSelf":
+                type = NBTTagCompound.class;
+                NBTTagCompound compound = new NBTTagCompound();
+                compound.setString("name", Payloads.randomName(random));
+                compound.setInteger("level", random.nextInt());
+                value = compound;
+                break;
+            case "array":
+                type = long[].class;
+                value = random.longs(256).toArray();
+                break;
+            case "enum":
+                type = EnumFacing.class;
+                value = Payloads.randomEnum(random, EnumFacing.class);
+                break;
+            case "serializable":
+                type = Payloads.Counter.class;
+                Payloads.Counter counter = new Payloads.Counter();
+                counter.count = random.nextInt();
+                value = counter;
+                break;
+            case "registryEntry":
+                type = Item.class;
+                value = Items.DIAMOND_SWORD;
+                break;
+            case "fastutil":
+                type = IntList.class;
+                value = new IntArrayList(random.ints(256).toArray());
+                break;
+            case "immutableCollection":
+                type = new TypeToken<ImmutableList<String>>() {}.getType();
+                value = ImmutableList.of(Payloads.randomName(random), Payloads.randomName(random), Payloads.randomName(random));
+                break;
+            case "collection":
+                type = new TypeToken<List<Integer>>() {}.getType();
+                List<Integer> list = new ArrayList<>();
+                for (int i = 0; i < 256; i++) {
+                    list.add(random.nextInt());
+                }
+                value = list;
+                break;
+            case "map":
+                type = new TypeToken<Map<BlockPos, Integer>>() {}.getType();
+                Map<BlockPos, Integer> map = new HashMap<>();
+                for (int i = 0; i < 64; i++) {
+                    map.put(new BlockPos(random.nextInt(100), random.nextInt(100), random.nextInt(100)), random.nextInt());
+                }
+                value = map;
+                break;
+            case "compactMap":
+                type = new TypeToken<Map<UUID, Integer>>() {}.getType();
+                Map<UUID, Integer> stats = new HashMap<>();
+                for (int i = 0; i < 64; i++) {
+                    stats.put(new UUID(random.nextLong(), random.nextLong()), random.nextInt());
+                }
+                value = stats;
+                break;
+            case "reflective":
+                type = Payloads.FlatPojo.class;
+                value = Payloads.create("flat");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown factory " + factory);
+        }
+        @SuppressWarnings("unchecked") NBTTypeAdapter<Object, NBTBase> adapter =
+                TagAdapters.getNBTAdapter((TypeToken<Object>) TypeToken.get(type), false);
+        this.adapter = adapter;
+        serialized = adapter.toNBT(value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        adapter.write(value, new NBTWriter(new DataOutputStream(out)));
+        bytes = out.toByteArray();
+    }
+
+    @Benchmark
+    public NBTBase toNBT() {
+        return adapter.toNBT(value);
+    }
+
+    @Benchmark
+    public Object fromNBT() {
+        return adapter.fromNBT(serialized);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        adapter.write(value, new NBTWriter(new DataOutputStream(out)));
+        return out.size();
+    }
+
+    @Benchmark
+    public Object read() throws IOException {
+        return adapter.read(new NBTReader(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+}
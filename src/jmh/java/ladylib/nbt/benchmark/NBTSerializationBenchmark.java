@@ -0,0 +1,77 @@
+package ladylib.nbt.benchmark;
+
+import ladylib.nbt.NBTSerialization;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.nbt.NBTBase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the public entry points of {@link NBTSerialization} on realistic payloads.
+ *
+ * @see Payloads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NBTSerializationBenchmark {
+
+    @Param({"flat", "collections", "maps", "enums", "itemStacks", "deepGraph"})
+    public String payload;
+
+    private Object value;
+    private Class<?> type;
+    private NBTBase serialized;
+    private byte[] bytes;
+    private Object target;
+
+    @Setup
+    public void setup() throws IOException {
+        Bootstrap.register();
+        value = Payloads.create(payload);
+        type = value.getClass();
+        serialized = NBTSerialization.toNBT(value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTSerialization.writeNBT(value, type, new DataOutputStream(out));
+        bytes = out.toByteArray();
+        target = Payloads.create(payload);
+    }
+
+    @Benchmark
+    public NBTBase toNBT() {
+        return NBTSerialization.toNBT(value, type);
+    }
+
+    @Benchmark
+    public Object fromNBT() {
+        return NBTSerialization.fromNBT(serialized, type);
+    }
+
+    @Benchmark
+    public NBTBase serializeNBT() {
+        return NBTSerialization.serializeNBT(value);
+    }
+
+    @Benchmark
+    public Object deserializeNBT() {
+        NBTSerialization.deserializeNBT(target, serialized);
+        return target;
+    }
+
+    @Benchmark
+    public int writeNBT() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        NBTSerialization.writeNBT(value, type, new DataOutputStream(out));
+        return out.size();
+    }
+
+    @Benchmark
+    public Object readNBT() throws IOException {
+        return NBTSerialization.readNBT(new DataInputStream(new ByteArrayInputStream(bytes)), type);
+    }
+}
@@ -0,0 +1,233 @@
+package ladylib.nbt.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.init.Items;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.common.util.INBTSerializable;
+
+import java.util.*;
+
+/**
+ * Objects shaped like the data mods usually store in capabilities.
+ * Every payload is generated from a fixed seed, so that runs can be compared.
+ */
+public final class Payloads {
+    private Payloads() { }
+
+    private static final long SEED = 0x4c616479L;
+
+    public static Object create(String name) {
+        Random random = new Random(SEED);
+        switch (name) {
+            case "flat":
+                return FlatPojo.create(random);
+            case "collections":
+                return CollectionsPojo.create(random);
+            case "maps":
+                return MapsPojo.create(random);
+            case "enums":
+                return EnumsPojo.create(random);
+            case "itemStacks":
+                return InventoryPojo.create(random);
+            case "deepGraph":
+                return GraphNode.create(random, 5);
+            default:
+                throw new IllegalArgumentException("Unknown payload " + name);
+        }
+    }
+
+    static String randomName(Random random) {
+        char[] chars = new char[4 + random.nextInt(12)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    static <E extends Enum<E>> E randomEnum(Random random, Class<E> enumClass) {
+        E[] constants = enumClass.getEnumConstants();
+        return constants[random.nextInt(constants.length)];
+    }
+
+    /**
+     * Typical player data: a handful of primitives and small immutable values
+     */
+    public static class FlatPojo {
+        int level;
+        long lastSeen;
+        double health;
+        float speed;
+        boolean flying;
+        short charges;
+        byte mode;
+        String name;
+        UUID owner;
+        BlockPos home;
+        EnumFacing facing;
+
+        static FlatPojo create(Random random) {
+            FlatPojo ret = new FlatPojo();
+            ret.level = random.nextInt(100);
+            ret.lastSeen = random.nextLong();
+            ret.health = random.nextDouble() * 20;
+            ret.speed = random.nextFloat();
+            ret.flying = random.nextBoolean();
+            ret.charges = (short) random.nextInt(Short.MAX_VALUE);
+            ret.mode = (byte) random.nextInt(8);
+            ret.name = randomName(random);
+            ret.owner = new UUID(random.nextLong(), random.nextLong());
+            ret.home = new BlockPos(random.nextInt(60000) - 30000, random.nextInt(256), random.nextInt(60000) - 30000);
+            ret.facing = randomEnum(random, EnumFacing.class);
+            return ret;
+        }
+    }
+
+    public static class CollectionsPojo {
+        List<String> names = new ArrayList<>();
+        Set<Integer> ids = new HashSet<>();
+        List<List<Integer>> matrix = new ArrayList<>();
+        Deque<BlockPos> path = new ArrayDeque<>();
+        ImmutableList<String> tags;
+        int[] packed;
+
+        static CollectionsPojo create(Random random) {
+            CollectionsPojo ret = new CollectionsPojo();
+            for (int i = 0; i < 32; i++) {
+                ret.names.add(randomName(random));
+                ret.ids.add(random.nextInt());
+                ret.path.add(new BlockPos(random.nextInt(100), random.nextInt(100), random.nextInt(100)));
+            }
+            for (int i = 0; i < 8; i++) {
+                List<Integer> row = new ArrayList<>();
+                for (int j = 0; j < 8; j++) {
+                    row.add(random.nextInt());
+                }
+                ret.matrix.add(row);
+            }
+            ret.tags = ImmutableList.of(randomName(random), randomName(random), randomName(random));
+            ret.packed = random.ints(256).toArray();
+            return ret;
+        }
+    }
+
+    public static class MapsPojo {
+        Map<UUID, Integer> stats = new HashMap<>();
+        Map<String, Double> attributes = new HashMap<>();
+        Map<EnumFacing, Integer> sides = new EnumMap<>(EnumFacing.class);
+        Map<BlockPos, String> markers = new HashMap<>();
+        Int2IntMap counters = new Int2IntOpenHashMap();
+
+        static MapsPojo create(Random random) {
+            MapsPojo ret = new MapsPojo();
+            for (int i = 0; i < 64; i++) {
+                ret.stats.put(new UUID(random.nextLong(), random.nextLong()), random.nextInt());
+                ret.counters.put(random.nextInt(), random.nextInt());
+            }
+            for (int i = 0; i < 16; i++) {
+                ret.attributes.put(randomName(random), random.nextDouble());
+                ret.markers.put(new BlockPos(random.nextInt(100), random.nextInt(100), random.nextInt(100)), randomName(random));
+            }
+            for (EnumFacing facing : EnumFacing.values()) {
+                ret.sides.put(facing, random.nextInt(16));
+            }
+            return ret;
+        }
+    }
+
+    public static class EnumsPojo {
+        EnumFacing facing;
+        List<EnumFacing> moves = new ArrayList<>();
+        Set<EnumFacing> openSides = EnumSet.noneOf(EnumFacing.class);
+
+        static EnumsPojo create(Random random) {
+            EnumsPojo ret = new EnumsPojo();
+            ret.facing = randomEnum(random, EnumFacing.class);
+            for (int i = 0; i < 64; i++) {
+                ret.moves.add(randomEnum(random, EnumFacing.class));
+            }
+            for (EnumFacing facing : EnumFacing.values()) {
+                if (random.nextBoolean()) {
+                    ret.openSides.add(facing);
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * A small inventory, some stacks having their own tag
+     */
+    public static class InventoryPojo {
+        List<ItemStack> stacks = new ArrayList<>();
+        ItemStack held = ItemStack.EMPTY;
+
+        static InventoryPojo create(Random random) {
+            InventoryPojo ret = new InventoryPojo();
+            for (int i = 0; i < 27; i++) {
+                ItemStack stack;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        stack = new ItemStack(Items.IRON_INGOT, 1 + random.nextInt(64));
+                        break;
+                    case 1:
+                        stack = new ItemStack(Items.DIAMOND_SWORD, 1, random.nextInt(1561));
+                        NBTTagCompound display = new NBTTagCompound();
+                        display.setString("Name", randomName(random));
+                        NBTTagCompound tag = new NBTTagCompound();
+                        tag.setTag("display", display);
+                        stack.setTagCompound(tag);
+                        break;
+                    default:
+                        stack = ItemStack.EMPTY;
+                }
+                ret.stacks.add(stack);
+            }
+            ret.held = new ItemStack(Items.APPLE, 16);
+            return ret;
+        }
+    }
+
+    /**
+     * A tree of objects of the same type, as found in quest or skill trees
+     */
+    public static class GraphNode {
+        String id;
+        int value;
+        List<GraphNode> children = new ArrayList<>();
+
+        static GraphNode create(Random random, int depth) {
+            GraphNode ret = new GraphNode();
+            ret.id = randomName(random);
+            ret.value = random.nextInt();
+            if (depth > 0) {
+                for (int i = 0; i < 3; i++) {
+                    ret.children.add(create(random, depth - 1));
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * An object handling its own serialization
+     */
+    public static class Counter implements INBTSerializable<NBTTagInt> {
+        int count;
+
+        @Override
+        public NBTTagInt serializeNBT() {
+            return new NBTTagInt(count);
+        }
+
+        @Override
+        public void deserializeNBT(NBTTagInt nbt) {
+            count = nbt.getInt();
+        }
+    }
+}
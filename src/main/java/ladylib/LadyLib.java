@@ -5,8 +5,10 @@ import ladylib.client.ClientHandler;
 import ladylib.client.LLibClientContainer;
 import ladylib.client.internal.ClientHandlerImpl;
 import ladylib.client.particle.LLParticleManager;
+import ladylib.command.NBTMetricsCommand;
 import ladylib.compat.internal.EnhancedAutomaticEventSubscriber;
 import ladylib.misc.ReflectionFailedException;
+import ladylib.nbt.serialization.internal.AdapterPreloader;
 import ladylib.nbt.serialization.internal.DefaultValuesSearch;
 import ladylib.networking.minecraft.PacketHandler;
 import ladylib.registration.BlockRegistrar;
@@ -140,6 +142,8 @@ public class LadyLib {
         injectContainers(dataTable);
         // Init NBT default values
         DefaultValuesSearch.searchDefaultValues(dataTable);
+        // Build capability serializers ahead of the first save
+        AdapterPreloader.preloadCapabilityAdapters(dataTable);
     }
 
     /**
@@ -161,6 +165,7 @@ public class LadyLib {
 
     @Mod.EventHandler
     public void serverStarting(@Nonnull FMLServerStartingEvent event) {
+        event.registerServerCommand(new NBTMetricsCommand());
         EnhancedAutomaticEventSubscriber.redistributeEvent(event);
     }
 
@@ -1,10 +1,16 @@
 package ladylib.capability;
 
 import com.google.common.annotations.Beta;
+import com.google.gson.reflect.TypeToken;
 import ladylib.LadyLib;
 import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTSnapshot;
 import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.TagAdapters;
 import ladylib.nbt.serialization.adapter.ReflectiveNBTAdapterFactory;
+import ladylib.nbt.serialization.internal.ReferenceGraph;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.EnumFacing;
@@ -21,6 +27,7 @@ import java.lang.reflect.Modifier;
 @Beta
 public class ReflectiveCapabilityStorage<C> implements Capability.IStorage<C> {
     private final Class<C> capClass;
+    private final TypeToken<C> type;
     private final NBTTypeAdapter<C, NBTTagCompound> adapter;
 
     public ReflectiveCapabilityStorage(Class<C> clazz) {
@@ -28,13 +35,27 @@ public class ReflectiveCapabilityStorage<C> implements Capability.IStorage<C> {
             throw new IllegalArgumentException("Class parameter must be an implementation");
         }
         capClass = clazz;
+        type = TypeToken.get(clazz);
         if (clazz.getDeclaredFields().length > 0) {
-            adapter = ReflectiveNBTAdapterFactory.INSTANCE.create(clazz);
+            adapter = getStorageAdapter(clazz, type);
         } else {
             adapter = null;
         }
     }
 
+    /**
+     * Uses the cached adapter of the capability type, which is built along with the adapters of its fields
+     * when the storage is created, unless it cannot read data into existing capabilities.
+     */
+    @SuppressWarnings("unchecked")
+    private static <C> NBTTypeAdapter<C, NBTTagCompound> getStorageAdapter(Class<C> clazz, TypeToken<C> type) {
+        NBTTypeAdapter<C, NBTTagCompound> cached = TagAdapters.getNBTAdapter(type, true);
+        if (cached instanceof NBTMutatingTypeAdapter) {
+            return cached;
+        }
+        return ReflectiveNBTAdapterFactory.INSTANCE.create(clazz);
+    }
+
     @Nullable
     @Override
     public NBTBase writeNBT(Capability capability, Object instance, EnumFacing side) {
@@ -42,14 +63,64 @@ public class ReflectiveCapabilityStorage<C> implements Capability.IStorage<C> {
         if (adapter == null || !capClass.isInstance(instance)) {
             return null;
         }
-        return adapter.toNBT(capClass.cast(instance));
+        C cap = capClass.cast(instance);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return NBTMetrics.measureWrite(type, () -> adapter.toNBT(cap));
+            }
+            return adapter.toNBT(cap);
+        }
+    }
+
+    /**
+     * Serializes the given capability into a compound owned by the caller, clearing and reusing it
+     * instead of allocating a new tag. This is meant for data that is consumed right away, like sync packets.
+     * <p>
+     * {@link #writeNBT(Capability, Object, EnumFacing)} always returns a new tag, as saved data may still be
+     * queued for writing on the file IO thread when the next save happens.
+     * </p>
+     *
+     * @param scratch a compound reused across calls
+     * @return the serialized capability, which is <code>scratch</code> unless nothing needs saving
+     */
+    @Nullable
+    public NBTBase writeNBT(C instance, NBTTagCompound scratch) {
+        if (adapter == null) {
+            return null;
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return NBTMetrics.measureWrite(type, () -> adapter.toNBT(instance, scratch));
+            }
+            return adapter.toNBT(instance, scratch);
+        }
+    }
+
+    /**
+     * Captures a copy of the given capability, to be serialized later from another thread.
+     * This is meant for saves, where only the copy has to happen on the thread that owns the capability.
+     *
+     * @return a snapshot of the capability, or <code>null</code> if nothing needs saving
+     * @see ladylib.nbt.NBTSerialization#snapshot(Object, java.lang.reflect.Type)
+     */
+    @Nullable
+    public NBTSnapshot<C> snapshot(C instance) {
+        if (adapter == null) {
+            return null;
+        }
+        return NBTSnapshot.capture(type, adapter, instance);
     }
 
     @Override
     public void readNBT(Capability capability, Object instance, EnumFacing side, NBTBase nbt) {
         if (adapter != null && capClass.isInstance(instance)) {
-            try {
-                adapter.fromNBT(capClass.cast(instance), nbt);
+            try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                C cap = capClass.cast(instance);
+                if (NBTMetrics.isEnabled()) {
+                    NBTMetrics.measureRead(type, () -> adapter.fromNBT(cap, nbt));
+                } else {
+                    adapter.fromNBT(cap, nbt);
+                }
             } catch (NBTDeserializationException e) {
                 LadyLib.LOGGER.error("Could not read NBT from capability " + capability.getName(), e);
             }
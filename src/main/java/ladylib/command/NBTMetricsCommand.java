@@ -0,0 +1,91 @@
+package ladylib.command;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.NBTMetrics;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraft.util.text.TextComponentTranslation;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controls the recording of {@link NBTMetrics}, and dumps the recorded metrics to the log
+ */
+public class NBTMetricsCommand extends CommandBase {
+    /**
+     * The number of types listed in chat when dumping metrics, the log always gets every type
+     */
+    private static final int CHAT_ENTRIES = 10;
+
+    @Override
+    public String getName() {
+        return "ladylib_nbt_metrics";
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "ladylib.command.nbt_metrics.usage";
+    }
+
+    @Override
+    public int getRequiredPermissionLevel() {
+        // same as the vanilla profiler
+        return 3;
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        if (args.length != 1) {
+            throw new WrongUsageException(getUsage(sender));
+        }
+        switch (args[0]) {
+            case "start":
+                NBTMetrics.setEnabled(true);
+                notifyCommandListener(sender, this, "ladylib.command.nbt_metrics.started");
+                break;
+            case "stop":
+                NBTMetrics.setEnabled(false);
+                notifyCommandListener(sender, this, "ladylib.command.nbt_metrics.stopped");
+                break;
+            case "reset":
+                NBTMetrics.reset();
+                notifyCommandListener(sender, this, "ladylib.command.nbt_metrics.reset");
+                break;
+            case "dump":
+                dump(sender);
+                break;
+            default:
+                throw new WrongUsageException(getUsage(sender));
+        }
+    }
+
+    private void dump(ICommandSender sender) {
+        Map<TypeToken<?>, NBTMetrics.TypeStats> snapshot = NBTMetrics.getSnapshot();
+        LadyLib.LOGGER.info("NBT serialization metrics for {} types:", snapshot.size());
+        int listed = 0;
+        for (NBTMetrics.TypeStats stats : snapshot.values()) {
+            LadyLib.LOGGER.info(stats);
+            if (listed++ < CHAT_ENTRIES) {
+                sender.sendMessage(new TextComponentString(stats.toString()));
+            }
+        }
+        sender.sendMessage(new TextComponentTranslation("ladylib.command.nbt_metrics.dumped", snapshot.size()));
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, @Nullable BlockPos targetPos) {
+        if (args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, "start", "stop", "reset", "dump");
+        }
+        return Collections.emptyList();
+    }
+}
@@ -3,13 +3,32 @@ package ladylib.nbt;
 import com.google.common.base.Preconditions;
 import com.google.gson.reflect.TypeToken;
 import ladylib.nbt.serialization.NBTDeserializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import ladylib.nbt.serialization.DirtyTracked;
+import ladylib.nbt.serialization.NBTDeltaTypeAdapter;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTProjection;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTSnapshot;
 import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTWriter;
 import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.internal.BulkConversion;
+import ladylib.nbt.serialization.internal.ReferenceGraph;
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTSizeTracker;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.util.Constants;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.List;
 
 /**
  * A set of methods to serialize and deserialize arbitrary objects using Minecraft's Non Binary Tag format.
@@ -54,8 +73,125 @@ public final class NBTSerialization {
     @Nullable
     @SuppressWarnings("unchecked")
     public static NBTBase toNBT(Object src, Type typeOfSrc) {
+        TypeToken<?> type = TypeToken.get(typeOfSrc);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return NBTMetrics.measureWrite(type, () -> adapter.toNBT(src));
+            }
+            return adapter.toNBT(src);
+        }
+    }
+
+    /**
+     * Serializes every object of the specified list, in the same way as {@link #toNBT(Object, Type)}.
+     * The adapter for {@code typeOfSrc} is resolved once for the whole batch.
+     * <p>
+     * Large lists are split across the common {@link java.util.concurrent.ForkJoinPool}, which requires
+     * the adapter to be safe for concurrent use (see {@link NBTTypeAdapter}). Every built-in adapter is,
+     * as long as distinct elements do not share mutable state.
+     * </p>
+     *
+     * @param src       the objects for which NBT representations are to be created
+     * @param typeOfSrc The specific genericized type of the elements of src
+     * @return NBT representations of the elements of {@code src}, in the same order.
+     * A {@code null} element is represented by a {@code null} tag.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<NBTBase> toNBTAll(List<? extends T> src, Type typeOfSrc) {
+        TypeToken<?> type = TypeToken.get(typeOfSrc);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        if (NBTMetrics.isEnabled()) {
+            return BulkConversion.convertAll(src, value -> value == null ? null : NBTMetrics.measureWrite(type, () -> adapter.toNBT(value)));
+        }
+        return BulkConversion.convertAll(src, value -> value == null ? null : adapter.toNBT(value));
+    }
+
+    /**
+     * This method serializes the specified object directly to a binary output, without creating
+     * the intermediate NBT tree. The written data is identical to the result of writing
+     * {@link #toNBT(Object, Type)} as an unnamed root tag, as done by {@link net.minecraft.nbt.CompressedStreamTools}
+     * for compounds.
+     *
+     * @param src       the object to serialize
+     * @param typeOfSrc The specific genericized type of src
+     * @param out       the output to which the NBT data is written
+     * @throws IOException if the output fails
+     *
+     * @see NBTTypeAdapter#write(Object, NBTWriter)
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeNBT(@Nullable Object src, Type typeOfSrc, DataOutput out) throws IOException {
+        NBTWriter writer = new NBTWriter(out);
+        if (src == null) {
+            writer.writeTag(null);
+            return;
+        }
+        TypeToken<?> type = TypeToken.get(typeOfSrc);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                NBTMetrics.measureWrite(type, () -> {
+                    adapter.write(src, writer);
+                    return null;
+                });
+            } else {
+                adapter.write(src, writer);
+            }
+        }
+    }
+
+    /**
+     * Serializes the specified object directly to a buffer, in the same format as
+     * {@link net.minecraft.network.PacketBuffer#writeCompoundTag(net.minecraft.nbt.NBTTagCompound)}.
+     *
+     * @see #writeNBT(Object, Type, DataOutput)
+     */
+    public static void writeNBT(@Nullable Object src, Type typeOfSrc, ByteBuf buf) throws IOException {
+        writeNBT(src, typeOfSrc, new ByteBufOutputStream(buf));
+    }
+
+    /**
+     * Captures a copy of the specified object, to be serialized later from another thread.
+     * Only the copy is done by this method, the returned snapshot builds the tag or writes the binary data
+     * when asked to, with the same result as {@link #toNBT(Object, Type)} or {@link #writeNBT(Object, Type, DataOutput)}
+     * would have had at the time of the capture.
+     *
+     * @param src       the object to capture, which is only read by the calling thread
+     * @param typeOfSrc The specific genericized type of src
+     * @return a snapshot of {@code src}
+     *
+     * @see NBTTypeAdapter#snapshot(Object)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NBTSnapshot<T> snapshot(@Nullable T src, Type typeOfSrc) {
+        TypeToken<?> type = TypeToken.get(typeOfSrc);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        return NBTSnapshot.capture(type, adapter, src);
+    }
+
+    /**
+     * Computes the number of bytes written by {@link #writeNBT(Object, Type, DataOutput)} for the specified object,
+     * without serializing it.
+     *
+     * @param src       the object to measure
+     * @param typeOfSrc The specific genericized type of src
+     * @return the size of the binary NBT representation of {@code src}
+     *
+     * @see NBTTypeAdapter#sizeOf(Object)
+     */
+    @SuppressWarnings("unchecked")
+    public static long sizeOf(@Nullable Object src, Type typeOfSrc) {
+        if (src == null) {
+            // a single end tag
+            return 1;
+        }
         NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(TypeToken.get(typeOfSrc), false);
-        return adapter.toNBT(src);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            long payloadSize = adapter.sizeOf(src);
+            // type id and empty name
+            return payloadSize < 0 ? 1 : 1 + 2 + payloadSize;
+        }
     }
 
     /**
@@ -106,15 +242,149 @@ public final class NBTSerialization {
             return null;
         }
         Preconditions.checkNotNull(typeOfT);
-        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(TypeToken.get(typeOfT), false);
-        return (T) adapter.fromNBT(nbt);
+        TypeToken<?> type = TypeToken.get(typeOfT);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return (T) NBTMetrics.measureRead(type, () -> adapter.fromNBT(nbt));
+            }
+            return (T) adapter.fromNBT(nbt);
+        }
+    }
+
+    /**
+     * Deserializes every tag of the specified list, in the same way as {@link #fromNBT(NBTBase, Type)}.
+     * The adapter for {@code typeOfT} is resolved once for the whole batch.
+     * <p>
+     * Large lists are split across the common {@link java.util.concurrent.ForkJoinPool}, see {@link #toNBTAll(List, Type)}.
+     * </p>
+     *
+     * @param nbt     the tags from which the objects are to be deserialized
+     * @param typeOfT The specific genericized type of the desired objects
+     * @return the deserialized objects, in the same order. A {@code null} tag is deserialized as {@code null}.
+     * @throws NBTDeserializationException if an error occurred during the deserialization of any element.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> fromNBTAll(List<? extends NBTBase> nbt, Type typeOfT) throws NBTDeserializationException {
+        Preconditions.checkNotNull(typeOfT);
+        TypeToken<?> type = TypeToken.get(typeOfT);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        if (NBTMetrics.isEnabled()) {
+            return BulkConversion.convertAll(nbt, tag -> tag == null ? null : (T) NBTMetrics.measureRead(type, () -> adapter.fromNBT(tag)));
+        }
+        return BulkConversion.convertAll(nbt, tag -> tag == null ? null : (T) adapter.fromNBT(tag));
+    }
+
+    /**
+     * This method deserializes an object of the specified type directly from a binary input,
+     * without creating the intermediate NBT tree. This is the counterpart of {@link #writeNBT(Object, Type, DataOutput)}.
+     *
+     * @param <T>     the type of the desired object
+     * @param in      the input from which the NBT data is read
+     * @param typeOfT The specific genericized type of src
+     * @return an object of type T from the NBT. Returns {@code null} if the root tag is {@code null}.
+     * @throws IOException if the input fails or is malformed
+     * @throws NBTDeserializationException if an error occurred during the deserialization.
+     *
+     * @see NBTTypeAdapter#read(NBTReader)
+     */
+    @Nullable
+    public static <T> T readNBT(DataInput in, Type typeOfT) throws IOException {
+        return readNBT(new NBTReader(in), typeOfT);
+    }
+
+    /**
+     * Deserializes an object of the specified type directly from a buffer, in the same format and with the
+     * same size limit as {@link net.minecraft.network.PacketBuffer#readCompoundTag()}.
+     *
+     * @see #readNBT(DataInput, Type)
+     */
+    @Nullable
+    public static <T> T readNBT(ByteBuf buf, Type typeOfT) throws IOException {
+        return readNBT(new NBTReader(new ByteBufInputStream(buf), new NBTSizeTracker(2097152L)), typeOfT);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <T> T readNBT(NBTReader reader, Type typeOfT) throws IOException {
+        Preconditions.checkNotNull(typeOfT);
+        if (reader.peek() == Constants.NBT.TAG_END) {
+            reader.skipValue();
+            return null;
+        }
+        TypeToken<?> type = TypeToken.get(typeOfT);
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, false);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return (T) NBTMetrics.measureRead(type, () -> adapter.read(reader));
+            }
+            return (T) adapter.read(reader);
+        }
+    }
+
+    /**
+     * Deserializes a single value out of the NBT representation of an object of the specified type,
+     * without deserializing the rest of the object.
+     *
+     * @param <R>       the type of the projected value
+     * @param nbt       the NBT representation of the whole object
+     * @param typeOfSrc The specific genericized type of the serialized object
+     * @param path      the names of the fields leading to the value, separated by dots, eg. <tt>"stats.level"</tt>
+     * @return the projected value. Returns {@code null} if {@code nbt} does not contain it.
+     * @throws IllegalArgumentException if the path cannot be projected in the specified type
+     * @throws NBTDeserializationException if an error occurred during the deserialization.
+     *
+     * @see NBTProjection
+     */
+    @Nullable
+    public static <R> R project(@Nullable NBTBase nbt, Type typeOfSrc, String path) throws NBTDeserializationException {
+        return NBTProjection.<R>of(typeOfSrc, path).fromNBT(nbt);
+    }
+
+    /**
+     * Streaming equivalent of {@link #project(NBTBase, Type, String)}. Entries that are not part of the path
+     * are skipped without being materialized.
+     *
+     * @throws IOException if the input fails or is malformed
+     * @see #readNBT(DataInput, Type)
+     */
+    @Nullable
+    public static <R> R project(DataInput in, Type typeOfSrc, String path) throws IOException {
+        return NBTProjection.<R>of(typeOfSrc, path).read(new NBTReader(in));
     }
 
     @Nullable
     @SuppressWarnings("unchecked")
     public static NBTBase serializeNBT(@Nonnull Object src) {
-        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(TypeToken.get(src.getClass()), true);
-        return adapter.toNBT(src);
+        TypeToken<?> type = TypeToken.get(src.getClass());
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, true);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return NBTMetrics.measureWrite(type, () -> adapter.toNBT(src));
+            }
+            return adapter.toNBT(src);
+        }
+    }
+
+    /**
+     * Streaming equivalent of {@link #serializeNBT(Object)}.
+     *
+     * @see #writeNBT(Object, Type, DataOutput)
+     */
+    @SuppressWarnings("unchecked")
+    public static void serializeNBT(@Nonnull Object src, DataOutput out) throws IOException {
+        TypeToken<?> type = TypeToken.get(src.getClass());
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, true);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                NBTMetrics.measureWrite(type, () -> {
+                    adapter.write(src, new NBTWriter(out));
+                    return null;
+                });
+            } else {
+                adapter.write(src, new NBTWriter(out));
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -122,7 +392,74 @@ public final class NBTSerialization {
         if (nbt == null) {
             return;
         }
-        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(TypeToken.get(target.getClass()), true);
-        adapter.fromNBT(target, nbt);
+        TypeToken<?> type = TypeToken.get(target.getClass());
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, true);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                NBTMetrics.measureRead(type, () -> adapter.fromNBT(target, nbt));
+            } else {
+                adapter.fromNBT(target, nbt);
+            }
+        }
+    }
+
+    /**
+     * Streaming equivalent of {@link #deserializeNBT(Object, NBTBase)}.
+     *
+     * @see #readNBT(DataInput, Type)
+     */
+    @SuppressWarnings("unchecked")
+    public static void deserializeNBT(@Nonnull Object target, DataInput in) throws IOException {
+        NBTReader reader = new NBTReader(in);
+        if (reader.peek() == Constants.NBT.TAG_END) {
+            reader.skipValue();
+            return;
+        }
+        TypeToken<?> type = TypeToken.get(target.getClass());
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(type, true);
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                NBTMetrics.measureRead(type, () -> adapter.read(target, reader));
+            } else {
+                adapter.read(target, reader);
+            }
+        }
+    }
+
+    /**
+     * Serializes the fields of the specified object that changed since the last delta was written for it,
+     * as recorded by its {@link ladylib.nbt.serialization.DirtyFields}. The recorded changes are then cleared.
+     * <p>
+     * Delta serialization is only supported for objects handled by the reflective adapters.
+     * </p>
+     *
+     * @param src the object for which a delta is to be created
+     * @return a patch that can be applied with {@link #deserializeDelta(Object, NBTTagCompound)}
+     * @throws IllegalArgumentException if the type of {@code src} does not support delta serialization
+     */
+    @SuppressWarnings("unchecked")
+    public static NBTTagCompound serializeDelta(@Nonnull DirtyTracked src) {
+        return getDeltaAdapter(src).toPatchNBT(src, src.getDirtyFields());
+    }
+
+    /**
+     * Applies a patch created by {@link #serializeDelta(DirtyTracked)} to the specified object.
+     * Fields that are not part of the patch are left untouched.
+     *
+     * @param target the object to update
+     * @param patch  the patch to apply
+     * @throws IllegalArgumentException if the type of {@code target} does not support delta serialization
+     */
+    @SuppressWarnings("unchecked")
+    public static void deserializeDelta(@Nonnull Object target, NBTTagCompound patch) throws NBTDeserializationException {
+        getDeltaAdapter(target).applyPatch(target, patch);
+    }
+
+    private static NBTDeltaTypeAdapter getDeltaAdapter(Object instance) {
+        NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(TypeToken.get(instance.getClass()), true);
+        if (!(adapter instanceof NBTDeltaTypeAdapter)) {
+            throw new IllegalArgumentException(instance.getClass() + " does not support delta serialization");
+        }
+        return (NBTDeltaTypeAdapter) adapter;
     }
 }
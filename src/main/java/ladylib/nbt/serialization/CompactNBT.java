@@ -0,0 +1,33 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects the compact serialization profile for the annotated field, or for every field of the annotated class.
+ * <p>
+ * In the compact profile:
+ * <ul>
+ *     <li>{@link java.util.UUID}s are written as a long array of 2 elements instead of a 36 characters string</li>
+ *     <li>{@link net.minecraft.util.ResourceLocation}s and registry entries omit the default <tt>minecraft</tt> namespace</li>
+ *     <li>maps keyed by strings, enums, resource locations or UUIDs are written as a single compound
+ *     using the keys as entry names, instead of a list of key-value pairs</li>
+ *     <li>in an annotated class, primitive <code>boolean</code> fields annotated with {@link PackedFlag}
+ *     are packed into a single bitfield entry named {@value #FLAGS_KEY}, each at the bit given by its annotation</li>
+ * </ul>
+ * Data written with the default profile is still read, so this annotation can be added to classes that
+ * already have saved data. Data written with the compact profile cannot be read by older versions.
+ * </p>
+ * Packed booleans are marked as dirty along with their field name, as usual.
+ * Their bit indices are part of the saved data, and must be kept when the class changes.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD})
+public @interface CompactNBT {
+    /**
+     * The name of the entry holding packed booleans
+     */
+    String FLAGS_KEY = "#flags";
+}
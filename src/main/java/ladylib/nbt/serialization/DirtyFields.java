@@ -0,0 +1,62 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records which serialized fields of an object changed since the object was last serialized as a delta.
+ * <p>
+ * A new tracker considers every field as dirty, so that the first delta written for an object is complete.
+ * Fields are designated by their name, and should be marked with {@link #markDirty(String)} every time
+ * their value changes. A field holding a mutable object must also be marked when that object is modified.
+ * </p>
+ * This class is thread safe.
+ *
+ * @see DirtyTracked
+ * @see ladylib.nbt.NBTSerialization#serializeDelta(DirtyTracked)
+ */
+@Beta
+public final class DirtyFields {
+    private final Set<String> dirtyFields = new HashSet<>();
+    private boolean allDirty = true;
+
+    public synchronized void markDirty(String field) {
+        if (!allDirty) {
+            dirtyFields.add(field);
+        }
+    }
+
+    public synchronized void markAllDirty() {
+        allDirty = true;
+        dirtyFields.clear();
+    }
+
+    public synchronized boolean isDirty(String field) {
+        return allDirty || dirtyFields.contains(field);
+    }
+
+    /**
+     * @return true if no field changed since the last delta
+     */
+    public synchronized boolean isClean() {
+        return !allDirty && dirtyFields.isEmpty();
+    }
+
+    /**
+     * Checks which of the given fields are dirty, then marks every field as clean.
+     *
+     * @param fields the names of every serialized field
+     * @return for each of the given fields, whether it was dirty
+     */
+    public synchronized boolean[] consume(String[] fields) {
+        boolean[] ret = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            ret[i] = allDirty || dirtyFields.contains(fields[i]);
+        }
+        allDirty = false;
+        dirtyFields.clear();
+        return ret;
+    }
+}
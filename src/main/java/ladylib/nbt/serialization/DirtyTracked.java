@@ -0,0 +1,31 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Implemented by objects that keep track of their changed fields, to be serialized as deltas.
+ * <p>
+ * Example: <pre>
+ * public class ManaStorage implements DirtyTracked {
+ *     private final transient DirtyFields dirtyFields = new DirtyFields();
+ *     private int mana;
+ *
+ *     public void setMana(int mana) {
+ *         this.mana = mana;
+ *         dirtyFields.markDirty("mana");
+ *     }
+ *
+ *     &#64;Override
+ *     public DirtyFields getDirtyFields() {
+ *         return dirtyFields;
+ *     }
+ * }</pre>
+ * The tracker itself should be stored in a transient field, so that it is not serialized.
+ * </p>
+ *
+ * @see ladylib.nbt.NBTSerialization#serializeDelta(DirtyTracked)
+ */
+@Beta
+public interface DirtyTracked {
+    DirtyFields getDirtyFields();
+}
@@ -0,0 +1,29 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the annotated enum serialize as a numeric id instead of its constant's name.
+ * <p>
+ * Ids are stored in a byte tag when the enum has at most 256 ids, and in a short tag otherwise.
+ * Values written by name, eg. before this annotation was added, are still read.
+ * Example: <pre>
+ * &#64EnumIds({"NORTH", "SOUTH", "EAST", "WEST"})
+ * public enum Direction { NORTH, EAST, SOUTH, WEST }
+ * </pre>
+ * Constants that are not listed keep being serialized by name.
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface EnumIds {
+    /**
+     * The names of the constants, in id order. Each constant can only be listed once.
+     * If left empty, constants are identified by their ordinal, in which case reordering
+     * or removing constants will corrupt existing data.
+     */
+    String[] value() default {};
+}
@@ -0,0 +1,94 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import net.minecraft.nbt.NBTBase;
+
+import javax.annotation.Nullable;
+import java.util.function.Function;
+
+/**
+ * A holder for a value that is only decoded from NBT when it is first accessed.
+ * <p>
+ * When deserialized, a lazy holder keeps the raw tag instead of converting it. The tag is decoded
+ * by the first call to {@link #get()}. If the value was never accessed, the holder serializes
+ * to the very same tag it was read from, without going through the value's adapter at all.
+ * This makes it suitable for large data that is rarely used between a load and the next save.
+ * </p>
+ * <p>
+ * Example: <pre>
+ * public class ResearchProgress {
+ *     private final LazyNBT&lt;Map&lt;ResourceLocation, Integer&gt;&gt; unlocked = new LazyNBT&lt;&gt;(new HashMap&lt;&gt;());
+ * }</pre>
+ * The tag held by an undecoded holder is not copied, it should not be modified after being deserialized.
+ * </p>
+ *
+ * @param <T> the type of the held value
+ */
+@Beta
+public final class LazyNBT<T> {
+    @Nullable
+    private NBTBase undecoded;
+    @Nullable
+    private Function<NBTBase, ? extends T> decoder;
+    @Nullable
+    private T value;
+
+    public LazyNBT() {
+        this(null);
+    }
+
+    public LazyNBT(@Nullable T value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the held value, decoding it first if this holder was deserialized and not accessed since.
+     *
+     * @throws NBTDeserializationException if the held tag cannot be decoded. The tag is kept as is
+     * and will still be written back on the next save.
+     */
+    @Nullable
+    public synchronized T get() {
+        if (undecoded != null && decoder != null) {
+            value = decoder.apply(undecoded);
+            undecoded = null;
+            decoder = null;
+        }
+        return value;
+    }
+
+    public synchronized void set(@Nullable T value) {
+        this.value = value;
+        this.undecoded = null;
+        this.decoder = null;
+    }
+
+    /**
+     * @return false if this holder still holds a tag that has not been decoded yet
+     */
+    public synchronized boolean isDecoded() {
+        return undecoded == null;
+    }
+
+    /**
+     * @return the tag this holder was deserialized from, or <code>null</code> if it has been decoded since
+     */
+    @Nullable
+    public synchronized NBTBase getUndecodedTag() {
+        return undecoded;
+    }
+
+    /**
+     * Replaces the held value with a tag that will be decoded by the given function when first accessed
+     */
+    public synchronized void setUndecoded(NBTBase tag, Function<NBTBase, ? extends T> decoder) {
+        this.undecoded = tag;
+        this.decoder = decoder;
+        this.value = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LazyNBT{" + (undecoded != null ? "undecoded=" + undecoded : "value=" + value) + '}';
+    }
+}
@@ -0,0 +1,45 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the constructor or static factory method used to create instances of a class when deserializing them.
+ * <p>
+ * The creator takes one parameter per serialized field, each parameter accepting the type of its field.
+ * Every field is decoded first, then the creator is called once with the decoded values,
+ * so that immutable classes can be deserialized without a no-argument constructor or writes to final fields.
+ * </p>
+ * <p>
+ * Parameters receive the fields named by {@link #value()}, or the fields having the same name
+ * if the class is compiled with <tt>-parameters</tt>. Otherwise, each parameter receives the only field
+ * its type accepts, and classes with several fields of compatible types must name them.
+ * Example: <pre>
+ * public final class Waypoint {
+ *     private final String name;
+ *     private final BlockPos pos;
+ *
+ *     &#64NBTCreator({"name", "pos"})
+ *     public Waypoint(String name, BlockPos pos) {
+ *         this.name = name;
+ *         this.pos = pos;
+ *     }
+ * }</pre>
+ * The annotation can be omitted on classes whose serialized fields are all final and which declare
+ * a single constructor taking exactly those fields with the same types, if they have no no-argument constructor or
+ * if one of their fields cannot be updated in place.
+ * </p>
+ * Objects created this way are always replaced rather than updated, so fields holding them should not be final.
+ * This annotation cannot be used on {@link SharedReferences} types or on classes with {@link CompactNBT packed booleans}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.CONSTRUCTOR, ElementType.METHOD})
+public @interface NBTCreator {
+    /**
+     * The names of the serialized fields passed as each parameter, in parameter order.
+     * If empty, parameters are matched by name when available, and by type otherwise.
+     */
+    String[] value() default {};
+}
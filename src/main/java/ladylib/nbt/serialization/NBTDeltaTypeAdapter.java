@@ -0,0 +1,35 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import net.minecraft.nbt.NBTTagCompound;
+
+/**
+ * A type adapter able to serialize only the fields of an object that changed, and to apply the
+ * resulting patches on existing instances.
+ * <p>
+ * A patch is a compound holding the serialized value of every dirty field, using the same format as
+ * {@link NBTTypeAdapter#toNBT(Object)}. Dirty fields that do not serialize to anything are listed by name
+ * under the {@value #REMOVED_FIELDS} entry, and are read back as if they were missing from a complete compound.
+ * </p>
+ *
+ * @param <T> the type of object that can be serialized by this adapter
+ */
+@Beta
+public interface NBTDeltaTypeAdapter<T> {
+    /**
+     * The name of the entry listing removed fields, which cannot clash with a field name
+     */
+    String REMOVED_FIELDS = "-removed";
+
+    /**
+     * Serializes the fields of the given object that are marked as dirty, then marks every field as clean.
+     */
+    NBTTagCompound toPatchNBT(T value, DirtyFields dirtyFields);
+
+    /**
+     * Updates the fields of the given object that are present in the patch, leaving the others untouched.
+     *
+     * @return the updated object
+     */
+    T applyPatch(T value, NBTTagCompound patch);
+}
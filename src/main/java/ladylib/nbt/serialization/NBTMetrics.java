@@ -0,0 +1,294 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import net.minecraft.nbt.NBTBase;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Type;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the serialization system, recording per type timings, output sizes,
+ * failures and default value fallbacks.
+ * <p>
+ * Metrics are recorded for operations going through {@link ladylib.nbt.NBTSerialization} and
+ * {@link ladylib.capability.ReflectiveCapabilityStorage}. Failures and fallbacks are also recorded
+ * for nested values. Recording is disabled by default, in which case the cost of every
+ * instrumented call is a single volatile read.
+ * </p>
+ * Output sizes are computed from the produced tags, and are thus only available for tree serialization.
+ *
+ * @see #setEnabled(boolean)
+ * @see #getSnapshot()
+ */
+@Beta
+public final class NBTMetrics {
+    private NBTMetrics() { }
+
+    private static volatile boolean enabled;
+    private static final ConcurrentMap<TypeToken<?>, TypeMetrics> metrics = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops recording metrics. Already recorded metrics are kept until {@link #reset()} is called.
+     */
+    public static void setEnabled(boolean enabled) {
+        NBTMetrics.enabled = enabled;
+    }
+
+    public static void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * @return statistics for every type that has been recorded, by decreasing cumulative time
+     */
+    public static Map<TypeToken<?>, TypeStats> getSnapshot() {
+        Map<TypeToken<?>, TypeStats> ret = new LinkedHashMap<>();
+        metrics.entrySet().stream()
+                .map(e -> new TypeStats(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparingLong((TypeStats s) -> s.getWrites().getTotalNanos() + s.getReads().getTotalNanos()).reversed())
+                .forEach(s -> ret.put(s.getType(), s));
+        return ret;
+    }
+
+    @Nullable
+    public static TypeStats getSnapshot(TypeToken<?> type) {
+        TypeMetrics typeMetrics = metrics.get(type);
+        return typeMetrics == null ? null : new TypeStats(type, typeMetrics);
+    }
+
+    /**
+     * Runs a serialization operation, recording its duration and the size of the produced tag
+     */
+    public static <R, E extends Throwable> R measureWrite(TypeToken<?> type, Operation<R, E> operation) throws E {
+        TypeMetrics typeMetrics = get(type);
+        long start = System.nanoTime();
+        R ret = run(typeMetrics, operation);
+        typeMetrics.writes.record(System.nanoTime() - start);
+        if (ret instanceof NBTBase) {
+            typeMetrics.outputBytes.add(NBTSizes.sizeOfRoot((NBTBase) ret));
+        }
+        return ret;
+    }
+
+    /**
+     * Runs a deserialization operation, recording its duration
+     */
+    public static <R, E extends Throwable> R measureRead(TypeToken<?> type, Operation<R, E> operation) throws E {
+        TypeMetrics typeMetrics = get(type);
+        long start = System.nanoTime();
+        R ret = run(typeMetrics, operation);
+        typeMetrics.reads.record(System.nanoTime() - start);
+        return ret;
+    }
+
+    /**
+     * Records a failure to serialize or deserialize a value of the given type, if metrics are enabled
+     */
+    public static void recordFailure(Type type) {
+        if (enabled) {
+            get(TypeToken.get(type)).failures.increment();
+        }
+    }
+
+    /**
+     * Records the use of a default value in place of invalid data, if metrics are enabled
+     */
+    public static void recordDefaultFallback(TypeToken<?> type) {
+        if (enabled) {
+            get(type).defaultFallbacks.increment();
+        }
+    }
+
+    private static <R, E extends Throwable> R run(TypeMetrics typeMetrics, Operation<R, E> operation) throws E {
+        try {
+            return operation.run();
+        } catch (Throwable t) {
+            typeMetrics.failures.increment();
+            throw t;
+        }
+    }
+
+    private static TypeMetrics get(TypeToken<?> type) {
+        TypeMetrics ret = metrics.get(type);
+        if (ret == null) {
+            ret = metrics.computeIfAbsent(type, t -> new TypeMetrics());
+        }
+        return ret;
+    }
+
+    @FunctionalInterface
+    public interface Operation<R, E extends Throwable> {
+        R run() throws E;
+    }
+
+    private static final class TypeMetrics {
+        private final Timings writes = new Timings();
+        private final Timings reads = new Timings();
+        private final LongAdder outputBytes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder defaultFallbacks = new LongAdder();
+    }
+
+    /**
+     * Log-linear histogram of durations: each power of two is split in {@value #SUB_BUCKETS} buckets,
+     * so that percentiles are accurate to 12.5%.
+     */
+    private static final class Timings {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            buckets.incrementAndGet(bucketIndex(Math.max(0, nanos)));
+        }
+
+        static int bucketIndex(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(nanos);
+            int subBucket = (int) (nanos >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return ((msb - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | subBucket;
+        }
+
+        /**
+         * @return the highest duration that falls in the given bucket
+         */
+        static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = (index >>> SUB_BUCKET_BITS) - 1;
+            long lowerBound = (long) (SUB_BUCKETS | (index & (SUB_BUCKETS - 1))) << shift;
+            return lowerBound + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * Statistics for the serialization or deserialization of a single type
+     */
+    public static final class OperationStats {
+        private final long count;
+        private final long totalNanos;
+        private final long[] buckets;
+
+        private OperationStats(Timings timings) {
+            this.count = timings.count.sum();
+            this.totalNanos = timings.totalNanos.sum();
+            this.buckets = new long[timings.buckets.length()];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = timings.buckets.get(i);
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @param percentile a percentile between 0 and 100
+         * @return an upper bound for the duration of the given percentile of operations
+         */
+        public long getPercentileNanos(double percentile) {
+            long recorded = 0;
+            for (long bucket : buckets) {
+                recorded += bucket;
+            }
+            if (recorded == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(recorded * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return Timings.bucketUpperBound(i);
+                }
+            }
+            return Timings.bucketUpperBound(buckets.length - 1);
+        }
+    }
+
+    /**
+     * A snapshot of the metrics recorded for a single type
+     */
+    public static final class TypeStats {
+        private final TypeToken<?> type;
+        private final OperationStats writes;
+        private final OperationStats reads;
+        private final long outputBytes;
+        private final long failures;
+        private final long defaultFallbacks;
+
+        private TypeStats(TypeToken<?> type, TypeMetrics metrics) {
+            this.type = type;
+            this.writes = new OperationStats(metrics.writes);
+            this.reads = new OperationStats(metrics.reads);
+            this.outputBytes = metrics.outputBytes.sum();
+            this.failures = metrics.failures.sum();
+            this.defaultFallbacks = metrics.defaultFallbacks.sum();
+        }
+
+        public TypeToken<?> getType() {
+            return type;
+        }
+
+        public OperationStats getWrites() {
+            return writes;
+        }
+
+        public OperationStats getReads() {
+            return reads;
+        }
+
+        /**
+         * @return the cumulative binary size of the tags produced by serialization
+         */
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getDefaultFallbacks() {
+            return defaultFallbacks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d writes (%d ns total, p50 %d ns, p99 %d ns, %d bytes), %d reads (%d ns total, p50 %d ns, p99 %d ns), %d failures, %d default fallbacks",
+                    type,
+                    writes.getCount(), writes.getTotalNanos(), writes.getPercentileNanos(50), writes.getPercentileNanos(99), outputBytes,
+                    reads.getCount(), reads.getTotalNanos(), reads.getPercentileNanos(50), reads.getPercentileNanos(99),
+                    failures, defaultFallbacks);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.adapter.ConstructorNBTAdapterFactory;
+import ladylib.nbt.serialization.adapter.ReflectiveNBTAdapterFactory;
+import ladylib.nbt.serialization.internal.BooleanFlags;
+import ladylib.nbt.serialization.internal.GeneratedNBTAdapter;
+import ladylib.nbt.serialization.internal.ReferenceGraph;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads a single value out of the serialized form of an object, without deserializing the rest of the object.
+ * <p>
+ * A projection is defined by the type of the serialized object and a path of field names separated by dots,
+ * eg. <tt>"stats.level"</tt>. Every field of the path but the last one must hold an object serialized
+ * field by field. The fields and the adapter of the value are resolved once, when the projection is created.
+ * Reading a tree only looks up the compounds along the path and deserializes the addressed tag.
+ * Reading a binary input skips every other entry without materializing it.
+ * </p>
+ * Example: <pre>
+ * NBTProjection&lt;Integer&gt; level = NBTProjection.of(PlayerData.class, "stats.level");
+ * for (NBTTagCompound data : offlinePlayers) {
+ *     Integer value = level.fromNBT(data);
+ * }
+ * </pre>
+ * Paths cannot go through objects of {@link SharedReferences} types, as those may be written as references.
+ *
+ * @param <R> the type of the projected value
+ * @see ladylib.nbt.NBTSerialization#project(NBTBase, Type, String)
+ */
+@Beta
+public final class NBTProjection<R> {
+    private static final ConcurrentMap<TypeToken<?>, ConcurrentMap<String, NBTProjection<?>>> projections = new ConcurrentHashMap<>();
+
+    private final String path;
+    /** The entry names of each step of the path */
+    private final String[] names;
+    private final NBTTypeAdapter<R, NBTBase> adapter;
+    /** The adapter of the bitfield holding the value if it is a packed boolean, null otherwise */
+    @Nullable
+    private final BooleanFlags.FlagsAdapter flagsAdapter;
+    private final int flagIndex;
+
+    private NBTProjection(String path, String[] names, NBTTypeAdapter<R, NBTBase> adapter, @Nullable BooleanFlags.FlagsAdapter flagsAdapter, int flagIndex) {
+        this.path = path;
+        this.names = names;
+        this.adapter = adapter;
+        this.flagsAdapter = flagsAdapter;
+        this.flagIndex = flagIndex;
+    }
+
+    /**
+     * Gets the projection of the given path in objects of the given type. Projections are cached.
+     *
+     * @param type the type of the serialized objects
+     * @param path field names separated by dots
+     * @throws IllegalArgumentException if the path does not designate a serialized field, or goes through
+     * a field that is not serialized field by field
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> NBTProjection<R> of(Type type, String path) {
+        TypeToken<?> token = TypeToken.get(type);
+        return (NBTProjection<R>) projections.computeIfAbsent(token, t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(path, p -> resolve(token, p));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NBTProjection<?> resolve(TypeToken<?> root, String path) {
+        String[] names = path.split("\\.", -1);
+        Class<?> current = root.getRawType();
+        checkProjectable(current, TagAdapters.getNBTAdapter(root, false), path);
+        Field field = null;
+        for (int i = 0; i < names.length; i++) {
+            field = getSerializedField(current, names[i], path);
+            if (i < names.length - 1) {
+                current = field.getType();
+                checkProjectable(current, TagAdapters.getNBTAdapter(field), path);
+            }
+        }
+        BooleanFlags.FlagsAdapter flagsAdapter = null;
+        int flagIndex = -1;
+        try {
+            BooleanFlags flags = BooleanFlags.create(current);
+            if (flags != null && flags.isPacked(field)) {
+                flagsAdapter = flags.getAdapter();
+                flagIndex = flags.getBit(field);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access the fields of " + current.getName(), e);
+        }
+        return new NBTProjection<>(path, names, TagAdapters.getNBTAdapter(field, false), flagsAdapter, flagIndex);
+    }
+
+    private static void checkProjectable(Class<?> type, NBTTypeAdapter<?, ?> adapter, String path) {
+        boolean fieldByField = adapter instanceof ReflectiveNBTAdapterFactory.ReflectiveNBTAdapter
+                || adapter instanceof ReflectiveNBTAdapterFactory.MutatingReflectiveNBTAdapter
+                || adapter instanceof ConstructorNBTAdapterFactory.ConstructorNBTAdapter
+                || adapter instanceof GeneratedNBTAdapter;
+        if (!fieldByField || type.isAnnotationPresent(SharedReferences.class)) {
+            throw new IllegalArgumentException("Cannot project " + path + " through " + type.getName() + " as it is not serialized field by field");
+        }
+    }
+
+    private static Field getSerializedField(Class<?> type, String name, String path) {
+        try {
+            Field field = type.getDeclaredField(name);
+            int modifiers = field.getModifiers();
+            if (!Modifier.isTransient(modifiers) && !Modifier.isStatic(modifiers)) {
+                return field;
+            }
+        } catch (NoSuchFieldException ignored) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Cannot project " + path + " as " + type.getName() + " has no serialized field named " + name);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Deserializes the projected value from the serialized form of an object
+     *
+     * @param nbt the tag of the whole object
+     * @return the projected value, or null if the tag does not contain it
+     * @throws NBTDeserializationException if the projected value cannot be deserialized
+     */
+    @Nullable
+    public R fromNBT(@Nullable NBTBase nbt) {
+        NBTBase tag = nbt;
+        for (int i = 0; i < names.length - 1; i++) {
+            if (!(tag instanceof NBTTagCompound)) {
+                return null;
+            }
+            tag = ((NBTTagCompound) tag).getTag(names[i]);
+        }
+        if (!(tag instanceof NBTTagCompound)) {
+            return null;
+        }
+        NBTTagCompound parent = (NBTTagCompound) tag;
+        if (flagsAdapter != null && parent.hasKey(CompactNBT.FLAGS_KEY, Constants.NBT.TAG_ANY_NUMERIC)) {
+            return getFlag(flagsAdapter.fromNBT(parent.getTag(CompactNBT.FLAGS_KEY)));
+        }
+        NBTBase value = parent.getTag(names[names.length - 1]);
+        if (value == null) {
+            return null;
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            return adapter.fromNBT(value);
+        }
+    }
+
+    /**
+     * Deserializes the projected value from a binary input holding the serialized form of an object.
+     * The whole object is consumed, the entries that are not part of the path being skipped.
+     *
+     * @param in a reader positioned before the value of the whole object
+     * @return the projected value, or null if the input does not contain it
+     * @throws IOException if the input fails or is malformed
+     * @throws NBTDeserializationException if the projected value cannot be deserialized
+     */
+    @Nullable
+    public R read(NBTReader in) throws IOException {
+        if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+            in.skipValue();
+            return null;
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            return read(in, 0);
+        }
+    }
+
+    @Nullable
+    private R read(NBTReader in, int depth) throws IOException {
+        boolean last = depth == names.length - 1;
+        R ret = null;
+        Long flags = null;
+        in.beginCompound();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals(names[depth])) {
+                if (last) {
+                    ret = adapter.read(in);
+                } else if (in.peek() == Constants.NBT.TAG_COMPOUND) {
+                    ret = read(in, depth + 1);
+                } else {
+                    in.skipValue();
+                }
+            } else if (last && flagsAdapter != null && name.equals(CompactNBT.FLAGS_KEY)) {
+                flags = flagsAdapter.read(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endCompound();
+        return flags != null ? getFlag(flags) : ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private R getFlag(long flags) {
+        return (R) Boolean.valueOf((flags & 1L << flagIndex) != 0);
+    }
+
+    @Override
+    public String toString() {
+        return "NBTProjection{" + path + '}';
+    }
+}
@@ -0,0 +1,469 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import ladylib.nbt.serialization.internal.InternPool;
+import net.minecraft.nbt.*;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static net.minecraftforge.common.util.Constants.NBT.*;
+
+/**
+ * Reads NBT data directly from a binary input, without building the intermediate tag tree.
+ * <p>
+ * The reader is positioned before a single value at a time. The type of that value is given by {@link #peek()},
+ * and the value is consumed by the matching <code>read</code> method, by {@link #readTag()} which materializes it,
+ * or by {@link #skipValue()} which discards it without allocating anything. Compound entries are iterated
+ * with {@link #hasNext()} and {@link #nextName()}, list elements with {@link #hasNext()} alone.
+ * </p>
+ * <p>
+ * Allocations are accounted against an optional {@link NBTSizeTracker}, in the same way as vanilla deserialization.
+ * Unlike the tree path, a failure occurring after a value has been partially consumed leaves the reader in
+ * an undefined position and cannot be recovered from.
+ * </p>
+ * Readers are not thread safe.
+ *
+ * @see NBTTypeAdapter#read(NBTReader)
+ */
+@Beta
+public class NBTReader {
+    private static final int ROOT = 0;
+    private static final int COMPOUND = 1;
+    private static final int LIST = 2;
+    private static final int UNKNOWN_TYPE = -1;
+    private static final int MAX_DEPTH = 512;
+
+    private final DataInput in;
+    private final NBTSizeTracker sizeTracker;
+    private int depth;
+    private int[] contexts = new int[8];
+    private int[] listRemaining = new int[8];
+    private int[] listTypes = new int[8];
+    /**
+     * Type of the next value if its header has been read, {@link #UNKNOWN_TYPE} otherwise
+     */
+    private int nextType = UNKNOWN_TYPE;
+    @Nullable
+    private String nextName;
+    private boolean nameConsumed;
+    private boolean rootConsumed;
+
+    public NBTReader(DataInput in) {
+        this(in, NBTSizeTracker.INFINITE);
+    }
+
+    public NBTReader(DataInput in, NBTSizeTracker sizeTracker) {
+        this.in = in;
+        this.sizeTracker = sizeTracker;
+    }
+
+    public NBTReader(ByteBuf buf) {
+        this(new ByteBufInputStream(buf));
+    }
+
+    /**
+     * Returns the type of the next value, as one of the constants in {@link net.minecraftforge.common.util.Constants.NBT}.
+     * A {@link net.minecraftforge.common.util.Constants.NBT#TAG_END} type means that the current compound
+     * or list does not have any remaining value, or that the root is null.
+     */
+    public int peek() throws IOException {
+        switch (contexts[depth]) {
+            case ROOT:
+                if (nextType == UNKNOWN_TYPE) {
+                    if (rootConsumed) {
+                        throw new IllegalStateException("The root value has already been read");
+                    }
+                    nextType = in.readByte();
+                    if (nextType != TAG_END) {
+                        in.readUTF();
+                    }
+                }
+                return nextType;
+            case COMPOUND:
+                if (nextType == UNKNOWN_TYPE) {
+                    nextType = in.readByte();
+                    if (nextType != TAG_END) {
+                        nextName = in.readUTF();
+                        nameConsumed = false;
+                        sizeTracker.read(224L + 16L * nextName.length());
+                    }
+                }
+                return nextType;
+            case LIST:
+                return listRemaining[depth] > 0 ? listTypes[depth] : TAG_END;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * @return true if the current compound or list has remaining values
+     */
+    public boolean hasNext() throws IOException {
+        return contexts[depth] != ROOT && peek() != TAG_END;
+    }
+
+    /**
+     * Returns the name of the next entry in the current compound.
+     * The entry's value must then be consumed before calling this method again.
+     */
+    public String nextName() throws IOException {
+        if (contexts[depth] != COMPOUND) {
+            throw new IllegalStateException("Names can only be read inside a compound");
+        }
+        if (peek() == TAG_END || nameConsumed) {
+            throw new IllegalStateException("No entry left in the compound or its name has already been read");
+        }
+        nameConsumed = true;
+        return nextName;
+    }
+
+    public void beginCompound() throws IOException {
+        beginValue(TAG_COMPOUND);
+        sizeTracker.read(384L);
+        push(COMPOUND);
+    }
+
+    public void endCompound() throws IOException {
+        checkContext(COMPOUND);
+        if (peek() != TAG_END) {
+            throw new IllegalStateException("Entry " + nextName + " has not been read");
+        }
+        nextType = UNKNOWN_TYPE;
+        depth--;
+    }
+
+    /**
+     * @return the number of elements in the list
+     */
+    public int beginList() throws IOException {
+        beginValue(TAG_LIST);
+        sizeTracker.read(296L);
+        int type = in.readByte();
+        int size = in.readInt();
+        if (type == TAG_END && size > 0) {
+            throw new IOException("Missing type on ListTag");
+        }
+        sizeTracker.read(32L * size);
+        push(LIST);
+        listTypes[depth] = type;
+        listRemaining[depth] = size;
+        return size;
+    }
+
+    public void endList() {
+        checkContext(LIST);
+        if (listRemaining[depth] != 0) {
+            throw new IllegalStateException(listRemaining[depth] + " list elements have not been read");
+        }
+        depth--;
+    }
+
+    public byte readByte() throws IOException {
+        beginValue(TAG_BYTE);
+        sizeTracker.read(72L);
+        return in.readByte();
+    }
+
+    public short readShort() throws IOException {
+        beginValue(TAG_SHORT);
+        sizeTracker.read(80L);
+        return in.readShort();
+    }
+
+    public int readInt() throws IOException {
+        beginValue(TAG_INT);
+        sizeTracker.read(96L);
+        return in.readInt();
+    }
+
+    public long readLong() throws IOException {
+        beginValue(TAG_LONG);
+        sizeTracker.read(128L);
+        return in.readLong();
+    }
+
+    public float readFloat() throws IOException {
+        beginValue(TAG_FLOAT);
+        sizeTracker.read(96L);
+        return in.readFloat();
+    }
+
+    public double readDouble() throws IOException {
+        beginValue(TAG_DOUBLE);
+        sizeTracker.read(128L);
+        return in.readDouble();
+    }
+
+    public String readString() throws IOException {
+        beginValue(TAG_STRING);
+        return readStringPayload();
+    }
+
+    public byte[] readByteArray() throws IOException {
+        beginValue(TAG_BYTE_ARRAY);
+        return readByteArrayPayload();
+    }
+
+    public int[] readIntArray() throws IOException {
+        beginValue(TAG_INT_ARRAY);
+        return readIntArrayPayload();
+    }
+
+    public long[] readLongArray() throws IOException {
+        beginValue(TAG_LONG_ARRAY);
+        return readLongArrayPayload();
+    }
+
+    /**
+     * Reads the next value as a tag.
+     *
+     * @return the materialized tag, or <code>null</code> if the next value is a null root or
+     * if the current compound or list has no remaining value
+     */
+    @Nullable
+    public NBTBase readTag() throws IOException {
+        int type = peek();
+        if (type == TAG_END) {
+            if (contexts[depth] == ROOT) {
+                consume();
+            }
+            return null;
+        }
+        consume();
+        return readPayload(type, depth);
+    }
+
+    /**
+     * Skips the next value without materializing it
+     */
+    public void skipValue() throws IOException {
+        int type = peek();
+        if (type == TAG_END) {
+            if (contexts[depth] != ROOT) {
+                throw new IllegalStateException("No value left to skip");
+            }
+            consume();
+            return;
+        }
+        consume();
+        skipPayload(type, depth);
+    }
+
+    private NBTBase readPayload(int type, int tagDepth) throws IOException {
+        switch (type) {
+            case TAG_BYTE:
+                sizeTracker.read(72L);
+                return new NBTTagByte(in.readByte());
+            case TAG_SHORT:
+                sizeTracker.read(80L);
+                return new NBTTagShort(in.readShort());
+            case TAG_INT:
+                sizeTracker.read(96L);
+                return new NBTTagInt(in.readInt());
+            case TAG_LONG:
+                sizeTracker.read(128L);
+                return new NBTTagLong(in.readLong());
+            case TAG_FLOAT:
+                sizeTracker.read(96L);
+                return new NBTTagFloat(in.readFloat());
+            case TAG_DOUBLE:
+                sizeTracker.read(128L);
+                return new NBTTagDouble(in.readDouble());
+            case TAG_BYTE_ARRAY:
+                return new NBTTagByteArray(readByteArrayPayload());
+            case TAG_STRING:
+                return new NBTTagString(readStringPayload());
+            case TAG_LIST: {
+                checkDepth(tagDepth);
+                sizeTracker.read(296L);
+                int elementType = in.readByte();
+                int size = in.readInt();
+                if (elementType == TAG_END && size > 0) {
+                    throw new IOException("Missing type on ListTag");
+                }
+                sizeTracker.read(32L * size);
+                NBTTagList list = new NBTTagList();
+                for (int i = 0; i < size; i++) {
+                    list.appendTag(readPayload(elementType, tagDepth + 1));
+                }
+                return list;
+            }
+            case TAG_COMPOUND: {
+                checkDepth(tagDepth);
+                sizeTracker.read(384L);
+                NBTTagCompound compound = new NBTTagCompound();
+                int entryType;
+                while ((entryType = in.readByte()) != TAG_END) {
+                    // materialized compounds are usually kept, along with their many identical keys
+                    String name = InternPool.STRINGS.intern(in.readUTF());
+                    sizeTracker.read(224L + 16L * name.length());
+                    compound.setTag(name, readPayload(entryType, tagDepth + 1));
+                }
+                return compound;
+            }
+            case TAG_INT_ARRAY:
+                return new NBTTagIntArray(readIntArrayPayload());
+            case TAG_LONG_ARRAY:
+                return new NBTTagLongArray(readLongArrayPayload());
+            default:
+                throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    private void skipPayload(int type, int tagDepth) throws IOException {
+        switch (type) {
+            case TAG_BYTE:
+                skip(1);
+                break;
+            case TAG_SHORT:
+                skip(2);
+                break;
+            case TAG_INT:
+            case TAG_FLOAT:
+                skip(4);
+                break;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                skip(8);
+                break;
+            case TAG_BYTE_ARRAY:
+                skip(in.readInt());
+                break;
+            case TAG_STRING:
+                skip(in.readUnsignedShort());
+                break;
+            case TAG_LIST: {
+                checkDepth(tagDepth);
+                int elementType = in.readByte();
+                int size = in.readInt();
+                if (elementType == TAG_END && size > 0) {
+                    throw new IOException("Missing type on ListTag");
+                }
+                for (int i = 0; i < size; i++) {
+                    skipPayload(elementType, tagDepth + 1);
+                }
+                break;
+            }
+            case TAG_COMPOUND: {
+                checkDepth(tagDepth);
+                int entryType;
+                while ((entryType = in.readByte()) != TAG_END) {
+                    skip(in.readUnsignedShort());
+                    skipPayload(entryType, tagDepth + 1);
+                }
+                break;
+            }
+            case TAG_INT_ARRAY:
+                skip(4L * in.readInt());
+                break;
+            case TAG_LONG_ARRAY:
+                skip(8L * in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    private String readStringPayload() throws IOException {
+        String ret = in.readUTF();
+        sizeTracker.read(288L + 16L * ret.length());
+        return ret;
+    }
+
+    private byte[] readByteArrayPayload() throws IOException {
+        int length = in.readInt();
+        sizeTracker.read(192L + 8L * length);
+        byte[] ret = new byte[length];
+        in.readFully(ret);
+        return ret;
+    }
+
+    private int[] readIntArrayPayload() throws IOException {
+        int length = in.readInt();
+        sizeTracker.read(192L + 32L * length);
+        int[] ret = new int[length];
+        for (int i = 0; i < length; i++) {
+            ret[i] = in.readInt();
+        }
+        return ret;
+    }
+
+    private long[] readLongArrayPayload() throws IOException {
+        int length = in.readInt();
+        sizeTracker.read(192L + 64L * length);
+        long[] ret = new long[length];
+        for (int i = 0; i < length; i++) {
+            ret[i] = in.readLong();
+        }
+        return ret;
+    }
+
+    private void skip(long bytes) throws IOException {
+        if (bytes < 0) {
+            throw new IOException("Negative length " + bytes);
+        }
+        while (bytes > 0) {
+            int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes may give up early, readByte fails properly at the end of the input
+                in.readByte();
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private void beginValue(int type) throws IOException {
+        int actual = peek();
+        if (actual != type) {
+            throw new IllegalStateException("Expected " + NBTBase.getTagTypeName(type) + " but was " + NBTBase.getTagTypeName(actual));
+        }
+        consume();
+    }
+
+    private void consume() {
+        switch (contexts[depth]) {
+            case ROOT:
+                rootConsumed = true;
+                nextType = UNKNOWN_TYPE;
+                break;
+            case COMPOUND:
+                nextType = UNKNOWN_TYPE;
+                break;
+            case LIST:
+                listRemaining[depth]--;
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private void push(int context) {
+        checkDepth(depth);
+        if (++depth == contexts.length) {
+            int newLength = depth * 2;
+            contexts = Arrays.copyOf(contexts, newLength);
+            listRemaining = Arrays.copyOf(listRemaining, newLength);
+            listTypes = Arrays.copyOf(listTypes, newLength);
+        }
+        contexts[depth] = context;
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > " + MAX_DEPTH);
+        }
+    }
+
+    private void checkContext(int context) {
+        if (contexts[depth] != context) {
+            throw new IllegalStateException("Mismatched end of " + (context == LIST ? "list" : "compound"));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.internal.ReferenceGraph;
+import net.minecraft.nbt.NBTBase;
+
+import javax.annotation.Nullable;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A private copy of an object, captured on the thread that owns the object and serialized later from any thread.
+ * <p>
+ * Capturing a snapshot only copies state: primitive and immutable values are shared, collections, arrays and
+ * objects serialized field by field are copied, and no tag is built. Serializing the snapshot produces the
+ * same data as serializing the object at the time of the capture, regardless of later changes to the object.
+ * This lets the expensive part of a save run on a worker thread.
+ * </p>
+ * <p>
+ * Example: <pre>
+ * NBTSnapshot&lt;ResearchProgress&gt; snapshot = NBTSerialization.snapshot(progress, ResearchProgress.class);
+ * CompletableFuture.supplyAsync(snapshot::toNBT, ioExecutor).thenAccept(this::save);
+ * </pre>
+ * Types handled by adapters that do not implement {@link NBTTypeAdapter#snapshot(Object)} are copied by
+ * serializing and deserializing them, which happens on the capturing thread.
+ * </p>
+ *
+ * @param <T> the type of the captured object
+ * @see ladylib.nbt.NBTSerialization#snapshot(Object, java.lang.reflect.Type)
+ */
+@Beta
+public final class NBTSnapshot<T> {
+    private final TypeToken<?> type;
+    private final NBTTypeAdapter<T, ?> adapter;
+    @Nullable
+    private final T value;
+
+    private NBTSnapshot(TypeToken<?> type, NBTTypeAdapter<T, ?> adapter, @Nullable T value) {
+        this.type = type;
+        this.adapter = adapter;
+        this.value = value;
+    }
+
+    /**
+     * Copies the given value with its adapter
+     *
+     * @param type    the type used to resolve the adapter, under which metrics are recorded
+     * @param adapter the adapter of the value, used both to copy and to serialize it
+     * @param value   the value to capture
+     */
+    public static <T> NBTSnapshot<T> capture(TypeToken<?> type, NBTTypeAdapter<T, ?> adapter, @Nullable T value) {
+        if (value == null) {
+            return new NBTSnapshot<>(type, adapter, null);
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            return new NBTSnapshot<>(type, adapter, adapter.snapshot(value));
+        }
+    }
+
+    /**
+     * Serializes the captured value. This method can be called from any thread, and more than once.
+     *
+     * @return the NBT representation of the value at the time of the capture
+     */
+    @Nullable
+    public NBTBase toNBT() {
+        if (value == null) {
+            return null;
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                return NBTMetrics.measureWrite(type, () -> adapter.toNBT(value));
+            }
+            return adapter.toNBT(value);
+        }
+    }
+
+    /**
+     * Writes the captured value to a binary output, in the same format as
+     * {@link ladylib.nbt.NBTSerialization#writeNBT(Object, java.lang.reflect.Type, DataOutput)}.
+     * This method can be called from any thread, and more than once.
+     *
+     * @throws IOException if the output fails
+     */
+    public void write(DataOutput out) throws IOException {
+        NBTWriter writer = new NBTWriter(out);
+        if (value == null) {
+            writer.writeTag(null);
+            return;
+        }
+        try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+            if (NBTMetrics.isEnabled()) {
+                NBTMetrics.measureWrite(type, () -> {
+                    adapter.write(value, writer);
+                    return null;
+                });
+            } else {
+                adapter.write(value, writer);
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package ladylib.nbt.serialization;
 
 import com.google.common.annotations.Beta;
+import ladylib.nbt.serialization.internal.NBTSizes;
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.Optional;
 
 /**
@@ -13,6 +16,11 @@ import java.util.Optional;
  * <p>
  * Base implementations of this interface can be found in {@link ladylib.nbt.serialization.adapter}
  * </p>
+ * <p>
+ * A single adapter instance is shared by every caller, including the bulk methods of {@link ladylib.nbt.NBTSerialization}
+ * which run it from several threads at once. Implementations must therefore not keep mutable state
+ * between calls; an adapter that only reads its own configuration is safe to use concurrently.
+ * </p>
  *
  * @param <T>   the type of object handled by this adapter
  * @param <NBT> the nbt type used to serialize objects
@@ -23,6 +31,75 @@ public interface NBTTypeAdapter<T, NBT extends NBTBase> {
     @Nullable
     NBT toNBT(T value);
 
+    /**
+     * Serializes the given value, writing into an existing compound instead of allocating a new one if possible.
+     * Adapters that produce compounds remove every entry of the target before writing the value's entries to it,
+     * and return the target. Other adapters ignore it and return a new tag.
+     * <p>
+     * The default implementation ignores the target and calls {@link #toNBT(Object)}.
+     * </p>
+     *
+     * @param value  the value to serialize
+     * @param target a compound that may be cleared and reused
+     * @return the NBT representation of the value, which may or may not be <code>target</code>
+     */
+    @Nullable
+    default NBTBase toNBT(T value, NBTTagCompound target) {
+        return toNBT(value);
+    }
+
+    /**
+     * Writes the NBT representation of the given value directly to a stream.
+     * The written data must be identical to the result of {@link #toNBT(Object)}.
+     * <p>
+     * The default implementation builds the tag with {@link #toNBT(Object)} and copies it to the stream.
+     * Adapters that override this method should not return <code>null</code> from {@link #toNBT(Object)}
+     * for non-null values.
+     * </p>
+     *
+     * @param value the value to serialize
+     * @param out   the writer to which the value is written
+     * @throws IOException if the underlying output fails
+     */
+    default void write(T value, NBTWriter out) throws IOException {
+        out.writeTag(toNBT(value));
+    }
+
+    /**
+     * Computes the size of the binary NBT representation of the given value, without building it.
+     * The size only covers the payload of the tag, excluding its type id and its name: an int takes 4 bytes,
+     * a string takes 2 bytes followed by its modified UTF-8 encoding, a list takes 5 bytes followed by its elements' payloads.
+     * <p>
+     * The default implementation builds the tag with {@link #toNBT(Object)} and measures it.
+     * </p>
+     *
+     * @param value the value to measure
+     * @return the size of the value's payload in bytes, or <code>-1</code> if the value serializes to <code>null</code>
+     */
+    default long sizeOf(T value) {
+        NBTBase tag = toNBT(value);
+        return tag == null ? -1 : NBTSizes.sizeOfPayload(tag);
+    }
+
+    /**
+     * Copies the given value, so that the copy can be serialized from another thread while the original keeps changing.
+     * Serializing the copy must produce the same data as serializing the value at the time of the call.
+     * Immutable values can be returned as is.
+     * <p>
+     * The default implementation serializes the value with {@link #toNBT(Object)} and deserializes the result,
+     * which does the very work snapshots are meant to defer. Built-in adapters override it with a cheaper copy.
+     * </p>
+     *
+     * @param value the value to copy, never <code>null</code>
+     * @return a copy of the value that is not reachable from the original
+     * @see NBTSnapshot
+     */
+    @Nullable
+    default T snapshot(T value) {
+        NBTBase tag = toNBT(value);
+        return tag == null ? null : fromNBT(tag);
+    }
+
     /**
      * Implementations of this method that mutate the input value should always implement {@link NBTMutatingTypeAdapter}
      */
@@ -42,6 +119,35 @@ public interface NBTTypeAdapter<T, NBT extends NBTBase> {
     @Nullable
     T fromNBT(NBTBase nbt);
 
+    /**
+     * Streaming equivalent of {@link #fromNBT(Object, NBTBase)}, consuming the next value of the given reader.
+     * <p>
+     * The default implementation materializes the value with {@link NBTReader#readTag()} and passes it
+     * to {@link #fromNBT(Object, NBTBase)}.
+     * </p>
+     *
+     * @throws IOException if the underlying input fails
+     */
+    @Nullable
+    default T read(T value, NBTReader in) throws IOException {
+        return fromNBT(value, in.readTag());
+    }
+
+    /**
+     * Streaming equivalent of {@link #fromNBT(NBTBase)}, consuming the next value of the given reader.
+     * <p>
+     * The default implementation materializes the value with {@link NBTReader#readTag()} and passes it
+     * to {@link #fromNBT(NBTBase)}.
+     * </p>
+     *
+     * @throws IOException if the underlying input fails
+     * @throws NBTDeserializationException if the operation fails, because no default type is available or otherwise.
+     */
+    @Nullable
+    default T read(NBTReader in) throws IOException {
+        return fromNBT(in.readTag());
+    }
+
     /**
      * Helper method to cast an NBT object to a type usable by adapters, if possible. <br>
      * Casts the given value to the class represented by the given Class object.
@@ -0,0 +1,385 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import ladylib.nbt.serialization.internal.LongArrayTags;
+import net.minecraft.nbt.*;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static net.minecraftforge.common.util.Constants.NBT.*;
+
+/**
+ * Writes NBT data directly to a binary output, without building the intermediate tag tree.
+ * <p>
+ * The written bytes are the same as those produced by {@link CompressedStreamTools#write(NBTTagCompound, DataOutput)}
+ * for the equivalent tag. Every compound entry is introduced by a call to {@link #name(String)}, list elements are
+ * written one after the other between {@link #beginList(int)} and {@link #endList()}.
+ * </p>
+ * Writers are not thread safe.
+ *
+ * @see NBTTypeAdapter#write(Object, NBTWriter)
+ */
+@Beta
+public class NBTWriter {
+    private static final int ROOT = 0;
+    private static final int COMPOUND = 1;
+    private static final int LIST = 2;
+    private static final int UNKNOWN_TYPE = -1;
+
+    private final DataOutput out;
+    private int depth;
+    private int[] contexts = new int[8];
+    private int[] listSizes = new int[8];
+    private int[] listWritten = new int[8];
+    private int[] listTypes = new int[8];
+    @Nullable
+    private String pendingName;
+    private boolean rootWritten;
+    /** The in-memory output of {@link #buffered() buffered} writers */
+    @Nullable
+    private final Buffer buffer;
+
+    public NBTWriter(DataOutput out) {
+        this.out = out;
+        this.buffer = null;
+    }
+
+    public NBTWriter(ByteBuf buf) {
+        this(new ByteBufOutputStream(buf));
+    }
+
+    private NBTWriter(Buffer buffer) {
+        this.out = new DataOutputStream(buffer);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a writer keeping a single root value in memory. The value can then be copied to another writer
+     * with {@link #writeBuffered(NBTWriter)}, or discarded if writing it failed midway.
+     */
+    public static NBTWriter buffered() {
+        return new NBTWriter(new Buffer());
+    }
+
+    /**
+     * Sets the name of the next entry in the current compound
+     */
+    public NBTWriter name(String name) {
+        if (contexts[depth] != COMPOUND) {
+            throw new IllegalStateException("Names can only be written inside a compound");
+        }
+        if (pendingName != null) {
+            throw new IllegalStateException("Entry " + pendingName + " has no value");
+        }
+        pendingName = name;
+        return this;
+    }
+
+    public NBTWriter beginCompound() throws IOException {
+        beginValue(TAG_COMPOUND);
+        push(COMPOUND);
+        return this;
+    }
+
+    public NBTWriter endCompound() throws IOException {
+        checkContext(COMPOUND);
+        if (pendingName != null) {
+            throw new IllegalStateException("Entry " + pendingName + " has no value");
+        }
+        out.writeByte(TAG_END);
+        depth--;
+        return this;
+    }
+
+    /**
+     * Starts a list of the given size. The type of the list is determined by the first element written.
+     *
+     * @param size the exact number of elements that will be written before calling {@link #endList()}
+     */
+    public NBTWriter beginList(int size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative list size " + size);
+        }
+        beginValue(TAG_LIST);
+        push(LIST);
+        listSizes[depth] = size;
+        listWritten[depth] = 0;
+        listTypes[depth] = UNKNOWN_TYPE;
+        return this;
+    }
+
+    public NBTWriter endList() throws IOException {
+        checkContext(LIST);
+        if (listWritten[depth] != listSizes[depth]) {
+            throw new IllegalStateException("Expected " + listSizes[depth] + " list elements, got " + listWritten[depth]);
+        }
+        if (listTypes[depth] == UNKNOWN_TYPE) {
+            // empty lists have no type
+            out.writeByte(TAG_END);
+            out.writeInt(0);
+        }
+        depth--;
+        return this;
+    }
+
+    public NBTWriter writeByte(byte value) throws IOException {
+        beginValue(TAG_BYTE);
+        out.writeByte(value);
+        return this;
+    }
+
+    public NBTWriter writeShort(short value) throws IOException {
+        beginValue(TAG_SHORT);
+        out.writeShort(value);
+        return this;
+    }
+
+    public NBTWriter writeInt(int value) throws IOException {
+        beginValue(TAG_INT);
+        out.writeInt(value);
+        return this;
+    }
+
+    public NBTWriter writeLong(long value) throws IOException {
+        beginValue(TAG_LONG);
+        out.writeLong(value);
+        return this;
+    }
+
+    public NBTWriter writeFloat(float value) throws IOException {
+        beginValue(TAG_FLOAT);
+        out.writeFloat(value);
+        return this;
+    }
+
+    public NBTWriter writeDouble(double value) throws IOException {
+        beginValue(TAG_DOUBLE);
+        out.writeDouble(value);
+        return this;
+    }
+
+    public NBTWriter writeString(String value) throws IOException {
+        beginValue(TAG_STRING);
+        out.writeUTF(value);
+        return this;
+    }
+
+    public NBTWriter writeByteArray(byte[] value) throws IOException {
+        beginValue(TAG_BYTE_ARRAY);
+        out.writeInt(value.length);
+        out.write(value);
+        return this;
+    }
+
+    public NBTWriter writeIntArray(int[] value) throws IOException {
+        beginValue(TAG_INT_ARRAY);
+        writeIntArrayPayload(value);
+        return this;
+    }
+
+    public NBTWriter writeLongArray(long[] value) throws IOException {
+        beginValue(TAG_LONG_ARRAY);
+        writeLongArrayPayload(value);
+        return this;
+    }
+
+    /**
+     * Writes an existing tag as the next value.
+     * <p>
+     * A <code>null</code> tag is skipped when written inside a compound, consistently with
+     * the tree serialization path. When written as the root, a single end tag is emitted
+     * in the same way as {@link net.minecraft.network.PacketBuffer#writeCompoundTag(NBTTagCompound)}.
+     * </p>
+     */
+    public NBTWriter writeTag(@Nullable NBTBase tag) throws IOException {
+        if (tag == null) {
+            switch (contexts[depth]) {
+                case ROOT:
+                    if (rootWritten) {
+                        throw new IllegalStateException("A root value has already been written");
+                    }
+                    rootWritten = true;
+                    out.writeByte(TAG_END);
+                    break;
+                case COMPOUND:
+                    if (pendingName == null) {
+                        throw new IllegalStateException("Missing name for compound entry");
+                    }
+                    pendingName = null;
+                    break;
+                default:
+                    throw new IllegalStateException("Lists cannot contain null elements");
+            }
+            return this;
+        }
+        beginValue(tag.getId());
+        writePayload(tag);
+        return this;
+    }
+
+    /**
+     * Copies the value held by a {@link #buffered() buffered writer} as the next value
+     *
+     * @param value a buffered writer in which a complete root value has been written
+     */
+    public NBTWriter writeBuffered(NBTWriter value) throws IOException {
+        if (value.buffer == null || !value.rootWritten || value.depth != 0) {
+            throw new IllegalArgumentException("The given writer does not hold a complete buffered value");
+        }
+        int id = value.buffer.getId();
+        if (id == TAG_END) {
+            return writeTag(null);
+        }
+        beginValue(id);
+        value.buffer.copyPayload(out);
+        return this;
+    }
+
+    private void writePayload(NBTBase tag) throws IOException {
+        switch (tag.getId()) {
+            case TAG_END:
+                break;
+            case TAG_BYTE:
+                out.writeByte(((NBTTagByte) tag).getByte());
+                break;
+            case TAG_SHORT:
+                out.writeShort(((NBTTagShort) tag).getShort());
+                break;
+            case TAG_INT:
+                out.writeInt(((NBTTagInt) tag).getInt());
+                break;
+            case TAG_LONG:
+                out.writeLong(((NBTTagLong) tag).getLong());
+                break;
+            case TAG_FLOAT:
+                out.writeFloat(((NBTTagFloat) tag).getFloat());
+                break;
+            case TAG_DOUBLE:
+                out.writeDouble(((NBTTagDouble) tag).getDouble());
+                break;
+            case TAG_BYTE_ARRAY:
+                byte[] bytes = ((NBTTagByteArray) tag).getByteArray();
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            case TAG_STRING:
+                out.writeUTF(((NBTTagString) tag).getString());
+                break;
+            case TAG_LIST:
+                NBTTagList list = (NBTTagList) tag;
+                out.writeByte(list.isEmpty() ? TAG_END : list.get(0).getId());
+                out.writeInt(list.tagCount());
+                for (NBTBase element : list) {
+                    writePayload(element);
+                }
+                break;
+            case TAG_COMPOUND:
+                NBTTagCompound compound = (NBTTagCompound) tag;
+                for (String key : compound.getKeySet()) {
+                    NBTBase entry = compound.getTag(key);
+                    out.writeByte(entry.getId());
+                    if (entry.getId() != TAG_END) {
+                        out.writeUTF(key);
+                        writePayload(entry);
+                    }
+                }
+                out.writeByte(TAG_END);
+                break;
+            case TAG_INT_ARRAY:
+                writeIntArrayPayload(((NBTTagIntArray) tag).getIntArray());
+                break;
+            case TAG_LONG_ARRAY:
+                writeLongArrayPayload(LongArrayTags.getData((NBTTagLongArray) tag));
+                break;
+            default:
+                throw new IOException("Unknown tag type " + tag.getId());
+        }
+    }
+
+    private void writeIntArrayPayload(int[] value) throws IOException {
+        out.writeInt(value.length);
+        for (int i : value) {
+            out.writeInt(i);
+        }
+    }
+
+    private void writeLongArrayPayload(long[] value) throws IOException {
+        out.writeInt(value.length);
+        for (long l : value) {
+            out.writeLong(l);
+        }
+    }
+
+    private void beginValue(int id) throws IOException {
+        switch (contexts[depth]) {
+            case ROOT:
+                if (rootWritten) {
+                    throw new IllegalStateException("A root value has already been written");
+                }
+                rootWritten = true;
+                out.writeByte(id);
+                out.writeUTF("");
+                break;
+            case COMPOUND:
+                if (pendingName == null) {
+                    throw new IllegalStateException("Missing name for compound entry");
+                }
+                out.writeByte(id);
+                out.writeUTF(pendingName);
+                pendingName = null;
+                break;
+            case LIST:
+                if (listWritten[depth] == listSizes[depth]) {
+                    throw new IllegalStateException("List has more elements than the announced " + listSizes[depth]);
+                }
+                if (listTypes[depth] == UNKNOWN_TYPE) {
+                    listTypes[depth] = id;
+                    out.writeByte(id);
+                    out.writeInt(listSizes[depth]);
+                } else if (listTypes[depth] != id) {
+                    throw new IllegalStateException("Mismatching list element type: expected " + NBTBase.getTagTypeName(listTypes[depth]) + ", got " + NBTBase.getTagTypeName(id));
+                }
+                listWritten[depth]++;
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private void push(int context) {
+        if (++depth == contexts.length) {
+            int newLength = depth * 2;
+            contexts = Arrays.copyOf(contexts, newLength);
+            listSizes = Arrays.copyOf(listSizes, newLength);
+            listWritten = Arrays.copyOf(listWritten, newLength);
+            listTypes = Arrays.copyOf(listTypes, newLength);
+        }
+        contexts[depth] = context;
+    }
+
+    private void checkContext(int context) {
+        if (contexts[depth] != context) {
+            throw new IllegalStateException("Mismatched end of " + (context == LIST ? "list" : "compound"));
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        /** A root value starts with its type and an empty name */
+        private static final int PAYLOAD_OFFSET = 3;
+
+        int getId() {
+            return buf[0];
+        }
+
+        void copyPayload(DataOutput out) throws IOException {
+            out.write(buf, PAYLOAD_OFFSET, count - PAYLOAD_OFFSET);
+        }
+    }
+}
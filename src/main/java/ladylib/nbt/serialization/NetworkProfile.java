@@ -0,0 +1,62 @@
+package ladylib.nbt.serialization;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Selects the network serialization profile for the operations run on the current thread.
+ * <p>
+ * In the network profile:
+ * <ul>
+ *     <li>registry entries are written as their numeric id in the {@link net.minecraftforge.registries.ForgeRegistry},
+ *     in a short tag if it fits and in an int tag otherwise, instead of their registry name</li>
+ *     <li>{@link net.minecraft.item.ItemStack}s write their item as a numeric id, as vanilla does in packets</li>
+ * </ul>
+ * Numeric ids are only valid between a server and the clients it synchronized its registries with,
+ * data written with this profile must never be saved. Entries of registries that do not have numeric ids
+ * are still written by name. Both representations are always read, whatever the active profile.
+ * </p>
+ * Example: <pre>
+ * try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+ *     NBTSerialization.writeNBT(data, MyData.class, buf);
+ * }
+ * </pre>
+ */
+@Beta
+public final class NetworkProfile {
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private NetworkProfile() { }
+
+    /**
+     * Enables the network profile on the current thread until the returned scope is closed.
+     * Scopes can be nested, and closing a scope more than once has no further effect.
+     */
+    public static Scope open() {
+        int[] depth = DEPTH.get();
+        depth[0]++;
+        return new Scope() {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    depth[0]--;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return true if the network profile is enabled on the current thread
+     */
+    public static boolean isActive() {
+        return DEPTH.get()[0] > 0;
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,33 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Packs the annotated primitive <code>boolean</code> field into the bitfield of its {@link CompactNBT} class,
+ * at a fixed bit index.
+ * <p>
+ * The index is part of the saved data: fields can be added, removed, renamed or reordered freely,
+ * as long as existing fields keep their index. Indices range from 0 to 63 and must be unique within a class,
+ * the adapter of a class breaking either rule fails to build.
+ * </p>
+ * Example: <pre>
+ * &#64CompactNBT
+ * public class Abilities {
+ *     &#64PackedFlag(0)
+ *     private boolean canFly;
+ *     &#64PackedFlag(1)
+ *     private boolean canSwim;
+ * }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface PackedFlag {
+    /**
+     * The index of the bit holding the field's value, from 0 to 63
+     */
+    int value();
+}
@@ -0,0 +1,43 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the annotated floating point field serialize as an integer on a fixed number of {@link #bits()},
+ * mapping the range [{@link #min()}, {@link #max()}] to evenly spaced steps.
+ * <p>
+ * Supported fields are <code>float</code> and <code>double</code>, their wrappers, and arrays of them.
+ * Single values are stored in a byte, short or int tag depending on the number of bits.
+ * Arrays are stored in a byte array, using 1 to 4 bytes per element.
+ * Values outside of the range are clamped, and deserialized values are rounded to the closest step,
+ * so this should only be used for values where the precision loss is acceptable, like progress ratios,
+ * angles or health percentages.
+ * </p>
+ * Data written without this annotation is still read. Example: <pre>
+ * &#64QuantizedNBT(min = 0, max = 360, bits = 12)
+ * private float yaw;
+ * </pre>
+ * Changing the range or the number of bits changes the meaning of existing data.
+ * @see TagAdapters#addFieldCodec(Class, java.util.function.Function)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface QuantizedNBT {
+    /**
+     * The smallest value that can be represented
+     */
+    double min();
+
+    /**
+     * The largest value that can be represented
+     */
+    double max();
+
+    /**
+     * The number of bits of the stored integer, between 1 and 32
+     */
+    int bits() default 16;
+}
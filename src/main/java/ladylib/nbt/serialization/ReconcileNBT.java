@@ -0,0 +1,30 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the annotated list or map field reuse its existing elements when deserialized.
+ * <p>
+ * By default, deserializing into an existing collection clears it and creates every element anew.
+ * With this annotation, list elements are matched by index and map values by key, and existing elements
+ * are updated in place with their mutating adapter. Only elements that have no counterpart in the collection
+ * are created, and only elements that have no counterpart in the data are removed.
+ * This avoids throwing away every element of large collections that are frequently synchronized.
+ * </p>
+ * <p>
+ * The annotation only applies to fields that are themselves updated in place, holding lists or maps of
+ * objects that can be updated in place, such as objects serialized field by field. Elements of
+ * {@link SharedReferences} types are always replaced. The serialized format is not affected.
+ * </p>
+ * Example: <pre>
+ * &#64ReconcileNBT
+ * private final List&lt;Waypoint&gt; waypoints = new ArrayList&lt;&gt;();
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ReconcileNBT {
+}
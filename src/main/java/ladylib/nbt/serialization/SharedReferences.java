@@ -0,0 +1,30 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Preserves the identity of instances of the annotated class across a serialization operation.
+ * <p>
+ * The first time an instance is serialized, its compound gets an additional {@value #ID_KEY} entry.
+ * Every later occurrence of the same instance is written as a compound holding only a {@value #REF_KEY} entry.
+ * Deserialization creates a single object per id, so that shared and cyclic references are restored.
+ * References may be read before the compound defining their id, as readers do not visit entries in the order
+ * in which they were written. When the root of an operation is itself shared, as with
+ * {@link ladylib.nbt.NBTSerialization#deserializeNBT(Object, net.minecraft.nbt.NBTBase)}, the updated object
+ * takes the root's id. Annotated classes need a no-argument constructor.
+ * </p>
+ * Fields holding instances of the annotated class are assigned a new object when deserialized, instead of
+ * having their current value updated, and should therefore not be final.
+ * An operation is a single call to {@link ladylib.nbt.NBTSerialization} or to a
+ * {@link ladylib.capability.ReflectiveCapabilityStorage}. References cannot cross {@link LazyNBT} holders,
+ * as those are decoded later.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SharedReferences {
+    String ID_KEY = "#id";
+    String REF_KEY = "#ref";
+}
@@ -6,21 +6,47 @@ import ladylib.LadyLib;
 import ladylib.nbt.serialization.adapter.*;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import org.apache.logging.log4j.message.FormattedMessage;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * The registry of NBT type adapters.
+ * <p>
+ * This class is thread safe. Once an adapter has been resolved, querying it again does not block.
+ * Adapters are built at most once per type and mutating mode. Adapters of different types are built concurrently,
+ * while a thread needing an adapter that another thread is building waits for it, unless both threads
+ * are waiting on each other, in which case it gets a placeholder like recursive types do.
+ * </p>
+ */
 @Beta
 public class TagAdapters {
     private TagAdapters() { }
 
-    private static final List<NBTTypeAdapterFactory> factories = new ArrayList<>();
-    private static final Map<TypeToken<?>, NBTAdapterEntry> cache = new HashMap<>();
-    private static final Map<TypeToken<?>, Supplier<?>> defaultValues = new HashMap<>();
+    private static final List<NBTTypeAdapterFactory> factories = new CopyOnWriteArrayList<>();
+    private static final ConcurrentMap<TypeToken<?>, NBTAdapterEntry> cache = new ConcurrentHashMap<>();
+    private static final Map<TypeToken<?>, Supplier<?>> defaultValues = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends Annotation>, Function<Annotation, NBTTypeAdapterFactory>> fieldCodecs = new ConcurrentHashMap<>();
+    /** The in-flight build each thread is waiting for, used to detect threads waiting on each other */
+    private static final ConcurrentMap<Thread, PendingNBTTypeAdapter> waitingThreads = new ConcurrentHashMap<>();
+    private static final NBTTypeAdapter<UUID, ?> COMPACT_UUID_ADAPTER = new BaseNBTAdapters.CompactUUIDAdapter();
+    private static final NBTTypeAdapter<ResourceLocation, ?> COMPACT_RESOURCE_LOCATION_ADAPTER = new BaseNBTAdapters.CompactResourceLocationAdapter();
+    private static final MapNBTTypeAdapterFactory COMPACT_MAP_FACTORY = new MapNBTTypeAdapterFactory(true);
 
     static {
         addPrimitiveFactory(boolean.class, Boolean.class, BaseNBTAdapters.BooleanAdapter::new);
@@ -35,16 +61,25 @@ public class TagAdapters {
         addFactory(ItemStack.class,  BaseNBTAdapters.ItemStackAdapter::new);
         addFactory(BlockPos.class,   BaseNBTAdapters.BlockPosAdapter::new);
         addFactory(UUID.class,       BaseNBTAdapters.UUIDAdapter::new);
+        addFactory(ResourceLocation.class, BaseNBTAdapters.ResourceLocationAdapter::new);
 
         factories.add(new NBTSelfTypeAdapterFactory());
+        factories.add(new LazyNBTTypeAdapterFactory());
+        factories.add(new ArrayNBTTypeAdapterFactory());
         factories.add(new EnumNBTTypeAdapterFactory());
         factories.add(new SerializableNBTTypeAdapterFactory());
         factories.add(new RegistryEntryNBTAdapterFactory());
+        factories.add(new FastutilNBTTypeAdapterFactory());
         factories.add(new ImmutableCollectionNBTAdapterFactory());
         factories.add(new CollectionNBTTypeAdapterFactory());
         factories.add(new MapNBTTypeAdapterFactory());
         factories.add(new CapabilityNBTTypeAdapterFactory());
+        factories.add(new ConstructorNBTAdapterFactory());
         factories.add(ReflectiveNBTAdapterFactory.INSTANCE);
+
+        addFieldCodec(VarIntNBT.class, VarIntNBTTypeAdapterFactory::new);
+        addFieldCodec(QuantizedNBT.class, QuantizedNBTTypeAdapterFactory::new);
+        addFieldCodec(ReconcileNBT.class, annotation -> ReconcilingNBTTypeAdapterFactory.INSTANCE);
     }
 
     private static <T> void addPrimitiveFactory(Class<T> primitive, Class<T> wrapper, Supplier<NBTTypeAdapter<T, ?>> factory) {
@@ -61,13 +96,130 @@ public class TagAdapters {
         factories.add(0, factory);
     }
 
+    /**
+     * Unregisters a factory registered through {@link #addAdapterFactory(NBTTypeAdapterFactory)}.
+     * Adapters already created by the factory stay cached for their types.
+     */
+    public static void removeAdapterFactory(NBTTypeAdapterFactory factory) {
+        factories.remove(factory);
+    }
+
+    /**
+     * Registers a codec selected by annotating fields with the given annotation, like {@link VarIntNBT}.
+     * <p>
+     * When getting the adapter of an annotated field, a factory is created from the annotation
+     * and queried before the regular adapters. If it does not support the type of the field,
+     * the field keeps using its regular adapter.
+     * </p>
+     *
+     * @param annotation the annotation selecting the codec, which must be retained at runtime
+     * @param codec      a function creating an adapter factory configured by an annotation instance
+     */
+    @SuppressWarnings("unchecked")
+    public static <A extends Annotation> void addFieldCodec(Class<A> annotation, Function<? super A, ? extends NBTTypeAdapterFactory> codec) {
+        fieldCodecs.put(annotation, (Function<Annotation, NBTTypeAdapterFactory>) codec);
+    }
+
+    /**
+     * Gets the adapter used to serialize the given field, taking {@link #addFieldCodec(Class, Function) field codecs},
+     * the {@link CompactNBT compact profile} and {@link SharedReferences shared references} into account
+     */
     public static NBTTypeAdapter getNBTAdapter(Field field) {
-        return getNBTAdapter(TypeToken.get(field.getGenericType()), true);
+        return getNBTAdapter(field, true);
+    }
+
+    /**
+     * Gets the adapter used to serialize the given field, optionally forbidding mutating adapters
+     *
+     * @see #getNBTAdapter(Field)
+     */
+    public static NBTTypeAdapter getNBTAdapter(Field field, boolean allowMutating) {
+        // shared objects are replaced rather than updated, so that references can be restored
+        allowMutating &= !field.getType().isAnnotationPresent(SharedReferences.class);
+        boolean compact = field.isAnnotationPresent(CompactNBT.class) || field.getDeclaringClass().isAnnotationPresent(CompactNBT.class);
+        for (Annotation annotation : field.getDeclaredAnnotations()) {
+            Function<Annotation, NBTTypeAdapterFactory> codec = fieldCodecs.get(annotation.annotationType());
+            if (codec != null) {
+                NBTTypeAdapterFactory factory = codec.apply(annotation);
+                if (compact && factory == ReconcilingNBTTypeAdapterFactory.INSTANCE) {
+                    factory = ReconcilingNBTTypeAdapterFactory.COMPACT_MAPS;
+                }
+                NBTTypeAdapter ret = factory.create(TypeToken.get(field.getGenericType()), allowMutating);
+                if (ret != null) {
+                    return ret;
+                }
+                LadyLib.LOGGER.warn("{} does not support the type of field {}, ignoring it", annotation, field);
+            }
+        }
+        TypeToken<?> type = TypeToken.get(field.getGenericType());
+        NBTTypeAdapter ret = getNBTAdapter(type, allowMutating);
+        if (allowMutating && Modifier.isFinal(field.getModifiers()) && !(ret instanceof NBTMutatingTypeAdapter)) {
+            // final fields cannot use the non mutating stand-in given to recursive references
+            NBTTypeAdapter mutating = getMutatingAdapter(type);
+            if (mutating != null) {
+                ret = mutating;
+            }
+        }
+        if (compact) {
+            if (field.getType() == UUID.class) {
+                return COMPACT_UUID_ADAPTER;
+            } else if (field.getType() == ResourceLocation.class) {
+                return COMPACT_RESOURCE_LOCATION_ADAPTER;
+            } else if (ret instanceof RegistryEntryNBTAdapterFactory.RegistryEntryNBTAdapter) {
+                return ((RegistryEntryNBTAdapterFactory.RegistryEntryNBTAdapter) ret).compact();
+            } else if (ret instanceof MapNBTTypeAdapterFactory.MapBaseAdapter) {
+                NBTTypeAdapter compactMap = COMPACT_MAP_FACTORY.create(type, ret instanceof NBTMutatingTypeAdapter);
+                if (compactMap != null) {
+                    return compactMap;
+                }
+            }
+        }
+        return ret;
     }
 
     @SuppressWarnings("unchecked")
     public static <T, NBT extends NBTBase> NBTTypeAdapter<T, NBT> getNBTAdapter(TypeToken<T> type, boolean allowMutating) {
-        return cache.computeIfAbsent(type, NBTAdapterEntry::new).computeTypeAdapter(allowMutating);
+        NBTAdapterEntry entry = cache.get(type);
+        if (entry == null) {
+            entry = cache.computeIfAbsent(type, NBTAdapterEntry::new);
+        }
+        return entry.computeTypeAdapter(allowMutating);
+    }
+
+    /**
+     * Gets an adapter updating existing values of the given type in place, if there is one.
+     * <p>
+     * Unlike checking whether {@link #getNBTAdapter(TypeToken, boolean)} returns an {@link NBTMutatingTypeAdapter},
+     * this also works while the adapter of the type is being built higher in the stack (recursive types),
+     * in which case the returned adapter forwards calls to the mutating adapter once it is built.
+     * </p>
+     *
+     * @return a mutating adapter for the type, or null if values of this type are replaced rather than updated
+     */
+    @Nullable
+    public static NBTMutatingTypeAdapter getMutatingAdapter(TypeToken type) {
+        NBTTypeAdapter adapter = getNBTAdapter(type, true);
+        if (adapter instanceof NBTMutatingTypeAdapter) {
+            return (NBTMutatingTypeAdapter) adapter;
+        }
+        NBTAdapterEntry entry = cache.get(type);
+        return entry == null ? null : entry.getPendingMutatingAdapter(adapter);
+    }
+
+    /**
+     * Checks whether the adapter returned by {@link #getNBTAdapter(Field)} updates the value of the field in place.
+     * Like {@link #getMutatingAdapter(TypeToken)}, this also works for fields whose type is still being built.
+     */
+    public static boolean isMutating(Field field) {
+        NBTTypeAdapter adapter = getNBTAdapter(field);
+        if (adapter instanceof NBTMutatingTypeAdapter) {
+            return true;
+        }
+        if (field.getType().isAnnotationPresent(SharedReferences.class)) {
+            return false;
+        }
+        NBTAdapterEntry entry = cache.get(TypeToken.get(field.getGenericType()));
+        return entry != null && entry.getPendingMutatingAdapter(adapter) != null;
     }
 
     public static <T> void setDefaultValue(TypeToken<T> type, Supplier<T> defaultProvider) {
@@ -80,9 +232,14 @@ public class TagAdapters {
     }
 
     public static class NBTAdapterEntry {
-        private TypeToken type;
-        private NBTTypeAdapter typeAdapter;
-        private NBTMutatingTypeAdapter mutatingTypeAdapter;
+        private final TypeToken type;
+        private volatile NBTTypeAdapter typeAdapter;
+        private volatile NBTMutatingTypeAdapter mutatingTypeAdapter;
+        /** Whether factories have been queried with mutating adapters allowed */
+        private volatile boolean mutatingResolved;
+        // only accessed while holding this entry's monitor
+        private PendingNBTTypeAdapter pendingTypeAdapter;
+        private PendingNBTTypeAdapter pendingMutatingTypeAdapter;
 
         public NBTAdapterEntry(TypeToken type) {
             this.type = type;
@@ -90,12 +247,109 @@ public class TagAdapters {
 
         @Nonnull
         public NBTTypeAdapter computeTypeAdapter(boolean allowMutating) {
-            if (allowMutating && mutatingTypeAdapter != null) {
-                return mutatingTypeAdapter;
+            NBTTypeAdapter ret = getTypeAdapter(allowMutating);
+            if (ret != null) {
+                return ret;
+            }
+            PendingNBTTypeAdapter pending;
+            boolean building = false;
+            synchronized (this) {
+                // another thread may have built the adapter in the meantime
+                ret = getTypeAdapter(allowMutating);
+                if (ret != null) {
+                    return ret;
+                }
+                pending = allowMutating ? pendingMutatingTypeAdapter : pendingTypeAdapter;
+                if (pending == null) {
+                    pending = new PendingNBTTypeAdapter(this, allowMutating);
+                    setPending(allowMutating, pending);
+                    building = true;
+                }
             }
-            if (typeAdapter != null) {
-                return typeAdapter;
+            if (building) {
+                return build(pending);
             }
+            if (pending.builder != Thread.currentThread() && pending.await()) {
+                // the adapter is available, or its build failed and is attempted again
+                return computeTypeAdapter(allowMutating);
+            }
+            // the adapter for this type is being built higher in the stack (eg. a recursive type),
+            // or by a thread waiting on an adapter this thread is building
+            return allowMutating ? getRecursiveAdapter(pending) : pending;
+        }
+
+        private NBTTypeAdapter build(PendingNBTTypeAdapter pending) {
+            try {
+                NBTTypeAdapter ret = createTypeAdapter(pending.allowMutating);
+                pending.delegate = ret;
+                return ret;
+            } catch (RuntimeException | Error e) {
+                // adapters built in the meantime may hold the placeholder, let them retry instead of failing forever
+                pending.failed = true;
+                throw e;
+            } finally {
+                synchronized (this) {
+                    setPending(pending.allowMutating, null);
+                }
+                pending.done.countDown();
+            }
+        }
+
+        /**
+         * Recursive references get a non mutating stand-in while the mutating adapter of their type is being built,
+         * as field values of their own type are usually null. This method gets the mutating adapter being built instead.
+         *
+         * @param adapter an adapter returned for this entry's type
+         * @return a mutating placeholder if the given adapter stands in for the mutating adapter being built, null otherwise
+         */
+        @Nullable
+        private NBTMutatingTypeAdapter getPendingMutatingAdapter(NBTTypeAdapter adapter) {
+            synchronized (this) {
+                PendingNBTTypeAdapter pending = pendingMutatingTypeAdapter;
+                if (pending != null && (adapter == pending || adapter == typeAdapter || adapter == pendingTypeAdapter)) {
+                    return pending.asMutating();
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Fields referencing their own type are usually null, so a mutating adapter would have nothing to mutate.
+         * Recursive references thus use a non mutating adapter if one can be created.
+         */
+        private NBTTypeAdapter getRecursiveAdapter(PendingNBTTypeAdapter pending) {
+            try {
+                return computeTypeAdapter(false);
+            } catch (RuntimeException e) {
+                LadyLib.LOGGER.debug(new FormattedMessage("Could not create a non mutating adapter for recursive type {}", type), e);
+                return pending;
+            }
+        }
+
+        @Nullable
+        private NBTTypeAdapter getTypeAdapter(boolean allowMutating) {
+            if (allowMutating) {
+                NBTMutatingTypeAdapter mutating = mutatingTypeAdapter;
+                if (mutating != null) {
+                    return mutating;
+                }
+                // a non mutating adapter built beforehand does not mean that no mutating adapter exists
+                if (!mutatingResolved) {
+                    return null;
+                }
+            }
+            return typeAdapter;
+        }
+
+        private void setPending(boolean allowMutating, @Nullable PendingNBTTypeAdapter pending) {
+            if (allowMutating) {
+                pendingMutatingTypeAdapter = pending;
+            } else {
+                pendingTypeAdapter = pending;
+            }
+        }
+
+        private NBTTypeAdapter createTypeAdapter(boolean allowMutating) {
             for (NBTTypeAdapterFactory factory : factories) {
                 NBTTypeAdapter candidate;
                 try {
@@ -113,6 +367,9 @@ public class TagAdapters {
                     } else {
                         this.typeAdapter = candidate;
                     }
+                    if (allowMutating) {
+                        this.mutatingResolved = true;
+                    }
                     return candidate;
                 }
             }
@@ -120,4 +377,200 @@ public class TagAdapters {
         }
     }
 
+    /**
+     * Stands in for an adapter that is still being built, so that recursive types can be serialized.
+     * Calls are forwarded to the actual adapter once it is available.
+     */
+    private static class PendingNBTTypeAdapter<T, NBT extends NBTBase> implements NBTTypeAdapter<T, NBT> {
+        private final NBTAdapterEntry entry;
+        private final boolean allowMutating;
+        private volatile NBTTypeAdapter<T, NBT> delegate;
+        /** Set if the build failed, in which case the adapter is resolved again when first used */
+        private volatile boolean failed;
+        private NBTMutatingTypeAdapter<T, NBT> mutatingView;
+        private final Thread builder = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private PendingNBTTypeAdapter(NBTAdapterEntry entry, boolean allowMutating) {
+            this.entry = entry;
+            this.allowMutating = allowMutating;
+        }
+
+        /**
+         * Waits for the build of this placeholder's adapter by another thread to end.
+         *
+         * @return false if waiting could deadlock, because the builder is itself waiting on the current thread
+         */
+        private boolean await() {
+            Thread current = Thread.currentThread();
+            waitingThreads.put(current, this);
+            try {
+                if (isWaitingOn(current)) {
+                    return false;
+                }
+                done.await();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waitingThreads.remove(current);
+            }
+        }
+
+        private boolean isWaitingOn(Thread thread) {
+            Set<Thread> visited = new HashSet<>();
+            for (Thread t = builder; visited.add(t); ) {
+                if (t == thread) {
+                    return true;
+                }
+                PendingNBTTypeAdapter awaited = waitingThreads.get(t);
+                if (awaited == null) {
+                    return false;
+                }
+                t = awaited.builder;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        NBTTypeAdapter<T, NBT> getDelegate() {
+            NBTTypeAdapter<T, NBT> ret = delegate;
+            if (ret == null) {
+                if (!failed) {
+                    throw new IllegalStateException("The adapter for " + entry.type + " was used before being fully built");
+                }
+                // throws again if the type still cannot be serialized
+                ret = entry.computeTypeAdapter(allowMutating);
+                delegate = ret;
+            }
+            return ret;
+        }
+
+        /**
+         * @return a view of this placeholder updating values in place, for use when a mutating adapter is being built
+         */
+        private NBTMutatingTypeAdapter<T, NBT> asMutating() {
+            if (mutatingView == null) {
+                mutatingView = new PendingMutatingNBTTypeAdapter<>(this);
+            }
+            return mutatingView;
+        }
+
+        @Nullable
+        @Override
+        public NBT toNBT(T value) {
+            return getDelegate().toNBT(value);
+        }
+
+        @Nullable
+        @Override
+        public NBTBase toNBT(T value, NBTTagCompound target) {
+            return getDelegate().toNBT(value, target);
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            getDelegate().write(value, out);
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            return getDelegate().sizeOf(value);
+        }
+
+        @Nullable
+        @Override
+        public T snapshot(T value) {
+            return getDelegate().snapshot(value);
+        }
+
+        @Nullable
+        @Override
+        public T fromNBT(T value, NBTBase nbt) {
+            return getDelegate().fromNBT(value, nbt);
+        }
+
+        @Nullable
+        @Override
+        public T fromNBT(NBTBase nbt) {
+            return getDelegate().fromNBT(nbt);
+        }
+
+        @Nullable
+        @Override
+        public T read(T value, NBTReader in) throws IOException {
+            return getDelegate().read(value, in);
+        }
+
+        @Nullable
+        @Override
+        public T read(NBTReader in) throws IOException {
+            return getDelegate().read(in);
+        }
+    }
+
+    /**
+     * Mutating view of an adapter that is still being built.
+     * If the built adapter turns out not to be mutating, values are replaced instead of updated,
+     * so callers must use the value returned by {@link NBTMutatingTypeAdapter#fromNBT(Object, NBTBase)}.
+     */
+    private static class PendingMutatingNBTTypeAdapter<T, NBT extends NBTBase> implements NBTMutatingTypeAdapter<T, NBT> {
+        private final PendingNBTTypeAdapter<T, NBT> pending;
+
+        private PendingMutatingNBTTypeAdapter(PendingNBTTypeAdapter<T, NBT> pending) {
+            this.pending = pending;
+        }
+
+        @Nullable
+        @Override
+        public NBT toNBT(T value) {
+            return pending.getDelegate().toNBT(value);
+        }
+
+        @Nullable
+        @Override
+        public NBTBase toNBT(T value, NBTTagCompound target) {
+            return pending.getDelegate().toNBT(value, target);
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            pending.getDelegate().write(value, out);
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            return pending.getDelegate().sizeOf(value);
+        }
+
+        @Nullable
+        @Override
+        public T snapshot(T value) {
+            return pending.getDelegate().snapshot(value);
+        }
+
+        @Override
+        public T fromNBT(T value, NBTBase nbt) {
+            return pending.getDelegate().fromNBT(value, nbt);
+        }
+
+        @Nullable
+        @Override
+        public T fromNBT(NBTBase nbt) {
+            return pending.getDelegate().fromNBT(nbt);
+        }
+
+        @Override
+        public T read(T value, NBTReader in) throws IOException {
+            return pending.getDelegate().read(value, in);
+        }
+
+        @Nullable
+        @Override
+        public T read(NBTReader in) throws IOException {
+            return pending.getDelegate().read(in);
+        }
+    }
+
 }
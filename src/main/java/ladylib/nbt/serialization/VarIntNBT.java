@@ -0,0 +1,35 @@
+package ladylib.nbt.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the annotated integer sequence serialize as zigzag-encoded variable length integers, in a single byte array tag.
+ * <p>
+ * Supported fields are <code>short[]</code>, <code>int[]</code> and <code>long[]</code> arrays,
+ * fastutil {@link it.unimi.dsi.fastutil.ints.IntCollection int} and {@link it.unimi.dsi.fastutil.longs.LongCollection long}
+ * collections, and collections of {@link Short}, {@link Integer} or {@link Long}.
+ * Each element takes from 1 byte for values between -64 and 63 up to 10 bytes for the largest longs,
+ * so this encoding pays off for sequences of small values, like counters or offsets.
+ * </p>
+ * <p>
+ * With {@link #delta()}, every element is stored as its difference with the previous one. Sorted sequences
+ * with close values, like timestamps, ids or positions along a path, then take 1 or 2 bytes per element.
+ * </p>
+ * Data written without this annotation is still read. Example: <pre>
+ * &#64VarIntNBT(delta = true)
+ * private final LongList visitTimes = new LongArrayList();
+ * </pre>
+ * @see TagAdapters#addFieldCodec(Class, java.util.function.Function)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface VarIntNBT {
+    /**
+     * If true, elements are stored as the difference with the previous element.
+     * Changing this value changes the meaning of existing data.
+     */
+    boolean delta() default false;
+}
@@ -2,6 +2,7 @@ package ladylib.nbt.serialization.adapter;
 
 import com.google.gson.reflect.TypeToken;
 import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMetrics;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.TagAdapters;
 import net.minecraft.nbt.NBTBase;
@@ -48,9 +49,18 @@ public abstract class AbstractNBTTypeAdapter<T, NBT extends NBTBase> implements
     protected T castAnd(NBTBase nbt, Class<NBT> clazz, Function<NBT, T> conversion) {
         return cast(nbt, clazz)
                 .map(conversion)
-                .orElseGet(() -> TagAdapters.getDefaultValue(typeToken)
-                        .orElseThrow(() -> new NBTDeserializationException("Expected an instance of " + clazz.getName() + " but " + nbt + " is of type " + nbt.getClass().getName()))
-                );
+                .orElseGet(() -> getDefaultValue(nbt, clazz));
+    }
+
+    /**
+     * Returns a default value in place of NBT data that does not have the expected type
+     * @throws NBTDeserializationException if no default value is available
+     */
+    protected T getDefaultValue(NBTBase nbt, Class<?> expected) {
+        T defaultValue = TagAdapters.getDefaultValue(typeToken)
+                .orElseThrow(() -> new NBTDeserializationException("Expected an instance of " + expected.getName() + " but " + nbt + " is of type " + nbt.getClass().getName()));
+        NBTMetrics.recordDefaultFallback(typeToken);
+        return defaultValue;
     }
 
 }
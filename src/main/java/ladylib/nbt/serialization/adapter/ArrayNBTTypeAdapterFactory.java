@@ -0,0 +1,515 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.*;
+import ladylib.nbt.serialization.internal.LongArrayTags;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import ladylib.nbt.serialization.internal.Snapshots;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Type;
+
+/**
+ * Serializes arrays. Primitive arrays are packed into a single array tag instead of a list of tags:
+ * <ul>
+ *     <li><code>int[]</code>, <code>long[]</code> and <code>byte[]</code> map to their respective array tag</li>
+ *     <li><code>float[]</code> and <code>double[]</code> are stored as the raw bits of their elements,
+ *     in an int array or a long array respectively</li>
+ *     <li><code>short[]</code> and <code>char[]</code> are stored as 2 big-endian bytes per element in a byte array</li>
+ *     <li><code>boolean[]</code> is packed 8 elements per byte in a byte array, the first byte
+ *     holding the number of unused bits in the last byte</li>
+ * </ul>
+ * Other arrays are serialized as lists, in the same way as collections.
+ */
+public class ArrayNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Object, NBTBase> {
+    @SuppressWarnings("unchecked")
+    @Override
+    public NBTTypeAdapter<Object, NBTBase> create(TypeToken type, boolean allowMutating) {
+        Class<?> rawType = type.getRawType();
+        if (!rawType.isArray()) {
+            return null;
+        }
+        Class<?> componentType = rawType.getComponentType();
+        if (!TagAdapters.getDefaultValue(type).isPresent()) {
+            TagAdapters.setDefaultValue(type, () -> Array.newInstance(componentType, 0));
+        }
+        NBTTypeAdapter ret;
+        if (componentType == int.class) {
+            ret = new IntArrayAdapter();
+        } else if (componentType == long.class) {
+            ret = new LongArrayAdapter();
+        } else if (componentType == byte.class) {
+            ret = new ByteArrayAdapter();
+        } else if (componentType == float.class) {
+            ret = new FloatArrayAdapter();
+        } else if (componentType == double.class) {
+            ret = new DoubleArrayAdapter();
+        } else if (componentType == boolean.class) {
+            ret = new BooleanArrayAdapter();
+        } else if (componentType == short.class) {
+            ret = new ShortArrayAdapter();
+        } else if (componentType == char.class) {
+            ret = new CharArrayAdapter();
+        } else if (componentType.isPrimitive()) {
+            return null;
+        } else {
+            Type arrayType = type.getType();
+            Type elementType = arrayType instanceof GenericArrayType ? ((GenericArrayType) arrayType).getGenericComponentType() : componentType;
+            // cannot support mutating type adapters for the array's elements
+            ret = new ObjectArrayAdapter(type, componentType, TagAdapters.getNBTAdapter(TypeToken.get(elementType), false));
+        }
+        return ret;
+    }
+
+    public static class IntArrayAdapter extends AbstractNBTTypeAdapter<int[], NBTTagIntArray> {
+        @Override
+        public NBTTagIntArray toNBT(int[] value) {
+            return new NBTTagIntArray(value.clone());
+        }
+
+        @Override
+        public void write(int[] value, NBTWriter out) throws IOException {
+            out.writeIntArray(value);
+        }
+
+        @Override
+        public long sizeOf(int[] value) {
+            return 4 + 4L * value.length;
+        }
+
+        @Override
+        public int[] snapshot(int[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public int[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_INT_ARRAY) {
+                return in.readIntArray();
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public int[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagIntArray.class, tag -> tag.getIntArray().clone());
+        }
+    }
+
+    public static class LongArrayAdapter extends AbstractNBTTypeAdapter<long[], NBTTagLongArray> {
+        @Override
+        public NBTTagLongArray toNBT(long[] value) {
+            return new NBTTagLongArray(value.clone());
+        }
+
+        @Override
+        public void write(long[] value, NBTWriter out) throws IOException {
+            out.writeLongArray(value);
+        }
+
+        @Override
+        public long sizeOf(long[] value) {
+            return 4 + 8L * value.length;
+        }
+
+        @Override
+        public long[] snapshot(long[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public long[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_LONG_ARRAY) {
+                return in.readLongArray();
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public long[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagLongArray.class, tag -> LongArrayTags.getData(tag).clone());
+        }
+    }
+
+    public static class ByteArrayAdapter extends AbstractNBTTypeAdapter<byte[], NBTTagByteArray> {
+        @Override
+        public NBTTagByteArray toNBT(byte[] value) {
+            return new NBTTagByteArray(value.clone());
+        }
+
+        @Override
+        public void write(byte[] value, NBTWriter out) throws IOException {
+            out.writeByteArray(value);
+        }
+
+        @Override
+        public long sizeOf(byte[] value) {
+            return 4 + value.length;
+        }
+
+        @Override
+        public byte[] snapshot(byte[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public byte[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return in.readByteArray();
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public byte[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagByteArray.class, tag -> tag.getByteArray().clone());
+        }
+    }
+
+    public static class FloatArrayAdapter extends AbstractNBTTypeAdapter<float[], NBTTagIntArray> {
+        @Override
+        public NBTTagIntArray toNBT(float[] value) {
+            return new NBTTagIntArray(pack(value));
+        }
+
+        @Override
+        public void write(float[] value, NBTWriter out) throws IOException {
+            out.writeIntArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(float[] value) {
+            return 4 + 4L * value.length;
+        }
+
+        @Override
+        public float[] snapshot(float[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public float[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_INT_ARRAY) {
+                return unpack(in.readIntArray());
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public float[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagIntArray.class, tag -> unpack(tag.getIntArray()));
+        }
+
+        private static int[] pack(float[] value) {
+            int[] ret = new int[value.length];
+            for (int i = 0; i < value.length; i++) {
+                ret[i] = Float.floatToRawIntBits(value[i]);
+            }
+            return ret;
+        }
+
+        private static float[] unpack(int[] bits) {
+            float[] ret = new float[bits.length];
+            for (int i = 0; i < bits.length; i++) {
+                ret[i] = Float.intBitsToFloat(bits[i]);
+            }
+            return ret;
+        }
+    }
+
+    public static class DoubleArrayAdapter extends AbstractNBTTypeAdapter<double[], NBTTagLongArray> {
+        @Override
+        public NBTTagLongArray toNBT(double[] value) {
+            return new NBTTagLongArray(pack(value));
+        }
+
+        @Override
+        public void write(double[] value, NBTWriter out) throws IOException {
+            out.writeLongArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(double[] value) {
+            return 4 + 8L * value.length;
+        }
+
+        @Override
+        public double[] snapshot(double[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public double[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_LONG_ARRAY) {
+                return unpack(in.readLongArray());
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public double[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagLongArray.class, tag -> unpack(LongArrayTags.getData(tag)));
+        }
+
+        private static long[] pack(double[] value) {
+            long[] ret = new long[value.length];
+            for (int i = 0; i < value.length; i++) {
+                ret[i] = Double.doubleToRawLongBits(value[i]);
+            }
+            return ret;
+        }
+
+        private static double[] unpack(long[] bits) {
+            double[] ret = new double[bits.length];
+            for (int i = 0; i < bits.length; i++) {
+                ret[i] = Double.longBitsToDouble(bits[i]);
+            }
+            return ret;
+        }
+    }
+
+    public static class BooleanArrayAdapter extends AbstractNBTTypeAdapter<boolean[], NBTTagByteArray> {
+        @Override
+        public NBTTagByteArray toNBT(boolean[] value) {
+            return new NBTTagByteArray(pack(value));
+        }
+
+        @Override
+        public void write(boolean[] value, NBTWriter out) throws IOException {
+            out.writeByteArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(boolean[] value) {
+            // the leading byte holds the number of unused bits
+            return 4 + 1 + (value.length + 7) / 8;
+        }
+
+        @Override
+        public boolean[] snapshot(boolean[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public boolean[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return unpack(in.readByteArray());
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public boolean[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagByteArray.class, tag -> unpack(tag.getByteArray()));
+        }
+
+        private static byte[] pack(boolean[] value) {
+            int byteCount = (value.length + 7) / 8;
+            byte[] ret = new byte[1 + byteCount];
+            ret[0] = (byte) (byteCount * 8 - value.length);
+            for (int i = 0; i < value.length; i++) {
+                if (value[i]) {
+                    ret[1 + i / 8] |= 1 << (i % 8);
+                }
+            }
+            return ret;
+        }
+
+        private static boolean[] unpack(byte[] packed) {
+            if (packed.length == 0) {
+                return new boolean[0];
+            }
+            int length = Math.max(0, (packed.length - 1) * 8 - (packed[0] & 7));
+            boolean[] ret = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                ret[i] = (packed[1 + i / 8] & (1 << (i % 8))) != 0;
+            }
+            return ret;
+        }
+    }
+
+    public static class ShortArrayAdapter extends AbstractNBTTypeAdapter<short[], NBTTagByteArray> {
+        @Override
+        public NBTTagByteArray toNBT(short[] value) {
+            return new NBTTagByteArray(pack(value));
+        }
+
+        @Override
+        public void write(short[] value, NBTWriter out) throws IOException {
+            out.writeByteArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(short[] value) {
+            return 4 + 2L * value.length;
+        }
+
+        @Override
+        public short[] snapshot(short[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public short[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return unpack(in.readByteArray());
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public short[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagByteArray.class, tag -> unpack(tag.getByteArray()));
+        }
+
+        private static byte[] pack(short[] value) {
+            byte[] ret = new byte[value.length * 2];
+            for (int i = 0; i < value.length; i++) {
+                ret[2 * i] = (byte) (value[i] >> 8);
+                ret[2 * i + 1] = (byte) value[i];
+            }
+            return ret;
+        }
+
+        private static short[] unpack(byte[] packed) {
+            // a trailing odd byte cannot be part of an element
+            short[] ret = new short[packed.length / 2];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = (short) ((packed[2 * i] << 8) | (packed[2 * i + 1] & 0xFF));
+            }
+            return ret;
+        }
+    }
+
+    public static class CharArrayAdapter extends AbstractNBTTypeAdapter<char[], NBTTagByteArray> {
+        @Override
+        public NBTTagByteArray toNBT(char[] value) {
+            return new NBTTagByteArray(pack(value));
+        }
+
+        @Override
+        public void write(char[] value, NBTWriter out) throws IOException {
+            out.writeByteArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(char[] value) {
+            return 4 + 2L * value.length;
+        }
+
+        @Override
+        public char[] snapshot(char[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public char[] read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return unpack(in.readByteArray());
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public char[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagByteArray.class, tag -> unpack(tag.getByteArray()));
+        }
+
+        private static byte[] pack(char[] value) {
+            byte[] ret = new byte[value.length * 2];
+            for (int i = 0; i < value.length; i++) {
+                ret[2 * i] = (byte) (value[i] >> 8);
+                ret[2 * i + 1] = (byte) value[i];
+            }
+            return ret;
+        }
+
+        private static char[] unpack(byte[] packed) {
+            char[] ret = new char[packed.length / 2];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = (char) (((packed[2 * i] & 0xFF) << 8) | (packed[2 * i + 1] & 0xFF));
+            }
+            return ret;
+        }
+    }
+
+    public static class ObjectArrayAdapter<E> extends AbstractNBTTypeAdapter<E[], NBTTagList> {
+        private final Class<E> componentType;
+        private final NBTTypeAdapter<E, NBTBase> elementAdapter;
+
+        public ObjectArrayAdapter(TypeToken<E[]> typeToken, Class<E> componentType, NBTTypeAdapter<E, NBTBase> elementAdapter) {
+            super(typeToken);
+            this.componentType = componentType;
+            this.elementAdapter = elementAdapter;
+        }
+
+        @Override
+        public NBTTagList toNBT(E[] value) {
+            NBTTagList list = new NBTTagList();
+            for (E element : value) {
+                list.appendTag(elementAdapter.toNBT(element));
+            }
+            return list;
+        }
+
+        @Override
+        public void write(E[] value, NBTWriter out) throws IOException {
+            out.beginList(value.length);
+            for (E element : value) {
+                elementAdapter.write(element, out);
+            }
+            out.endList();
+        }
+
+        @Override
+        public long sizeOf(E[] value) {
+            long size = NBTSizes.LIST_HEADER_SIZE;
+            for (E element : value) {
+                size += elementAdapter.sizeOf(element);
+            }
+            return size;
+        }
+
+        @Override
+        public E[] snapshot(E[] value) {
+            E[] ret = newArray(value.length);
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = Snapshots.of(elementAdapter, value[i]);
+            }
+            return ret;
+        }
+
+        @Override
+        public E[] read(NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                return fromNBT(in.readTag());
+            }
+            E[] ret = newArray(in.beginList());
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = elementAdapter.read(in);
+            }
+            in.endList();
+            return ret;
+        }
+
+        @Override
+        public E[] fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagList.class, list -> {
+                E[] ret = newArray(list.tagCount());
+                for (int i = 0; i < ret.length; i++) {
+                    ret[i] = elementAdapter.fromNBT(list.get(i));
+                }
+                return ret;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private E[] newArray(int length) {
+            return (E[]) Array.newInstance(componentType, length);
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package ladylib.nbt.serialization.adapter;
 
+import com.google.gson.reflect.TypeToken;
 import ladylib.nbt.serialization.DefaultValue;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.NetworkProfile;
+import ladylib.nbt.serialization.internal.InternPool;
+import ladylib.nbt.serialization.internal.LongArrayTags;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.*;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.common.util.Constants;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.UUID;
 
 /**
@@ -44,6 +56,29 @@ public final class BaseNBTAdapters {
             return new NBTTagInt(value);
         }
 
+        @Override
+        public void write(Integer value, NBTWriter out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public long sizeOf(Integer value) {
+            return 4;
+        }
+
+        @Override
+        public Integer snapshot(Integer value) {
+            return value;
+        }
+
+        @Override
+        public Integer read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_INT) {
+                return in.readInt();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Integer fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagInt.class, NBTTagInt::getInt);
@@ -56,6 +91,29 @@ public final class BaseNBTAdapters {
             return new NBTTagDouble(value);
         }
 
+        @Override
+        public void write(Double value, NBTWriter out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public long sizeOf(Double value) {
+            return 8;
+        }
+
+        @Override
+        public Double snapshot(Double value) {
+            return value;
+        }
+
+        @Override
+        public Double read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_DOUBLE) {
+                return in.readDouble();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Double fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagDouble.class, NBTTagDouble::getDouble);
@@ -69,6 +127,29 @@ public final class BaseNBTAdapters {
             return new NBTTagFloat(value);
         }
 
+        @Override
+        public void write(Float value, NBTWriter out) throws IOException {
+            out.writeFloat(value);
+        }
+
+        @Override
+        public long sizeOf(Float value) {
+            return 4;
+        }
+
+        @Override
+        public Float snapshot(Float value) {
+            return value;
+        }
+
+        @Override
+        public Float read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_FLOAT) {
+                return in.readFloat();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Float fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagFloat.class, NBTTagFloat::getFloat);
@@ -81,6 +162,29 @@ public final class BaseNBTAdapters {
             return new NBTTagLong(value);
         }
 
+        @Override
+        public void write(Long value, NBTWriter out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public long sizeOf(Long value) {
+            return 8;
+        }
+
+        @Override
+        public Long snapshot(Long value) {
+            return value;
+        }
+
+        @Override
+        public Long read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_LONG) {
+                return in.readLong();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Long fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagLong.class, NBTTagLong::getLong);
@@ -93,6 +197,29 @@ public final class BaseNBTAdapters {
             return new NBTTagShort(value);
         }
 
+        @Override
+        public void write(Short value, NBTWriter out) throws IOException {
+            out.writeShort(value);
+        }
+
+        @Override
+        public long sizeOf(Short value) {
+            return 2;
+        }
+
+        @Override
+        public Short snapshot(Short value) {
+            return value;
+        }
+
+        @Override
+        public Short read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_SHORT) {
+                return in.readShort();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Short fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagShort.class, NBTTagShort::getShort);
@@ -105,6 +232,29 @@ public final class BaseNBTAdapters {
             return new NBTTagByte(value);
         }
 
+        @Override
+        public void write(Byte value, NBTWriter out) throws IOException {
+            out.writeByte(value);
+        }
+
+        @Override
+        public long sizeOf(Byte value) {
+            return 1;
+        }
+
+        @Override
+        public Byte snapshot(Byte value) {
+            return value;
+        }
+
+        @Override
+        public Byte read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE) {
+                return in.readByte();
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Byte fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagByte.class, NBTTagByte::getByte);
@@ -118,38 +268,136 @@ public final class BaseNBTAdapters {
             return new NBTTagByte((byte) (value ? 1 : 0));
         }
 
+        @Override
+        public void write(Boolean value, NBTWriter out) throws IOException {
+            out.writeByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public long sizeOf(Boolean value) {
+            return 1;
+        }
+
+        @Override
+        public Boolean snapshot(Boolean value) {
+            return value;
+        }
+
+        @Override
+        public Boolean read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE) {
+                return in.readByte() == 1;
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public Boolean fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagByte.class, tag -> tag.getByte() == 1);
         }
     }
 
+    /**
+     * Interns read strings in a pool, so that objects loaded from the same data share equal strings
+     */
     public static class StringAdapter extends AbstractNBTTypeAdapter<String, NBTTagString> {
+        @Nullable
+        private final InternPool<String> pool;
+
+        public StringAdapter() {
+            this(InternPool.STRINGS);
+        }
+
+        /**
+         * @param pool the pool of read strings, or null to not intern them
+         */
+        public StringAdapter(@Nullable InternPool<String> pool) {
+            this.pool = pool;
+        }
 
         @Override
         public NBTTagString toNBT(String value) {
             return new NBTTagString(value);
         }
 
+        @Override
+        public void write(String value, NBTWriter out) throws IOException {
+            out.writeString(value);
+        }
+
+        @Override
+        public long sizeOf(String value) {
+            return NBTSizes.sizeOfString(value);
+        }
+
+        @Override
+        public String snapshot(String value) {
+            return value;
+        }
+
+        @Override
+        public String read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_STRING) {
+                return intern(in.readString());
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public String fromNBT(NBTBase nbt) {
-            return castAnd(nbt, NBTTagString.class, NBTTagString::getString);
+            return castAnd(nbt, NBTTagString.class, tag -> intern(tag.getString()));
+        }
+
+        private String intern(String value) {
+            return pool != null ? pool.intern(value) : value;
         }
     }
 
+    /**
+     * Writes item stacks like vanilla does, except that the item is written as a numeric id
+     * in the {@link NetworkProfile network profile}
+     */
     public static class ItemStackAdapter extends AbstractNBTTypeAdapter<ItemStack, NBTTagCompound> {
+        private static final String ITEM_KEY = "id";
 
         @DefaultValue(ItemStack.class)
         public static final ItemStack DEFAULT = ItemStack.EMPTY;
 
         @Override
         public NBTTagCompound toNBT(ItemStack value) {
-            return value.writeToNBT(new NBTTagCompound());
+            NBTTagCompound ret = value.writeToNBT(new NBTTagCompound());
+            if (NetworkProfile.isActive()) {
+                // same encoding as vanilla packets
+                ret.setShort(ITEM_KEY, (short) Item.getIdFromItem(value.getItem()));
+            }
+            return ret;
+        }
+
+        @Override
+        public ItemStack snapshot(ItemStack value) {
+            return value.copy();
         }
 
         @Override
         public ItemStack fromNBT(NBTBase nbt) {
-            return castAnd(nbt, NBTTagCompound.class, ItemStack::new);
+            return castAnd(nbt, NBTTagCompound.class, tag -> new ItemStack(withItemName(tag)));
+        }
+
+        /**
+         * Replaces a numeric item id with the corresponding name, as only names are read by item stacks.
+         * The given tag is left untouched.
+         */
+        private static NBTTagCompound withItemName(NBTTagCompound tag) {
+            if (!tag.hasKey(ITEM_KEY, Constants.NBT.TAG_SHORT)) {
+                return tag;
+            }
+            NBTTagCompound ret = new NBTTagCompound();
+            for (String key : tag.getKeySet()) {
+                ret.setTag(key, tag.getTag(key));
+            }
+            Item item = Item.getItemById(tag.getShort(ITEM_KEY));
+            ret.setString(ITEM_KEY, item == null ? "minecraft:air" : String.valueOf(item.getRegistryName()));
+            return ret;
         }
     }
 
@@ -163,29 +411,225 @@ public final class BaseNBTAdapters {
             return new NBTTagLong(value.toLong());
         }
 
+        @Override
+        public void write(BlockPos value, NBTWriter out) throws IOException {
+            out.writeLong(value.toLong());
+        }
+
+        @Override
+        public long sizeOf(BlockPos value) {
+            return 8;
+        }
+
+        @Override
+        public BlockPos snapshot(BlockPos value) {
+            // may be mutable
+            return value.toImmutable();
+        }
+
+        @Override
+        public BlockPos read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_LONG) {
+                return BlockPos.fromLong(in.readLong());
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public BlockPos fromNBT(NBTBase nbt) {
             return castAnd(nbt, NBTTagLong.class, tag -> BlockPos.fromLong(tag.getLong()));
         }
     }
 
-    public static class UUIDAdapter extends AbstractNBTTypeAdapter<UUID, NBTTagString> {
+    /**
+     * Writes UUIDs as strings, and reads them from strings or from the compact forms
+     */
+    public static class UUIDAdapter extends AbstractNBTTypeAdapter<UUID, NBTBase> {
 
         @DefaultValue(UUID.class)
         public static final UUID DEFAULT = new UUID(0, 0);
 
+        public UUIDAdapter() {
+            // explicit type, as subclasses do not have type parameters
+            super(TypeToken.get(UUID.class));
+        }
+
         @Override
-        public NBTTagString toNBT(UUID value) {
+        public NBTBase toNBT(UUID value) {
             return new NBTTagString(value.toString());
         }
 
+        @Override
+        public void write(UUID value, NBTWriter out) throws IOException {
+            out.writeString(value.toString());
+        }
+
+        @Override
+        public long sizeOf(UUID value) {
+            // the string form of UUIDs always has 36 ascii characters
+            return 2 + 36;
+        }
+
+        @Override
+        public UUID snapshot(UUID value) {
+            return value;
+        }
+
+        @Override
+        public UUID read(NBTReader in) throws IOException {
+            switch (in.peek()) {
+                case Constants.NBT.TAG_STRING:
+                    return fromString(in.readString());
+                case Constants.NBT.TAG_LONG_ARRAY:
+                    return fromLongs(in.readLongArray());
+                default:
+                    return fromNBT(in.readTag());
+            }
+        }
+
         @Override
         public UUID fromNBT(NBTBase nbt) {
+            if (nbt instanceof NBTTagString) {
+                return fromString(((NBTTagString) nbt).getString());
+            } else if (nbt instanceof NBTTagLongArray) {
+                return fromLongs(LongArrayTags.getData((NBTTagLongArray) nbt));
+            } else if (nbt instanceof NBTTagIntArray) {
+                int[] ints = ((NBTTagIntArray) nbt).getIntArray();
+                if (ints.length == 4) {
+                    return new UUID((long) ints[0] << 32 | ints[1] & 0xFFFFFFFFL, (long) ints[2] << 32 | ints[3] & 0xFFFFFFFFL);
+                }
+            }
+            return getDefaultValue(nbt, NBTTagString.class);
+        }
+
+        private UUID fromString(String serialized) {
             // avoid IllegalArgumentException when the NBT is invalid
-            return castAnd(nbt, NBTTagString.class, tag -> {
-                String serialized = tag.getString();
-                return serialized.isEmpty() ? new UUID(0, 0) : UUID.fromString(serialized);
-            });
+            return serialized.isEmpty() ? new UUID(0, 0) : UUID.fromString(serialized);
+        }
+
+        private UUID fromLongs(long[] longs) {
+            if (longs.length != 2) {
+                return getDefaultValue(new NBTTagLongArray(longs), NBTTagString.class);
+            }
+            return new UUID(longs[0], longs[1]);
+        }
+    }
+
+    /**
+     * Writes UUIDs as arrays of 2 longs
+     *
+     * @see ladylib.nbt.serialization.CompactNBT
+     */
+    public static class CompactUUIDAdapter extends UUIDAdapter {
+
+        @Override
+        public NBTBase toNBT(UUID value) {
+            return new NBTTagLongArray(new long[]{value.getMostSignificantBits(), value.getLeastSignificantBits()});
+        }
+
+        @Override
+        public void write(UUID value, NBTWriter out) throws IOException {
+            out.writeLongArray(new long[]{value.getMostSignificantBits(), value.getLeastSignificantBits()});
+        }
+
+        @Override
+        public long sizeOf(UUID value) {
+            return 4 + 2 * 8;
+        }
+    }
+
+    /**
+     * Interns read locations in a pool, so that objects loaded from the same data share equal locations
+     */
+    public static class ResourceLocationAdapter extends AbstractNBTTypeAdapter<ResourceLocation, NBTTagString> {
+        @Nullable
+        private final InternPool<ResourceLocation> pool;
+
+        public ResourceLocationAdapter() {
+            this(InternPool.RESOURCE_LOCATIONS);
+        }
+
+        /**
+         * @param pool the pool of read locations, or null to not intern them
+         */
+        public ResourceLocationAdapter(@Nullable InternPool<ResourceLocation> pool) {
+            // explicit type, as subclasses do not have type parameters
+            super(TypeToken.get(ResourceLocation.class));
+            this.pool = pool;
+        }
+
+        @Override
+        public NBTTagString toNBT(ResourceLocation value) {
+            return new NBTTagString(value.toString());
+        }
+
+        @Override
+        public void write(ResourceLocation value, NBTWriter out) throws IOException {
+            out.writeString(value.toString());
+        }
+
+        @Override
+        public long sizeOf(ResourceLocation value) {
+            return NBTSizes.sizeOfString(value.toString());
+        }
+
+        @Override
+        public ResourceLocation snapshot(ResourceLocation value) {
+            return value;
+        }
+
+        @Override
+        public ResourceLocation read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_STRING) {
+                return intern(new ResourceLocation(in.readString()));
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public ResourceLocation fromNBT(NBTBase nbt) {
+            return castAnd(nbt, NBTTagString.class, tag -> intern(new ResourceLocation(tag.getString())));
+        }
+
+        private ResourceLocation intern(ResourceLocation value) {
+            return pool != null ? pool.intern(value) : value;
+        }
+    }
+
+    /**
+     * Omits the namespace of resource locations from the default <tt>minecraft</tt> domain
+     *
+     * @see ladylib.nbt.serialization.CompactNBT
+     */
+    public static class CompactResourceLocationAdapter extends ResourceLocationAdapter {
+
+        public CompactResourceLocationAdapter() { }
+
+        public CompactResourceLocationAdapter(@Nullable InternPool<ResourceLocation> pool) {
+            super(pool);
+        }
+
+        @Override
+        public NBTTagString toNBT(ResourceLocation value) {
+            return new NBTTagString(toCompactString(value));
+        }
+
+        @Override
+        public void write(ResourceLocation value, NBTWriter out) throws IOException {
+            out.writeString(toCompactString(value));
+        }
+
+        @Override
+        public long sizeOf(ResourceLocation value) {
+            return NBTSizes.sizeOfString(toCompactString(value));
+        }
+
+        /**
+         * @return the path of the location if it is in the default domain, its full string representation otherwise
+         */
+        public static String toCompactString(ResourceLocation value) {
+            // parsing a location without a namespace puts it in the default domain
+            return "minecraft".equals(value.getNamespace()) ? value.getPath() : value.toString();
         }
     }
 }
@@ -56,6 +56,13 @@ public class CapabilityNBTTypeAdapterFactory<C> implements NBTTypeAdapterFactory
             return capability.writeNBT(value, null);
         }
 
+        @Override
+        public C snapshot(C value) {
+            C ret = capability.getDefaultInstance();
+            capability.readNBT(ret, null, capability.writeNBT(value, null));
+            return ret;
+        }
+
         @Override
         public C fromNBT(C value, NBTBase nbt) {
             capability.readNBT(value, null, nbt);
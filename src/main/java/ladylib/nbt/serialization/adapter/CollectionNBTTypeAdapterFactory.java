@@ -4,12 +4,18 @@ import com.google.gson.reflect.TypeToken;
 import ladylib.LadyLib;
 import ladylib.misc.ReflectionUtil;
 import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
 import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import ladylib.nbt.serialization.internal.Snapshots;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraftforge.common.util.Constants;
 
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -52,6 +58,11 @@ public class CollectionNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Co
     }
 
     static NBTTypeAdapter getElementTypeAdapter(TypeToken type, int index) {
+        // cannot support mutating type adapters for the collection's elements
+        return TagAdapters.getNBTAdapter(TypeToken.get(getElementType(type, index)), false);
+    }
+
+    static Type getElementType(TypeToken type, int index) {
         Type collectionType = type.getType();
         Type elementType = Object.class;
         if (collectionType instanceof WildcardType) {
@@ -60,9 +71,7 @@ public class CollectionNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Co
         if (collectionType instanceof ParameterizedType) {
             elementType = ((ParameterizedType) collectionType).getActualTypeArguments()[index];
         }
-
-        // cannot support mutating type adapters for the collection's elements
-        return TagAdapters.getNBTAdapter(TypeToken.get(elementType), false);
+        return elementType;
     }
 
     public abstract static class CollectionBaseAdapter<E> extends AbstractNBTTypeAdapter<Collection<E>, NBTTagList> {
@@ -83,6 +92,21 @@ public class CollectionNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Co
             return value;
         }
 
+        @Override
+        public Collection<E> read(Collection<E> value, NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                in.skipValue();
+                return value;
+            }
+            in.beginList();
+            value.clear();
+            while (in.hasNext()) {
+                value.add(elementAdapter.read(in));
+            }
+            in.endList();
+            return value;
+        }
+
         @Override
         public NBTTagList toNBT(Collection<E> value) {
             NBTTagList list = new NBTTagList();
@@ -91,6 +115,33 @@ public class CollectionNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Co
             }
             return list;
         }
+
+        @Override
+        public void write(Collection<E> value, NBTWriter out) throws IOException {
+            out.beginList(value.size());
+            for (E element : value) {
+                elementAdapter.write(element, out);
+            }
+            out.endList();
+        }
+
+        @Override
+        public long sizeOf(Collection<E> value) {
+            long size = NBTSizes.LIST_HEADER_SIZE;
+            for (E element : value) {
+                size += elementAdapter.sizeOf(element);
+            }
+            return size;
+        }
+
+        @Override
+        public Collection<E> snapshot(Collection<E> value) {
+            Collection<E> ret = Snapshots.emptyCopy(value);
+            for (E element : value) {
+                ret.add(Snapshots.of(elementAdapter, element));
+            }
+            return ret;
+        }
     }
 
     public static class CollectionNBTMutatingTypeAdapter<E> extends CollectionBaseAdapter<E> implements NBTMutatingTypeAdapter<Collection<E>, NBTTagList> {
@@ -117,5 +168,15 @@ public class CollectionNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Co
         public Collection<E> fromNBT(NBTBase list) {
             return super.fromNBT(collectionSupplier.get(), list);
         }
+
+        @Override
+        public Collection<E> read(Collection<E> value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public Collection<E> read(NBTReader in) throws IOException {
+            return super.read(collectionSupplier.get(), in);
+        }
     }
 }
@@ -0,0 +1,347 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.common.primitives.Primitives;
+import com.google.gson.reflect.TypeToken;
+import ladylib.misc.ReflectionUtil;
+import ladylib.nbt.serialization.*;
+import ladylib.nbt.serialization.internal.BooleanFlags;
+import ladylib.nbt.serialization.internal.CompoundFieldWriter;
+import ladylib.nbt.serialization.internal.Snapshots;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deserializes objects by passing their decoded fields to a constructor or factory method, as described in {@link NBTCreator}.
+ * <p>
+ * Classes without an annotated creator are only handled if their serialized fields are all final and
+ * if they declare a constructor taking exactly those fields, while the {@link ReflectiveNBTAdapterFactory reflective adapters}
+ * would not be able to restore them: either the class has no no-argument constructor, or one of its fields
+ * cannot be updated in place.
+ * </p>
+ */
+public class ConstructorNBTAdapterFactory implements NBTTypeAdapterFactory<Object, NBTTagCompound> {
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public NBTTypeAdapter<Object, NBTTagCompound> create(TypeToken type, boolean allowMutating) {
+        Class<?> clazz = type.getRawType();
+        if (clazz.isInterface() || clazz.isArray() || clazz.isPrimitive() || clazz.isEnum() || Modifier.isAbstract(clazz.getModifiers())
+                // inner classes have an implicit parameter for their outer instance
+                || clazz.getEnclosingClass() != null && !Modifier.isStatic(clazz.getModifiers())) {
+            return null;
+        }
+        List<Field> fields = getSerializedFields(clazz);
+        Executable creator = findAnnotatedCreator(clazz);
+        boolean annotated = creator != null;
+        if (clazz.isAnnotationPresent(SharedReferences.class) || BooleanFlags.hasPackedFields(clazz)) {
+            if (annotated) {
+                throw new IllegalArgumentException(clazz + " cannot use an NBT creator as it has shared references or packed booleans");
+            }
+            return null;
+        }
+        if (annotated) {
+            fields = bindParameters(creator, fields, creator.getAnnotation(NBTCreator.class).value(), false);
+            if (fields == null) {
+                throw new IllegalArgumentException("NBT creator " + creator + " does not take the serialized fields of " + clazz);
+            }
+        } else {
+            creator = findCanonicalConstructor(clazz, fields);
+            if (creator == null) {
+                return null;
+            }
+            fields = bindParameters(creator, fields, new String[0], true);
+        }
+        try {
+            return new ConstructorNBTAdapter<>(type, fields, creator);
+        } catch (IllegalAccessException e) {
+            throw new ReflectionUtil.UnableToGetFactoryException(e);
+        }
+    }
+
+    private static List<Field> getSerializedFields(Class<?> clazz) {
+        List<Field> ret = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isTransient(modifiers) && !Modifier.isStatic(modifiers)) {
+                ret.add(field);
+            }
+        }
+        return ret;
+    }
+
+    @Nullable
+    private static Executable findAnnotatedCreator(Class<?> clazz) {
+        Executable ret = null;
+        List<Executable> candidates = new ArrayList<>();
+        candidates.addAll(Arrays.asList(clazz.getDeclaredConstructors()));
+        candidates.addAll(Arrays.asList(clazz.getDeclaredMethods()));
+        for (Executable candidate : candidates) {
+            if (!candidate.isAnnotationPresent(NBTCreator.class)) {
+                continue;
+            }
+            if (candidate instanceof Method && (!Modifier.isStatic(candidate.getModifiers()) || !clazz.isAssignableFrom(((Method) candidate).getReturnType()))) {
+                throw new IllegalArgumentException("NBT creator " + candidate + " must be static and return an instance of " + clazz);
+            }
+            if (ret != null) {
+                throw new IllegalArgumentException(clazz + " has several NBT creators: " + ret + " and " + candidate);
+            }
+            ret = candidate;
+        }
+        return ret;
+    }
+
+    /**
+     * Matches each parameter of a creator with the serialized field it receives.
+     * Parameters are matched by name when names are given or compiled in, and by type otherwise.
+     *
+     * @param names the names of the fields passed as each parameter, or an empty array to use the parameter names
+     * @param exactTypes true if parameters must have the same type as their field, false if they only need to accept it
+     * @return the serialized fields in parameter order, or null if the parameters do not take exactly those fields
+     * @throws IllegalArgumentException if several fields could be passed as the same parameter,
+     * or if the number of names does not match the number of parameters
+     */
+    @Nullable
+    private static List<Field> bindParameters(Executable creator, List<Field> fields, String[] names, boolean exactTypes) {
+        Parameter[] parameters = creator.getParameters();
+        if (names.length == 0 && Arrays.stream(parameters).allMatch(Parameter::isNamePresent)) {
+            names = Arrays.stream(parameters).map(Parameter::getName).toArray(String[]::new);
+        } else if (names.length > 0 && names.length != parameters.length) {
+            throw new IllegalArgumentException("NBT creator " + creator + " has " + parameters.length + " parameters but names " + names.length + " fields");
+        }
+        if (parameters.length != fields.size()) {
+            return null;
+        }
+        List<Field> ret = new ArrayList<>(parameters.length);
+        for (int i = 0; i < parameters.length; i++) {
+            List<Field> candidates = new ArrayList<>();
+            for (Field field : fields) {
+                if ((names.length == 0 || field.getName().equals(names[i])) && accepts(parameters[i], field, exactTypes)) {
+                    candidates.add(field);
+                }
+            }
+            if (candidates.size() > 1) {
+                throw new IllegalArgumentException("Parameter " + i + " of " + creator + " could receive any of the fields " + candidates
+                        + ", compile with -parameters or list the field names in @NBTCreator");
+            }
+            if (candidates.isEmpty() || ret.contains(candidates.get(0))) {
+                return null;
+            }
+            ret.add(candidates.get(0));
+        }
+        return ret;
+    }
+
+    private static boolean accepts(Parameter parameter, Field field, boolean exactTypes) {
+        if (exactTypes) {
+            return TypeToken.get(parameter.getParameterizedType()).equals(TypeToken.get(field.getGenericType()));
+        }
+        return Primitives.wrap(parameter.getType()).isAssignableFrom(Primitives.wrap(field.getType()));
+    }
+
+    /**
+     * @return the constructor taking exactly the serialized fields, if the class needs one to be deserialized
+     * @throws IllegalArgumentException if the class needs such a constructor but the fields cannot be matched
+     * unambiguously with its parameters
+     */
+    @Nullable
+    private static Executable findCanonicalConstructor(Class<?> clazz, List<Field> fields) {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        for (Field field : fields) {
+            if (!Modifier.isFinal(field.getModifiers())) {
+                return null;
+            }
+        }
+        List<Constructor<?>> candidates = new ArrayList<>();
+        IllegalArgumentException ambiguity = null;
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            try {
+                if (bindParameters(constructor, fields, new String[0], true) != null) {
+                    candidates.add(constructor);
+                }
+            } catch (IllegalArgumentException e) {
+                // only an error if the constructor is actually needed
+                ambiguity = e;
+            }
+        }
+        if (candidates.isEmpty() && ambiguity == null) {
+            return null;
+        }
+        // the reflective adapters handle classes that can be created empty and updated field by field
+        if (hasNoArgConstructor(clazz) && fields.stream().allMatch(ConstructorNBTAdapterFactory::isUpdatable)) {
+            return null;
+        }
+        if (ambiguity != null) {
+            throw ambiguity;
+        }
+        if (candidates.size() > 1) {
+            throw new IllegalArgumentException(clazz + " has several constructors taking its serialized fields: " + candidates
+                    + ", annotate one of them with @NBTCreator");
+        }
+        return candidates.get(0);
+    }
+
+    private static boolean hasNoArgConstructor(Class<?> clazz) {
+        try {
+            clazz.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUpdatable(Field field) {
+        return TagAdapters.isMutating(field);
+    }
+
+    /**
+     * Decodes every field before creating the object, in a single call to its creator
+     */
+    public static class ConstructorNBTAdapter<T> implements NBTTypeAdapter<T, NBTTagCompound> {
+        private final TypeToken<T> type;
+        private final String[] names;
+        private final MethodHandle[] getters;
+        private final NBTTypeAdapter[] adapters;
+        /** Takes the field values as a single array */
+        private final MethodHandle creator;
+        private final CompoundFieldWriter fieldWriter;
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        public ConstructorNBTAdapter(TypeToken<T> type, List<Field> fields, Executable creator) throws IllegalAccessException {
+            this.type = type;
+            int fieldCount = fields.size();
+            this.names = new String[fieldCount];
+            this.getters = new MethodHandle[fieldCount];
+            this.adapters = new NBTTypeAdapter[fieldCount];
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (int i = 0; i < fieldCount; i++) {
+                Field field = fields.get(i);
+                field.setAccessible(true);
+                names[i] = field.getName();
+                getters[i] = lookup.unreflectGetter(field);
+                // created objects get fresh values, nothing is updated in place
+                adapters[i] = TagAdapters.getNBTAdapter(field, false);
+                indices.put(names[i], i);
+            }
+            ((AccessibleObject) creator).setAccessible(true);
+            MethodHandle handle = creator instanceof Constructor
+                    ? lookup.unreflectConstructor((Constructor<?>) creator)
+                    : lookup.unreflect((Method) creator);
+            this.creator = handle.asSpreader(Object[].class, fieldCount).asType(MethodType.methodType(Object.class, Object[].class));
+            this.fieldWriter = new CompoundFieldWriter(names, adapters);
+        }
+
+        @Override
+        public NBTTagCompound toNBT(T value) {
+            return fieldWriter.toNBT(value, (o, i) -> getters[i].invoke(o));
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            fieldWriter.write(value, (o, i) -> getters[i].invoke(o), out);
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            return fieldWriter.sizeOf(value, (o, i) -> getters[i].invoke(o));
+        }
+
+        /**
+         * Passes a copy of every field to the creator. If the creator rejects the copies,
+         * the value is copied through its NBT representation instead, like adapters without a dedicated copy.
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        public T snapshot(T value) {
+            try {
+                Object[] args = new Object[names.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = Snapshots.of(adapters[i], getters[i].invoke(value));
+                }
+                return (T) creator.invoke(args);
+            } catch (Throwable throwable) {
+                return NBTTypeAdapter.super.snapshot(value);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T fromNBT(NBTBase nbt) {
+            NBTTagCompound compound = nbt instanceof NBTTagCompound ? (NBTTagCompound) nbt : null;
+            try {
+                Object[] args = new Object[names.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = adapters[i].fromNBT(compound != null ? compound.getTag(names[i]) : null);
+                }
+                return (T) creator.invoke(args);
+            } catch (Throwable throwable) {
+                return getDefaultValue(throwable);
+            }
+        }
+
+        @Override
+        public T read(T value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T read(NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+                in.skipValue();
+                return fromNBT(null);
+            }
+            Object[] args = new Object[names.length];
+            boolean[] seen = new boolean[names.length];
+            try {
+                in.beginCompound();
+                while (in.hasNext()) {
+                    Integer index = indices.get(in.nextName());
+                    if (index == null || seen[index]) {
+                        in.skipValue();
+                    } else {
+                        seen[index] = true;
+                        args[index] = adapters[index].read(in);
+                    }
+                }
+                in.endCompound();
+                for (int i = 0; i < seen.length; i++) {
+                    if (!seen[i]) {
+                        // same as the tree path with a missing entry
+                        args[i] = adapters[i].fromNBT(null);
+                    }
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new NBTDeserializationException("Could not read NBT for " + type, throwable);
+            }
+            try {
+                return (T) creator.invoke(args);
+            } catch (Throwable throwable) {
+                return getDefaultValue(throwable);
+            }
+        }
+
+        private T getDefaultValue(Throwable cause) {
+            T ret = TagAdapters.getDefaultValue(type).orElseThrow(() -> new NBTDeserializationException("Unable to deserialize object of type " + type + " and no default value exists", cause));
+            NBTMetrics.recordDefaultFallback(type);
+            return ret;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package ladylib.nbt.serialization.adapter;
 
 import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.EnumIds;
 import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTReader;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
 import ladylib.nbt.serialization.TagAdapters;
-import net.minecraft.nbt.NBTBase;
-import net.minecraft.nbt.NBTTagString;
+import ladylib.nbt.serialization.internal.EnumTable;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
 
-public class EnumNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Enum, NBTTagString> {
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Serializes enum constants by name, or by id for enums annotated with {@link EnumIds}
+ */
+public class EnumNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Enum, NBTBase> {
     @SuppressWarnings("unchecked")
     @Override
-    public NBTTypeAdapter<Enum, NBTTagString> create(TypeToken type, boolean allowMutating) {
+    public NBTTypeAdapter<Enum, NBTBase> create(TypeToken type, boolean allowMutating) {
         Class enumClass = type.getRawType();
         if (!Enum.class.isAssignableFrom(enumClass) || enumClass == Enum.class) {
             return null;
@@ -19,16 +31,48 @@ public class EnumNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Enum, NB
         if (!enumClass.isEnum()) {
             enumClass = enumClass.getSuperclass(); // handle anonymous subclasses
         }
+        if (EnumTable.get(enumClass).hasIds()) {
+            return new EnumIdNBTTypeAdapter(type, enumClass);
+        }
         return new EnumNBTTypeAdapter(type, enumClass);
     }
 
-    public static class EnumNBTTypeAdapter<E extends Enum<E>> extends AbstractNBTTypeAdapter<E, NBTTagString> {
+    public abstract static class EnumBaseAdapter<E extends Enum<E>, NBT extends NBTBase> extends AbstractNBTTypeAdapter<E, NBT> {
+        protected final EnumTable<E> table;
+        private final TypeToken<E> enumType;
+
+        protected EnumBaseAdapter(TypeToken<E> tt, Class<E> enumClass) {
+            super(tt);
+            this.table = EnumTable.get(enumClass);
+            this.enumType = TypeToken.get(enumClass);
+        }
+
+        /**
+         * @return the enum's default value, used in place of an unknown constant
+         * @throws NBTDeserializationException if the enum has no default value
+         */
+        protected E getDefaultValue(Object unknown) {
+            E defaultValue = TagAdapters.getDefaultValue(enumType)
+                    .orElseThrow(() -> new NBTDeserializationException("Failed to deserialize enum field: no constant of " + enumType + " matches " + unknown));
+            NBTMetrics.recordDefaultFallback(enumType);
+            return defaultValue;
+        }
+
+        protected E byName(String name) {
+            E ret = table.byName(name);
+            return ret == null ? getDefaultValue(name) : ret;
+        }
+
+        @Override
+        public E snapshot(E value) {
+            return value;
+        }
+    }
 
-        private final Class<E> enumClass;
+    public static class EnumNBTTypeAdapter<E extends Enum<E>> extends EnumBaseAdapter<E, NBTTagString> {
 
         public EnumNBTTypeAdapter(TypeToken<E> tt, Class<E> enumClass) {
-            super(tt);
-            this.enumClass = enumClass;
+            super(tt, enumClass);
         }
 
         @Override
@@ -36,14 +80,103 @@ public class EnumNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Enum, NB
             return new NBTTagString(value.name());
         }
 
+        @Override
+        public void write(E value, NBTWriter out) throws IOException {
+            out.writeString(value.name());
+        }
+
+        @Override
+        public long sizeOf(E value) {
+            return NBTSizes.sizeOfString(value.name());
+        }
+
+        @Override
+        public E read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_STRING) {
+                return byName(in.readString());
+            }
+            return fromNBT(in.readTag());
+        }
+
         @Override
         public E fromNBT(NBTBase nbtTagString) {
-            try {
-                return castAnd(nbtTagString, NBTTagString.class, nbt -> Enum.valueOf(enumClass, nbt.getString()));
-            } catch (IllegalArgumentException e) {
-                TypeToken<E> typeToken = TypeToken.get(enumClass);
-                return TagAdapters.getDefaultValue(typeToken).orElseThrow(() -> new NBTDeserializationException("Failed to deserialize enum field", e));
+            return castAnd(nbtTagString, NBTTagString.class, nbt -> byName(nbt.getString()));
+        }
+    }
+
+    /**
+     * Serializes constants as unsigned byte or short ids, as defined by {@link EnumIds}
+     */
+    public static class EnumIdNBTTypeAdapter<E extends Enum<E>> extends EnumBaseAdapter<E, NBTBase> {
+        private final boolean byteIds;
+
+        public EnumIdNBTTypeAdapter(TypeToken<E> tt, Class<E> enumClass) {
+            super(tt, enumClass);
+            this.byteIds = table.hasByteIds();
+        }
+
+        @Override
+        public NBTBase toNBT(E value) {
+            int id = table.getId(value);
+            if (id < 0) {
+                return new NBTTagString(value.name());
+            }
+            return byteIds ? new NBTTagByte((byte) id) : new NBTTagShort((short) id);
+        }
+
+        @Override
+        public void write(E value, NBTWriter out) throws IOException {
+            int id = table.getId(value);
+            if (id < 0) {
+                out.writeString(value.name());
+            } else if (byteIds) {
+                out.writeByte((byte) id);
+            } else {
+                out.writeShort((short) id);
+            }
+        }
+
+        @Override
+        public long sizeOf(E value) {
+            int id = table.getId(value);
+            if (id < 0) {
+                return NBTSizes.sizeOfString(value.name());
+            }
+            return byteIds ? 1 : 2;
+        }
+
+        @Override
+        public E read(NBTReader in) throws IOException {
+            switch (in.peek()) {
+                case Constants.NBT.TAG_BYTE:
+                    return byId(in.readByte() & 0xFF);
+                case Constants.NBT.TAG_SHORT:
+                    return byId(in.readShort() & 0xFFFF);
+                case Constants.NBT.TAG_STRING:
+                    return byName(in.readString());
+                default:
+                    return fromNBT(in.readTag());
             }
         }
+
+        @Override
+        public E fromNBT(@Nullable NBTBase nbt) {
+            if (nbt instanceof NBTTagByte) {
+                return byId(((NBTTagByte) nbt).getByte() & 0xFF);
+            } else if (nbt instanceof NBTTagShort) {
+                return byId(((NBTTagShort) nbt).getShort() & 0xFFFF);
+            } else if (nbt instanceof NBTTagInt) {
+                return byId(((NBTTagInt) nbt).getInt());
+            } else if (nbt instanceof NBTTagString) {
+                // written before the enum got ids
+                return byName(((NBTTagString) nbt).getString());
+            }
+            return getDefaultValue(nbt);
+        }
+
+        private E byId(int id) {
+            E ret = table.byId(id);
+            return ret == null ? getDefaultValue(id) : ret;
+        }
     }
 }
@@ -0,0 +1,961 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.*;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+import ladylib.LadyLib;
+import ladylib.misc.ReflectionUtil;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.internal.CompoundKeyOrder;
+import ladylib.nbt.serialization.internal.LongArrayTags;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import ladylib.nbt.serialization.internal.Snapshots;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementTypeAdapter;
+
+/**
+ * Serializes fastutil primitive collections and maps without boxing their elements.
+ * <p>
+ * {@link IntCollection int} and {@link LongCollection long} collections are packed into a single
+ * int array or long array tag. Maps with int or long keys or values are stored as a compound with two
+ * parallel entries, {@value #KEYS_TAG} and {@value #VALUES_TAG}, each one being a packed array for a
+ * primitive side or a list for an object side.
+ * </p>
+ * <p>
+ * Non-mutating adapters read the whole data before creating the collection, so that array lists and
+ * hash based collections can be allocated with the right capacity.
+ * </p>
+ */
+public class FastutilNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Object, NBTBase> {
+    public static final String KEYS_TAG = "keys";
+    public static final String VALUES_TAG = "values";
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public NBTTypeAdapter<Object, NBTBase> create(TypeToken type, boolean allowMutating) {
+        Class<?> rawType = type.getRawType();
+        Packing packing;
+        IntFunction<?> factory;
+        if (IntCollection.class.isAssignableFrom(rawType)) {
+            packing = new IntCollectionPacking();
+            factory = getFactory(rawType, IntArrayList::new, IntOpenHashSet::new, size -> new IntRBTreeSet());
+        } else if (LongCollection.class.isAssignableFrom(rawType)) {
+            packing = new LongCollectionPacking();
+            factory = getFactory(rawType, LongArrayList::new, LongOpenHashSet::new, size -> new LongRBTreeSet());
+        } else if (Int2IntMap.class.isAssignableFrom(rawType)) {
+            packing = new Int2IntPacking();
+            factory = getFactory(rawType, Int2IntOpenHashMap::new, size -> new Int2IntRBTreeMap());
+        } else if (Int2LongMap.class.isAssignableFrom(rawType)) {
+            packing = new Int2LongPacking();
+            factory = getFactory(rawType, Int2LongOpenHashMap::new, size -> new Int2LongRBTreeMap());
+        } else if (Long2IntMap.class.isAssignableFrom(rawType)) {
+            packing = new Long2IntPacking();
+            factory = getFactory(rawType, Long2IntOpenHashMap::new, size -> new Long2IntRBTreeMap());
+        } else if (Long2LongMap.class.isAssignableFrom(rawType)) {
+            packing = new Long2LongPacking();
+            factory = getFactory(rawType, Long2LongOpenHashMap::new, size -> new Long2LongRBTreeMap());
+        } else if (Int2ObjectMap.class.isAssignableFrom(rawType)) {
+            packing = new Int2ObjectPacking(new ObjectColumn(getElementTypeAdapter(type, 0)));
+            factory = getFactory(rawType, Int2ObjectOpenHashMap::new, size -> new Int2ObjectRBTreeMap());
+        } else if (Long2ObjectMap.class.isAssignableFrom(rawType)) {
+            packing = new Long2ObjectPacking(new ObjectColumn(getElementTypeAdapter(type, 0)));
+            factory = getFactory(rawType, Long2ObjectOpenHashMap::new, size -> new Long2ObjectRBTreeMap());
+        } else if (Object2IntMap.class.isAssignableFrom(rawType)) {
+            packing = new Object2IntPacking(new ObjectColumn(getElementTypeAdapter(type, 0)));
+            factory = getFactory(rawType, Object2IntOpenHashMap::new);
+        } else if (Object2LongMap.class.isAssignableFrom(rawType)) {
+            packing = new Object2LongPacking(new ObjectColumn(getElementTypeAdapter(type, 0)));
+            factory = getFactory(rawType, Object2LongOpenHashMap::new);
+        } else {
+            return null;
+        }
+        if (allowMutating) {
+            return new FastutilNBTMutatingTypeAdapter(type, packing);
+        }
+        if (factory == null) {
+            LadyLib.LOGGER.warn("Unsupported collection type: {}", rawType);
+            return null;
+        }
+        return new FastutilNBTTypeAdapter(type, packing, factory);
+    }
+
+    /**
+     * Gets a factory for the given collection type.
+     * Abstract types are instantiated with the first of the given default implementations that is compatible.
+     *
+     * @param defaults default implementations, from the most general to the most specific
+     * @return a factory taking the expected size of the collection, or null if no default implementation fits
+     */
+    @Nullable
+    private static IntFunction<?> getFactory(Class<?> rawType, IntFunction<?>... defaults) {
+        if (!Modifier.isAbstract(rawType.getModifiers())) {
+            return getConcreteFactory(rawType);
+        }
+        for (IntFunction<?> factory : defaults) {
+            if (rawType.isInstance(factory.apply(0))) {
+                return factory;
+            }
+        }
+        return null;
+    }
+
+    private static IntFunction<?> getConcreteFactory(Class<?> rawType) {
+        // fastutil's own collections take their expected size as their only int constructor parameter
+        if (rawType.getName().startsWith("it.unimi.dsi.fastutil.")) {
+            try {
+                MethodHandle constructor = MethodHandles.publicLookup()
+                        .findConstructor(rawType, MethodType.methodType(void.class, int.class))
+                        .asType(MethodType.methodType(Object.class, int.class));
+                return size -> {
+                    try {
+                        return constructor.invokeExact(size);
+                    } catch (Throwable throwable) {
+                        throw new NBTDeserializationException("Could not instantiate " + rawType.getName(), throwable);
+                    }
+                };
+            } catch (NoSuchMethodException | IllegalAccessException ignored) {
+                // fall back to the default constructor
+            }
+        }
+        Supplier<?> supplier = ReflectionUtil.createFactory(rawType, "get", Supplier.class);
+        return size -> supplier.get();
+    }
+
+    public abstract static class FastutilBaseAdapter<C, D> extends AbstractNBTTypeAdapter<C, NBTBase> {
+        protected final Packing<C, D> packing;
+
+        FastutilBaseAdapter(TypeToken<C> typeToken, Packing<C, D> packing) {
+            super(typeToken);
+            this.packing = packing;
+        }
+
+        @Override
+        public NBTBase toNBT(C value) {
+            return packing.toNBT(value);
+        }
+
+        @Override
+        public void write(C value, NBTWriter out) throws IOException {
+            packing.write(value, out);
+        }
+
+        @Override
+        public long sizeOf(C value) {
+            return packing.sizeOf(value);
+        }
+
+        @Override
+        public C snapshot(C value) {
+            return packing.snapshot(value);
+        }
+
+        @Override
+        public C fromNBT(C value, NBTBase nbt) {
+            D data = packing.fromNBT(nbt);
+            if (data != null) {
+                packing.fill(value, data);
+            }
+            return value;
+        }
+
+        @Override
+        public C read(C value, NBTReader in) throws IOException {
+            D data = packing.read(in);
+            if (data != null) {
+                packing.fill(value, data);
+            }
+            return value;
+        }
+    }
+
+    public static class FastutilNBTMutatingTypeAdapter<C, D> extends FastutilBaseAdapter<C, D> implements NBTMutatingTypeAdapter<C, NBTBase> {
+        FastutilNBTMutatingTypeAdapter(TypeToken<C> typeToken, Packing<C, D> packing) {
+            super(typeToken, packing);
+        }
+    }
+
+    public static class FastutilNBTTypeAdapter<C, D> extends FastutilBaseAdapter<C, D> {
+        private final IntFunction<C> factory;
+
+        FastutilNBTTypeAdapter(TypeToken<C> typeToken, Packing<C, D> packing, IntFunction<C> factory) {
+            super(typeToken, packing);
+            this.factory = factory;
+        }
+
+        @Override
+        public C fromNBT(C value, NBTBase nbt) {
+            return fromNBT(nbt);
+        }
+
+        @Override
+        public C fromNBT(NBTBase nbt) {
+            return create(packing.fromNBT(nbt));
+        }
+
+        @Override
+        public C read(C value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public C read(NBTReader in) throws IOException {
+            return create(packing.read(in));
+        }
+
+        private C create(@Nullable D data) {
+            if (data == null) {
+                return factory.apply(0);
+            }
+            C ret = factory.apply(packing.size(data));
+            packing.fill(ret, data);
+            return ret;
+        }
+    }
+
+    /**
+     * Converts collections to and from their packed representation.
+     * Deserialization goes through an intermediate data object so that its size is known
+     * before the collection is created.
+     *
+     * @param <C> the type of collection
+     * @param <D> the type of unpacked data
+     */
+    abstract static class Packing<C, D> {
+        abstract NBTBase toNBT(C collection);
+
+        abstract void write(C collection, NBTWriter out) throws IOException;
+
+        abstract long sizeOf(C collection);
+
+        /**
+         * @return the data contained in the tag, or null if the tag does not have the expected format
+         */
+        @Nullable
+        abstract D fromNBT(@Nullable NBTBase nbt);
+
+        /**
+         * @return the data of the next value, or null if the value does not have the expected format and was skipped
+         */
+        @Nullable
+        abstract D read(NBTReader in) throws IOException;
+
+        abstract int size(D data);
+
+        /**
+         * Replaces the content of the given collection with the data
+         */
+        abstract void fill(C collection, D data);
+
+        /**
+         * Copies the given collection, keeping its class. Fastutil's own collections are all cloneable.
+         */
+        C snapshot(C collection) {
+            C ret = Snapshots.shallowCopy(collection);
+            if (ret == null) {
+                throw new UnsupportedOperationException("Cannot snapshot " + collection.getClass().getName() + " as it is not cloneable");
+            }
+            return ret;
+        }
+    }
+
+    static final class IntCollectionPacking extends Packing<IntCollection, int[]> {
+        @Override
+        NBTBase toNBT(IntCollection collection) {
+            return new NBTTagIntArray(collection.toIntArray());
+        }
+
+        @Override
+        void write(IntCollection collection, NBTWriter out) throws IOException {
+            out.writeIntArray(collection.toIntArray());
+        }
+
+        @Override
+        long sizeOf(IntCollection collection) {
+            return 4 + 4L * collection.size();
+        }
+
+        @Nullable
+        @Override
+        int[] fromNBT(@Nullable NBTBase nbt) {
+            return Column.INT.fromNBT(nbt);
+        }
+
+        @Nullable
+        @Override
+        int[] read(NBTReader in) throws IOException {
+            return Column.INT.read(in);
+        }
+
+        @Override
+        int size(int[] data) {
+            return data.length;
+        }
+
+        @Override
+        void fill(IntCollection collection, int[] data) {
+            collection.clear();
+            if (collection instanceof IntArrayList) {
+                ((IntArrayList) collection).ensureCapacity(data.length);
+            }
+            for (int i : data) {
+                collection.add(i);
+            }
+        }
+    }
+
+    static final class LongCollectionPacking extends Packing<LongCollection, long[]> {
+        @Override
+        NBTBase toNBT(LongCollection collection) {
+            return new NBTTagLongArray(collection.toLongArray());
+        }
+
+        @Override
+        void write(LongCollection collection, NBTWriter out) throws IOException {
+            out.writeLongArray(collection.toLongArray());
+        }
+
+        @Override
+        long sizeOf(LongCollection collection) {
+            return 4 + 8L * collection.size();
+        }
+
+        @Nullable
+        @Override
+        long[] fromNBT(@Nullable NBTBase nbt) {
+            return Column.LONG.fromNBT(nbt);
+        }
+
+        @Nullable
+        @Override
+        long[] read(NBTReader in) throws IOException {
+            return Column.LONG.read(in);
+        }
+
+        @Override
+        int size(long[] data) {
+            return data.length;
+        }
+
+        @Override
+        void fill(LongCollection collection, long[] data) {
+            collection.clear();
+            if (collection instanceof LongArrayList) {
+                ((LongArrayList) collection).ensureCapacity(data.length);
+            }
+            for (long l : data) {
+                collection.add(l);
+            }
+        }
+    }
+
+    /**
+     * The keys and values of a map, as two parallel arrays
+     */
+    static final class MapData<KA, VA> {
+        final KA keys;
+        final VA values;
+        final int size;
+
+        MapData(KA keys, VA values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+    }
+
+    abstract static class MapPacking<M extends Map<?, ?>, KA, VA> extends Packing<M, MapData<KA, VA>> {
+        private static final int[] ENTRY_ORDER = new CompoundKeyOrder(KEYS_TAG, VALUES_TAG).getOrder(new boolean[]{true, true});
+        private final Column<KA> keyColumn;
+        private final Column<VA> valueColumn;
+
+        MapPacking(Column<KA> keyColumn, Column<VA> valueColumn) {
+            this.keyColumn = keyColumn;
+            this.valueColumn = valueColumn;
+        }
+
+        abstract int mapSize(M map);
+
+        /**
+         * Copies the entries of the map into the given arrays, in iteration order
+         */
+        abstract void split(M map, KA keys, VA values);
+
+        abstract void put(M map, KA keys, VA values, int index);
+
+        @Override
+        NBTBase toNBT(M map) {
+            int size = mapSize(map);
+            KA keys = keyColumn.newArray(size);
+            VA values = valueColumn.newArray(size);
+            split(map, keys, values);
+            NBTTagCompound ret = new NBTTagCompound();
+            ret.setTag(KEYS_TAG, keyColumn.toNBT(keys));
+            ret.setTag(VALUES_TAG, valueColumn.toNBT(values));
+            return ret;
+        }
+
+        @Override
+        void write(M map, NBTWriter out) throws IOException {
+            int size = mapSize(map);
+            KA keys = keyColumn.newArray(size);
+            VA values = valueColumn.newArray(size);
+            split(map, keys, values);
+            out.beginCompound();
+            // entries must come in the same order as in the equivalent compound tag
+            for (int index : ENTRY_ORDER) {
+                if (index == 0) {
+                    out.name(KEYS_TAG);
+                    keyColumn.write(keys, out);
+                } else {
+                    out.name(VALUES_TAG);
+                    valueColumn.write(values, out);
+                }
+            }
+            out.endCompound();
+        }
+
+        @Override
+        long sizeOf(M map) {
+            int size = mapSize(map);
+            KA keys = keyColumn.newArray(size);
+            VA values = valueColumn.newArray(size);
+            split(map, keys, values);
+            return NBTSizes.COMPOUND_FOOTER_SIZE
+                    + NBTSizes.sizeOfEntry(KEYS_TAG, keyColumn.sizeOf(keys))
+                    + NBTSizes.sizeOfEntry(VALUES_TAG, valueColumn.sizeOf(values));
+        }
+
+        @Nullable
+        @Override
+        MapData<KA, VA> fromNBT(@Nullable NBTBase nbt) {
+            if (!(nbt instanceof NBTTagCompound)) {
+                return null;
+            }
+            NBTTagCompound compound = (NBTTagCompound) nbt;
+            return createData(keyColumn.fromNBT(compound.getTag(KEYS_TAG)), valueColumn.fromNBT(compound.getTag(VALUES_TAG)));
+        }
+
+        @Nullable
+        @Override
+        MapData<KA, VA> read(NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+                in.skipValue();
+                return null;
+            }
+            KA keys = null;
+            VA values = null;
+            in.beginCompound();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (keys == null && KEYS_TAG.equals(name)) {
+                    keys = keyColumn.read(in);
+                } else if (values == null && VALUES_TAG.equals(name)) {
+                    values = valueColumn.read(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endCompound();
+            return createData(keys, values);
+        }
+
+        private MapData<KA, VA> createData(@Nullable KA keys, @Nullable VA values) {
+            if (keys == null || values == null) {
+                return new MapData<>(keyColumn.newArray(0), valueColumn.newArray(0), 0);
+            }
+            int keyCount = keyColumn.length(keys);
+            int valueCount = valueColumn.length(values);
+            if (keyCount != valueCount) {
+                LadyLib.LOGGER.warn("Mismatched key and value counts in serialized map: {} keys, {} values", keyCount, valueCount);
+            }
+            return new MapData<>(keys, values, Math.min(keyCount, valueCount));
+        }
+
+        @Override
+        int size(MapData<KA, VA> data) {
+            return data.size;
+        }
+
+        @Override
+        M snapshot(M map) {
+            M ret = super.snapshot(map);
+            if (keyColumn.holdsObjects() || valueColumn.holdsObjects()) {
+                int size = mapSize(map);
+                KA keys = keyColumn.newArray(size);
+                VA values = valueColumn.newArray(size);
+                split(map, keys, values);
+                keyColumn.snapshotElements(keys);
+                valueColumn.snapshotElements(values);
+                fill(ret, new MapData<>(keys, values, size));
+            }
+            return ret;
+        }
+
+        @Override
+        void fill(M map, MapData<KA, VA> data) {
+            map.clear();
+            for (int i = 0; i < data.size; i++) {
+                put(map, data.keys, data.values, i);
+            }
+        }
+    }
+
+    static final class Int2IntPacking extends MapPacking<Int2IntMap, int[], int[]> {
+        Int2IntPacking() {
+            super(Column.INT, Column.INT);
+        }
+
+        @Override
+        int mapSize(Int2IntMap map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Int2IntMap map, int[] keys, int[] values) {
+            ObjectSet<Int2IntMap.Entry> entries = map.int2IntEntrySet();
+            Iterator<Int2IntMap.Entry> it = entries instanceof Int2IntMap.FastEntrySet ? ((Int2IntMap.FastEntrySet) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Int2IntMap.Entry entry = it.next();
+                keys[i] = entry.getIntKey();
+                values[i] = entry.getIntValue();
+            }
+        }
+
+        @Override
+        void put(Int2IntMap map, int[] keys, int[] values, int index) {
+            map.put(keys[index], values[index]);
+        }
+    }
+
+    static final class Int2LongPacking extends MapPacking<Int2LongMap, int[], long[]> {
+        Int2LongPacking() {
+            super(Column.INT, Column.LONG);
+        }
+
+        @Override
+        int mapSize(Int2LongMap map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Int2LongMap map, int[] keys, long[] values) {
+            ObjectSet<Int2LongMap.Entry> entries = map.int2LongEntrySet();
+            Iterator<Int2LongMap.Entry> it = entries instanceof Int2LongMap.FastEntrySet ? ((Int2LongMap.FastEntrySet) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Int2LongMap.Entry entry = it.next();
+                keys[i] = entry.getIntKey();
+                values[i] = entry.getLongValue();
+            }
+        }
+
+        @Override
+        void put(Int2LongMap map, int[] keys, long[] values, int index) {
+            map.put(keys[index], values[index]);
+        }
+    }
+
+    static final class Long2IntPacking extends MapPacking<Long2IntMap, long[], int[]> {
+        Long2IntPacking() {
+            super(Column.LONG, Column.INT);
+        }
+
+        @Override
+        int mapSize(Long2IntMap map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Long2IntMap map, long[] keys, int[] values) {
+            ObjectSet<Long2IntMap.Entry> entries = map.long2IntEntrySet();
+            Iterator<Long2IntMap.Entry> it = entries instanceof Long2IntMap.FastEntrySet ? ((Long2IntMap.FastEntrySet) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Long2IntMap.Entry entry = it.next();
+                keys[i] = entry.getLongKey();
+                values[i] = entry.getIntValue();
+            }
+        }
+
+        @Override
+        void put(Long2IntMap map, long[] keys, int[] values, int index) {
+            map.put(keys[index], values[index]);
+        }
+    }
+
+    static final class Long2LongPacking extends MapPacking<Long2LongMap, long[], long[]> {
+        Long2LongPacking() {
+            super(Column.LONG, Column.LONG);
+        }
+
+        @Override
+        int mapSize(Long2LongMap map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Long2LongMap map, long[] keys, long[] values) {
+            ObjectSet<Long2LongMap.Entry> entries = map.long2LongEntrySet();
+            Iterator<Long2LongMap.Entry> it = entries instanceof Long2LongMap.FastEntrySet ? ((Long2LongMap.FastEntrySet) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Long2LongMap.Entry entry = it.next();
+                keys[i] = entry.getLongKey();
+                values[i] = entry.getLongValue();
+            }
+        }
+
+        @Override
+        void put(Long2LongMap map, long[] keys, long[] values, int index) {
+            map.put(keys[index], values[index]);
+        }
+    }
+
+    static final class Int2ObjectPacking<V> extends MapPacking<Int2ObjectMap<V>, int[], Object[]> {
+        Int2ObjectPacking(ObjectColumn<V> valueColumn) {
+            super(Column.INT, valueColumn);
+        }
+
+        @Override
+        int mapSize(Int2ObjectMap<V> map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Int2ObjectMap<V> map, int[] keys, Object[] values) {
+            ObjectSet<Int2ObjectMap.Entry<V>> entries = map.int2ObjectEntrySet();
+            Iterator<Int2ObjectMap.Entry<V>> it = entries instanceof Int2ObjectMap.FastEntrySet ? ((Int2ObjectMap.FastEntrySet<V>) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Int2ObjectMap.Entry<V> entry = it.next();
+                keys[i] = entry.getIntKey();
+                values[i] = entry.getValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void put(Int2ObjectMap<V> map, int[] keys, Object[] values, int index) {
+            map.put(keys[index], (V) values[index]);
+        }
+    }
+
+    static final class Long2ObjectPacking<V> extends MapPacking<Long2ObjectMap<V>, long[], Object[]> {
+        Long2ObjectPacking(ObjectColumn<V> valueColumn) {
+            super(Column.LONG, valueColumn);
+        }
+
+        @Override
+        int mapSize(Long2ObjectMap<V> map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Long2ObjectMap<V> map, long[] keys, Object[] values) {
+            ObjectSet<Long2ObjectMap.Entry<V>> entries = map.long2ObjectEntrySet();
+            Iterator<Long2ObjectMap.Entry<V>> it = entries instanceof Long2ObjectMap.FastEntrySet ? ((Long2ObjectMap.FastEntrySet<V>) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Long2ObjectMap.Entry<V> entry = it.next();
+                keys[i] = entry.getLongKey();
+                values[i] = entry.getValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void put(Long2ObjectMap<V> map, long[] keys, Object[] values, int index) {
+            map.put(keys[index], (V) values[index]);
+        }
+    }
+
+    static final class Object2IntPacking<K> extends MapPacking<Object2IntMap<K>, Object[], int[]> {
+        Object2IntPacking(ObjectColumn<K> keyColumn) {
+            super(keyColumn, Column.INT);
+        }
+
+        @Override
+        int mapSize(Object2IntMap<K> map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Object2IntMap<K> map, Object[] keys, int[] values) {
+            ObjectSet<Object2IntMap.Entry<K>> entries = map.object2IntEntrySet();
+            Iterator<Object2IntMap.Entry<K>> it = entries instanceof Object2IntMap.FastEntrySet ? ((Object2IntMap.FastEntrySet<K>) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Object2IntMap.Entry<K> entry = it.next();
+                keys[i] = entry.getKey();
+                values[i] = entry.getIntValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void put(Object2IntMap<K> map, Object[] keys, int[] values, int index) {
+            map.put((K) keys[index], values[index]);
+        }
+    }
+
+    static final class Object2LongPacking<K> extends MapPacking<Object2LongMap<K>, Object[], long[]> {
+        Object2LongPacking(ObjectColumn<K> keyColumn) {
+            super(keyColumn, Column.LONG);
+        }
+
+        @Override
+        int mapSize(Object2LongMap<K> map) {
+            return map.size();
+        }
+
+        @Override
+        void split(Object2LongMap<K> map, Object[] keys, long[] values) {
+            ObjectSet<Object2LongMap.Entry<K>> entries = map.object2LongEntrySet();
+            Iterator<Object2LongMap.Entry<K>> it = entries instanceof Object2LongMap.FastEntrySet ? ((Object2LongMap.FastEntrySet<K>) entries).fastIterator() : entries.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Object2LongMap.Entry<K> entry = it.next();
+                keys[i] = entry.getKey();
+                values[i] = entry.getLongValue();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void put(Object2LongMap<K> map, Object[] keys, long[] values, int index) {
+            map.put((K) keys[index], values[index]);
+        }
+    }
+
+    /**
+     * One side of a map, stored as a single tag
+     *
+     * @param <A> the type of array holding the elements
+     */
+    abstract static class Column<A> {
+        static final Column<int[]> INT = new Column<int[]>() {
+            @Override
+            int[] newArray(int size) {
+                return new int[size];
+            }
+
+            @Override
+            int length(int[] array) {
+                return array.length;
+            }
+
+            @Override
+            NBTBase toNBT(int[] array) {
+                return new NBTTagIntArray(array);
+            }
+
+            @Override
+            void write(int[] array, NBTWriter out) throws IOException {
+                out.writeIntArray(array);
+            }
+
+            @Override
+            long sizeOf(int[] array) {
+                return 4 + 4L * array.length;
+            }
+
+            @Nullable
+            @Override
+            int[] fromNBT(@Nullable NBTBase nbt) {
+                return nbt instanceof NBTTagIntArray ? ((NBTTagIntArray) nbt).getIntArray() : null;
+            }
+
+            @Nullable
+            @Override
+            int[] read(NBTReader in) throws IOException {
+                if (in.peek() == Constants.NBT.TAG_INT_ARRAY) {
+                    return in.readIntArray();
+                }
+                in.skipValue();
+                return null;
+            }
+        };
+
+        static final Column<long[]> LONG = new Column<long[]>() {
+            @Override
+            long[] newArray(int size) {
+                return new long[size];
+            }
+
+            @Override
+            int length(long[] array) {
+                return array.length;
+            }
+
+            @Override
+            NBTBase toNBT(long[] array) {
+                return new NBTTagLongArray(array);
+            }
+
+            @Override
+            void write(long[] array, NBTWriter out) throws IOException {
+                out.writeLongArray(array);
+            }
+
+            @Override
+            long sizeOf(long[] array) {
+                return 4 + 8L * array.length;
+            }
+
+            @Nullable
+            @Override
+            long[] fromNBT(@Nullable NBTBase nbt) {
+                return nbt instanceof NBTTagLongArray ? LongArrayTags.getData((NBTTagLongArray) nbt) : null;
+            }
+
+            @Nullable
+            @Override
+            long[] read(NBTReader in) throws IOException {
+                if (in.peek() == Constants.NBT.TAG_LONG_ARRAY) {
+                    return in.readLongArray();
+                }
+                in.skipValue();
+                return null;
+            }
+        };
+
+        abstract A newArray(int size);
+
+        abstract int length(A array);
+
+        abstract NBTBase toNBT(A array);
+
+        abstract void write(A array, NBTWriter out) throws IOException;
+
+        abstract long sizeOf(A array);
+
+        @Nullable
+        abstract A fromNBT(@Nullable NBTBase nbt);
+
+        /**
+         * @return the next value, or null if it does not have the expected type and was skipped
+         */
+        @Nullable
+        abstract A read(NBTReader in) throws IOException;
+
+        /**
+         * @return true if elements are objects, which need to be copied by {@link #snapshotElements(Object)}
+         */
+        boolean holdsObjects() {
+            return false;
+        }
+
+        /**
+         * Replaces every element of the array with a snapshot
+         */
+        void snapshotElements(A array) {
+            // primitives are copied along with their collection
+        }
+    }
+
+    static final class ObjectColumn<E> extends Column<Object[]> {
+        private final NBTTypeAdapter<E, NBTBase> elementAdapter;
+
+        ObjectColumn(NBTTypeAdapter<E, NBTBase> elementAdapter) {
+            this.elementAdapter = elementAdapter;
+        }
+
+        @Override
+        Object[] newArray(int size) {
+            return new Object[size];
+        }
+
+        @Override
+        int length(Object[] array) {
+            return array.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        NBTBase toNBT(Object[] array) {
+            NBTTagList list = new NBTTagList();
+            for (Object element : array) {
+                list.appendTag(elementAdapter.toNBT((E) element));
+            }
+            return list;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void write(Object[] array, NBTWriter out) throws IOException {
+            out.beginList(array.length);
+            for (Object element : array) {
+                elementAdapter.write((E) element, out);
+            }
+            out.endList();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        long sizeOf(Object[] array) {
+            long size = NBTSizes.LIST_HEADER_SIZE;
+            for (Object element : array) {
+                size += elementAdapter.sizeOf((E) element);
+            }
+            return size;
+        }
+
+        @Override
+        boolean holdsObjects() {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void snapshotElements(Object[] array) {
+            for (int i = 0; i < array.length; i++) {
+                array[i] = Snapshots.of(elementAdapter, (E) array[i]);
+            }
+        }
+
+        @Nullable
+        @Override
+        Object[] fromNBT(@Nullable NBTBase nbt) {
+            if (!(nbt instanceof NBTTagList)) {
+                return null;
+            }
+            NBTTagList list = (NBTTagList) nbt;
+            Object[] ret = new Object[list.tagCount()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = elementAdapter.fromNBT(list.get(i));
+            }
+            return ret;
+        }
+
+        @Nullable
+        @Override
+        Object[] read(NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                in.skipValue();
+                return null;
+            }
+            Object[] ret = new Object[in.beginList()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = elementAdapter.read(in);
+            }
+            in.endList();
+            return ret;
+        }
+    }
+}
@@ -5,11 +5,14 @@ import com.google.gson.reflect.TypeToken;
 import ladylib.LadyLib;
 import ladylib.misc.ReflectionUtil;
 import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTReader;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraftforge.common.util.Constants;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.function.Supplier;
 
@@ -49,6 +52,15 @@ public class ImmutableCollectionNBTAdapterFactory implements NBTTypeAdapterFacto
             return fromNBT(nbt);
         }
 
+        @Override
+        public ImmutableCollection<E> snapshot(Collection<E> value) {
+            ImmutableCollection.Builder<E> ret = builderSupplier.get();
+            for (E element : value) {
+                ret.add(elementAdapter.snapshot(element));
+            }
+            return ret.build();
+        }
+
         @Override
         public ImmutableCollection<E> fromNBT(NBTBase nbt) {
             ImmutableCollection.Builder<E> ret = builderSupplier.get();
@@ -62,6 +74,29 @@ public class ImmutableCollectionNBTAdapterFactory implements NBTTypeAdapterFacto
             });
             return ret.build();
         }
+
+        @Override
+        public Collection<E> read(Collection<E> value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public ImmutableCollection<E> read(NBTReader in) throws IOException {
+            ImmutableCollection.Builder<E> ret = builderSupplier.get();
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                in.skipValue();
+                return ret.build();
+            }
+            in.beginList();
+            while (in.hasNext()) {
+                E element = elementAdapter.read(in);
+                if (element != null) {
+                    ret.add(element);
+                } else throw new NBTDeserializationException("An element of an immutable list was null");
+            }
+            in.endList();
+            return ret.build();
+        }
     }
 
 }
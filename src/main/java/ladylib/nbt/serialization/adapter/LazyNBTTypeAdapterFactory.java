@@ -0,0 +1,108 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.LazyNBT;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import ladylib.nbt.serialization.internal.Snapshots;
+import net.minecraft.nbt.NBTBase;
+
+import javax.annotation.Nullable;
+
+/**
+ * Serializes {@link LazyNBT} holders. Deserialization only stores the raw tag in the holder,
+ * the value's adapter is invoked when the holder is first accessed.
+ */
+public class LazyNBTTypeAdapterFactory implements NBTTypeAdapterFactory<LazyNBT, NBTBase> {
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public NBTTypeAdapter<LazyNBT, NBTBase> create(TypeToken type, boolean allowMutating) {
+        if (type.getRawType() != LazyNBT.class) {
+            return null;
+        }
+        if (!TagAdapters.getDefaultValue(type).isPresent()) {
+            TagAdapters.setDefaultValue(type, LazyNBT::new);
+        }
+        NBTTypeAdapter valueAdapter = CollectionNBTTypeAdapterFactory.getElementTypeAdapter(type, 0);
+        NBTTypeAdapter ret;
+        if (allowMutating) {
+            ret = new LazyNBTMutatingTypeAdapter<>(valueAdapter);
+        } else {
+            ret = new LazyNBTTypeAdapter<>(valueAdapter);
+        }
+        return ret;
+    }
+
+    public abstract static class LazyBaseAdapter<T> extends AbstractNBTTypeAdapter<LazyNBT<T>, NBTBase> {
+        protected final NBTTypeAdapter<T, NBTBase> valueAdapter;
+
+        protected LazyBaseAdapter(NBTTypeAdapter<T, NBTBase> valueAdapter) {
+            this.valueAdapter = valueAdapter;
+        }
+
+        @Nullable
+        @Override
+        public NBTBase toNBT(LazyNBT<T> value) {
+            NBTBase undecoded = value.getUndecodedTag();
+            if (undecoded != null) {
+                // never accessed, write back the original data
+                return undecoded;
+            }
+            T held = value.get();
+            return held == null ? null : valueAdapter.toNBT(held);
+        }
+
+        @Override
+        public long sizeOf(LazyNBT<T> value) {
+            NBTBase undecoded = value.getUndecodedTag();
+            if (undecoded != null) {
+                return NBTSizes.sizeOfPayload(undecoded);
+            }
+            T held = value.get();
+            return held == null ? -1 : valueAdapter.sizeOf(held);
+        }
+
+        @Override
+        public LazyNBT<T> snapshot(LazyNBT<T> value) {
+            LazyNBT<T> ret = new LazyNBT<>();
+            NBTBase undecoded = value.getUndecodedTag();
+            if (undecoded != null) {
+                // undecoded tags are never modified
+                ret.setUndecoded(undecoded, valueAdapter::fromNBT);
+            } else {
+                ret.set(Snapshots.of(valueAdapter, value.get()));
+            }
+            return ret;
+        }
+
+        @Override
+        public LazyNBT<T> fromNBT(@Nullable LazyNBT<T> value, @Nullable NBTBase nbt) {
+            LazyNBT<T> ret = value == null ? new LazyNBT<>() : value;
+            if (nbt != null) {
+                ret.setUndecoded(nbt, valueAdapter::fromNBT);
+            }
+            return ret;
+        }
+    }
+
+    public static class LazyNBTMutatingTypeAdapter<T> extends LazyBaseAdapter<T> implements NBTMutatingTypeAdapter<LazyNBT<T>, NBTBase> {
+        public LazyNBTMutatingTypeAdapter(NBTTypeAdapter<T, NBTBase> valueAdapter) {
+            super(valueAdapter);
+        }
+    }
+
+    public static class LazyNBTTypeAdapter<T> extends LazyBaseAdapter<T> {
+        public LazyNBTTypeAdapter(NBTTypeAdapter<T, NBTBase> valueAdapter) {
+            super(valueAdapter);
+        }
+
+        @Override
+        public LazyNBT<T> fromNBT(@Nullable NBTBase nbt) {
+            return fromNBT(new LazyNBT<>(), nbt);
+        }
+    }
+}
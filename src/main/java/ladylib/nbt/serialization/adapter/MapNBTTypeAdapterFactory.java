@@ -1,54 +1,131 @@
 package ladylib.nbt.serialization.adapter;
 
 import com.google.gson.reflect.TypeToken;
+import ladylib.LadyLib;
 import ladylib.misc.ReflectionUtil;
 import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.internal.CompoundFieldWriter;
+import ladylib.nbt.serialization.internal.CompoundKeyOrder;
+import ladylib.nbt.serialization.internal.EnumTable;
+import ladylib.nbt.serialization.internal.InternPool;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import ladylib.nbt.serialization.internal.Snapshots;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.util.Constants;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.*;
 import java.util.function.Supplier;
 
+import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementType;
 import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementTypeAdapter;
 
-public class MapNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Map, NBTTagList> {
+/**
+ * Serializes maps.
+ * <p>
+ * Maps are written as a list of compounds, each holding a {@value MapBaseAdapter#KEY_TAG} and a
+ * {@value MapBaseAdapter#VALUE_TAG} entry. The value entry is omitted for null values.
+ * </p>
+ * <p>
+ * With compact keys, selected by {@link ladylib.nbt.serialization.CompactNBT} or by creating
+ * the factory with <code>compactKeys</code> set, maps whose keys can be converted to strings
+ * ({@link String}, enums, {@link ResourceLocation} and {@link UUID}) are instead written as a single compound,
+ * using the string form of each key as the entry's name. Compact maps can still be read from the list layout,
+ * and are written in it when they hold null values.
+ * </p>
+ */
+public class MapNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Map, NBTBase> {
+    private final boolean compactKeys;
+
+    public MapNBTTypeAdapterFactory() {
+        this(false);
+    }
+
+    /**
+     * @param compactKeys whether maps with string convertible keys are written as a single compound
+     */
+    public MapNBTTypeAdapterFactory(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
+    @SuppressWarnings("unchecked")
     @Override
-    public NBTTypeAdapter<Map, NBTTagList> create(TypeToken type, boolean allowMutating) {
+    public NBTTypeAdapter<Map, NBTBase> create(TypeToken type, boolean allowMutating) {
         Class<?> rawType = type.getRawType();
         if (!Map.class.isAssignableFrom(rawType)) {
             return null;
         }
         NBTTypeAdapter keyAdapter = getElementTypeAdapter(type, 0);
         NBTTypeAdapter valueAdapter = getElementTypeAdapter(type, 1);
+        Class<?> keyType = TypeToken.get(getElementType(type, 0)).getRawType();
+        KeyCodec keyCodec = compactKeys ? getKeyCodec(keyType) : null;
 
         if (allowMutating) {
-            @SuppressWarnings("unchecked") NBTTypeAdapter<Map, NBTTagList> ret =
-                    new MapNBTTypeAdapterFactory.MapNBTMutatingTypeAdapter<>(keyAdapter, valueAdapter);
+            NBTTypeAdapter<Map, NBTBase> ret;
+            if (keyCodec != null) {
+                ret = new CompactMapNBTMutatingTypeAdapter(keyCodec, keyAdapter, valueAdapter);
+            } else {
+                ret = new MapNBTTypeAdapterFactory.MapNBTMutatingTypeAdapter(keyAdapter, valueAdapter);
+            }
             return ret;
         }
         Supplier<Map> supplier;
-        if (!Modifier.isAbstract(rawType.getModifiers())) {
+        if (Enum.class.isAssignableFrom(keyType) && (rawType == EnumMap.class || Modifier.isAbstract(rawType.getModifiers()) && rawType.isAssignableFrom(EnumMap.class))) {
+            Class enumType = getEnumType(keyType);
+            supplier = () -> new EnumMap(enumType);
+        } else if (!Modifier.isAbstract(rawType.getModifiers())) {
             supplier = ReflectionUtil.createFactory(rawType, "get", Supplier.class);
         } else if (SortedMap.class.isAssignableFrom(rawType)) {
             supplier = TreeMap::new;
         } else {
             supplier = HashMap::new;
         }
-        @SuppressWarnings("unchecked") NBTTypeAdapter<Map, NBTTagList> ret =
-                new MapNBTTypeAdapter(keyAdapter, valueAdapter, supplier);
+        NBTTypeAdapter<Map, NBTBase> ret;
+        if (keyCodec != null) {
+            ret = new CompactMapNBTTypeAdapter(keyCodec, keyAdapter, valueAdapter, supplier);
+        } else {
+            ret = new MapNBTTypeAdapter(keyAdapter, valueAdapter, supplier);
+        }
         return ret;
     }
 
+    /**
+     * @return a codec converting keys of the given type to compound entry names, or null if the type is not supported
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public static KeyCodec<?> getKeyCodec(Class<?> keyType) {
+        if (keyType == String.class) {
+            return StringKeyCodec.INSTANCE;
+        } else if (Enum.class.isAssignableFrom(keyType) && keyType != Enum.class) {
+            return new EnumKeyCodec(getEnumType(keyType));
+        } else if (keyType == ResourceLocation.class) {
+            return ResourceLocationKeyCodec.INSTANCE;
+        } else if (keyType == UUID.class) {
+            return UUIDKeyCodec.INSTANCE;
+        }
+        return null;
+    }
+
+    private static Class<?> getEnumType(Class<?> keyType) {
+        // handle anonymous subclasses
+        return keyType.isEnum() ? keyType : keyType.getSuperclass();
+    }
+
     public abstract static class MapBaseAdapter<K, V> extends AbstractNBTTypeAdapter<Map<K, V>, NBTTagList> {
         protected static final String KEY_TAG = "key";
         protected static final String VALUE_TAG = "value";
+        private static final int[] PAIR_ORDER = new CompoundKeyOrder(KEY_TAG, VALUE_TAG).getOrder(new boolean[]{true, true});
+        private static final int[] KEY_ONLY_ORDER = {0};
         protected final NBTTypeAdapter<K, NBTBase> keyAdapter;
         protected final NBTTypeAdapter<V, NBTBase> valueAdapter;
 
@@ -64,7 +141,7 @@ public class MapNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Map, NBTT
                 for (NBTBase nbtBase : list) {
                     NBTTypeAdapter.castNBT(nbtBase, NBTTagCompound.class).ifPresent(entry -> {
                         K k = keyAdapter.fromNBT(entry.getTag(KEY_TAG));
-                        V v = valueAdapter.fromNBT(entry.getTag(VALUE_TAG));
+                        V v = entry.hasKey(VALUE_TAG) ? valueAdapter.fromNBT(entry.getTag(VALUE_TAG)) : null;
                         value.put(k, v);
                     });
                 }
@@ -72,18 +149,103 @@ public class MapNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Map, NBTT
             return value;
         }
 
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                in.skipValue();
+                return value;
+            }
+            in.beginList();
+            value.clear();
+            while (in.hasNext()) {
+                if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginCompound();
+                K k = null;
+                V v = null;
+                boolean hasKey = false;
+                boolean hasValue = false;
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (!hasKey && KEY_TAG.equals(name)) {
+                        k = keyAdapter.read(in);
+                        hasKey = true;
+                    } else if (!hasValue && VALUE_TAG.equals(name)) {
+                        v = valueAdapter.read(in);
+                        hasValue = true;
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endCompound();
+                // a missing key is handled like an absent tag in the tree path, a missing value is a null value
+                if (!hasKey) {
+                    k = keyAdapter.fromNBT((NBTBase) null);
+                }
+                value.put(k, v);
+            }
+            in.endList();
+            return value;
+        }
+
         @Override
         public NBTTagList toNBT(Map<K, V> value) {
             NBTTagList ret = new NBTTagList();
             value.forEach((k, v) -> {
                 NBTTagCompound pair = new NBTTagCompound();
                 pair.setTag(KEY_TAG, keyAdapter.toNBT(k));
-                pair.setTag(VALUE_TAG, valueAdapter.toNBT(v));
+                if (v != null) {
+                    pair.setTag(VALUE_TAG, valueAdapter.toNBT(v));
+                }
                 ret.appendTag(pair);
             });
             return ret;
         }
+
+        @Override
+        public void write(Map<K, V> value, NBTWriter out) throws IOException {
+            out.beginList(value.size());
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                out.beginCompound();
+                // entries must come in the same order as in the equivalent compound tag
+                for (int index : entry.getValue() == null ? KEY_ONLY_ORDER : PAIR_ORDER) {
+                    if (index == 0) {
+                        out.name(KEY_TAG);
+                        keyAdapter.write(entry.getKey(), out);
+                    } else {
+                        out.name(VALUE_TAG);
+                        valueAdapter.write(entry.getValue(), out);
+                    }
+                }
+                out.endCompound();
+            }
+            out.endList();
+        }
+
+        @Override
+        public long sizeOf(Map<K, V> value) {
+            long size = NBTSizes.LIST_HEADER_SIZE;
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                size += NBTSizes.COMPOUND_FOOTER_SIZE + NBTSizes.sizeOfEntry(KEY_TAG, keyAdapter.sizeOf(entry.getKey()));
+                if (entry.getValue() != null) {
+                    size += NBTSizes.sizeOfEntry(VALUE_TAG, valueAdapter.sizeOf(entry.getValue()));
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public Map<K, V> snapshot(Map<K, V> value) {
+            Map<K, V> ret = Snapshots.emptyCopy(value);
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                ret.put(Snapshots.of(keyAdapter, entry.getKey()), Snapshots.of(valueAdapter, entry.getValue()));
+            }
+            return ret;
+        }
     }
+
     public static class MapNBTMutatingTypeAdapter<K,V> extends MapNBTTypeAdapterFactory.MapBaseAdapter<K,V> implements NBTMutatingTypeAdapter<Map<K,V>, NBTTagList> {
 
         public MapNBTMutatingTypeAdapter(NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter) {
@@ -108,5 +270,302 @@ public class MapNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Map, NBTT
         public Map<K,V> fromNBT(NBTBase list) {
             return super.fromNBT(mapSupplier.get(), list);
         }
+
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public Map<K, V> read(NBTReader in) throws IOException {
+            return super.read(mapSupplier.get(), in);
+        }
+    }
+
+    /**
+     * Base adapter for maps serialized as a single compound, with one entry per map entry.
+     * Maps holding null values are written in the list of pairs layout instead, which keeps them.
+     * Entries with a null key, or with a value that serializes to null, are skipped.
+     */
+    public abstract static class CompactMapBaseAdapter<K, V> extends AbstractNBTTypeAdapter<Map<K, V>, NBTBase> {
+        protected final KeyCodec<K> keyCodec;
+        protected final NBTTypeAdapter<V, NBTBase> valueAdapter;
+        /** Reads maps written in the list of pairs layout */
+        private final MapBaseAdapter<K, V> pairListAdapter;
+        private final boolean streamedValues;
+
+        public CompactMapBaseAdapter(KeyCodec<K> keyCodec, NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter) {
+            this.keyCodec = keyCodec;
+            this.valueAdapter = valueAdapter;
+            this.pairListAdapter = new MapNBTMutatingTypeAdapter<>(keyAdapter, valueAdapter);
+            this.streamedValues = CompoundFieldWriter.overridesWrite(valueAdapter);
+        }
+
+        @Override
+        public NBTBase toNBT(Map<K, V> value) {
+            return toNBT(value, new NBTTagCompound());
+        }
+
+        @Override
+        public NBTBase toNBT(Map<K, V> value, NBTTagCompound ret) {
+            if (hasNullValue(value)) {
+                return pairListAdapter.toNBT(value);
+            }
+            CompoundFieldWriter.clear(ret);
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                K key = entry.getKey();
+                if (key == null) {
+                    LadyLib.LOGGER.warn("Skipping null key in {}", value);
+                    continue;
+                }
+                NBTBase tag = valueAdapter.toNBT(entry.getValue());
+                if (tag != null) {
+                    ret.setTag(keyCodec.toName(key), tag);
+                }
+            }
+            return ret;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void write(Map<K, V> value, NBTWriter out) throws IOException {
+            if (hasNullValue(value)) {
+                pairListAdapter.write(value, out);
+                return;
+            }
+            // entries are replayed into a hash map so that they come in the same order as in the equivalent compound tag
+            Map<String, Object> entries = new HashMap<>();
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                K key = entry.getKey();
+                if (key == null) {
+                    LadyLib.LOGGER.warn("Skipping null key in {}", value);
+                    continue;
+                }
+                V v = entry.getValue();
+                if (streamedValues) {
+                    entries.put(keyCodec.toName(key), v);
+                } else {
+                    NBTBase tag = valueAdapter.toNBT(v);
+                    if (tag != null) {
+                        entries.put(keyCodec.toName(key), new SerializedValue(tag));
+                    }
+                }
+            }
+            out.beginCompound();
+            for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                out.name(entry.getKey());
+                if (entry.getValue() instanceof SerializedValue) {
+                    out.writeTag(((SerializedValue) entry.getValue()).tag);
+                } else {
+                    valueAdapter.write((V) entry.getValue(), out);
+                }
+            }
+            out.endCompound();
+        }
+
+        @Override
+        public long sizeOf(Map<K, V> value) {
+            if (hasNullValue(value)) {
+                return pairListAdapter.sizeOf(value);
+            }
+            long size = NBTSizes.COMPOUND_FOOTER_SIZE;
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                K key = entry.getKey();
+                if (key != null) {
+                    long valueSize = valueAdapter.sizeOf(entry.getValue());
+                    if (valueSize >= 0) {
+                        size += NBTSizes.sizeOfEntry(keyCodec.toName(key), valueSize);
+                    }
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public Map<K, V> snapshot(Map<K, V> value) {
+            // keys that can be entry names are immutable
+            Map<K, V> ret = Snapshots.emptyCopy(value);
+            for (Map.Entry<K, V> entry : value.entrySet()) {
+                ret.put(entry.getKey(), Snapshots.of(valueAdapter, entry.getValue()));
+            }
+            return ret;
+        }
+
+        @Override
+        public Map<K, V> fromNBT(Map<K, V> value, NBTBase nbt) {
+            if (nbt instanceof NBTTagCompound) {
+                NBTTagCompound compound = (NBTTagCompound) nbt;
+                value.clear();
+                for (String name : compound.getKeySet()) {
+                    K key = keyCodec.fromName(name);
+                    if (key == null) {
+                        LadyLib.LOGGER.warn("Skipping unknown map key {}", name);
+                    } else {
+                        value.put(key, valueAdapter.fromNBT(compound.getTag(name)));
+                    }
+                }
+            } else if (nbt instanceof NBTTagList) {
+                pairListAdapter.fromNBT(value, nbt);
+            }
+            return value;
+        }
+
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            int type = in.peek();
+            if (type == Constants.NBT.TAG_LIST) {
+                return pairListAdapter.read(value, in);
+            } else if (type != Constants.NBT.TAG_COMPOUND) {
+                in.skipValue();
+                return value;
+            }
+            in.beginCompound();
+            value.clear();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                K key = keyCodec.fromName(name);
+                if (key == null) {
+                    LadyLib.LOGGER.warn("Skipping unknown map key {}", name);
+                    in.skipValue();
+                } else {
+                    value.put(key, valueAdapter.read(in));
+                }
+            }
+            in.endCompound();
+            return value;
+        }
+
+        private static boolean hasNullValue(Map<?, ?> value) {
+            // not containsValue, which throws on maps rejecting null values
+            for (Object v : value.values()) {
+                if (v == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static final class SerializedValue {
+            private final NBTBase tag;
+
+            private SerializedValue(NBTBase tag) {
+                this.tag = tag;
+            }
+        }
+    }
+
+    public static class CompactMapNBTMutatingTypeAdapter<K, V> extends CompactMapBaseAdapter<K, V> implements NBTMutatingTypeAdapter<Map<K, V>, NBTBase> {
+
+        public CompactMapNBTMutatingTypeAdapter(KeyCodec<K> keyCodec, NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter) {
+            super(keyCodec, keyAdapter, valueAdapter);
+        }
+    }
+
+    public static class CompactMapNBTTypeAdapter<K, V> extends CompactMapBaseAdapter<K, V> {
+        private final Supplier<Map<K, V>> mapSupplier;
+
+        public CompactMapNBTTypeAdapter(KeyCodec<K> keyCodec, NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter, Supplier<Map<K, V>> mapSupplier) {
+            super(keyCodec, keyAdapter, valueAdapter);
+            this.mapSupplier = mapSupplier;
+        }
+
+        @Override
+        public Map<K, V> fromNBT(Map<K, V> value, NBTBase nbt) {
+            return fromNBT(nbt);
+        }
+
+        @Override
+        public Map<K, V> fromNBT(NBTBase nbt) {
+            return super.fromNBT(mapSupplier.get(), nbt);
+        }
+
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public Map<K, V> read(NBTReader in) throws IOException {
+            return super.read(mapSupplier.get(), in);
+        }
+    }
+
+    /**
+     * Converts map keys to and from the names of compound entries
+     */
+    public interface KeyCodec<K> {
+        String toName(K key);
+
+        /**
+         * @return the key corresponding to the given name, or null if it does not designate a valid key
+         */
+        @Nullable
+        K fromName(String name);
+    }
+
+    public enum StringKeyCodec implements KeyCodec<String> {
+        INSTANCE;
+
+        @Override
+        public String toName(String key) {
+            return key;
+        }
+
+        @Override
+        public String fromName(String name) {
+            return InternPool.STRINGS.intern(name);
+        }
+    }
+
+    public static class EnumKeyCodec<E extends Enum<E>> implements KeyCodec<E> {
+        private final EnumTable<E> constants;
+
+        public EnumKeyCodec(Class<E> enumClass) {
+            this.constants = EnumTable.get(enumClass);
+        }
+
+        @Override
+        public String toName(E key) {
+            return key.name();
+        }
+
+        @Nullable
+        @Override
+        public E fromName(String name) {
+            return constants.byName(name);
+        }
+    }
+
+    public enum ResourceLocationKeyCodec implements KeyCodec<ResourceLocation> {
+        INSTANCE;
+
+        @Override
+        public String toName(ResourceLocation key) {
+            return key.toString();
+        }
+
+        @Override
+        public ResourceLocation fromName(String name) {
+            return InternPool.RESOURCE_LOCATIONS.intern(new ResourceLocation(name));
+        }
+    }
+
+    public enum UUIDKeyCodec implements KeyCodec<UUID> {
+        INSTANCE;
+
+        @Override
+        public String toName(UUID key) {
+            return key.toString();
+        }
+
+        @Nullable
+        @Override
+        public UUID fromName(String name) {
+            try {
+                return UUID.fromString(name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
     }
 }
@@ -5,6 +5,7 @@ import ladylib.misc.ReflectionUtil;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
 import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.internal.NBTSizes;
 import net.minecraft.nbt.NBTBase;
 
 import javax.annotation.Nullable;
@@ -39,6 +40,17 @@ public class NBTSelfTypeAdapterFactory implements NBTTypeAdapterFactory<NBTBase,
             return value;
         }
 
+        @Override
+        public long sizeOf(NBT value) {
+            return NBTSizes.sizeOfPayload(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public NBT snapshot(NBT value) {
+            return (NBT) value.copy();
+        }
+
         @SuppressWarnings("unchecked")
         @Override
         public NBT fromNBT(NBTBase nbt) {
@@ -0,0 +1,270 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.QuantizedNBT;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
+
+import java.io.IOException;
+
+/**
+ * Serializes floating point values and arrays as quantized integers, as selected by {@link QuantizedNBT}.
+ * <p>
+ * Other tags are handed to the adapter that would normally handle the value, so that
+ * data written before the annotation was added can still be read.
+ * </p>
+ */
+public class QuantizedNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Object, NBTBase> {
+    private final Quantizer quantizer;
+
+    public QuantizedNBTTypeAdapterFactory(QuantizedNBT annotation) {
+        this(annotation.min(), annotation.max(), annotation.bits());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the range is empty or if the number of bits is not between 1 and 32
+     */
+    public QuantizedNBTTypeAdapterFactory(double min, double max, int bits) {
+        if (!(max > min) || Double.isInfinite(max - min)) {
+            throw new IllegalArgumentException("Invalid quantization range [" + min + ", " + max + "]");
+        }
+        if (bits < 1 || bits > Integer.SIZE) {
+            throw new IllegalArgumentException("Quantized values must have between 1 and 32 bits, got " + bits);
+        }
+        this.quantizer = new Quantizer(min, max, bits);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public NBTTypeAdapter<Object, NBTBase> create(TypeToken type, boolean allowMutating) {
+        Class<?> rawType = type.getRawType();
+        NBTTypeAdapter ret;
+        if (rawType == float.class || rawType == Float.class) {
+            ret = new QuantizedAdapter<>(type, quantizer, true, TagAdapters.getNBTAdapter(type, false));
+        } else if (rawType == double.class || rawType == Double.class) {
+            ret = new QuantizedAdapter<>(type, quantizer, false, TagAdapters.getNBTAdapter(type, false));
+        } else if (rawType == float[].class || rawType == double[].class) {
+            ret = new QuantizedArrayAdapter(type, quantizer, rawType == float[].class, TagAdapters.getNBTAdapter(type, false));
+        } else {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Maps a range of values to unsigned integers of a given number of bits
+     */
+    static final class Quantizer {
+        private final double min;
+        private final double max;
+        private final long steps;
+        /**
+         * The number of bytes taken by a quantized value: 1, 2 or 4
+         */
+        final int width;
+
+        Quantizer(double min, double max, int bits) {
+            this.min = min;
+            this.max = max;
+            this.steps = (1L << bits) - 1;
+            this.width = bits <= Byte.SIZE ? 1 : bits <= Short.SIZE ? 2 : 4;
+        }
+
+        long quantize(double value) {
+            if (Double.isNaN(value)) {
+                return 0;
+            }
+            double ratio = (Math.min(Math.max(value, min), max) - min) / (max - min);
+            return Math.round(ratio * steps);
+        }
+
+        double dequantize(long quantized) {
+            return min + (max - min) * Math.min(quantized, steps) / steps;
+        }
+
+        /**
+         * @return the id of the tag holding a single quantized value
+         */
+        int getTagId() {
+            return width == 1 ? Constants.NBT.TAG_BYTE : width == 2 ? Constants.NBT.TAG_SHORT : Constants.NBT.TAG_INT;
+        }
+    }
+
+    public static class QuantizedAdapter<T extends Number> extends AbstractNBTTypeAdapter<T, NBTBase> {
+        private final Quantizer quantizer;
+        private final boolean isFloat;
+        private final NBTTypeAdapter<T, NBTBase> fallback;
+
+        QuantizedAdapter(TypeToken<T> typeToken, Quantizer quantizer, boolean isFloat, NBTTypeAdapter<T, NBTBase> fallback) {
+            super(typeToken);
+            this.quantizer = quantizer;
+            this.isFloat = isFloat;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public NBTBase toNBT(T value) {
+            long quantized = quantizer.quantize(value.doubleValue());
+            switch (quantizer.width) {
+                case 1:
+                    return new NBTTagByte((byte) quantized);
+                case 2:
+                    return new NBTTagShort((short) quantized);
+                default:
+                    return new NBTTagInt((int) quantized);
+            }
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            long quantized = quantizer.quantize(value.doubleValue());
+            switch (quantizer.width) {
+                case 1:
+                    out.writeByte((byte) quantized);
+                    break;
+                case 2:
+                    out.writeShort((short) quantized);
+                    break;
+                default:
+                    out.writeInt((int) quantized);
+            }
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            return quantizer.width;
+        }
+
+        @Override
+        public T snapshot(T value) {
+            return value;
+        }
+
+        @Override
+        public T fromNBT(NBTBase nbt) {
+            if (nbt instanceof NBTPrimitive && nbt.getId() == quantizer.getTagId()) {
+                return dequantize(((NBTPrimitive) nbt).getLong());
+            }
+            return fallback.fromNBT(nbt);
+        }
+
+        @Override
+        public T read(NBTReader in) throws IOException {
+            if (in.peek() != quantizer.getTagId()) {
+                return fallback.read(in);
+            }
+            switch (quantizer.width) {
+                case 1:
+                    return dequantize(in.readByte());
+                case 2:
+                    return dequantize(in.readShort());
+                default:
+                    return dequantize(in.readInt());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T dequantize(long stored) {
+            // quantized values are unsigned
+            double value = quantizer.dequantize(stored & (-1L >>> (Long.SIZE - quantizer.width * Byte.SIZE)));
+            return (T) (isFloat ? (Number) (float) value : (Number) value);
+        }
+    }
+
+    /**
+     * Packs quantized values in a byte array, big endian, using as many bytes per value as single values take
+     */
+    public static class QuantizedArrayAdapter extends AbstractNBTTypeAdapter<Object, NBTBase> {
+        private final Quantizer quantizer;
+        private final boolean isFloat;
+        private final NBTTypeAdapter<Object, NBTBase> fallback;
+
+        QuantizedArrayAdapter(TypeToken<Object> typeToken, Quantizer quantizer, boolean isFloat, NBTTypeAdapter<Object, NBTBase> fallback) {
+            super(typeToken);
+            this.quantizer = quantizer;
+            this.isFloat = isFloat;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public NBTBase toNBT(Object value) {
+            return new NBTTagByteArray(pack(value));
+        }
+
+        @Override
+        public void write(Object value, NBTWriter out) throws IOException {
+            out.writeByteArray(pack(value));
+        }
+
+        @Override
+        public long sizeOf(Object value) {
+            return 4 + (long) quantizer.width * length(value);
+        }
+
+        @Override
+        public Object snapshot(Object value) {
+            return fallback.snapshot(value);
+        }
+
+        @Override
+        public Object fromNBT(NBTBase nbt) {
+            if (nbt instanceof NBTTagByteArray) {
+                return unpack(((NBTTagByteArray) nbt).getByteArray());
+            }
+            return fallback.fromNBT(nbt);
+        }
+
+        @Override
+        public Object read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return unpack(in.readByteArray());
+            }
+            return fallback.read(in);
+        }
+
+        private int length(Object array) {
+            return isFloat ? ((float[]) array).length : ((double[]) array).length;
+        }
+
+        private byte[] pack(Object array) {
+            int length = length(array);
+            int width = quantizer.width;
+            byte[] ret = new byte[width * length];
+            for (int i = 0; i < length; i++) {
+                long quantized = quantizer.quantize(isFloat ? ((float[]) array)[i] : ((double[]) array)[i]);
+                for (int b = 0; b < width; b++) {
+                    ret[i * width + b] = (byte) (quantized >>> (Byte.SIZE * (width - 1 - b)));
+                }
+            }
+            return ret;
+        }
+
+        private Object unpack(byte[] data) {
+            int width = quantizer.width;
+            if (data.length % width != 0) {
+                throw new NBTDeserializationException("Quantized array of " + data.length + " bytes does not hold " + width + " bytes values");
+            }
+            int length = data.length / width;
+            Object ret = isFloat ? new float[length] : new double[length];
+            for (int i = 0; i < length; i++) {
+                long quantized = 0;
+                for (int b = 0; b < width; b++) {
+                    quantized = quantized << Byte.SIZE | data[i * width + b] & 0xFF;
+                }
+                double value = quantizer.dequantize(quantized);
+                if (isFloat) {
+                    ((float[]) ret)[i] = (float) value;
+                } else {
+                    ((double[]) ret)[i] = value;
+                }
+            }
+            return ret;
+        }
+    }
+}
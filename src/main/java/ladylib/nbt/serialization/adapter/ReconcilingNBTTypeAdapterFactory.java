@@ -0,0 +1,319 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.ReconcileNBT;
+import ladylib.nbt.serialization.SharedReferences;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementType;
+import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementTypeAdapter;
+
+/**
+ * Creates adapters updating the existing elements of lists and maps in place, as selected by {@link ReconcileNBT}.
+ * <p>
+ * The created adapters write the same data as the regular {@link CollectionNBTTypeAdapterFactory collection}
+ * and {@link MapNBTTypeAdapterFactory map} adapters, and only differ in how they deserialize into an existing
+ * collection. Collections that are not lists, as well as maps stored in a layout other than their own,
+ * are deserialized by clearing them like the regular adapters do.
+ * </p>
+ */
+public class ReconcilingNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Object, NBTBase> {
+    public static final ReconcilingNBTTypeAdapterFactory INSTANCE = new ReconcilingNBTTypeAdapterFactory(false);
+    /** Reconciles maps written with compact keys, for fields in the {@link ladylib.nbt.serialization.CompactNBT compact profile} */
+    public static final ReconcilingNBTTypeAdapterFactory COMPACT_MAPS = new ReconcilingNBTTypeAdapterFactory(true);
+
+    private final boolean compactMaps;
+
+    private ReconcilingNBTTypeAdapterFactory(boolean compactMaps) {
+        this.compactMaps = compactMaps;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public NBTTypeAdapter<Object, NBTBase> create(TypeToken type, boolean allowMutating) {
+        if (!allowMutating) {
+            return null;
+        }
+        // only replace the adapters whose format is known, eg. not the packed fastutil collections
+        NBTTypeAdapter regular = TagAdapters.getNBTAdapter(type, true);
+        NBTTypeAdapter ret;
+        if (regular instanceof CollectionNBTTypeAdapterFactory.CollectionNBTMutatingTypeAdapter && List.class.isAssignableFrom(type.getRawType())) {
+            NBTMutatingTypeAdapter elementUpdater = getUpdater(getElementType(type, 0));
+            ret = elementUpdater == null ? null : new ReconcilingListAdapter(getElementTypeAdapter(type, 0), elementUpdater);
+        } else if (regular instanceof MapNBTTypeAdapterFactory.MapNBTMutatingTypeAdapter || regular instanceof MapNBTTypeAdapterFactory.CompactMapNBTMutatingTypeAdapter) {
+            NBTMutatingTypeAdapter valueUpdater = getUpdater(getElementType(type, 1));
+            boolean compact = compactMaps || regular instanceof MapNBTTypeAdapterFactory.CompactMapNBTMutatingTypeAdapter;
+            MapNBTTypeAdapterFactory.KeyCodec keyCodec = compact ? MapNBTTypeAdapterFactory.getKeyCodec(TypeToken.get(getElementType(type, 0)).getRawType()) : null;
+            if (valueUpdater == null) {
+                ret = null;
+            } else if (keyCodec != null) {
+                ret = new ReconcilingCompactMapAdapter(keyCodec, getElementTypeAdapter(type, 0), getElementTypeAdapter(type, 1), valueUpdater);
+            } else {
+                ret = new ReconcilingMapAdapter(getElementTypeAdapter(type, 0), getElementTypeAdapter(type, 1), valueUpdater);
+            }
+        } else if (!(regular instanceof NBTMutatingTypeAdapter)) {
+            // the adapter of a recursive collection is still being built, its elements are not reconciled
+            ret = TagAdapters.getMutatingAdapter(type);
+        } else {
+            ret = null;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the adapter updating existing elements of the given type, or null if they cannot be updated in place
+     */
+    @Nullable
+    private static NBTMutatingTypeAdapter getUpdater(Type elementType) {
+        TypeToken<?> token = TypeToken.get(elementType);
+        if (token.getRawType().isAnnotationPresent(SharedReferences.class)) {
+            return null;
+        }
+        return TagAdapters.getMutatingAdapter(token);
+    }
+
+    /**
+     * @return the existing element updated with the given tag, or a new element if there is no existing one
+     */
+    private static <E> E reconcile(@Nullable E existing, @Nullable NBTBase nbt, NBTTypeAdapter<E, NBTBase> adapter, NBTMutatingTypeAdapter<E, NBTBase> updater) {
+        return existing == null ? adapter.fromNBT(nbt) : updater.fromNBT(existing, nbt);
+    }
+
+    private static <E> E reconcile(@Nullable E existing, NBTReader in, NBTTypeAdapter<E, NBTBase> adapter, NBTMutatingTypeAdapter<E, NBTBase> updater) throws IOException {
+        return existing == null ? adapter.read(in) : updater.read(existing, in);
+    }
+
+    /**
+     * Matches list elements by index
+     */
+    public static class ReconcilingListAdapter<E> extends CollectionNBTTypeAdapterFactory.CollectionNBTMutatingTypeAdapter<E> {
+        private final NBTMutatingTypeAdapter<E, NBTBase> elementUpdater;
+
+        public ReconcilingListAdapter(NBTTypeAdapter<E, NBTBase> elementAdapter, NBTMutatingTypeAdapter<E, NBTBase> elementUpdater) {
+            super(elementAdapter);
+            this.elementUpdater = elementUpdater;
+        }
+
+        @Override
+        public Collection<E> fromNBT(Collection<E> value, NBTBase nbt) {
+            if (!(value instanceof List) || !(nbt instanceof NBTTagList)) {
+                return super.fromNBT(value, nbt);
+            }
+            List<E> list = (List<E>) value;
+            ListIterator<E> it = list.listIterator();
+            int count = 0;
+            for (NBTBase tag : (NBTTagList) nbt) {
+                if (it.hasNext()) {
+                    E existing = it.next();
+                    E updated = reconcile(existing, tag, elementAdapter, elementUpdater);
+                    if (updated != existing) {
+                        it.set(updated);
+                    }
+                } else {
+                    it.add(elementAdapter.fromNBT(tag));
+                }
+                count++;
+            }
+            trim(list, count);
+            return value;
+        }
+
+        @Override
+        public Collection<E> read(Collection<E> value, NBTReader in) throws IOException {
+            if (!(value instanceof List) || in.peek() != Constants.NBT.TAG_LIST) {
+                return super.read(value, in);
+            }
+            List<E> list = (List<E>) value;
+            ListIterator<E> it = list.listIterator();
+            int count = 0;
+            in.beginList();
+            while (in.hasNext()) {
+                if (it.hasNext()) {
+                    E existing = it.next();
+                    E updated = reconcile(existing, in, elementAdapter, elementUpdater);
+                    if (updated != existing) {
+                        it.set(updated);
+                    }
+                } else {
+                    it.add(elementAdapter.read(in));
+                }
+                count++;
+            }
+            in.endList();
+            trim(list, count);
+            return value;
+        }
+
+        private static void trim(List<?> list, int size) {
+            if (list.size() > size) {
+                list.subList(size, list.size()).clear();
+            }
+        }
+    }
+
+    /**
+     * Matches the entries of maps stored as lists of pairs by key
+     */
+    public static class ReconcilingMapAdapter<K, V> extends MapNBTTypeAdapterFactory.MapNBTMutatingTypeAdapter<K, V> {
+        private final NBTMutatingTypeAdapter<V, NBTBase> valueUpdater;
+
+        public ReconcilingMapAdapter(NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter, NBTMutatingTypeAdapter<V, NBTBase> valueUpdater) {
+            super(keyAdapter, valueAdapter);
+            this.valueUpdater = valueUpdater;
+        }
+
+        @Override
+        public Map<K, V> fromNBT(Map<K, V> value, NBTBase nbt) {
+            if (!(nbt instanceof NBTTagList)) {
+                return super.fromNBT(value, nbt);
+            }
+            Set<K> seen = new HashSet<>();
+            for (NBTBase nbtBase : (NBTTagList) nbt) {
+                if (nbtBase instanceof NBTTagCompound) {
+                    NBTTagCompound entry = (NBTTagCompound) nbtBase;
+                    K k = keyAdapter.fromNBT(entry.getTag(KEY_TAG));
+                    put(value, k, reconcile(value.get(k), entry.getTag(VALUE_TAG), valueAdapter, valueUpdater));
+                    seen.add(k);
+                }
+            }
+            retain(value, seen);
+            return value;
+        }
+
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_LIST) {
+                return super.read(value, in);
+            }
+            Set<K> seen = new HashSet<>();
+            in.beginList();
+            while (in.hasNext()) {
+                if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginCompound();
+                K k = null;
+                V v = null;
+                // the value may come before the key, in which case it is materialized until the key is known
+                NBTBase valueTag = null;
+                boolean hasKey = false;
+                boolean hasValue = false;
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (!hasKey && KEY_TAG.equals(name)) {
+                        k = keyAdapter.read(in);
+                        hasKey = true;
+                    } else if (!hasValue && VALUE_TAG.equals(name)) {
+                        if (hasKey) {
+                            v = reconcile(value.get(k), in, valueAdapter, valueUpdater);
+                        } else {
+                            valueTag = in.readTag();
+                        }
+                        hasValue = true;
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endCompound();
+                // missing entries are handled like absent tags in the tree path
+                if (!hasKey) {
+                    k = keyAdapter.fromNBT((NBTBase) null);
+                }
+                if (!hasValue || valueTag != null) {
+                    v = reconcile(value.get(k), valueTag, valueAdapter, valueUpdater);
+                }
+                put(value, k, v);
+                seen.add(k);
+            }
+            in.endList();
+            retain(value, seen);
+            return value;
+        }
+    }
+
+    /**
+     * Matches the entries of maps stored as a single compound by key
+     */
+    public static class ReconcilingCompactMapAdapter<K, V> extends MapNBTTypeAdapterFactory.CompactMapNBTMutatingTypeAdapter<K, V> {
+        private final NBTMutatingTypeAdapter<V, NBTBase> valueUpdater;
+
+        public ReconcilingCompactMapAdapter(MapNBTTypeAdapterFactory.KeyCodec<K> keyCodec, NBTTypeAdapter<K, NBTBase> keyAdapter, NBTTypeAdapter<V, NBTBase> valueAdapter, NBTMutatingTypeAdapter<V, NBTBase> valueUpdater) {
+            super(keyCodec, keyAdapter, valueAdapter);
+            this.valueUpdater = valueUpdater;
+        }
+
+        @Override
+        public Map<K, V> fromNBT(Map<K, V> value, NBTBase nbt) {
+            if (!(nbt instanceof NBTTagCompound)) {
+                return super.fromNBT(value, nbt);
+            }
+            NBTTagCompound compound = (NBTTagCompound) nbt;
+            Set<K> seen = new HashSet<>();
+            for (String name : compound.getKeySet()) {
+                K key = keyCodec.fromName(name);
+                if (key == null) {
+                    LadyLib.LOGGER.warn("Skipping unknown map key {}", name);
+                } else {
+                    put(value, key, reconcile(value.get(key), compound.getTag(name), valueAdapter, valueUpdater));
+                    seen.add(key);
+                }
+            }
+            retain(value, seen);
+            return value;
+        }
+
+        @Override
+        public Map<K, V> read(Map<K, V> value, NBTReader in) throws IOException {
+            if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+                return super.read(value, in);
+            }
+            Set<K> seen = new HashSet<>();
+            in.beginCompound();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                K key = keyCodec.fromName(name);
+                if (key == null) {
+                    LadyLib.LOGGER.warn("Skipping unknown map key {}", name);
+                    in.skipValue();
+                } else {
+                    put(value, key, reconcile(value.get(key), in, valueAdapter, valueUpdater));
+                    seen.add(key);
+                }
+            }
+            in.endCompound();
+            retain(value, seen);
+            return value;
+        }
+    }
+
+    private static <K, V> void put(Map<K, V> map, K key, V value) {
+        // updating an existing value in place does not need to touch the map
+        if (map.get(key) != value || !map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Removes the entries of the map that were not found in the data
+     */
+    private static void retain(Map<?, ?> map, Set<?> keys) {
+        if (map.size() > keys.size()) {
+            map.keySet().retainAll(keys);
+        }
+    }
+}
@@ -4,19 +4,29 @@ import com.google.gson.reflect.TypeToken;
 import ladylib.LadyLib;
 import ladylib.misc.ReflectionUtil;
 import ladylib.nbt.serialization.*;
+import ladylib.nbt.serialization.internal.BooleanFlags;
+import ladylib.nbt.serialization.internal.CompoundFieldReader;
+import ladylib.nbt.serialization.internal.CompoundFieldWriter;
+import ladylib.nbt.serialization.internal.FieldCopier;
+import ladylib.nbt.serialization.internal.NBTAdapterGenerator;
+import ladylib.nbt.serialization.internal.ReferenceGraph;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.util.Constants;
 import org.apache.logging.log4j.message.FormattedMessage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object, NBTTagCompound> {
     public static final ReflectiveNBTAdapterFactory INSTANCE = new ReflectiveNBTAdapterFactory();
@@ -31,50 +41,315 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
     @SuppressWarnings("unchecked")
     public NBTTypeAdapter<Object, NBTTagCompound> create(TypeToken type, boolean allowMutating) {
         try {
-            MutatingReflectiveNBTAdapter<Object> ret = new MutatingReflectiveNBTAdapter<>(type.getRawType());
+            NBTMutatingTypeAdapter<Object, NBTTagCompound> ret = createMutating(type.getRawType());
             if (!allowMutating) {
                 return new ReflectiveNBTAdapter<>(type, ret);
             }
+            if (type.getRawType().isAnnotationPresent(SharedReferences.class)) {
+                return new SharedMutatingNBTAdapter<>(type, ret);
+            }
             return ret;
         } catch (NoSuchMethodException | IllegalAccessException e) {
             throw new ReflectionUtil.UnableToGetFactoryException(e);
         }
     }
 
-    public static class ReflectiveNBTAdapter<T> implements NBTTypeAdapter<T, NBTTagCompound> {
-        private final MutatingReflectiveNBTAdapter<T> delegate;
+    /**
+     * Creates a mutating adapter for the given class, using a generated adapter if possible
+     * and falling back to a {@link MutatingReflectiveNBTAdapter} otherwise.
+     * Classes with {@link CompactNBT packed booleans} always use reflection.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> NBTMutatingTypeAdapter<T, NBTTagCompound> createMutating(Class<?> clazz) throws IllegalAccessException {
+        if (!BooleanFlags.hasPackedFields(clazz)) {
+            NBTMutatingTypeAdapter<T, NBTTagCompound> generated = (NBTMutatingTypeAdapter<T, NBTTagCompound>) NBTAdapterGenerator.generate(clazz);
+            if (generated != null) {
+                return generated;
+            }
+        }
+        return new MutatingReflectiveNBTAdapter<>(clazz);
+    }
+
+    public static class ReflectiveNBTAdapter<T> implements NBTTypeAdapter<T, NBTTagCompound>, NBTDeltaTypeAdapter<T> {
+        private final NBTMutatingTypeAdapter<T, NBTTagCompound> delegate;
         private final MethodHandle constructor;
         private final TypeToken<T> type;
+        /** Whether instances are tracked in the {@link ReferenceGraph} */
+        private final boolean shared;
 
-        public ReflectiveNBTAdapter(TypeToken<T> type, MutatingReflectiveNBTAdapter<T> delegate) throws NoSuchMethodException, IllegalAccessException {
+        public ReflectiveNBTAdapter(TypeToken<T> type, NBTMutatingTypeAdapter<T, NBTTagCompound> delegate) throws NoSuchMethodException, IllegalAccessException {
             this.delegate = delegate;
             Class<? super T> tClass = type.getRawType();
             constructor = ReflectionUtil.getTrustedLookup(tClass).findConstructor(tClass, MethodType.methodType(void.class));
             this.type = type;
+            this.shared = tClass.isAnnotationPresent(SharedReferences.class);
+            if (shared) {
+                ReferenceGraph.markInUse();
+            }
         }
 
         @Override
         public NBTTagCompound toNBT(T value) {
-            return delegate.toNBT(value);
+            // null is not an instance, it must not get an id
+            if (!shared || value == null) {
+                return delegate.toNBT(value);
+            }
+            try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                ReferenceGraph graph = Objects.requireNonNull(ReferenceGraph.current());
+                int id = graph.getId(value);
+                if (id >= 0) {
+                    return ReferenceGraph.createReference(id);
+                }
+                // register before writing the fields, so that cycles end up as references
+                id = graph.register(value);
+                NBTTagCompound ret = delegate.toNBT(value);
+                ret.setInteger(SharedReferences.ID_KEY, id);
+                return ret;
+            }
+        }
+
+        @Override
+        public NBTBase toNBT(T value, NBTTagCompound target) {
+            return shared ? toNBT(value) : delegate.toNBT(value, target);
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            if (shared) {
+                // ids are only handled by the tree path
+                out.writeTag(toNBT(value));
+            } else {
+                delegate.write(value, out);
+            }
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            if (!shared || value == null) {
+                return delegate.sizeOf(value);
+            }
+            try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                ReferenceGraph graph = Objects.requireNonNull(ReferenceGraph.current());
+                if (graph.getId(value) >= 0) {
+                    return ReferenceGraph.sizeOfReference();
+                }
+                graph.register(value);
+                return delegate.sizeOf(value) + ReferenceGraph.sizeOfId(SharedReferences.ID_KEY);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T snapshot(T value) {
+            if (!shared || value == null) {
+                return delegate.snapshot(value);
+            }
+            try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                ReferenceGraph graph = Objects.requireNonNull(ReferenceGraph.current());
+                int id = graph.getId(value);
+                if (id >= 0) {
+                    return (T) graph.getInstance(id);
+                }
+                FieldCopier copier = FieldCopier.get(type.getRawType());
+                T ret = (T) copier.newInstance();
+                // register before copying the fields, so that cycles resolve to the copy
+                graph.register(graph.register(value), ret);
+                copier.copyFields(value, ret);
+                return ret;
+            }
         }
 
         @Override
         public T fromNBT(NBTBase nbtTagCompound) {
+            if (shared) {
+                try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                    return fromNBT(nbtTagCompound, Objects.requireNonNull(ReferenceGraph.current()));
+                }
+            }
             try {
                 @SuppressWarnings("unchecked") T ret = (T) constructor.invoke();
                 return delegate.fromNBT(ret, nbtTagCompound);
             } catch (Throwable throwable) {
-                return TagAdapters.getDefaultValue(type).orElseThrow(() -> new NBTDeserializationException("Unable to deserialize object of type " + type + " and no default value exists", throwable));
+                return getDefaultValue(throwable);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T fromNBT(NBTBase nbt, ReferenceGraph graph) {
+            try {
+                NBTTagCompound compound = nbt instanceof NBTTagCompound ? (NBTTagCompound) nbt : null;
+                if (compound != null && compound.hasKey(SharedReferences.REF_KEY, Constants.NBT.TAG_INT)) {
+                    int id = compound.getInteger(SharedReferences.REF_KEY);
+                    T ret = (T) graph.getInstance(id);
+                    if (ret == null) {
+                        // the definition comes later in the read order, it will fill this instance
+                        ret = (T) constructor.invoke();
+                        graph.registerForward(id, ret);
+                    }
+                    return ret;
+                }
+                T ret = null;
+                if (compound != null && compound.hasKey(SharedReferences.ID_KEY, Constants.NBT.TAG_INT)) {
+                    int id = compound.getInteger(SharedReferences.ID_KEY);
+                    ret = (T) graph.resolveForward(id);
+                    if (ret == null) {
+                        ret = (T) constructor.invoke();
+                        // register before reading the fields, so that cycles resolve to this instance
+                        graph.register(id, ret);
+                    }
+                }
+                if (ret == null) {
+                    ret = (T) constructor.invoke();
+                }
+                return delegate.fromNBT(ret, nbt);
+            } catch (Throwable throwable) {
+                return getDefaultValue(throwable);
+            }
+        }
+
+        @Override
+        public T read(T value, NBTReader in) throws IOException {
+            return read(in);
+        }
+
+        @Override
+        public T read(NBTReader in) throws IOException {
+            if (shared) {
+                return fromNBT(in.readTag());
+            }
+            T ret;
+            try {
+                @SuppressWarnings("unchecked") T instance = (T) constructor.invoke();
+                ret = instance;
+            } catch (Throwable throwable) {
+                in.skipValue();
+                return getDefaultValue(throwable);
+            }
+            return delegate.read(ret, in);
+        }
+
+        private T getDefaultValue(Throwable cause) {
+            T ret = TagAdapters.getDefaultValue(type).orElseThrow(() -> new NBTDeserializationException("Unable to deserialize object of type " + type + " and no default value exists", cause));
+            NBTMetrics.recordDefaultFallback(type);
+            return ret;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public NBTTagCompound toPatchNBT(T value, DirtyFields dirtyFields) {
+            return ((NBTDeltaTypeAdapter<T>) delegate).toPatchNBT(value, dirtyFields);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T applyPatch(T value, NBTTagCompound patch) {
+            return ((NBTDeltaTypeAdapter<T>) delegate).applyPatch(value, patch);
+        }
+    }
+
+    /**
+     * Updates {@link SharedReferences shared} objects in place, for operations whose root is a shared object.
+     * The updated object is bound to the id of the read compound, so that references to the root resolve to it.
+     */
+    public static class SharedMutatingNBTAdapter<T> implements NBTMutatingTypeAdapter<T, NBTTagCompound>, NBTDeltaTypeAdapter<T> {
+        private final NBTMutatingTypeAdapter<T, NBTTagCompound> delegate;
+        /** Writes are the same as for shared objects found in fields */
+        private final ReflectiveNBTAdapter<T> writer;
+
+        public SharedMutatingNBTAdapter(TypeToken<T> type, NBTMutatingTypeAdapter<T, NBTTagCompound> delegate) throws NoSuchMethodException, IllegalAccessException {
+            this.delegate = delegate;
+            this.writer = new ReflectiveNBTAdapter<>(type, delegate);
+        }
+
+        @Override
+        public NBTTagCompound toNBT(T value) {
+            return writer.toNBT(value);
+        }
+
+        @Override
+        public NBTBase toNBT(T value, NBTTagCompound target) {
+            return writer.toNBT(value, target);
+        }
+
+        @Override
+        public void write(T value, NBTWriter out) throws IOException {
+            writer.write(value, out);
+        }
+
+        @Override
+        public long sizeOf(T value) {
+            return writer.sizeOf(value);
+        }
+
+        @Override
+        public T snapshot(T value) {
+            return writer.snapshot(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T fromNBT(T value, NBTBase nbt) {
+            try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                ReferenceGraph graph = Objects.requireNonNull(ReferenceGraph.current());
+                NBTTagCompound compound = nbt instanceof NBTTagCompound ? (NBTTagCompound) nbt : null;
+                if (compound != null && compound.hasKey(SharedReferences.REF_KEY, Constants.NBT.TAG_INT)) {
+                    int id = compound.getInteger(SharedReferences.REF_KEY);
+                    T ret = (T) graph.getInstance(id);
+                    if (ret == null) {
+                        graph.registerForward(id, value);
+                        ret = value;
+                    }
+                    return ret;
+                }
+                if (compound != null && compound.hasKey(SharedReferences.ID_KEY, Constants.NBT.TAG_INT)) {
+                    int id = compound.getInteger(SharedReferences.ID_KEY);
+                    T placeholder = (T) graph.resolveForward(id);
+                    if (placeholder != null) {
+                        // already referenced, the placeholder is the instance other objects point to
+                        value = placeholder;
+                    } else {
+                        graph.register(id, value);
+                    }
+                }
+                return delegate.fromNBT(value, nbt);
             }
         }
+
+        @Override
+        public T read(T value, NBTReader in) throws IOException {
+            // ids are only handled by the tree path
+            return fromNBT(value, in.readTag());
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public NBTTagCompound toPatchNBT(T value, DirtyFields dirtyFields) {
+            return ((NBTDeltaTypeAdapter<T>) delegate).toPatchNBT(value, dirtyFields);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T applyPatch(T value, NBTTagCompound patch) {
+            return ((NBTDeltaTypeAdapter<T>) delegate).applyPatch(value, patch);
+        }
     }
 
-    public static class MutatingReflectiveNBTAdapter<T> implements NBTMutatingTypeAdapter<T, NBTTagCompound> {
+    public static class MutatingReflectiveNBTAdapter<T> implements NBTMutatingTypeAdapter<T, NBTTagCompound>, NBTDeltaTypeAdapter<T> {
+        /** Written fields come first, followed by packed booleans which are only read from legacy data */
         private final List<FieldEntry> fieldEntries;
+        private final int writtenFieldCount;
+        @Nullable
+        private final BooleanFlags flags;
+        private final CompoundFieldWriter fieldWriter;
+        private final CompoundFieldReader fieldReader;
+        private final Class<?> type;
 
         public MutatingReflectiveNBTAdapter(Class<?> clazz) throws IllegalAccessException {
+            this.type = clazz;
             Field[] fields = clazz.getDeclaredFields();
             fieldEntries = new ArrayList<>();
+            flags = BooleanFlags.create(clazz);
+            List<FieldEntry> packedEntries = new ArrayList<>();
             MethodHandles.Lookup lookup = MethodHandles.lookup();
             for (Field field : fields) {
                 int modifiers = field.getModifiers();
@@ -90,14 +365,38 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
                     setter = lookup.unreflectSetter(field);
                 }
                 NBTTypeAdapter adapter = TagAdapters.getNBTAdapter(field);
-                fieldEntries.add(new FieldEntry(field.getName(), getter, setter, adapter));
+                if (flags != null && flags.isPacked(field)) {
+                    packedEntries.add(new FieldEntry(field.getName(), getter, setter, adapter, true));
+                } else {
+                    fieldEntries.add(new FieldEntry(field.getName(), getter, setter, adapter, false));
+                }
             }
+            if (flags != null) {
+                fieldEntries.add(new FieldEntry(CompactNBT.FLAGS_KEY, flags.getGetter(), flags.getSetter(), flags.getAdapter(), true));
+            }
+            writtenFieldCount = fieldEntries.size();
+            fieldEntries.addAll(packedEntries);
+            String[] names = fieldEntries.stream().map(e -> e.name).toArray(String[]::new);
+            NBTTypeAdapter[] adapters = fieldEntries.stream().map(e -> e.adapter).toArray(NBTTypeAdapter[]::new);
+            boolean[] settable = new boolean[names.length];
+            boolean[] optional = new boolean[names.length];
+            for (int i = 0; i < settable.length; i++) {
+                settable[i] = fieldEntries.get(i).setter != null;
+                optional[i] = fieldEntries.get(i).optional;
+            }
+            fieldWriter = new CompoundFieldWriter(Arrays.copyOf(names, writtenFieldCount), Arrays.copyOf(adapters, writtenFieldCount));
+            fieldReader = new CompoundFieldReader(names, adapters, settable, optional);
         }
 
         @Override
         public NBTTagCompound toNBT(T instance) {
-            NBTTagCompound compound = new NBTTagCompound();
-            for (FieldEntry fieldEntry : fieldEntries) {
+            return toNBT(instance, new NBTTagCompound());
+        }
+
+        @Override
+        public NBTTagCompound toNBT(T instance, NBTTagCompound compound) {
+            CompoundFieldWriter.clear(compound);
+            for (FieldEntry fieldEntry : fieldEntries.subList(0, writtenFieldCount)) {
                 try {
                     @SuppressWarnings("unchecked") T value = (T) fieldEntry.getter.invoke(instance);
                     @SuppressWarnings("unchecked") NBTBase serialized = fieldEntry.adapter.toNBT(value);
@@ -106,11 +405,27 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
                     }
                 } catch (Throwable throwable) {
                     LadyLib.LOGGER.error(new FormattedMessage("Could not write NBT for {} ", instance), throwable);
+                    NBTMetrics.recordFailure(instance.getClass());
                 }
             }
             return compound;
         }
 
+        @Override
+        public void write(T instance, NBTWriter out) throws IOException {
+            fieldWriter.write(instance, (o, i) -> fieldEntries.get(i).getter.invoke(o), out);
+        }
+
+        @Override
+        public long sizeOf(T instance) {
+            return fieldWriter.sizeOf(instance, (o, i) -> fieldEntries.get(i).getter.invoke(o));
+        }
+
+        @Override
+        public T snapshot(T instance) {
+            return FieldCopier.get(type).copy(instance);
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public T fromNBT(T instance, NBTBase nbt) {
@@ -118,6 +433,9 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
                 NBTTypeAdapter.castNBT(nbt, NBTTagCompound.class).ifPresent(compound -> {
                     try {
                         NBTBase serialized = compound.getTag(fieldEntry.name);
+                        if (serialized == null && fieldEntry.optional) {
+                            return;
+                        }
                         if (fieldEntry.adapter instanceof NBTMutatingTypeAdapter) {
                             T value = (T) fieldEntry.getter.invoke(instance);
                             fieldEntry.adapter.fromNBT(value, serialized);
@@ -135,6 +453,29 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
             }
             return instance;
         }
+
+        @Override
+        public T read(T instance, NBTReader in) throws IOException {
+            return fieldReader.read(instance, (o, i) -> fieldEntries.get(i).getter.invoke(o), (o, i, v) -> fieldEntries.get(i).setter.invoke(o, v), in);
+        }
+
+        @Override
+        public NBTTagCompound toPatchNBT(T instance, DirtyFields dirtyFields) {
+            if (flags != null) {
+                for (String name : flags.getNames()) {
+                    if (dirtyFields.isDirty(name)) {
+                        dirtyFields.markDirty(CompactNBT.FLAGS_KEY);
+                        break;
+                    }
+                }
+            }
+            return fieldWriter.toPatchNBT(instance, (o, i) -> fieldEntries.get(i).getter.invoke(o), dirtyFields);
+        }
+
+        @Override
+        public T applyPatch(T instance, NBTTagCompound patch) {
+            return fieldReader.applyPatch(instance, (o, i) -> fieldEntries.get(i).getter.invoke(o), (o, i, v) -> fieldEntries.get(i).setter.invoke(o, v), patch);
+        }
     }
 
     private static class FieldEntry {
@@ -142,12 +483,15 @@ public class ReflectiveNBTAdapterFactory implements NBTTypeAdapterFactory<Object
         private final MethodHandle getter;
         private final MethodHandle setter;
         private final NBTTypeAdapter adapter;
+        /** Whether the field is left untouched when missing from the read data */
+        private final boolean optional;
 
-        private FieldEntry(String name, MethodHandle getter, @Nullable MethodHandle setter, NBTTypeAdapter adapter) {
+        private FieldEntry(String name, MethodHandle getter, @Nullable MethodHandle setter, NBTTypeAdapter adapter, boolean optional) {
             this.name = name;
             this.getter = getter;
             this.setter = setter;
             this.adapter = adapter;
+            this.optional = optional;
         }
     }
 }
@@ -1,22 +1,32 @@
 package ladylib.nbt.serialization.adapter;
 
 import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.NBTReader;
 import ladylib.nbt.serialization.NBTTypeAdapter;
 import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.NetworkProfile;
+import ladylib.nbt.serialization.internal.NBTSizes;
 import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTPrimitive;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagShort;
 import net.minecraft.nbt.NBTTagString;
 import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.registries.ForgeRegistry;
 import net.minecraftforge.registries.IForgeRegistry;
 import net.minecraftforge.registries.IForgeRegistryEntry;
 import net.minecraftforge.registries.RegistryManager;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
-public class RegistryEntryNBTAdapterFactory implements NBTTypeAdapterFactory<IForgeRegistryEntry, NBTTagString> {
+public class RegistryEntryNBTAdapterFactory implements NBTTypeAdapterFactory<IForgeRegistryEntry, NBTBase> {
     @Override
-    public NBTTypeAdapter<IForgeRegistryEntry, NBTTagString> create(TypeToken type, boolean allowMutating) {
+    public NBTTypeAdapter<IForgeRegistryEntry, NBTBase> create(TypeToken type, boolean allowMutating) {
         if (!IForgeRegistryEntry.class.isAssignableFrom(type.getRawType())) {
             return null;
         }
@@ -24,7 +34,7 @@ public class RegistryEntryNBTAdapterFactory implements NBTTypeAdapterFactory<IFo
         if (registry == null) {
             return null;
         }
-        @SuppressWarnings("unchecked") NBTTypeAdapter<IForgeRegistryEntry, NBTTagString> ret =
+        @SuppressWarnings("unchecked") NBTTypeAdapter<IForgeRegistryEntry, NBTBase> ret =
                 new RegistryEntryNBTAdapter<>(registry);
         return ret;
     }
@@ -71,21 +81,112 @@ public class RegistryEntryNBTAdapterFactory implements NBTTypeAdapterFactory<IFo
         return null;
     }
 
-    public static class RegistryEntryNBTAdapter<V extends IForgeRegistryEntry<V>> extends AbstractNBTTypeAdapter<V, NBTTagString> {
+    /**
+     * Writes registry entries by name, or by numeric id in the {@link NetworkProfile network profile}
+     */
+    public static class RegistryEntryNBTAdapter<V extends IForgeRegistryEntry<V>> extends AbstractNBTTypeAdapter<V, NBTBase> {
         private IForgeRegistry<V> registry;
+        /** The registry if it has numeric ids, null otherwise */
+        @Nullable
+        private final ForgeRegistry<V> numericRegistry;
+        private final boolean compact;
 
         public RegistryEntryNBTAdapter(IForgeRegistry<V> registry) {
+            this(registry, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        protected RegistryEntryNBTAdapter(IForgeRegistry<V> registry, boolean compact) {
             this.registry = registry;
+            this.numericRegistry = registry instanceof ForgeRegistry ? (ForgeRegistry<V>) registry : null;
+            this.compact = compact;
+        }
+
+        /**
+         * @return an adapter for the same registry, omitting the default namespace from written names
+         * @see ladylib.nbt.serialization.CompactNBT
+         */
+        public RegistryEntryNBTAdapter<V> compact() {
+            return compact ? this : new RegistryEntryNBTAdapter<>(registry, true);
+        }
+
+        private String getName(V value) {
+            ResourceLocation name = value.getRegistryName();
+            return compact && name != null ? BaseNBTAdapters.CompactResourceLocationAdapter.toCompactString(name) : String.valueOf(name);
+        }
+
+        /**
+         * @return the numeric id of the entry if it should be written as such, -1 otherwise
+         */
+        private int getNetworkId(V value) {
+            return numericRegistry != null && NetworkProfile.isActive() ? numericRegistry.getID(value) : -1;
+        }
+
+        @Override
+        public NBTBase toNBT(V value) {
+            int id = getNetworkId(value);
+            if (id < 0) {
+                return new NBTTagString(getName(value));
+            }
+            return id <= Short.MAX_VALUE ? new NBTTagShort((short) id) : new NBTTagInt(id);
+        }
+
+        @Override
+        public void write(V value, NBTWriter out) throws IOException {
+            int id = getNetworkId(value);
+            if (id < 0) {
+                out.writeString(getName(value));
+            } else if (id <= Short.MAX_VALUE) {
+                out.writeShort((short) id);
+            } else {
+                out.writeInt(id);
+            }
+        }
+
+        @Override
+        public long sizeOf(V value) {
+            int id = getNetworkId(value);
+            if (id < 0) {
+                return NBTSizes.sizeOfString(getName(value));
+            }
+            return id <= Short.MAX_VALUE ? 2 : 4;
         }
 
         @Override
-        public NBTTagString toNBT(V value) {
-            return new NBTTagString(String.valueOf(value.getRegistryName()));
+        public V snapshot(V value) {
+            return value;
         }
 
         @Override
-        public V fromNBT(NBTBase nbtTagString) {
-            return castAnd(nbtTagString, NBTTagString.class, nbt -> registry.getValue(new ResourceLocation(nbt.getString())));
+        public V read(NBTReader in) throws IOException {
+            switch (in.peek()) {
+                case Constants.NBT.TAG_STRING:
+                    return registry.getValue(new ResourceLocation(in.readString()));
+                case Constants.NBT.TAG_SHORT:
+                    if (numericRegistry != null) {
+                        return numericRegistry.getValue(in.readShort());
+                    }
+                    break;
+                case Constants.NBT.TAG_INT:
+                    if (numericRegistry != null) {
+                        return numericRegistry.getValue(in.readInt());
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return fromNBT(in.readTag());
+        }
+
+        @Override
+        public V fromNBT(NBTBase nbt) {
+            if (numericRegistry != null && (nbt instanceof NBTTagShort || nbt instanceof NBTTagInt)) {
+                return numericRegistry.getValue(((NBTPrimitive) nbt).getInt());
+            }
+            if (nbt instanceof NBTTagString) {
+                return registry.getValue(new ResourceLocation(((NBTTagString) nbt).getString()));
+            }
+            return getDefaultValue(nbt, NBTTagString.class);
         }
     }
 }
@@ -0,0 +1,324 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.*;
+import ladylib.LadyLib;
+import ladylib.misc.ReflectionUtil;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.VarIntNBT;
+import ladylib.nbt.serialization.internal.VarInts;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import static ladylib.nbt.serialization.adapter.CollectionNBTTypeAdapterFactory.getElementType;
+
+/**
+ * Serializes integer sequences as variable length integers in a byte array tag, as selected by {@link VarIntNBT}.
+ * <p>
+ * Other tags are handed to the adapter that would normally handle the sequence, so that
+ * data written before the annotation was added can still be read.
+ * </p>
+ */
+public class VarIntNBTTypeAdapterFactory implements NBTTypeAdapterFactory<Object, NBTBase> {
+    /**
+     * Default implementations of abstract collection types, the first compatible one being used
+     */
+    private static final List<Supplier<Collection<?>>> DEFAULT_COLLECTIONS = Arrays.asList(
+            ArrayList::new, LinkedHashSet::new, TreeSet::new, ArrayDeque::new,
+            IntArrayList::new, IntLinkedOpenHashSet::new, IntRBTreeSet::new,
+            LongArrayList::new, LongLinkedOpenHashSet::new, LongRBTreeSet::new
+    );
+
+    private final boolean delta;
+
+    public VarIntNBTTypeAdapterFactory(VarIntNBT annotation) {
+        this(annotation.delta());
+    }
+
+    public VarIntNBTTypeAdapterFactory(boolean delta) {
+        this.delta = delta;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public NBTTypeAdapter<Object, NBTBase> create(TypeToken type, boolean allowMutating) {
+        Class<?> rawType = type.getRawType();
+        Sequence sequence;
+        if (rawType == short[].class) {
+            if (!TagAdapters.getDefaultValue(type).isPresent()) {
+                TagAdapters.setDefaultValue(type, () -> new short[0]);
+            }
+            sequence = new ShortArraySequence();
+        } else if (rawType == int[].class) {
+            sequence = new IntArraySequence();
+        } else if (rawType == long[].class) {
+            sequence = new LongArraySequence();
+        } else if (Collection.class.isAssignableFrom(rawType)) {
+            LongFunction<?> boxing = getBoxing(rawType, getElementType(type, 0));
+            if (boxing == null) {
+                return null;
+            }
+            Supplier<Collection<?>> factory = getFactory(rawType);
+            if (factory == null && !allowMutating) {
+                LadyLib.LOGGER.warn("Unsupported collection type: {}", rawType);
+                return null;
+            }
+            sequence = new CollectionSequence(boxing, factory);
+        } else {
+            return null;
+        }
+        // arrays are always replaced
+        boolean mutating = allowMutating && sequence instanceof CollectionSequence;
+        // short arrays are not serializable without this codec, so they have no other format to read
+        NBTTypeAdapter fallback = rawType == short[].class ? null : TagAdapters.getNBTAdapter(type, mutating);
+        if (mutating) {
+            return new VarIntMutatingAdapter(type, sequence, delta, fallback);
+        }
+        return new VarIntAdapter(type, sequence, delta, fallback);
+    }
+
+    @Nullable
+    private static LongFunction<?> getBoxing(Class<?> rawType, Type elementType) {
+        if (IntCollection.class.isAssignableFrom(rawType) || elementType == Integer.class) {
+            return value -> (int) value;
+        } else if (LongCollection.class.isAssignableFrom(rawType) || elementType == Long.class) {
+            return value -> value;
+        } else if (elementType == Short.class) {
+            return value -> (short) value;
+        }
+        return null;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Supplier<Collection<?>> getFactory(Class<?> rawType) {
+        if (!Modifier.isAbstract(rawType.getModifiers())) {
+            return ReflectionUtil.createFactory(rawType, "get", Supplier.class);
+        }
+        for (Supplier<Collection<?>> factory : DEFAULT_COLLECTIONS) {
+            if (rawType.isInstance(factory.get())) {
+                return factory;
+            }
+        }
+        return null;
+    }
+
+    public static class VarIntAdapter<C> extends AbstractNBTTypeAdapter<C, NBTBase> {
+        protected final Sequence<C> sequence;
+        protected final boolean delta;
+        /**
+         * The adapter that would handle the sequence without this codec, if any
+         */
+        @Nullable
+        protected final NBTTypeAdapter<C, NBTBase> fallback;
+
+        VarIntAdapter(TypeToken<C> typeToken, Sequence<C> sequence, boolean delta, @Nullable NBTTypeAdapter<C, NBTBase> fallback) {
+            super(typeToken);
+            this.sequence = sequence;
+            this.delta = delta;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public NBTBase toNBT(C value) {
+            return new NBTTagByteArray(VarInts.encode(sequence.toLongs(value), delta));
+        }
+
+        @Override
+        public void write(C value, NBTWriter out) throws IOException {
+            out.writeByteArray(VarInts.encode(sequence.toLongs(value), delta));
+        }
+
+        @Override
+        public long sizeOf(C value) {
+            return 4 + VarInts.sizeOf(sequence.toLongs(value), delta);
+        }
+
+        @Override
+        public C snapshot(C value) {
+            return fallback != null ? fallback.snapshot(value) : sequence.create(sequence.toLongs(value));
+        }
+
+        @Override
+        public C fromNBT(NBTBase nbt) {
+            if (nbt instanceof NBTTagByteArray) {
+                return sequence.create(VarInts.decode(((NBTTagByteArray) nbt).getByteArray(), delta));
+            }
+            return fallback != null ? fallback.fromNBT(nbt) : getDefaultValue(nbt, NBTTagByteArray.class);
+        }
+
+        @Override
+        public C read(NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                return sequence.create(VarInts.decode(in.readByteArray(), delta));
+            }
+            return fallback != null ? fallback.read(in) : fromNBT(in.readTag());
+        }
+    }
+
+    public static class VarIntMutatingAdapter<C> extends VarIntAdapter<C> implements NBTMutatingTypeAdapter<C, NBTBase> {
+        VarIntMutatingAdapter(TypeToken<C> typeToken, Sequence<C> sequence, boolean delta, NBTTypeAdapter<C, NBTBase> fallback) {
+            super(typeToken, sequence, delta, Objects.requireNonNull(fallback));
+        }
+
+        @Override
+        public C fromNBT(C value, NBTBase nbt) {
+            if (nbt instanceof NBTTagByteArray) {
+                ((CollectionSequence) sequence).fill((Collection) value, VarInts.decode(((NBTTagByteArray) nbt).getByteArray(), delta));
+                return value;
+            }
+            return Objects.requireNonNull(fallback).fromNBT(value, nbt);
+        }
+
+        @Override
+        public C read(C value, NBTReader in) throws IOException {
+            if (in.peek() == Constants.NBT.TAG_BYTE_ARRAY) {
+                ((CollectionSequence) sequence).fill((Collection) value, VarInts.decode(in.readByteArray(), delta));
+                return value;
+            }
+            return Objects.requireNonNull(fallback).read(value, in);
+        }
+    }
+
+    /**
+     * Converts sequences to and from the values they hold, widened to <code>long</code>
+     *
+     * @param <C> the type of sequence
+     */
+    abstract static class Sequence<C> {
+        abstract long[] toLongs(C value);
+
+        abstract C create(long[] values);
+    }
+
+    static final class ShortArraySequence extends Sequence<short[]> {
+        @Override
+        long[] toLongs(short[] value) {
+            long[] ret = new long[value.length];
+            for (int i = 0; i < value.length; i++) {
+                ret[i] = value[i];
+            }
+            return ret;
+        }
+
+        @Override
+        short[] create(long[] values) {
+            short[] ret = new short[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ret[i] = (short) values[i];
+            }
+            return ret;
+        }
+    }
+
+    static final class IntArraySequence extends Sequence<int[]> {
+        @Override
+        long[] toLongs(int[] value) {
+            long[] ret = new long[value.length];
+            for (int i = 0; i < value.length; i++) {
+                ret[i] = value[i];
+            }
+            return ret;
+        }
+
+        @Override
+        int[] create(long[] values) {
+            int[] ret = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ret[i] = (int) values[i];
+            }
+            return ret;
+        }
+    }
+
+    static final class LongArraySequence extends Sequence<long[]> {
+        @Override
+        long[] toLongs(long[] value) {
+            return value;
+        }
+
+        @Override
+        long[] create(long[] values) {
+            return values;
+        }
+    }
+
+    /**
+     * Handles collections of boxed integers. Fastutil collections are accessed without boxing their elements.
+     */
+    @SuppressWarnings("unchecked")
+    static final class CollectionSequence extends Sequence<Collection> {
+        private final LongFunction<?> boxing;
+        @Nullable
+        private final Supplier<Collection<?>> factory;
+
+        CollectionSequence(LongFunction<?> boxing, @Nullable Supplier<Collection<?>> factory) {
+            this.boxing = boxing;
+            this.factory = factory;
+        }
+
+        @Override
+        long[] toLongs(Collection value) {
+            if (value instanceof LongCollection) {
+                return ((LongCollection) value).toLongArray();
+            }
+            long[] ret = new long[value.size()];
+            int i = 0;
+            if (value instanceof IntCollection) {
+                for (IntIterator it = ((IntCollection) value).iterator(); it.hasNext(); ) {
+                    ret[i++] = it.nextInt();
+                }
+            } else {
+                for (Object element : value) {
+                    ret[i++] = ((Number) element).longValue();
+                }
+            }
+            return ret;
+        }
+
+        @Override
+        Collection create(long[] values) {
+            // only mutating adapters are created without a factory, and they always fill an existing collection
+            Collection ret = Objects.requireNonNull(factory).get();
+            fill(ret, values);
+            return ret;
+        }
+
+        /**
+         * Replaces the content of the given collection with the values
+         */
+        void fill(Collection collection, long[] values) {
+            collection.clear();
+            if (collection instanceof IntCollection) {
+                IntCollection ints = (IntCollection) collection;
+                for (long value : values) {
+                    ints.add((int) value);
+                }
+            } else if (collection instanceof LongCollection) {
+                LongCollection longs = (LongCollection) collection;
+                for (long value : values) {
+                    longs.add(value);
+                }
+            } else {
+                for (long value : values) {
+                    collection.add(boxing.apply(value));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ladylib.nbt.serialization.internal;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.LadyLib;
+import ladylib.capability.AutoCapability;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraftforge.fml.common.discovery.ASMDataTable;
+import org.apache.logging.log4j.message.FormattedMessage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the NBT adapters of automatically registered capabilities during loading,
+ * so that the first save of each capability does not have to walk the factories.
+ * <p>
+ * Building an adapter also builds the adapters of every type it references, so resolving
+ * the capability implementations is enough to cover the whole adapter graph.
+ * Types are loaded and resolved concurrently from the common fork join pool. {@link TagAdapters} only
+ * makes threads wait for builds of the same type, so distinct capability graphs are built in parallel.
+ * Failures are collected and logged along with the build time of each type, rather than aborting loading.
+ * </p>
+ */
+public final class AdapterPreloader {
+    private AdapterPreloader() { }
+
+    public static void preloadCapabilityAdapters(ASMDataTable asmData) {
+        // capabilities with a custom storage do not use the serialization system
+        Set<String> classNames = asmData.getAll(AutoCapability.class.getName()).stream()
+                .filter(data -> data.getAnnotationInfo().get("storage") == null)
+                .map(ASMDataTable.ASMData::getClassName)
+                .collect(Collectors.toSet());
+        Map<String, Long> buildTimes = new ConcurrentHashMap<>();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        classNames.parallelStream().forEach(className -> {
+            long typeStart = System.nanoTime();
+            try {
+                Class<?> clazz = Class.forName(className, false, AdapterPreloader.class.getClassLoader());
+                TypeToken<?> type = TypeToken.get(clazz);
+                TagAdapters.getNBTAdapter(type, true);
+                TagAdapters.getNBTAdapter(type, false);
+                buildTimes.put(className, System.nanoTime() - typeStart);
+            } catch (Throwable t) {
+                failures.put(className, t);
+            }
+        });
+        long totalTime = System.nanoTime() - start;
+        LadyLib.LOGGER.info("Resolved NBT adapters for {} capability types in {} ms, {} failed",
+                buildTimes.size(), TimeUnit.NANOSECONDS.toMillis(totalTime), failures.size());
+        buildTimes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> LadyLib.LOGGER.debug("Resolved NBT adapter for {} in {} ms", e.getKey(), TimeUnit.NANOSECONDS.toMillis(e.getValue())));
+        failures.forEach((className, t) -> LadyLib.LOGGER.error(new FormattedMessage("Could not resolve an NBT adapter for {}", className), t));
+    }
+}
@@ -0,0 +1,241 @@
+package ladylib.nbt.serialization.internal;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.CompactNBT;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTWriter;
+import ladylib.nbt.serialization.PackedFlag;
+import ladylib.nbt.serialization.adapter.AbstractNBTTypeAdapter;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs the {@link PackedFlag} fields of a {@link CompactNBT} class into a single bitfield.
+ * <p>
+ * The bitfield is exposed as a synthetic field through {@link #getGetter()} and {@link #getSetter()},
+ * and serialized by {@link #getAdapter()} in the smallest integral tag that can hold the highest bit.
+ * Each flag uses the bit index given by its annotation.
+ * </p>
+ */
+public final class BooleanFlags {
+    private static final int MAX_FLAGS = Long.SIZE;
+    private static final MethodHandle PACK;
+    private static final MethodHandle UNPACK;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PACK = lookup.findVirtual(BooleanFlags.class, "pack", MethodType.methodType(long.class, Object.class));
+            UNPACK = lookup.findVirtual(BooleanFlags.class, "unpack", MethodType.methodType(void.class, Object.class, long.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final String[] names;
+    private final int[] bits;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+    private final FlagsAdapter adapter;
+
+    private BooleanFlags(List<Field> fields) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.names = new String[fields.size()];
+        this.bits = new int[fields.size()];
+        this.getters = new MethodHandle[fields.size()];
+        this.setters = new MethodHandle[fields.size()];
+        for (int i = 0; i < names.length; i++) {
+            Field field = fields.get(i);
+            field.setAccessible(true);
+            names[i] = field.getName();
+            bits[i] = field.getAnnotation(PackedFlag.class).value();
+            getters[i] = lookup.unreflectGetter(field);
+            setters[i] = lookup.unreflectSetter(field);
+        }
+        // fields are sorted by bit, the last one determines the width of the bitfield
+        this.adapter = new FlagsAdapter(bits[bits.length - 1] + 1);
+    }
+
+    /**
+     * @return true if the given class packs some of its fields
+     * @throws IllegalArgumentException if the packed fields of the class are invalid
+     */
+    public static boolean hasPackedFields(Class<?> clazz) {
+        return !getPackedFields(clazz).isEmpty();
+    }
+
+    /**
+     * @return the flags of the given class, or null if it does not pack any field
+     * @throws IllegalArgumentException if the packed fields of the class are invalid
+     */
+    @Nullable
+    public static BooleanFlags create(Class<?> clazz) throws IllegalAccessException {
+        List<Field> fields = getPackedFields(clazz);
+        return fields.isEmpty() ? null : new BooleanFlags(fields);
+    }
+
+    private static List<Field> getPackedFields(Class<?> clazz) {
+        List<Field> ret = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(PackedFlag.class)) {
+                continue;
+            }
+            int modifiers = field.getModifiers();
+            if (field.getType() != boolean.class || Modifier.isTransient(modifiers) || Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                throw new IllegalArgumentException("Packed flag " + field + " must be a serialized, non final boolean field");
+            }
+            int bit = field.getAnnotation(PackedFlag.class).value();
+            if (bit < 0 || bit >= MAX_FLAGS) {
+                throw new IllegalArgumentException("Packed flag " + field + " uses bit " + bit + ", outside of 0 to " + (MAX_FLAGS - 1));
+            }
+            ret.add(field);
+        }
+        if (ret.isEmpty()) {
+            return ret;
+        }
+        if (!clazz.isAnnotationPresent(CompactNBT.class)) {
+            throw new IllegalArgumentException(clazz + " has packed flags but is not annotated with @CompactNBT");
+        }
+        // with distinct bits in range, at most 64 fields are packed
+        ret.sort(Comparator.comparingInt(field -> field.getAnnotation(PackedFlag.class).value()));
+        for (int i = 1; i < ret.size(); i++) {
+            Field previous = ret.get(i - 1);
+            Field field = ret.get(i);
+            if (previous.getAnnotation(PackedFlag.class).value() == field.getAnnotation(PackedFlag.class).value()) {
+                throw new IllegalArgumentException("Packed flags " + previous.getName() + " and " + field.getName() + " of " + clazz + " use the same bit");
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return true if the given field of the serialized class is packed into the bitfield
+     */
+    public boolean isPacked(Field field) {
+        return Arrays.asList(names).contains(field.getName());
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+
+    /**
+     * @return the index of the bit holding the given packed field
+     */
+    public int getBit(Field field) {
+        return bits[Arrays.asList(names).indexOf(field.getName())];
+    }
+
+    /**
+     * @return a handle taking an instance and returning its packed flags
+     */
+    public MethodHandle getGetter() {
+        return PACK.bindTo(this);
+    }
+
+    /**
+     * @return a handle taking an instance and packed flags, and assigning them to the instance's fields
+     */
+    public MethodHandle getSetter() {
+        return UNPACK.bindTo(this);
+    }
+
+    public FlagsAdapter getAdapter() {
+        return adapter;
+    }
+
+    private long pack(Object instance) throws Throwable {
+        long flags = 0;
+        for (int i = 0; i < getters.length; i++) {
+            if ((boolean) getters[i].invoke(instance)) {
+                flags |= 1L << bits[i];
+            }
+        }
+        return flags;
+    }
+
+    private void unpack(Object instance, long flags) throws Throwable {
+        for (int i = 0; i < setters.length; i++) {
+            setters[i].invoke(instance, (flags & 1L << bits[i]) != 0);
+        }
+    }
+
+    public static class FlagsAdapter extends AbstractNBTTypeAdapter<Long, NBTBase> {
+        /** The number of bits to store, up to the highest one in use */
+        private final int count;
+
+        FlagsAdapter(int count) {
+            super(TypeToken.get(Long.class));
+            this.count = count;
+        }
+
+        @Override
+        public NBTBase toNBT(Long value) {
+            if (count <= Byte.SIZE) {
+                return new NBTTagByte(value.byteValue());
+            } else if (count <= Short.SIZE) {
+                return new NBTTagShort(value.shortValue());
+            } else if (count <= Integer.SIZE) {
+                return new NBTTagInt(value.intValue());
+            }
+            return new NBTTagLong(value);
+        }
+
+        @Override
+        public void write(Long value, NBTWriter out) throws IOException {
+            if (count <= Byte.SIZE) {
+                out.writeByte(value.byteValue());
+            } else if (count <= Short.SIZE) {
+                out.writeShort(value.shortValue());
+            } else if (count <= Integer.SIZE) {
+                out.writeInt(value.intValue());
+            } else {
+                out.writeLong(value);
+            }
+        }
+
+        @Override
+        public long sizeOf(Long value) {
+            return count <= Byte.SIZE ? 1 : count <= Short.SIZE ? 2 : count <= Integer.SIZE ? 4 : 8;
+        }
+
+        @Override
+        public Long snapshot(Long value) {
+            return value;
+        }
+
+        @Override
+        public Long read(NBTReader in) throws IOException {
+            switch (in.peek()) {
+                case Constants.NBT.TAG_BYTE:
+                    return (long) in.readByte();
+                case Constants.NBT.TAG_SHORT:
+                    return (long) in.readShort();
+                case Constants.NBT.TAG_INT:
+                    return (long) in.readInt();
+                case Constants.NBT.TAG_LONG:
+                    return in.readLong();
+                default:
+                    return fromNBT(in.readTag());
+            }
+        }
+
+        @Override
+        public Long fromNBT(NBTBase nbt) {
+            // a missing or invalid bitfield resets every flag
+            return nbt instanceof NBTPrimitive ? ((NBTPrimitive) nbt).getLong() : 0L;
+        }
+    }
+}
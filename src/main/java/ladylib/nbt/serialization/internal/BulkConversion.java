@@ -0,0 +1,91 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NetworkProfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Applies a conversion to every element of a list, splitting large lists across the common {@link ForkJoinPool}.
+ * <p>
+ * Results are stored at the index of their source element, so the returned list is in the same order
+ * as the input regardless of the order in which chunks complete.
+ * The {@link NetworkProfile} of the calling thread applies to every chunk.
+ * </p>
+ */
+public final class BulkConversion {
+    private BulkConversion() { }
+
+    /**
+     * Lists at most this large are converted on the calling thread, and chunks are not split below this size
+     */
+    static final int SEQUENTIAL_THRESHOLD = 256;
+
+    public static <S, R> List<R> convertAll(List<? extends S> sources, Function<? super S, ? extends R> conversion) {
+        if (!(sources instanceof RandomAccess)) {
+            sources = new ArrayList<>(sources);
+        }
+        Object[] results = new Object[sources.size()];
+        ConversionTask<S, R> task = new ConversionTask<>(sources, conversion, NetworkProfile.isActive(), results, 0, results.length);
+        if (results.length <= SEQUENTIAL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            task.compute();
+        } else {
+            // exceptions thrown by a chunk are rethrown here, on the calling thread
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        @SuppressWarnings("unchecked") List<R> ret = (List<R>) Arrays.asList(results);
+        return ret;
+    }
+
+    private static final class ConversionTask<S, R> extends RecursiveAction {
+        private final List<? extends S> sources;
+        private final Function<? super S, ? extends R> conversion;
+        /** Thread locals do not carry over to pool threads, so the profile is reopened around each chunk */
+        private final boolean networkProfile;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        private ConversionTask(List<? extends S> sources, Function<? super S, ? extends R> conversion, boolean networkProfile, Object[] results, int from, int to) {
+            this.sources = sources;
+            this.conversion = conversion;
+            this.networkProfile = networkProfile;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                if (networkProfile) {
+                    try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+                        convertRange();
+                    }
+                } else {
+                    convertRange();
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new ConversionTask<>(sources, conversion, networkProfile, results, from, middle),
+                        new ConversionTask<>(sources, conversion, networkProfile, results, middle, to)
+                );
+            }
+        }
+
+        private void convertRange() {
+            for (int i = from; i < to; i++) {
+                // each element is a separate operation, references are not shared across the batch
+                try (ReferenceGraph.Scope ignored = ReferenceGraph.open()) {
+                    results[i] = conversion.apply(sources.get(i));
+                }
+            }
+        }
+    }
+}
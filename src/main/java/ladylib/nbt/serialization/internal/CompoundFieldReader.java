@@ -0,0 +1,137 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.NBTDeltaTypeAdapter;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binds compounds read from a stream to objects made of a fixed set of named fields.
+ * <p>
+ * Entries are bound in the order in which they appear in the stream, and entries that do not
+ * match any field are skipped without being materialized. Fields that are missing from the compound
+ * are then handled in the same way as the reflective tree path, as if their tag was <code>null</code>.
+ * </p>
+ */
+public final class CompoundFieldReader {
+    private final String[] names;
+    private final NBTTypeAdapter[] adapters;
+    private final boolean[] settable;
+    private final boolean[] optional;
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    /**
+     * @param settable for each field, whether it can be assigned
+     */
+    public CompoundFieldReader(String[] names, NBTTypeAdapter[] adapters, boolean[] settable) {
+        this(names, adapters, settable, new boolean[names.length]);
+    }
+
+    /**
+     * @param settable for each field, whether it can be assigned
+     * @param optional for each field, whether it is left untouched when missing from the compound
+     */
+    public CompoundFieldReader(String[] names, NBTTypeAdapter[] adapters, boolean[] settable, boolean[] optional) {
+        this.names = names;
+        this.adapters = adapters;
+        this.settable = settable;
+        this.optional = optional;
+        for (int i = 0; i < names.length; i++) {
+            indices.put(names[i], i);
+        }
+    }
+
+    public <T> T read(T instance, CompoundFieldWriter.FieldAccessor accessor, FieldMutator mutator, NBTReader in) throws IOException {
+        if (in.peek() != Constants.NBT.TAG_COMPOUND) {
+            in.skipValue();
+            return instance;
+        }
+        boolean[] seen = new boolean[names.length];
+        try {
+            in.beginCompound();
+            while (in.hasNext()) {
+                Integer index = indices.get(in.nextName());
+                if (index == null || seen[index]) {
+                    in.skipValue();
+                } else {
+                    seen[index] = true;
+                    readField(instance, index, accessor, mutator, in, null);
+                }
+            }
+            in.endCompound();
+            for (int i = 0; i < seen.length; i++) {
+                if (!seen[i] && !optional[i]) {
+                    readField(instance, i, accessor, mutator, null, null);
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new NBTDeserializationException("Could not read NBT for " + instance, throwable);
+        }
+        return instance;
+    }
+
+    /**
+     * Applies a patch built by {@link CompoundFieldWriter#toPatchNBT}. Fields absent from the patch are left untouched.
+     */
+    public <T> T applyPatch(T instance, CompoundFieldWriter.FieldAccessor accessor, FieldMutator mutator, NBTTagCompound patch) {
+        try {
+            for (String name : patch.getKeySet()) {
+                Integer index = indices.get(name);
+                if (index != null) {
+                    readField(instance, index, accessor, mutator, null, patch.getTag(name));
+                }
+            }
+            NBTTagList removed = patch.getTagList(NBTDeltaTypeAdapter.REMOVED_FIELDS, Constants.NBT.TAG_STRING);
+            for (int i = 0; i < removed.tagCount(); i++) {
+                Integer index = indices.get(removed.getStringTagAt(i));
+                if (index != null && !optional[index]) {
+                    readField(instance, index, accessor, mutator, null, null);
+                }
+            }
+        } catch (Throwable throwable) {
+            throw new NBTDeserializationException("Could not read NBT for " + instance, throwable);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads a single field, either from the reader or from the given tag if <code>in</code> is null
+     */
+    @SuppressWarnings("unchecked")
+    private void readField(Object instance, int index, CompoundFieldWriter.FieldAccessor accessor, FieldMutator mutator, @Nullable NBTReader in, @Nullable NBTBase tag) throws Throwable {
+        NBTTypeAdapter adapter = adapters[index];
+        if (adapter instanceof NBTMutatingTypeAdapter) {
+            Object value = accessor.get(instance, index);
+            if (in != null) {
+                adapter.read(value, in);
+            } else {
+                adapter.fromNBT(value, tag);
+            }
+        } else if (settable[index]) {
+            mutator.set(instance, index, in != null ? adapter.read(in) : adapter.fromNBT(tag));
+        } else {
+            if (in != null) {
+                in.skipValue();
+            }
+            LadyLib.LOGGER.warn("Could not write to final field {} in {}", names[index], instance);
+        }
+    }
+
+    @FunctionalInterface
+    public interface FieldMutator {
+        void set(Object instance, int index, Object value) throws Throwable;
+    }
+}
@@ -0,0 +1,196 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.DirtyFields;
+import ladylib.nbt.serialization.NBTDeltaTypeAdapter;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTWriter;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+import org.apache.logging.log4j.message.FormattedMessage;
+
+import java.io.IOException;
+
+/**
+ * Streams objects made of a fixed set of named fields as compounds.
+ * <p>
+ * The written compound is identical to the one built by the reflective tree path: fields that fail to serialize
+ * or that serialize to <code>null</code> are skipped, and entries are emitted in the compound's iteration order.
+ * As the presence of every entry has to be known before writing the first one, fields whose adapter does not
+ * stream natively are converted to tags beforehand. The other ones are present whenever their value is not
+ * <code>null</code>, and are written straight to the output after their name. A streamed field failing midway
+ * cannot be skipped without leaving a partial entry, so the failure is propagated instead.
+ * </p>
+ * <p>
+ * While a {@link ReferenceGraph} is active, every field is converted to a tag beforehand, as shared objects
+ * must get their ids in declaration order like on the tree path, rather than in the compound's order.
+ * </p>
+ */
+public final class CompoundFieldWriter {
+    private final String[] names;
+    private final NBTTypeAdapter[] adapters;
+    private final boolean[] streamed;
+    private final CompoundKeyOrder keyOrder;
+
+    public CompoundFieldWriter(String[] names, NBTTypeAdapter[] adapters) {
+        this.names = names;
+        this.adapters = adapters;
+        this.streamed = new boolean[adapters.length];
+        for (int i = 0; i < adapters.length; i++) {
+            streamed[i] = overridesWrite(adapters[i]);
+        }
+        this.keyOrder = new CompoundKeyOrder(names);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void write(Object instance, FieldAccessor accessor, NBTWriter out) throws IOException {
+        int fieldCount = names.length;
+        Object[] values = new Object[fieldCount];
+        NBTBase[] tags = new NBTBase[fieldCount];
+        boolean[] present = new boolean[fieldCount];
+        boolean tracked = ReferenceGraph.current() != null;
+        for (int i = 0; i < fieldCount; i++) {
+            try {
+                Object value = accessor.get(instance, i);
+                if (value != null && streamed[i] && !tracked) {
+                    values[i] = value;
+                    present[i] = true;
+                } else {
+                    tags[i] = adapters[i].toNBT(value);
+                    present[i] = tags[i] != null;
+                }
+            } catch (Throwable throwable) {
+                LadyLib.LOGGER.error(new FormattedMessage("Could not write NBT for {} ", instance), throwable);
+                NBTMetrics.recordFailure(instance.getClass());
+            }
+        }
+        out.beginCompound();
+        for (int i : keyOrder.getOrder(present)) {
+            out.name(names[i]);
+            if (tags[i] != null) {
+                out.writeTag(tags[i]);
+            } else {
+                try {
+                    adapters[i].write(values[i], out);
+                } catch (RuntimeException e) {
+                    NBTMetrics.recordFailure(instance.getClass());
+                    throw e;
+                }
+            }
+        }
+        out.endCompound();
+    }
+
+    /**
+     * Builds the compound that {@link #write(Object, FieldAccessor, NBTWriter)} streams.
+     * Fields that fail to serialize are reported and skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public NBTTagCompound toNBT(Object instance, FieldAccessor accessor) {
+        NBTTagCompound compound = new NBTTagCompound();
+        for (int i = 0; i < names.length; i++) {
+            try {
+                NBTBase serialized = adapters[i].toNBT(accessor.get(instance, i));
+                if (serialized != null) {
+                    compound.setTag(names[i], serialized);
+                }
+            } catch (Throwable throwable) {
+                LadyLib.LOGGER.error(new FormattedMessage("Could not write NBT for {} ", instance), throwable);
+                NBTMetrics.recordFailure(instance.getClass());
+            }
+        }
+        return compound;
+    }
+
+    /**
+     * Computes the size of the compound that {@link #write(Object, FieldAccessor, NBTWriter)} would produce.
+     * Failures are propagated, as a size leaving out the failing field would not match any written data.
+     */
+    @SuppressWarnings("unchecked")
+    public long sizeOf(Object instance, FieldAccessor accessor) {
+        long size = NBTSizes.COMPOUND_FOOTER_SIZE;
+        for (int i = 0; i < names.length; i++) {
+            Object value = get(instance, accessor, i);
+            long valueSize;
+            if (value != null) {
+                valueSize = adapters[i].sizeOf(value);
+            } else {
+                // some adapters have a representation for null
+                NBTBase tag = adapters[i].toNBT(null);
+                valueSize = tag == null ? -1 : NBTSizes.sizeOfPayload(tag);
+            }
+            if (valueSize >= 0) {
+                size += NBTSizes.sizeOfEntry(names[i], valueSize);
+            }
+        }
+        return size;
+    }
+
+    private Object get(Object instance, FieldAccessor accessor, int index) {
+        try {
+            return accessor.get(instance, index);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not read field " + names[index] + " of " + instance, throwable);
+        }
+    }
+
+    /**
+     * Builds a patch holding the fields marked as dirty, as described in {@link NBTDeltaTypeAdapter}
+     */
+    @SuppressWarnings("unchecked")
+    public NBTTagCompound toPatchNBT(Object instance, FieldAccessor accessor, DirtyFields dirtyFields) {
+        boolean[] dirty = dirtyFields.consume(names);
+        NBTTagCompound patch = new NBTTagCompound();
+        NBTTagList removed = new NBTTagList();
+        for (int i = 0; i < names.length; i++) {
+            if (!dirty[i]) {
+                continue;
+            }
+            try {
+                NBTBase serialized = adapters[i].toNBT(accessor.get(instance, i));
+                if (serialized != null) {
+                    patch.setTag(names[i], serialized);
+                } else {
+                    removed.appendTag(new NBTTagString(names[i]));
+                }
+            } catch (Throwable throwable) {
+                LadyLib.LOGGER.error(new FormattedMessage("Could not write NBT for {} ", instance), throwable);
+                NBTMetrics.recordFailure(instance.getClass());
+                // try again with the next patch
+                dirtyFields.markDirty(names[i]);
+            }
+        }
+        if (!removed.isEmpty()) {
+            patch.setTag(NBTDeltaTypeAdapter.REMOVED_FIELDS, removed);
+        }
+        return patch;
+    }
+
+    /**
+     * Removes every entry of the given compound, keeping its backing map's capacity for the next entries
+     */
+    public static void clear(NBTTagCompound compound) {
+        compound.getKeySet().clear();
+    }
+
+    /**
+     * @return true if the adapter writes values directly to the stream instead of going through {@link NBTTypeAdapter#toNBT(Object)}
+     */
+    public static boolean overridesWrite(NBTTypeAdapter adapter) {
+        try {
+            return adapter.getClass().getMethod("write", Object.class, NBTWriter.class).getDeclaringClass() != NBTTypeAdapter.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    public interface FieldAccessor {
+        Object get(Object instance, int index) throws Throwable;
+    }
+}
@@ -0,0 +1,67 @@
+package ladylib.nbt.serialization.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the order in which a {@link net.minecraft.nbt.NBTTagCompound} iterates over a known set of keys.
+ * <p>
+ * Compounds are backed by a {@link HashMap}, so their binary form lists entries in hash order rather than
+ * in insertion order. Streaming writers use this class to emit entries in the exact same order as
+ * the tree serialization path.
+ * </p>
+ */
+public final class CompoundKeyOrder {
+    private static final int MAX_CACHED_ORDERS = 32;
+
+    private final String[] keys;
+    private final Map<Long, int[]> cachedOrders = new ConcurrentHashMap<>();
+
+    /**
+     * @param keys every key that may be written, in the order in which the tree path would insert them
+     */
+    public CompoundKeyOrder(String... keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * @param present for each key, whether it is part of the compound
+     * @return the indices of present keys, in iteration order
+     */
+    public int[] getOrder(boolean[] present) {
+        if (keys.length > Long.SIZE) {
+            return computeOrder(present);
+        }
+        long mask = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (present[i]) {
+                mask |= 1L << i;
+            }
+        }
+        int[] ret = cachedOrders.get(mask);
+        if (ret == null) {
+            ret = computeOrder(present);
+            if (cachedOrders.size() < MAX_CACHED_ORDERS) {
+                cachedOrders.put(mask, ret);
+            }
+        }
+        return ret;
+    }
+
+    private int[] computeOrder(boolean[] present) {
+        // replaying the insertions on an identical map reproduces collisions and resizes as well
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (present[i]) {
+                map.put(keys[i], i);
+            }
+        }
+        int[] ret = new int[map.size()];
+        int i = 0;
+        for (int index : map.values()) {
+            ret[i++] = index;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,110 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.EnumIds;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup tables for the constants of an enum, computed once per enum class.
+ *
+ * @see EnumIds
+ */
+public final class EnumTable<E extends Enum<E>> {
+    private static final ClassValue<EnumTable<?>> TABLES = new ClassValue<EnumTable<?>>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        protected EnumTable<?> computeValue(Class<?> type) {
+            return new EnumTable(type);
+        }
+    };
+
+    private static final int NO_ID = -1;
+
+    private final Map<String, E> byName;
+    @Nullable
+    private final E[] byId;
+    private final int[] idsByOrdinal;
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> EnumTable<E> get(Class<E> enumClass) {
+        return (EnumTable<E>) TABLES.get(enumClass);
+    }
+
+    private EnumTable(Class<E> enumClass) {
+        E[] constants = enumClass.getEnumConstants();
+        this.byName = new HashMap<>(constants.length * 2);
+        for (E constant : constants) {
+            byName.put(constant.name(), constant);
+        }
+        EnumIds ids = enumClass.getAnnotation(EnumIds.class);
+        this.idsByOrdinal = new int[constants.length];
+        if (ids == null) {
+            this.byId = null;
+            Arrays.fill(idsByOrdinal, NO_ID);
+        } else if (ids.value().length == 0) {
+            this.byId = constants;
+            for (int i = 0; i < constants.length; i++) {
+                idsByOrdinal[i] = i;
+            }
+        } else {
+            String[] names = ids.value();
+            this.byId = Arrays.copyOf(constants, names.length);
+            Arrays.fill(idsByOrdinal, NO_ID);
+            for (int id = 0; id < names.length; id++) {
+                E constant = byName.get(names[id]);
+                if (constant == null) {
+                    throw new IllegalStateException("Unknown constant " + names[id] + " in the ids of " + enumClass.getName());
+                }
+                if (idsByOrdinal[constant.ordinal()] != NO_ID) {
+                    throw new IllegalStateException("Constant " + names[id] + " has several ids in " + enumClass.getName());
+                }
+                byId[id] = constant;
+                idsByOrdinal[constant.ordinal()] = id;
+            }
+        }
+        // ids are written as unsigned shorts
+        if (byId != null && byId.length > 0x10000) {
+            throw new IllegalStateException("Too many ids for " + enumClass.getName());
+        }
+    }
+
+    /**
+     * @return the constant with the given name, or null if there is none
+     */
+    @Nullable
+    public E byName(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the constant with the given id, or null if there is none
+     */
+    @Nullable
+    public E byId(int id) {
+        return byId != null && id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /**
+     * @return true if the enum is annotated with {@link EnumIds}
+     */
+    public boolean hasIds() {
+        return byId != null;
+    }
+
+    /**
+     * @return true if every id fits in an unsigned byte, false if ids are stored as unsigned shorts
+     */
+    public boolean hasByteIds() {
+        return byId != null && byId.length <= 0x100;
+    }
+
+    /**
+     * @return the id of the given constant, or -1 if it has none
+     */
+    public int getId(E constant) {
+        return idsByOrdinal[constant.ordinal()];
+    }
+}
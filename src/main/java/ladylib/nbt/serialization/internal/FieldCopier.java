@@ -0,0 +1,116 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.LadyLib;
+import ladylib.misc.ReflectionUtil;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.TagAdapters;
+import org.apache.logging.log4j.message.FormattedMessage;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the serialized fields of an object into a new instance, for the snapshots of types serialized field by field.
+ * <p>
+ * Every non-transient, non-static field is copied through the {@link NBTTypeAdapter#snapshot(Object) snapshot}
+ * of its adapter, including final fields, as a snapshot must serialize to the same data as its source.
+ * A field that fails to be copied is reported and keeps the value assigned by the constructor,
+ * like fields that fail to be written are skipped.
+ * </p>
+ */
+public final class FieldCopier {
+    private static final ClassValue<FieldCopier> COPIERS = new ClassValue<FieldCopier>() {
+        @Override
+        protected FieldCopier computeValue(Class<?> type) {
+            return new FieldCopier(type);
+        }
+    };
+
+    private final Class<?> type;
+    @Nullable
+    private final MethodHandle constructor;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+    private final NBTTypeAdapter[] adapters;
+
+    public static FieldCopier get(Class<?> type) {
+        return COPIERS.get(type);
+    }
+
+    private FieldCopier(Class<?> type) {
+        this.type = type;
+        MethodHandle constructor;
+        try {
+            constructor = ReflectionUtil.getTrustedLookup(type).findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            constructor = null;
+        }
+        this.constructor = constructor;
+        List<MethodHandle> getters = new ArrayList<>();
+        List<MethodHandle> setters = new ArrayList<>();
+        List<NBTTypeAdapter> adapters = new ArrayList<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isTransient(modifiers) || Modifier.isStatic(modifiers)) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                // accessible final instance fields can be set through method handles
+                getters.add(lookup.unreflectGetter(field));
+                setters.add(lookup.unreflectSetter(field));
+                adapters.add(TagAdapters.getNBTAdapter(field));
+            } catch (IllegalAccessException e) {
+                throw new ReflectionUtil.UnableToGetFactoryException(e);
+            }
+        }
+        this.getters = getters.toArray(new MethodHandle[0]);
+        this.setters = setters.toArray(new MethodHandle[0]);
+        this.adapters = adapters.toArray(new NBTTypeAdapter[0]);
+    }
+
+    /**
+     * @return a new instance of the copied type, created with its no-argument constructor
+     * @throws UnsupportedOperationException if the type has no such constructor, or if it fails
+     */
+    public Object newInstance() {
+        if (constructor == null) {
+            throw new UnsupportedOperationException("Cannot snapshot " + type.getName() + " as it has no no-argument constructor");
+        }
+        try {
+            return constructor.invoke();
+        } catch (Throwable throwable) {
+            throw new UnsupportedOperationException("Could not instantiate " + type.getName() + " for a snapshot", throwable);
+        }
+    }
+
+    /**
+     * Assigns snapshots of the serialized fields of the source to the target
+     */
+    @SuppressWarnings("unchecked")
+    public void copyFields(Object source, Object target) {
+        for (int i = 0; i < getters.length; i++) {
+            try {
+                setters[i].invoke(target, Snapshots.of(adapters[i], getters[i].invoke(source)));
+            } catch (Throwable throwable) {
+                LadyLib.LOGGER.error(new FormattedMessage("Could not snapshot a field of {} ", source), throwable);
+                NBTMetrics.recordFailure(type);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T copy(T source) {
+        T ret = (T) newInstance();
+        copyFields(source, ret);
+        return ret;
+    }
+}
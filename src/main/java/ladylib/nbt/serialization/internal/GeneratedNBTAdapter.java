@@ -0,0 +1,169 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.DirtyFields;
+import ladylib.nbt.serialization.NBTDeltaTypeAdapter;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMetrics;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTReader;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTWriter;
+import net.minecraft.nbt.*;
+import org.apache.logging.log4j.message.FormattedMessage;
+
+import java.io.IOException;
+
+/**
+ * Base class for the adapters emitted by {@link NBTAdapterGenerator}.
+ * <p>
+ * Subclasses are defined at runtime and access the fields of the serialized type directly.
+ * Their access checks are done on behalf of the serialized type, which is why every member
+ * used by generated code is public.
+ * </p>
+ *
+ * @param <T> the type of object handled by this adapter
+ */
+public abstract class GeneratedNBTAdapter<T> implements NBTMutatingTypeAdapter<T, NBTTagCompound>, NBTDeltaTypeAdapter<T> {
+    protected final Class<T> type;
+    /**
+     * Adapters for every serialized field, in declaration order
+     */
+    protected final NBTTypeAdapter[] adapters;
+    private final CompoundFieldWriter fieldWriter;
+    private final CompoundFieldReader fieldReader;
+
+    /**
+     * @param settable for each field, whether it is not final
+     */
+    public GeneratedNBTAdapter(Class<T> type, NBTTypeAdapter[] adapters, String[] fieldNames, boolean[] settable) {
+        this.type = type;
+        this.adapters = adapters;
+        this.fieldWriter = new CompoundFieldWriter(fieldNames, adapters);
+        this.fieldReader = new CompoundFieldReader(fieldNames, adapters, settable);
+    }
+
+    @Override
+    public NBTTagCompound toNBT(T value) {
+        return writeFields(value, new NBTTagCompound());
+    }
+
+    @Override
+    public NBTTagCompound toNBT(T value, NBTTagCompound target) {
+        CompoundFieldWriter.clear(target);
+        return writeFields(value, target);
+    }
+
+    /**
+     * Adds the serialized fields of the given value to the compound, and returns it
+     */
+    public abstract NBTTagCompound writeFields(Object value, NBTTagCompound compound);
+
+    @Override
+    public abstract T fromNBT(T value, NBTBase nbt);
+
+    /**
+     * @return the (boxed) value of the serialized field at the given index
+     */
+    public abstract Object getFieldValue(Object instance, int index);
+
+    /**
+     * Assigns the (boxed) value to the non-final serialized field at the given index
+     */
+    public abstract void setFieldValue(Object instance, int index, Object value);
+
+    @Override
+    public void write(T value, NBTWriter out) throws IOException {
+        fieldWriter.write(value, this::getFieldValue, out);
+    }
+
+    @Override
+    public long sizeOf(T value) {
+        return fieldWriter.sizeOf(value, this::getFieldValue);
+    }
+
+    @Override
+    public T snapshot(T value) {
+        return FieldCopier.get(type).copy(value);
+    }
+
+    @Override
+    public T read(T value, NBTReader in) throws IOException {
+        return fieldReader.read(value, this::getFieldValue, this::setFieldValue, in);
+    }
+
+    @Override
+    public NBTTagCompound toPatchNBT(T value, DirtyFields dirtyFields) {
+        return fieldWriter.toPatchNBT(value, this::getFieldValue, dirtyFields);
+    }
+
+    @Override
+    public T applyPatch(T value, NBTTagCompound patch) {
+        return fieldReader.applyPatch(value, this::getFieldValue, this::setFieldValue, patch);
+    }
+
+    /**
+     * Called by generated code when a single field fails to be serialized.
+     * Mirrors the behaviour of the reflective adapter, which skips the field.
+     */
+    public static void onWriteFailure(Object instance, Throwable throwable) {
+        LadyLib.LOGGER.error(new FormattedMessage("Could not write NBT for {} ", instance), throwable);
+        NBTMetrics.recordFailure(instance.getClass());
+    }
+
+    /**
+     * Called by generated code when deserialization fails, the returned exception is then thrown.
+     */
+    public static NBTDeserializationException onReadFailure(Object instance, Throwable throwable) {
+        return new NBTDeserializationException("Could not read NBT for " + instance, throwable);
+    }
+
+    /**
+     * Called by generated code when a final field cannot be updated by its adapter
+     */
+    public static void onFinalField(Object instance, String fieldName) {
+        LadyLib.LOGGER.warn("Could not write to final field {} in {}", fieldName, instance);
+    }
+
+    /*
+     * Tag accessors used by generated code.
+     * Minecraft methods are renamed in production, so generated code must not reference them directly.
+     */
+
+    public static void setTag(NBTTagCompound compound, String name, NBTBase tag) {
+        compound.setTag(name, tag);
+    }
+
+    public static NBTBase getTag(NBTTagCompound compound, String name) {
+        return compound.getTag(name);
+    }
+
+    public static byte getByte(NBTTagByte tag) {
+        return tag.getByte();
+    }
+
+    public static short getShort(NBTTagShort tag) {
+        return tag.getShort();
+    }
+
+    public static int getInt(NBTTagInt tag) {
+        return tag.getInt();
+    }
+
+    public static long getLong(NBTTagLong tag) {
+        return tag.getLong();
+    }
+
+    public static float getFloat(NBTTagFloat tag) {
+        return tag.getFloat();
+    }
+
+    public static double getDouble(NBTTagDouble tag) {
+        return tag.getDouble();
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedNBTAdapter{" + type.getName() + "}";
+    }
+}
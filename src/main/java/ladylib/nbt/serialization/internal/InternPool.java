@@ -0,0 +1,63 @@
+package ladylib.nbt.serialization.internal;
+
+import net.minecraft.util.ResourceLocation;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deduplicates equal immutable values produced by deserialization, such as strings and resource locations.
+ * <p>
+ * The pool is a fixed size table indexed by hash, each slot weakly referencing the last value stored in it.
+ * It never holds more than its size in values, never keeps a value alive and never blocks:
+ * a value colliding with another one simply replaces it, and concurrent updates of a slot may lose one of the values.
+ * Interning is therefore best effort, which is enough to avoid keeping thousands of copies of the same
+ * registry names and keys in memory after loading many objects.
+ * </p>
+ * The size of the shared pools is set by the <tt>ladylib.nbt.internPoolSize</tt> system property,
+ * a size of 0 disabling them.
+ *
+ * @param <T> the type of pooled values, which must be immutable
+ */
+public final class InternPool<T> {
+    private static final int DEFAULT_SIZE = Integer.getInteger("ladylib.nbt.internPoolSize", 4096);
+    public static final InternPool<String> STRINGS = new InternPool<>(DEFAULT_SIZE);
+    public static final InternPool<ResourceLocation> RESOURCE_LOCATIONS = new InternPool<>(DEFAULT_SIZE);
+
+    /** null if the pool is disabled */
+    private final AtomicReferenceArray<WeakReference<T>> slots;
+    private final int mask;
+
+    /**
+     * @param size the maximum number of pooled values, rounded up to a power of two
+     */
+    public InternPool(int size) {
+        if (size <= 0) {
+            slots = null;
+            mask = 0;
+        } else {
+            int capacity = Integer.highestOneBit(Math.min(size, 1 << 30) - 1) << 1;
+            slots = new AtomicReferenceArray<>(Math.max(capacity, 1));
+            mask = slots.length() - 1;
+        }
+    }
+
+    /**
+     * @return a pooled value equal to the given one if there is one, the given value otherwise
+     */
+    public T intern(T value) {
+        if (slots == null) {
+            return value;
+        }
+        int hash = value.hashCode();
+        // only the low bits select the slot, so mix the high bits in like HashMap does
+        int index = (hash ^ hash >>> 16) & mask;
+        WeakReference<T> ref = slots.get(index);
+        T pooled = ref == null ? null : ref.get();
+        if (pooled != null && pooled.equals(value)) {
+            return pooled;
+        }
+        slots.set(index, new WeakReference<>(value));
+        return value;
+    }
+}
@@ -0,0 +1,27 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.misc.ReflectionFailedException;
+import ladylib.misc.ReflectionUtil;
+import net.minecraft.nbt.NBTTagLongArray;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Long array tags do not expose their content in 1.12, this class gives access to it.
+ */
+public final class LongArrayTags {
+    private LongArrayTags() { }
+
+    private static final MethodHandle nbtTagLongArray$data = ReflectionUtil.findGetterFromObfName(NBTTagLongArray.class, "field_193587_b", long[].class);
+
+    /**
+     * @return the array backing the given tag, modifications to it will be reflected in the tag
+     */
+    public static long[] getData(NBTTagLongArray tag) {
+        try {
+            return (long[]) nbtTagLongArray$data.invokeExact(tag);
+        } catch (Throwable throwable) {
+            throw new ReflectionFailedException("Could not read the content of " + tag, throwable);
+        }
+    }
+}
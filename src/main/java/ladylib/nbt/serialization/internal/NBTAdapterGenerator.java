@@ -0,0 +1,522 @@
+package ladylib.nbt.serialization.internal;
+
+import com.google.common.collect.ImmutableMap;
+import ladylib.LadyLib;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.TagAdapters;
+import ladylib.nbt.serialization.adapter.BaseNBTAdapters;
+import net.minecraft.nbt.*;
+import org.apache.logging.log4j.message.FormattedMessage;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Emits a dedicated {@link NBTMutatingTypeAdapter} class for a serialized type.
+ * <p>
+ * Generated adapters behave exactly like {@link ladylib.nbt.serialization.adapter.ReflectiveNBTAdapterFactory.MutatingReflectiveNBTAdapter}
+ * but read and write fields directly instead of going through method handles, and serialize primitive fields
+ * handled by {@link BaseNBTAdapters} without boxing them.
+ * </p>
+ * Generated classes are defined as anonymous classes hosted by the serialized type, which grants them access
+ * to its private fields. If the running JVM does not support this, or if the generation fails for any reason,
+ * {@link #generate(Class)} returns {@code null} and callers should fall back to reflection.
+ * Generation can be disabled entirely by setting the {@code ladylib.nbt.disableAdapterGeneration} system property.
+ * <p>
+ * Generated code never references Minecraft methods or fields by name, as those are renamed in production environments
+ * while the generator only knows their development names. Tags are instead accessed through static helpers of
+ * {@link GeneratedNBTAdapter}, which are compiled and reobfuscated with the rest of the library.
+ * </p>
+ */
+public final class NBTAdapterGenerator {
+    private NBTAdapterGenerator() { }
+
+    private static final boolean DISABLED = Boolean.getBoolean("ladylib.nbt.disableAdapterGeneration");
+    private static final String GENERATED_SUFFIX = "$$LadyLibNBTAdapter";
+
+    private static final String BASE_NAME = Type.getInternalName(GeneratedNBTAdapter.class);
+    private static final String ADAPTER_NAME = Type.getInternalName(NBTTypeAdapter.class);
+    private static final String ADAPTER_DESC = Type.getDescriptor(NBTTypeAdapter.class);
+    private static final String NBT_BASE_NAME = Type.getInternalName(NBTBase.class);
+    private static final String COMPOUND_NAME = Type.getInternalName(NBTTagCompound.class);
+    private static final String OBJECT_NAME = Type.getInternalName(Object.class);
+    private static final String THROWABLE_NAME = Type.getInternalName(Throwable.class);
+    private static final String WRITE_FIELDS_DESC = "(Ljava/lang/Object;L" + COMPOUND_NAME + ";)L" + COMPOUND_NAME + ";";
+    private static final String FROM_NBT_DESC = "(Ljava/lang/Object;L" + NBT_BASE_NAME + ";)Ljava/lang/Object;";
+    private static final String SET_TAG_DESC = "(L" + COMPOUND_NAME + ";Ljava/lang/String;L" + NBT_BASE_NAME + ";)V";
+    private static final String GET_TAG_DESC = "(L" + COMPOUND_NAME + ";Ljava/lang/String;)L" + NBT_BASE_NAME + ";";
+
+    /**
+     * Primitive tags that can be read and written without going through the field's adapter.
+     * The key is the class of the base adapter that would normally handle the field,
+     * the getter is the name of the {@link GeneratedNBTAdapter} helper reading the tag.
+     */
+    private static final Map<Class<?>, PrimitiveTag> PRIMITIVE_TAGS = ImmutableMap.<Class<?>, PrimitiveTag>builder()
+            .put(BaseNBTAdapters.ByteAdapter.class,    new PrimitiveTag(byte.class,    NBTTagByte.class,   "getByte"))
+            .put(BaseNBTAdapters.ShortAdapter.class,   new PrimitiveTag(short.class,   NBTTagShort.class,  "getShort"))
+            .put(BaseNBTAdapters.IntAdapter.class,     new PrimitiveTag(int.class,     NBTTagInt.class,    "getInt"))
+            .put(BaseNBTAdapters.LongAdapter.class,    new PrimitiveTag(long.class,    NBTTagLong.class,   "getLong"))
+            .put(BaseNBTAdapters.FloatAdapter.class,   new PrimitiveTag(float.class,   NBTTagFloat.class,  "getFloat"))
+            .put(BaseNBTAdapters.DoubleAdapter.class,  new PrimitiveTag(double.class,  NBTTagDouble.class, "getDouble"))
+            .put(BaseNBTAdapters.BooleanAdapter.class, new PrimitiveTag(boolean.class, NBTTagByte.class,   "getByte"))
+            .build();
+
+    @Nullable
+    private static final MethodHandle DEFINE_ANONYMOUS_CLASS;
+
+    static {
+        MethodHandle defineAnonymousClass = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            defineAnonymousClass = MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "defineAnonymousClass", MethodType.methodType(Class.class, Class.class, byte[].class, Object[].class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LadyLib.LOGGER.debug("NBT adapter generation is not supported by this JVM", e);
+        }
+        DEFINE_ANONYMOUS_CLASS = defineAnonymousClass;
+    }
+
+    /**
+     * @return true if adapters can be generated in the current environment
+     */
+    public static boolean isAvailable() {
+        return !DISABLED && DEFINE_ANONYMOUS_CLASS != null;
+    }
+
+    /**
+     * Generates an adapter serializing every non-static, non-transient field declared by the given class.
+     *
+     * @param clazz the class of the objects to serialize
+     * @return a generated mutating adapter, or {@code null} if the adapter could not be generated
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> NBTMutatingTypeAdapter<T, NBTTagCompound> generate(Class<T> clazz) {
+        if (!isAvailable() || clazz.isPrimitive() || clazz.isArray() || clazz.isInterface() || clazz.getClassLoader() == null) {
+            return null;
+        }
+        List<Field> fields = new ArrayList<>();
+        List<NBTTypeAdapter> adapters = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            // do not save transient fields
+            if (Modifier.isTransient(modifiers) || Modifier.isStatic(modifiers)) {
+                continue;
+            }
+            fields.add(field);
+            // adapter resolution failures are not generation failures, let them propagate like the reflective path does
+            adapters.add(TagAdapters.getNBTAdapter(field));
+        }
+        try {
+            byte[] bytes = emit(clazz, fields, adapters);
+            // anonymous classes cannot be looked up by name, so generated code never uses 'this' as a GeneratedNBTAdapter
+            Class<?> generated = (Class<?>) DEFINE_ANONYMOUS_CLASS.invoke(clazz, bytes, (Object[]) null);
+            boolean[] settable = new boolean[fields.size()];
+            for (int i = 0; i < settable.length; i++) {
+                settable[i] = !Modifier.isFinal(fields.get(i).getModifiers());
+            }
+            return (NBTMutatingTypeAdapter<T, NBTTagCompound>) generated
+                    .getConstructor(Class.class, NBTTypeAdapter[].class, String[].class, boolean[].class)
+                    .newInstance(clazz, adapters.toArray(new NBTTypeAdapter[0]), fields.stream().map(Field::getName).toArray(String[]::new), settable);
+        } catch (Throwable t) {
+            LadyLib.LOGGER.warn(new FormattedMessage("Could not generate an NBT adapter for {}, falling back to reflection", clazz), t);
+            return null;
+        }
+    }
+
+    private static byte[] emit(Class<?> clazz, List<Field> fields, List<NBTTypeAdapter> adapters) {
+        String hostName = Type.getInternalName(clazz);
+        String className = hostName + GENERATED_SUFFIX;
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // frames never need to merge unrelated types, and loading classes from here is unsafe
+                return type1.equals(type2) ? type1 : OBJECT_NAME;
+            }
+        };
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, BASE_NAME, null);
+        for (int i = 0; i < fields.size(); i++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, adapterField(i), ADAPTER_DESC, null, null).visitEnd();
+        }
+        emitConstructor(cw, className, fields.size());
+        emitWriteFields(cw, className, hostName, fields, adapters);
+        emitFromNBT(cw, className, hostName, fields, adapters);
+        emitGetFieldValue(cw, hostName, fields);
+        emitSetFieldValue(cw, hostName, fields);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void emitConstructor(ClassWriter cw, String className, int fieldCount) {
+        String desc = "(Ljava/lang/Class;[" + ADAPTER_DESC + "[Ljava/lang/String;[Z)V";
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", desc, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitMethodInsn(INVOKESPECIAL, BASE_NAME, "<init>", desc, false);
+        for (int i = 0; i < fieldCount; i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            mv.visitFieldInsn(PUTFIELD, className, adapterField(i), ADAPTER_DESC);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * Equivalent java code:
+     * NBTTagCompound writeFields(Object value, NBTTagCompound compound) {
+     *     Host instance = (Host) value;
+     *     try {
+     *         setTag(compound, "primitiveField", new NBTTagInt(instance.primitiveField));
+     *     } catch (Throwable t) { onWriteFailure(value, t); }
+     *     try {
+     *         NBTBase serialized = this.adapter1.toNBT(instance.otherField);
+     *         if (serialized != null) setTag(compound, "otherField", serialized);
+     *     } catch (Throwable t) { onWriteFailure(value, t); }
+     *     return compound;
+     * }
+     */
+    private static void emitWriteFields(ClassWriter cw, String className, String hostName, List<Field> fields, List<NBTTypeAdapter> adapters) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "writeFields", WRITE_FIELDS_DESC, null, null);
+        mv.visitCode();
+        // move the compound argument to local 3 and store the cast instance in 2
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, hostName);
+        mv.visitVarInsn(ASTORE, 2);
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Class<?> fieldType = field.getType();
+            String fieldDesc = Type.getDescriptor(fieldType);
+            Label start = new Label();
+            Label end = new Label();
+            Label handler = new Label();
+            Label next = new Label();
+            mv.visitTryCatchBlock(start, end, handler, THROWABLE_NAME);
+            mv.visitLabel(start);
+            PrimitiveTag primitive = PRIMITIVE_TAGS.get(adapters.get(i).getClass());
+            if (primitive != null && primitive.type == fieldType) {
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitLdcInsn(field.getName());
+                mv.visitTypeInsn(NEW, primitive.tagName);
+                mv.visitInsn(DUP);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitFieldInsn(GETFIELD, hostName, field.getName(), fieldDesc);
+                if (fieldType == boolean.class) {
+                    // booleans are already 0 or 1 on the stack
+                    mv.visitInsn(I2B);
+                }
+                mv.visitMethodInsn(INVOKESPECIAL, primitive.tagName, "<init>", "(" + primitive.tagDesc + ")V", false);
+                mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "setTag", SET_TAG_DESC, false);
+            } else {
+                loadAdapter(mv, className, i);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitFieldInsn(GETFIELD, hostName, field.getName(), fieldDesc);
+                box(mv, fieldType);
+                mv.visitMethodInsn(INVOKEINTERFACE, ADAPTER_NAME, "toNBT", "(Ljava/lang/Object;)L" + NBT_BASE_NAME + ";", true);
+                mv.visitVarInsn(ASTORE, 4);
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitJumpInsn(IFNULL, end);
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitLdcInsn(field.getName());
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "setTag", SET_TAG_DESC, false);
+            }
+            mv.visitLabel(end);
+            mv.visitJumpInsn(GOTO, next);
+            mv.visitLabel(handler);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitInsn(SWAP);
+            mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "onWriteFailure", "(Ljava/lang/Object;Ljava/lang/Throwable;)V", false);
+            mv.visitLabel(next);
+        }
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * Equivalent java code:
+     * Object fromNBT(Object value, NBTBase nbt) {
+     *     if (nbt instanceof NBTTagCompound) {
+     *         NBTTagCompound compound = (NBTTagCompound) nbt;
+     *         Host instance = (Host) value;
+     *         try {
+     *             NBTBase serialized = getTag(compound, "primitiveField");
+     *             if (serialized instanceof NBTTagInt) instance.primitiveField = getInt((NBTTagInt) serialized);
+     *             else instance.primitiveField = (Integer) this.adapter0.fromNBT(serialized);
+     *             serialized = getTag(compound, "mutatedField");
+     *             this.adapter1.fromNBT(instance.mutatedField, serialized);
+     *             serialized = getTag(compound, "otherField");
+     *             instance.otherField = (FieldType) this.adapter2.fromNBT(serialized);
+     *         } catch (Throwable t) { throw onReadFailure(value, t); }
+     *     }
+     *     return value;
+     * }
+     */
+    private static void emitFromNBT(ClassWriter cw, String className, String hostName, List<Field> fields, List<NBTTypeAdapter> adapters) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "fromNBT", FROM_NBT_DESC, null, null);
+        mv.visitCode();
+        Label ret = new Label();
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, THROWABLE_NAME);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(INSTANCEOF, COMPOUND_NAME);
+        mv.visitJumpInsn(IFEQ, ret);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(CHECKCAST, COMPOUND_NAME);
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, hostName);
+        mv.visitVarInsn(ASTORE, 4);
+        mv.visitLabel(start);
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Class<?> fieldType = field.getType();
+            String fieldDesc = Type.getDescriptor(fieldType);
+            NBTTypeAdapter adapter = adapters.get(i);
+            boolean isFinal = Modifier.isFinal(field.getModifiers());
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitLdcInsn(field.getName());
+            mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "getTag", GET_TAG_DESC, false);
+            mv.visitVarInsn(ASTORE, 5);
+            PrimitiveTag primitive = PRIMITIVE_TAGS.get(adapter.getClass());
+            if (adapter instanceof NBTMutatingTypeAdapter) {
+                loadAdapter(mv, className, i);
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitFieldInsn(GETFIELD, hostName, field.getName(), fieldDesc);
+                box(mv, fieldType);
+                mv.visitVarInsn(ALOAD, 5);
+                mv.visitMethodInsn(INVOKEINTERFACE, ADAPTER_NAME, "fromNBT", "(Ljava/lang/Object;L" + NBT_BASE_NAME + ";)Ljava/lang/Object;", true);
+                mv.visitInsn(POP);
+            } else if (isFinal) {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitLdcInsn(field.getName());
+                mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "onFinalField", "(Ljava/lang/Object;Ljava/lang/String;)V", false);
+            } else if (primitive != null && primitive.type == fieldType) {
+                Label slow = new Label();
+                Label done = new Label();
+                mv.visitVarInsn(ALOAD, 5);
+                mv.visitTypeInsn(INSTANCEOF, primitive.tagName);
+                mv.visitJumpInsn(IFEQ, slow);
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitVarInsn(ALOAD, 5);
+                mv.visitTypeInsn(CHECKCAST, primitive.tagName);
+                mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, primitive.getter, "(L" + primitive.tagName + ";)" + primitive.tagDesc, false);
+                if (fieldType == boolean.class) {
+                    // same semantics as BooleanAdapter: only 1 is true
+                    Label isFalse = new Label();
+                    Label converted = new Label();
+                    mv.visitInsn(ICONST_1);
+                    mv.visitJumpInsn(IF_ICMPNE, isFalse);
+                    mv.visitInsn(ICONST_1);
+                    mv.visitJumpInsn(GOTO, converted);
+                    mv.visitLabel(isFalse);
+                    mv.visitInsn(ICONST_0);
+                    mv.visitLabel(converted);
+                }
+                mv.visitFieldInsn(PUTFIELD, hostName, field.getName(), fieldDesc);
+                mv.visitJumpInsn(GOTO, done);
+                mv.visitLabel(slow);
+                emitAdapterRead(mv, className, hostName, field, i);
+                mv.visitLabel(done);
+            } else {
+                emitAdapterRead(mv, className, hostName, field, i);
+            }
+        }
+        mv.visitLabel(end);
+        mv.visitLabel(ret);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(handler);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(SWAP);
+        mv.visitMethodInsn(INVOKESTATIC, BASE_NAME, "onReadFailure", "(Ljava/lang/Object;Ljava/lang/Throwable;)L" + Type.getInternalName(NBTDeserializationException.class) + ";", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * Equivalent java code:
+     * Object getFieldValue(Object value, int index) {
+     *     Host instance = (Host) value;
+     *     switch (index) {
+     *         case 0: return Integer.valueOf(instance.primitiveField);
+     *         case 1: return instance.otherField;
+     *         default: throw new IndexOutOfBoundsException();
+     *     }
+     * }
+     */
+    private static void emitGetFieldValue(ClassWriter cw, String hostName, List<Field> fields) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getFieldValue", "(Ljava/lang/Object;I)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, hostName);
+        mv.visitVarInsn(ASTORE, 3);
+        Label outOfBounds = new Label();
+        if (!fields.isEmpty()) {
+            Label[] cases = new Label[fields.size()];
+            for (int i = 0; i < cases.length; i++) {
+                cases[i] = new Label();
+            }
+            mv.visitVarInsn(ILOAD, 2);
+            mv.visitTableSwitchInsn(0, cases.length - 1, outOfBounds, cases);
+            for (int i = 0; i < cases.length; i++) {
+                Field field = fields.get(i);
+                mv.visitLabel(cases[i]);
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitFieldInsn(GETFIELD, hostName, field.getName(), Type.getDescriptor(field.getType()));
+                box(mv, field.getType());
+                mv.visitInsn(ARETURN);
+            }
+        }
+        mv.visitLabel(outOfBounds);
+        String exceptionName = Type.getInternalName(IndexOutOfBoundsException.class);
+        mv.visitTypeInsn(NEW, exceptionName);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, exceptionName, "<init>", "()V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /*
+     * Equivalent java code:
+     * void setFieldValue(Object value, int index, Object fieldValue) {
+     *     Host instance = (Host) value;
+     *     switch (index) {
+     *         case 0: instance.primitiveField = ((Integer) fieldValue).intValue(); return;
+     *         case 1: instance.otherField = (FieldType) fieldValue; return;
+     *         default: throw new IndexOutOfBoundsException(); // also used for final fields
+     *     }
+     * }
+     */
+    private static void emitSetFieldValue(ClassWriter cw, String hostName, List<Field> fields) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "setFieldValue", "(Ljava/lang/Object;ILjava/lang/Object;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, hostName);
+        mv.visitVarInsn(ASTORE, 4);
+        Label outOfBounds = new Label();
+        if (!fields.isEmpty()) {
+            Label[] cases = new Label[fields.size()];
+            for (int i = 0; i < cases.length; i++) {
+                cases[i] = Modifier.isFinal(fields.get(i).getModifiers()) ? outOfBounds : new Label();
+            }
+            mv.visitVarInsn(ILOAD, 2);
+            mv.visitTableSwitchInsn(0, cases.length - 1, outOfBounds, cases);
+            for (int i = 0; i < cases.length; i++) {
+                Field field = fields.get(i);
+                if (cases[i] == outOfBounds) {
+                    continue;
+                }
+                mv.visitLabel(cases[i]);
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitVarInsn(ALOAD, 3);
+                unbox(mv, field.getType());
+                mv.visitFieldInsn(PUTFIELD, hostName, field.getName(), Type.getDescriptor(field.getType()));
+                mv.visitInsn(RETURN);
+            }
+        }
+        mv.visitLabel(outOfBounds);
+        String exceptionName = Type.getInternalName(IndexOutOfBoundsException.class);
+        mv.visitTypeInsn(NEW, exceptionName);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, exceptionName, "<init>", "()V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Emits {@code instance.field = (FieldType) this.adapterN.fromNBT(serialized)}
+     */
+    private static void emitAdapterRead(MethodVisitor mv, String className, String hostName, Field field, int index) {
+        Class<?> fieldType = field.getType();
+        mv.visitVarInsn(ALOAD, 4);
+        loadAdapter(mv, className, index);
+        mv.visitVarInsn(ALOAD, 5);
+        mv.visitMethodInsn(INVOKEINTERFACE, ADAPTER_NAME, "fromNBT", "(L" + NBT_BASE_NAME + ";)Ljava/lang/Object;", true);
+        unbox(mv, fieldType);
+        mv.visitFieldInsn(PUTFIELD, hostName, field.getName(), Type.getDescriptor(fieldType));
+    }
+
+    private static void box(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            Type primitive = Type.getType(type);
+            String wrapper = Type.getInternalName(wrap(type));
+            mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + primitive.getDescriptor() + ")L" + wrapper + ";", false);
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            String wrapper = Type.getInternalName(wrap(type));
+            mv.visitTypeInsn(CHECKCAST, wrapper);
+            mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + Type.getDescriptor(type), false);
+        } else {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+    private static Class<?> wrap(Class<?> primitive) {
+        return MethodType.methodType(primitive).wrap().returnType();
+    }
+
+    /**
+     * Emits {@code this.adapterN}
+     */
+    private static void loadAdapter(MethodVisitor mv, String className, int index) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, adapterField(index), ADAPTER_DESC);
+    }
+
+    private static String adapterField(int index) {
+        return "adapter" + index;
+    }
+
+    private static class PrimitiveTag {
+        private final Class<?> type;
+        private final String tagName;
+        private final String tagDesc;
+        private final String getter;
+
+        private PrimitiveTag(Class<?> type, Class<? extends NBTPrimitive> tagClass, String getter) {
+            this.type = type;
+            this.tagName = Type.getInternalName(tagClass);
+            // booleans are stored in byte tags
+            this.tagDesc = Type.getDescriptor(type == boolean.class ? byte.class : type);
+            this.getter = getter;
+        }
+    }
+}
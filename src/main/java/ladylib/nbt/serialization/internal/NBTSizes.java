@@ -0,0 +1,99 @@
+package ladylib.nbt.serialization.internal;
+
+import net.minecraft.nbt.*;
+
+import static net.minecraftforge.common.util.Constants.NBT.*;
+
+/**
+ * Computes the size of tags in the binary NBT format, without writing them.
+ */
+public final class NBTSizes {
+    private NBTSizes() { }
+
+    /**
+     * The size of a list tag's payload before its elements: the element type id and the element count
+     */
+    public static final int LIST_HEADER_SIZE = 1 + 4;
+
+    /**
+     * The size of a compound tag's payload after its entries: the end tag
+     */
+    public static final int COMPOUND_FOOTER_SIZE = 1;
+
+    /**
+     * @return the number of bytes taken by the given tag written as an unnamed root tag
+     */
+    public static long sizeOfRoot(NBTBase tag) {
+        // type id and empty name
+        return 1 + 2 + sizeOfPayload(tag);
+    }
+
+    /**
+     * @return the number of bytes taken by the given tag's payload, excluding its type id and name
+     */
+    public static long sizeOfPayload(NBTBase tag) {
+        switch (tag.getId()) {
+            case TAG_END:
+                return 0;
+            case TAG_BYTE:
+                return 1;
+            case TAG_SHORT:
+                return 2;
+            case TAG_INT:
+            case TAG_FLOAT:
+                return 4;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                return 8;
+            case TAG_BYTE_ARRAY:
+                return 4 + ((NBTTagByteArray) tag).getByteArray().length;
+            case TAG_STRING:
+                return sizeOfString(((NBTTagString) tag).getString());
+            case TAG_LIST:
+                long listSize = LIST_HEADER_SIZE;
+                for (NBTBase element : (NBTTagList) tag) {
+                    listSize += sizeOfPayload(element);
+                }
+                return listSize;
+            case TAG_COMPOUND:
+                NBTTagCompound compound = (NBTTagCompound) tag;
+                long compoundSize = COMPOUND_FOOTER_SIZE;
+                for (String key : compound.getKeySet()) {
+                    compoundSize += sizeOfEntry(key, sizeOfPayload(compound.getTag(key)));
+                }
+                return compoundSize;
+            case TAG_INT_ARRAY:
+                return 4 + 4L * ((NBTTagIntArray) tag).getIntArray().length;
+            case TAG_LONG_ARRAY:
+                return 4 + 8L * LongArrayTags.getData((NBTTagLongArray) tag).length;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by a compound entry with the given key and payload size
+     */
+    public static long sizeOfEntry(String key, long payloadSize) {
+        // type id, name and payload
+        return 1 + sizeOfString(key) + payloadSize;
+    }
+
+    /**
+     * @return the number of bytes taken by the given string in modified UTF-8, including its length prefix
+     */
+    public static int sizeOfString(String s) {
+        int size = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                size++;
+            } else if (c > 0x07FF) {
+                size += 3;
+            } else {
+                size += 2;
+            }
+        }
+        return size;
+    }
+}
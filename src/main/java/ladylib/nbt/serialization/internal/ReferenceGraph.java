@@ -0,0 +1,142 @@
+package ladylib.nbt.serialization.internal;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.SharedReferences;
+import net.minecraft.nbt.NBTTagCompound;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Identity ids assigned to {@link SharedReferences} objects during a single serialization operation.
+ * <p>
+ * Each thread has at most one active graph, opened by the outermost {@link #open()} call.
+ * As long as no shared type has been encountered, opening a graph does nothing.
+ * </p>
+ * <p>
+ * Ids are assigned in the order in which the writer visits objects, which is not the order in which every
+ * reader visits them: streamed compounds are read in hash order, and compact maps in their compound's order.
+ * A reference read before the compound defining its id therefore gets an empty {@link #registerForward(int, Object) placeholder},
+ * which is filled in place once the definition is read. The graph fails when closed if a placeholder never got defined.
+ * </p>
+ */
+public final class ReferenceGraph {
+    private static final ThreadLocal<ReferenceGraph> CURRENT = new ThreadLocal<>();
+    private static final Scope NESTED = () -> { };
+    private static final Scope OWNER = () -> {
+        ReferenceGraph graph = CURRENT.get();
+        CURRENT.remove();
+        if (graph != null && !graph.forward.isEmpty()) {
+            throw new NBTDeserializationException("Reference to unknown objects " + graph.forward);
+        }
+    };
+    private static volatile boolean inUse;
+
+    private final Map<Object, Integer> ids = new IdentityHashMap<>();
+    private final Int2ObjectMap<Object> objects = new Int2ObjectOpenHashMap<>();
+    /** ids that have been referenced but not defined yet */
+    private final IntSet forward = new IntOpenHashSet();
+
+    private ReferenceGraph() { }
+
+    /**
+     * Enables reference tracking, called when an adapter for a shared type is created
+     */
+    public static void markInUse() {
+        inUse = true;
+    }
+
+    /**
+     * Starts tracking references on the current thread if no graph is active
+     *
+     * @return a scope ending the graph if it was started by this call
+     */
+    public static Scope open() {
+        if (!inUse || CURRENT.get() != null) {
+            return NESTED;
+        }
+        CURRENT.set(new ReferenceGraph());
+        return OWNER;
+    }
+
+    @Nullable
+    public static ReferenceGraph current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the id of an already serialized instance, or -1 if the instance is new
+     */
+    public int getId(Object instance) {
+        Integer id = ids.get(instance);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Assigns an id to a new instance
+     */
+    public int register(Object instance) {
+        int id = ids.size();
+        ids.put(instance, id);
+        return id;
+    }
+
+    /**
+     * Binds a deserialized instance to the id read from its compound
+     */
+    public void register(int id, Object instance) {
+        objects.put(id, instance);
+    }
+
+    /**
+     * Binds an empty instance to an id that is referenced before being defined
+     */
+    public void registerForward(int id, Object placeholder) {
+        objects.put(id, placeholder);
+        forward.add(id);
+    }
+
+    /**
+     * @return the placeholder created for the given id if it was referenced before this definition, or null
+     */
+    @Nullable
+    public Object resolveForward(int id) {
+        return forward.remove(id) ? objects.get(id) : null;
+    }
+
+    /**
+     * @return the instance deserialized with the given id, or null if there is none
+     */
+    @Nullable
+    public Object getInstance(int id) {
+        return objects.get(id);
+    }
+
+    public static NBTTagCompound createReference(int id) {
+        NBTTagCompound ret = new NBTTagCompound();
+        ret.setInteger(SharedReferences.REF_KEY, id);
+        return ret;
+    }
+
+    public static long sizeOfReference() {
+        return NBTSizes.COMPOUND_FOOTER_SIZE + sizeOfId(SharedReferences.REF_KEY);
+    }
+
+    /**
+     * @return the size of an id entry with the given key
+     */
+    public static long sizeOfId(String key) {
+        return NBTSizes.sizeOfEntry(key, 4);
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,93 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NBTTypeAdapter;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * Helpers for the {@link NBTTypeAdapter#snapshot(Object) snapshot} implementations of container adapters.
+ * <p>
+ * Copied containers keep the class of the original whenever it exposes a public <code>clone</code> method,
+ * so that they can be assigned to the same fields. Other containers are copied into a general purpose
+ * implementation with the same iteration order.
+ * </p>
+ */
+public final class Snapshots {
+    private static final ClassValue<Optional<MethodHandle>> CLONE_METHODS = new ClassValue<Optional<MethodHandle>>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            try {
+                return Optional.of(MethodHandles.publicLookup().findVirtual(type, "clone", MethodType.methodType(Object.class)));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private Snapshots() { }
+
+    /**
+     * @return a snapshot of the given value, or <code>null</code> if the value is null
+     */
+    @Nullable
+    public static <T> T of(NBTTypeAdapter<T, ?> adapter, @Nullable T value) {
+        return value == null ? null : adapter.snapshot(value);
+    }
+
+    /**
+     * @return a shallow copy of the given container, or null if its class has no public <code>clone</code> method
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <C> C shallowCopy(C container) {
+        Optional<MethodHandle> clone = CLONE_METHODS.get(container.getClass());
+        if (!clone.isPresent()) {
+            return null;
+        }
+        try {
+            return (C) clone.get().invoke(container);
+        } catch (Throwable throwable) {
+            return null;
+        }
+    }
+
+    /**
+     * @return an empty collection that can hold the elements of the given one in the same order
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Collection<E> emptyCopy(Collection<E> collection) {
+        Collection<E> ret = shallowCopy(collection);
+        if (ret != null) {
+            ret.clear();
+            return ret;
+        }
+        if (collection instanceof SortedSet) {
+            return new TreeSet<>(((SortedSet<E>) collection).comparator());
+        } else if (collection instanceof Set) {
+            return new LinkedHashSet<>(collection.size());
+        } else if (collection instanceof Queue) {
+            return new ArrayDeque<>(collection.size());
+        }
+        return new ArrayList<>(collection.size());
+    }
+
+    /**
+     * @return an empty map that can hold the entries of the given one in the same order
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> emptyCopy(Map<K, V> map) {
+        Map<K, V> ret = shallowCopy(map);
+        if (ret != null) {
+            ret.clear();
+            return ret;
+        }
+        if (map instanceof SortedMap) {
+            return new TreeMap<>(((SortedMap<K, V>) map).comparator());
+        }
+        return new LinkedHashMap<>(map.size() * 2);
+    }
+}
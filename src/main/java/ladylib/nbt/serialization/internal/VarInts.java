@@ -0,0 +1,94 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NBTDeserializationException;
+
+/**
+ * Encodes sequences of integers as zigzag variable length integers, 7 bits per byte,
+ * the highest bit of each byte being set when more bytes follow.
+ * <p>
+ * Zigzag encoding maps small negative values to small positive ones (0, -1, 1, -2... become 0, 1, 2, 3...),
+ * so that both take few bytes. In delta mode, each element is encoded as its difference with the previous one,
+ * differences wrapping around like the <code>long</code> arithmetic they are computed with.
+ * </p>
+ */
+public final class VarInts {
+    private VarInts() { }
+
+    /**
+     * @return the number of bytes taken by the encoded sequence
+     */
+    public static int sizeOf(long[] values, boolean delta) {
+        int size = 0;
+        long previous = 0;
+        for (long value : values) {
+            size += sizeOf(zigzag(delta ? value - previous : value));
+            previous = value;
+        }
+        return size;
+    }
+
+    public static byte[] encode(long[] values, boolean delta) {
+        byte[] ret = new byte[sizeOf(values, delta)];
+        int pos = 0;
+        long previous = 0;
+        for (long value : values) {
+            long encoded = zigzag(delta ? value - previous : value);
+            previous = value;
+            while ((encoded & ~0x7FL) != 0) {
+                ret[pos++] = (byte) (encoded & 0x7F | 0x80);
+                encoded >>>= 7;
+            }
+            ret[pos++] = (byte) encoded;
+        }
+        return ret;
+    }
+
+    /**
+     * @throws NBTDeserializationException if the data ends in the middle of an element, or if an element is too long
+     */
+    public static long[] decode(byte[] data, boolean delta) {
+        // every element ends with the only one of its bytes that does not have its highest bit set
+        int count = 0;
+        for (byte b : data) {
+            if (b >= 0) {
+                count++;
+            }
+        }
+        if (data.length > 0 && data[data.length - 1] < 0) {
+            throw new NBTDeserializationException("Truncated variable length integer sequence");
+        }
+        long[] ret = new long[count];
+        int pos = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long encoded = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift >= Long.SIZE) {
+                    throw new NBTDeserializationException("Variable length integer is too long");
+                }
+                b = data[pos++];
+                encoded |= (b & 0x7FL) << shift;
+                shift += 7;
+            } while (b < 0);
+            long value = unzigzag(encoded);
+            ret[i] = delta ? previous + value : value;
+            previous = ret[i];
+        }
+        return ret;
+    }
+
+    private static int sizeOf(long encoded) {
+        // 1 byte per started group of 7 significant bits
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(encoded) + 6) / 7);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long encoded) {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+}
@@ -0,0 +1,121 @@
+package ladylib.capability;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.serialization.NBTCreator;
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReflectiveCapabilityStorageTest {
+
+    private static final NBTTypeAdapterFactory FACTORY = (type, allowMutating) -> type.getRawType() == CustomCap.class ? new CustomCapAdapter() : null;
+
+    @BeforeClass
+    public static void addFactory() {
+        TagAdapters.addAdapterFactory(FACTORY);
+    }
+
+    @AfterClass
+    public static void removeFactory() {
+        TagAdapters.removeAdapterFactory(FACTORY);
+    }
+
+    @Test
+    public void storageRoundTrip() {
+        ReflectiveCapabilityStorage<ManaCap> storage = new ReflectiveCapabilityStorage<>(ManaCap.class);
+        ManaCap cap = new ManaCap();
+        cap.mana = 12;
+        cap.spells.add("fireball");
+        NBTBase nbt = storage.writeNBT(null, cap, null);
+        assertEquals(NBTSerialization.serializeNBT(cap), nbt);
+
+        ManaCap read = new ManaCap();
+        storage.readNBT(null, read, null, nbt);
+        assertEquals(12, read.mana);
+        assertEquals(cap.spells, read.spells);
+    }
+
+    @Test
+    public void storageUsesTheCachedAdapter() {
+        ReflectiveCapabilityStorage<CustomCap> storage = new ReflectiveCapabilityStorage<>(CustomCap.class);
+        CustomCap cap = new CustomCap();
+        cap.value = 3;
+        assertEquals(new NBTTagInt(3), storage.writeNBT(null, cap, null));
+        CustomCap read = new CustomCap();
+        storage.readNBT(null, read, null, new NBTTagInt(7));
+        assertEquals(7, read.value);
+    }
+
+    @Test
+    public void storageUpdatesCapabilitiesInPlace() {
+        // the cached adapter of this type creates new instances, which the storage cannot use
+        ReflectiveCapabilityStorage<CreatedCap> storage = new ReflectiveCapabilityStorage<>(CreatedCap.class);
+        CreatedCap cap = new CreatedCap(5);
+        NBTBase nbt = storage.writeNBT(null, cap, null);
+        CreatedCap read = new CreatedCap(0);
+        storage.readNBT(null, read, null, nbt);
+        assertEquals(5, read.charges);
+    }
+
+    @Test
+    public void emptyCapabilitiesAreNotSaved() {
+        assertNull(new ReflectiveCapabilityStorage<>(EmptyCap.class).writeNBT(null, new EmptyCap(), null));
+    }
+
+    @Test
+    public void scratchCompoundsAreReused() {
+        ReflectiveCapabilityStorage<ManaCap> storage = new ReflectiveCapabilityStorage<>(ManaCap.class);
+        ManaCap cap = new ManaCap();
+        cap.mana = 4;
+        NBTTagCompound scratch = new NBTTagCompound();
+        scratch.setString("stale", "data");
+        NBTBase nbt = storage.writeNBT(cap, scratch);
+        assertEquals(NBTSerialization.serializeNBT(cap), nbt);
+    }
+
+    public static class ManaCap {
+        int mana;
+        List<String> spells = new ArrayList<>();
+    }
+
+    public static class CustomCap {
+        int value;
+    }
+
+    public static class CreatedCap {
+        int charges;
+
+        public CreatedCap() { }
+
+        @NBTCreator
+        CreatedCap(int charges) {
+            this.charges = charges;
+        }
+    }
+
+    public static class EmptyCap { }
+
+    static class CustomCapAdapter implements NBTMutatingTypeAdapter<CustomCap, NBTTagInt> {
+        @Override
+        public NBTTagInt toNBT(CustomCap value) {
+            return new NBTTagInt(value.value);
+        }
+
+        @Override
+        public CustomCap fromNBT(CustomCap value, NBTBase nbt) {
+            value.value = ((NBTTagInt) nbt).getInt();
+            return value;
+        }
+    }
+}
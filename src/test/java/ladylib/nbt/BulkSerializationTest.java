@@ -0,0 +1,79 @@
+package ladylib.nbt;
+
+import com.google.gson.reflect.TypeToken;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BulkSerializationTest {
+
+    /** above the sequential threshold, so that the batch gets split */
+    private static final int LARGE = 5000;
+
+    @Test
+    public void largeBatchesKeepTheirOrder() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < LARGE; i++) {
+            entries.add(new Entry(i));
+        }
+        List<NBTBase> tags = NBTSerialization.toNBTAll(entries, Entry.class);
+        assertEquals(LARGE, tags.size());
+        for (int i = 0; i < LARGE; i++) {
+            assertEquals(NBTSerialization.toNBT(entries.get(i), Entry.class), tags.get(i));
+        }
+        List<Entry> read = NBTSerialization.fromNBTAll(tags, Entry.class);
+        for (int i = 0; i < LARGE; i++) {
+            assertEquals(i, read.get(i).id);
+            assertEquals(entries.get(i).pos, read.get(i).pos);
+            assertEquals(entries.get(i).names, read.get(i).names);
+        }
+    }
+
+    @Test
+    public void nullsStayInPlace() {
+        List<Entry> entries = Arrays.asList(new Entry(1), null, new Entry(3));
+        List<NBTBase> tags = NBTSerialization.toNBTAll(entries, Entry.class);
+        assertNull(tags.get(1));
+        List<Entry> read = NBTSerialization.fromNBTAll(tags, Entry.class);
+        assertEquals(1, read.get(0).id);
+        assertNull(read.get(1));
+        assertEquals(3, read.get(2).id);
+    }
+
+    @Test
+    public void nonRandomAccessListsAreConverted() {
+        List<Integer> values = new LinkedList<>();
+        for (int i = 0; i < LARGE; i++) {
+            values.add(i);
+        }
+        Type type = new TypeToken<Integer>() { }.getType();
+        assertEquals(values, NBTSerialization.fromNBTAll(NBTSerialization.toNBTAll(values, type), type));
+    }
+
+    @Test
+    public void emptyBatches() {
+        assertTrue(NBTSerialization.toNBTAll(Collections.emptyList(), Entry.class).isEmpty());
+        assertTrue(NBTSerialization.fromNBTAll(Collections.emptyList(), Entry.class).isEmpty());
+    }
+
+    public static class Entry {
+        int id;
+        BlockPos pos;
+        List<String> names = new ArrayList<>();
+
+        public Entry() { }
+
+        Entry(int id) {
+            this.id = id;
+            this.pos = new BlockPos(id, id % 256, -id);
+            for (int i = 0; i < id % 5; i++) {
+                names.add("name" + i);
+            }
+        }
+    }
+}
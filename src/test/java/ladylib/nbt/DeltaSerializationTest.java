@@ -0,0 +1,140 @@
+package ladylib.nbt;
+
+import ladylib.nbt.serialization.DirtyFields;
+import ladylib.nbt.serialization.DirtyTracked;
+import ladylib.nbt.serialization.NBTDeltaTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.NBTTypeAdapterFactory;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagString;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeltaSerializationTest {
+
+    /** Selects an adapter serializing null to nothing */
+    private static final NBTTypeAdapterFactory FACTORY = (type, allowMutating) -> type.getRawType() == Owner.class ? new OwnerAdapter() : null;
+
+    @BeforeClass
+    public static void addFactory() {
+        TagAdapters.addAdapterFactory(FACTORY);
+    }
+
+    @AfterClass
+    public static void removeFactory() {
+        TagAdapters.removeAdapterFactory(FACTORY);
+    }
+
+    @Test
+    public void firstDeltaIsComplete() {
+        Storage storage = new Storage();
+        storage.setMana(5);
+        NBTTagCompound patch = NBTSerialization.serializeDelta(storage);
+        assertEquals(NBTSerialization.serializeNBT(storage), patch);
+        assertTrue(storage.getDirtyFields().isClean());
+    }
+
+    @Test
+    public void patchHoldsOnlyChangedFields() {
+        Storage source = new Storage();
+        Storage target = new Storage();
+        NBTSerialization.deserializeDelta(target, NBTSerialization.serializeDelta(source));
+
+        source.setMana(10);
+        source.label = "changed without being marked";
+        NBTTagCompound patch = NBTSerialization.serializeDelta(source);
+        assertEquals(1, patch.getKeySet().size());
+        assertEquals(10, patch.getInteger("mana"));
+
+        NBTSerialization.deserializeDelta(target, patch);
+        assertEquals(10, target.mana);
+        assertEquals("label", target.label);
+    }
+
+    @Test
+    public void cleanObjectsProduceEmptyPatches() {
+        Storage storage = new Storage();
+        NBTSerialization.serializeDelta(storage);
+        assertTrue(NBTSerialization.serializeDelta(storage).isEmpty());
+    }
+
+    @Test
+    public void nullFieldsAreRemoved() {
+        Storage source = new Storage();
+        Storage target = new Storage();
+        NBTSerialization.deserializeDelta(target, NBTSerialization.serializeDelta(source));
+        source.setOwner(null);
+        NBTTagCompound patch = NBTSerialization.serializeDelta(source);
+        assertTrue(patch.hasKey(NBTDeltaTypeAdapter.REMOVED_FIELDS));
+        NBTSerialization.deserializeDelta(target, patch);
+        assertNull(target.owner);
+    }
+
+    @Test
+    public void mutableFieldsArePatchedInPlace() {
+        Storage source = new Storage();
+        Storage target = new Storage();
+        List<String> spells = target.spells;
+        NBTSerialization.serializeDelta(source);
+        source.addSpell("fireball");
+        NBTSerialization.deserializeDelta(target, NBTSerialization.serializeDelta(source));
+        assertSame(spells, target.spells);
+        assertEquals(source.spells, target.spells);
+    }
+
+    public static class Storage implements DirtyTracked {
+        private final transient DirtyFields dirtyFields = new DirtyFields();
+        private int mana;
+        private Owner owner = new Owner("owner");
+        private String label = "label";
+        private final List<String> spells = new ArrayList<>();
+
+        void setMana(int mana) {
+            this.mana = mana;
+            dirtyFields.markDirty("mana");
+        }
+
+        void setOwner(Owner owner) {
+            this.owner = owner;
+            dirtyFields.markDirty("owner");
+        }
+
+        void addSpell(String spell) {
+            spells.add(spell);
+            dirtyFields.markDirty("spells");
+        }
+
+        @Override
+        public DirtyFields getDirtyFields() {
+            return dirtyFields;
+        }
+    }
+
+    public static class Owner {
+        private final String name;
+
+        Owner(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class OwnerAdapter implements NBTTypeAdapter<Owner, NBTTagString> {
+        @Override
+        public NBTTagString toNBT(Owner value) {
+            return value == null ? null : new NBTTagString(value.name);
+        }
+
+        @Override
+        public Owner fromNBT(NBTBase nbt) {
+            return nbt instanceof NBTTagString ? new Owner(((NBTTagString) nbt).getString()) : null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ladylib.nbt;
+
+import net.minecraft.nbt.NBTBase;
+
+import java.io.*;
+import java.lang.reflect.Type;
+
+/**
+ * Serializes values back and forth through the tree and streaming paths
+ */
+public final class RoundTrips {
+    private RoundTrips() { }
+
+    public static <T> T tree(T value, Type type) {
+        return NBTSerialization.fromNBT(NBTSerialization.toNBT(value, type), type);
+    }
+
+    public static <T> T stream(T value, Type type) throws IOException {
+        return NBTSerialization.readNBT(input(write(value, type)), type);
+    }
+
+    public static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * @return the bytes written by the streaming path for the given value
+     */
+    public static byte[] write(Object value, Type type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NBTSerialization.writeNBT(value, type, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the bytes written by the streaming path for the tag built by the tree path
+     */
+    public static byte[] writeTree(Object value, Type type) throws IOException {
+        NBTBase tag = NBTSerialization.toNBT(value, type);
+        return write(tag, tag.getClass());
+    }
+}
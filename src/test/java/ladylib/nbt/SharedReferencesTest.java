@@ -0,0 +1,164 @@
+package ladylib.nbt;
+
+import ladylib.nbt.serialization.CompactNBT;
+import ladylib.nbt.serialization.NBTDeserializationException;
+import ladylib.nbt.serialization.SharedReferences;
+import net.minecraft.nbt.NBTTagCompound;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SharedReferencesTest {
+    @Test
+    public void sharedInstancesAreRestored() throws IOException {
+        Holder holder = Holder.sharing(new Node("shared"));
+        for (Holder read : Arrays.asList(RoundTrips.tree(holder, Holder.class), RoundTrips.stream(holder, Holder.class))) {
+            assertEquals("shared", read.alpha.name);
+            assertSameNodes(read);
+        }
+    }
+
+    @Test
+    public void referencesMayPrecedeTheirDefinition() throws IOException {
+        Holder holder = Holder.sharing(new Node("shared"));
+        // the reader meets fields in hash order, which does not start with the first declared field
+        assertNotEquals("alpha", new NBTTagCompound() {{
+            for (String name : Holder.NAMES) {
+                setBoolean(name, true);
+            }
+        }}.getKeySet().iterator().next());
+        NBTTagCompound tree = (NBTTagCompound) NBTSerialization.toNBT(holder, Holder.class);
+        assertTrue(tree.getCompoundTag("alpha").hasKey(SharedReferences.ID_KEY));
+        assertSameNodes(NBTSerialization.readNBT(RoundTrips.input(RoundTrips.writeTree(holder, Holder.class)), Holder.class));
+        assertSameNodes(NBTSerialization.fromNBT(tree, Holder.class));
+    }
+
+    @Test
+    public void pathsWriteTheSameBytes() throws IOException {
+        Holder holder = Holder.sharing(new Node("shared"));
+        holder.alpha.next = holder.alpha;
+        assertArrayEquals(RoundTrips.writeTree(holder, Holder.class), RoundTrips.write(holder, Holder.class));
+        assertEquals(RoundTrips.write(holder, Holder.class).length, NBTSerialization.sizeOf(holder, Holder.class));
+    }
+
+    @Test
+    public void cyclesAreRestored() throws IOException {
+        Node first = new Node("first");
+        Node second = new Node("second");
+        first.next = second;
+        second.next = first;
+        first.children.add(first);
+        for (Node read : Arrays.asList(RoundTrips.tree(first, Node.class), RoundTrips.stream(first, Node.class))) {
+            assertEquals("second", read.next.name);
+            assertSame(read, read.next.next);
+            assertSame(read, read.children.get(0));
+        }
+    }
+
+    @Test
+    public void compactMapsShareValues() throws IOException {
+        NodeMap nodes = new NodeMap();
+        Node shared = new Node("shared");
+        for (int i = 0; i < 16; i++) {
+            nodes.nodes.put("key" + i, i % 2 == 0 ? shared : new Node("node" + i));
+        }
+        assertTrue(((NBTTagCompound) NBTSerialization.toNBT(nodes, NodeMap.class)).getTag("nodes") instanceof NBTTagCompound);
+        List<NodeMap> reads = Arrays.asList(
+                RoundTrips.tree(nodes, NodeMap.class),
+                RoundTrips.stream(nodes, NodeMap.class),
+                NBTSerialization.readNBT(RoundTrips.input(RoundTrips.writeTree(nodes, NodeMap.class)), NodeMap.class)
+        );
+        for (NodeMap readMap : reads) {
+            Map<String, Node> read = readMap.nodes;
+            assertEquals(16, read.size());
+            for (int i = 0; i < 16; i += 2) {
+                assertEquals("shared", read.get("key" + i).name);
+                assertSame(read.get("key0"), read.get("key" + i));
+            }
+            assertEquals("node3", read.get("key3").name);
+        }
+    }
+
+    @Test
+    public void sharedRootsAreUpdatedInPlace() throws IOException {
+        Node root = new Node("root");
+        Node child = new Node("child");
+        child.next = root;
+        root.children.add(child);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.serializeNBT(root);
+        // the root is not written again inside its child
+        assertTrue(nbt.getTagList("children", 10).getCompoundTagAt(0).getCompoundTag("next").hasKey(SharedReferences.REF_KEY));
+
+        Node tree = new Node("");
+        NBTSerialization.deserializeNBT(tree, nbt);
+        assertEquals("root", tree.name);
+        assertSame(tree, tree.children.get(0).next);
+
+        Node streamed = new Node("");
+        NBTSerialization.deserializeNBT(streamed, RoundTrips.input(RoundTrips.write(nbt, NBTTagCompound.class)));
+        assertSame(streamed, streamed.children.get(0).next);
+    }
+
+    @Test(expected = NBTDeserializationException.class)
+    public void danglingReferencesFail() {
+        NBTTagCompound nbt = new NBTTagCompound();
+        NBTTagCompound ref = new NBTTagCompound();
+        ref.setInteger(SharedReferences.REF_KEY, 3);
+        nbt.setTag("alpha", ref);
+        NBTSerialization.fromNBT(nbt, Holder.class);
+    }
+
+    @Test
+    public void bulkElementsAreSeparateOperations() {
+        Node shared = new Node("shared");
+        List<NBTTagCompound> tags = new ArrayList<>();
+        NBTSerialization.toNBTAll(Arrays.asList(shared, shared), Node.class).forEach(tag -> tags.add((NBTTagCompound) tag));
+        assertEquals(tags.get(0), tags.get(1));
+        assertFalse(tags.get(1).hasKey(SharedReferences.REF_KEY));
+    }
+
+    private static void assertSameNodes(Holder read) {
+        assertNotNull(read.alpha);
+        assertSame(read.alpha, read.bravo);
+        assertSame(read.alpha, read.charlie);
+        assertSame(read.alpha, read.delta);
+        assertSame(read.alpha, read.echo);
+    }
+
+    @SharedReferences
+    public static class Node {
+        String name = "";
+        Node next;
+        List<Node> children = new ArrayList<>();
+
+        public Node() { }
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class NodeMap {
+        @CompactNBT
+        Map<String, Node> nodes = new HashMap<>();
+    }
+
+    public static class Holder {
+        static final String[] NAMES = {"alpha", "bravo", "charlie", "delta", "echo"};
+
+        Node alpha;
+        Node bravo;
+        Node charlie;
+        Node delta;
+        Node echo;
+
+        static Holder sharing(Node node) {
+            Holder ret = new Holder();
+            ret.alpha = ret.bravo = ret.charlie = ret.delta = ret.echo = node;
+            return ret;
+        }
+    }
+}
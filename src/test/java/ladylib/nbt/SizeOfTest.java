@@ -0,0 +1,128 @@
+package ladylib.nbt;
+
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import ladylib.nbt.serialization.LazyNBT;
+import ladylib.nbt.serialization.internal.NBTSizes;
+import net.minecraft.nbt.*;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeOfTest {
+
+    @Test
+    public void primitivesAndStrings() throws IOException {
+        assertExactSize(42, Integer.class);
+        assertExactSize(42L, Long.class);
+        assertExactSize(true, Boolean.class);
+        assertExactSize(1.5, Double.class);
+        assertExactSize("plain", String.class);
+        // null chars and supplementary characters take extra bytes in modified UTF-8
+        assertExactSize("nul\u0000 é中😀", String.class);
+        assertExactSize("", String.class);
+    }
+
+    @Test
+    public void valueTypes() throws IOException {
+        assertExactSize(new BlockPos(1, 2, 3), BlockPos.class);
+        assertExactSize(UUID.randomUUID(), UUID.class);
+        assertExactSize(new ResourceLocation("ladylib", "thing"), ResourceLocation.class);
+        assertExactSize(EnumFacing.NORTH, EnumFacing.class);
+    }
+
+    @Test
+    public void collectionsAndArrays() throws IOException {
+        assertExactSize(Arrays.asList("a", "bc", "def"), new TypeToken<List<String>>() { }.getType());
+        assertExactSize(new ArrayList<String>(), new TypeToken<List<String>>() { }.getType());
+        assertExactSize(new int[]{1, 2, 3}, int[].class);
+        assertExactSize(new long[]{1, 2, 3}, long[].class);
+        assertExactSize(new byte[0], byte[].class);
+        assertExactSize(new String[]{"x", "y"}, String[].class);
+        assertExactSize(new IntArrayList(new int[]{4, 5, 6}), IntList.class);
+        assertExactSize(EnumSet.of(EnumFacing.UP, EnumFacing.DOWN), new TypeToken<Set<EnumFacing>>() { }.getType());
+    }
+
+    @Test
+    public void maps() throws IOException {
+        Map<String, Integer> compact = new HashMap<>();
+        compact.put("one", 1);
+        compact.put("two", 2);
+        assertExactSize(compact, new TypeToken<Map<String, Integer>>() { }.getType());
+        Map<BlockPos, String> entries = new HashMap<>();
+        entries.put(BlockPos.ORIGIN, "origin");
+        entries.put(new BlockPos(1, 1, 1), "one");
+        assertExactSize(entries, new TypeToken<Map<BlockPos, String>>() { }.getType());
+    }
+
+    @Test
+    public void objects() throws IOException {
+        Holder holder = new Holder();
+        assertExactSize(holder, Holder.class);
+        holder.fill();
+        assertExactSize(holder, Holder.class);
+        Holder read = NBTSerialization.fromNBT(NBTSerialization.toNBT(holder, Holder.class), Holder.class);
+        // undecoded lazy values
+        assertExactSize(read, Holder.class);
+    }
+
+    @Test
+    public void tags() throws IOException {
+        NBTTagCompound compound = new NBTTagCompound();
+        compound.setString("name", "value");
+        NBTTagList list = new NBTTagList();
+        list.appendTag(new NBTTagInt(1));
+        compound.setTag("list", list);
+        compound.setTag("bytes", new NBTTagByteArray(new byte[3]));
+        assertExactSize(compound, NBTTagCompound.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompressedStreamTools.write(compound, new DataOutputStream(bytes));
+        assertEquals(bytes.size(), NBTSizes.sizeOfRoot(compound));
+    }
+
+    @Test
+    public void nullRoot() throws IOException {
+        assertExactSize(null, String.class);
+    }
+
+    private static void assertExactSize(Object value, Type type) throws IOException {
+        assertEquals(String.valueOf(value), RoundTrips.write(value, type).length, NBTSerialization.sizeOf(value, type));
+    }
+
+    public static class Holder {
+        int level;
+        String name = "holder";
+        EnumFacing facing = EnumFacing.UP;
+        List<BlockPos> path = new ArrayList<>();
+        Map<String, List<Integer>> groups = new HashMap<>();
+        long[] stamps = new long[0];
+        Inner inner = new Inner();
+        LazyNBT<List<String>> lazy = new LazyNBT<>(new ArrayList<>());
+
+        void fill() {
+            level = 12;
+            facing = EnumFacing.WEST;
+            path.add(new BlockPos(3, 4, 5));
+            groups.put("evens", Arrays.asList(2, 4));
+            groups.put("empty", new ArrayList<>());
+            stamps = new long[]{7L, 8L};
+            inner.label = "été";
+            lazy.get().add("lazy");
+        }
+    }
+
+    public static class Inner {
+        String label = "";
+        double weight = 0.5;
+    }
+}
@@ -0,0 +1,113 @@
+package ladylib.nbt;
+
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLongArray;
+import net.minecraft.nbt.NBTTagString;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class StreamingReadTest {
+
+    @Test
+    public void readMatchesTreePath() throws IOException {
+        Sample sample = Sample.filled();
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(sample, Sample.class);
+        Sample streamed = NBTSerialization.readNBT(input(nbt), Sample.class);
+        assertEquals(NBTSerialization.fromNBT(nbt, Sample.class), streamed);
+        assertEquals(sample, streamed);
+    }
+
+    @Test
+    public void writeReadRoundTrip() throws IOException {
+        Sample sample = Sample.filled();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NBTSerialization.writeNBT(sample, Sample.class, new DataOutputStream(bytes));
+        assertEquals(sample, NBTSerialization.readNBT(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), Sample.class));
+    }
+
+    @Test
+    public void deserializeIntoExistingObject() throws IOException {
+        Sample sample = Sample.filled();
+        Sample target = new Sample();
+        List<String> names = target.names;
+        NBTSerialization.deserializeNBT(target, input((NBTTagCompound) NBTSerialization.serializeNBT(sample)));
+        assertEquals(sample, target);
+        // final collections are updated in place
+        assertSame(names, target.names);
+    }
+
+    @Test
+    public void unknownEntriesAreSkipped() throws IOException {
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(Sample.filled(), Sample.class);
+        NBTTagCompound unknown = new NBTTagCompound();
+        NBTTagList list = new NBTTagList();
+        list.appendTag(new NBTTagString("ignored"));
+        unknown.setTag("nested", list);
+        unknown.setTag("longs", new NBTTagLongArray(new long[]{1L, 2L}));
+        nbt.setTag("unknown", unknown);
+        nbt.setString("other", "ignored");
+        assertEquals(Sample.filled(), NBTSerialization.readNBT(input(nbt), Sample.class));
+    }
+
+    @Test
+    public void missingEntriesAreHandledLikeTreePath() throws IOException {
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(Sample.filled(), Sample.class);
+        nbt.removeTag("inner");
+        nbt.removeTag("names");
+        Sample read = NBTSerialization.readNBT(input(nbt), Sample.class);
+        assertEquals(NBTSerialization.fromNBT(nbt, Sample.class), read);
+        assertEquals(12, read.count);
+    }
+
+    private static DataInput input(NBTTagCompound nbt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompressedStreamTools.write(nbt, new DataOutputStream(bytes));
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    public static class Sample {
+        private int count;
+        private double ratio;
+        private String name = "default";
+        private final List<String> names = new ArrayList<>();
+        private Map<String, Integer> scores = new HashMap<>();
+        private Inner inner = new Inner();
+
+        static Sample filled() {
+            Sample ret = new Sample();
+            ret.count = 12;
+            ret.ratio = 0.5;
+            ret.name = "sample";
+            ret.names.addAll(Arrays.asList("a", "b"));
+            ret.scores.put("x", 1);
+            ret.scores.put("y", 2);
+            ret.inner.flag = true;
+            ret.inner.data.addAll(Arrays.asList(4, 5, 6));
+            return ret;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sample)) return false;
+            Sample other = (Sample) o;
+            return count == other.count && ratio == other.ratio && Objects.equals(name, other.name) && names.equals(other.names)
+                    && scores.equals(other.scores) && inner.flag == other.inner.flag && inner.data.equals(other.inner.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, name);
+        }
+    }
+
+    public static class Inner {
+        private boolean flag;
+        private List<Integer> data = new ArrayList<>();
+    }
+}
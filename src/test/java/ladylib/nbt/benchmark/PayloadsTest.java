@@ -0,0 +1,76 @@
+package ladylib.nbt.benchmark;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the benchmarks measure serialization that actually works.
+ * Item stacks are left out as they need a bootstrapped game.
+ */
+public class PayloadsTest {
+    private static final String[] PAYLOADS = {"flat", "collections", "maps", "enums", "deepGraph"};
+
+    @Test
+    public void payloadsRoundTrip() throws IOException, IllegalAccessException {
+        for (String name : PAYLOADS) {
+            Object payload = Payloads.create(name);
+            Class<?> type = payload.getClass();
+            assertSameData(name, payload, RoundTrips.tree(payload, type));
+            assertSameData(name, payload, RoundTrips.stream(payload, type));
+            assertArrayEquals(name, RoundTrips.writeTree(payload, type), RoundTrips.write(payload, type));
+        }
+    }
+
+    @Test
+    public void payloadsAreSeeded() throws IllegalAccessException {
+        for (String name : PAYLOADS) {
+            assertSameData(name, Payloads.create(name), Payloads.create(name));
+        }
+    }
+
+    /**
+     * Compares the payloads field by field, as hash based collections may iterate
+     * in a different order once deserialized
+     */
+    private static void assertSameData(String path, Object expected, Object actual) throws IllegalAccessException {
+        if (expected == null || actual == null) {
+            assertSame(path, expected, actual);
+        } else if (expected.getClass().isArray()) {
+            assertEquals(path, Array.getLength(expected), Array.getLength(actual));
+            for (int i = 0; i < Array.getLength(expected); i++) {
+                assertSameData(path + "[" + i + "]", Array.get(expected, i), Array.get(actual, i));
+            }
+        } else if (expected instanceof Map) {
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            Map<?, ?> actualMap = (Map<?, ?>) actual;
+            assertEquals(path, expectedMap.keySet(), actualMap.keySet());
+            for (Map.Entry<?, ?> entry : expectedMap.entrySet()) {
+                assertSameData(path + "[" + entry.getKey() + "]", entry.getValue(), actualMap.get(entry.getKey()));
+            }
+        } else if (expected instanceof Set) {
+            assertEquals(path, expected, actual);
+        } else if (expected instanceof Collection) {
+            // deques do not implement equals
+            assertSameData(path, ((Collection<?>) expected).toArray(), ((Collection<?>) actual).toArray());
+        } else if (expected.getClass().getName().startsWith(Payloads.class.getName())) {
+            assertEquals(path, expected.getClass(), actual.getClass());
+            for (Field field : expected.getClass().getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    assertSameData(path + "." + field.getName(), field.get(expected), field.get(actual));
+                }
+            }
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+}
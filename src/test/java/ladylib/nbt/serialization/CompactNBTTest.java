@@ -0,0 +1,150 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.*;
+import net.minecraft.util.ResourceLocation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class CompactNBTTest {
+
+    @Test
+    public void flagsUseTheirBitIndex() {
+        Flags flags = new Flags();
+        flags.zeta = true;
+        flags.plain = true;
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(flags, Flags.class);
+        assertEquals(new NBTTagByte((byte) 0b100), nbt.getTag(CompactNBT.FLAGS_KEY));
+        assertFalse(nbt.hasKey("zeta"));
+        // booleans without a bit index are not packed
+        assertTrue(nbt.getBoolean("plain"));
+        flags.zeta = false;
+        flags.alpha = true;
+        flags.mu = true;
+        nbt = (NBTTagCompound) NBTSerialization.toNBT(flags, Flags.class);
+        assertEquals(new NBTTagByte((byte) 0b011), nbt.getTag(CompactNBT.FLAGS_KEY));
+    }
+
+    @Test
+    public void flagsRoundTrip() throws IOException {
+        for (int bits = 0; bits < 8; bits++) {
+            Flags flags = new Flags();
+            flags.alpha = (bits & 1) != 0;
+            flags.mu = (bits & 2) != 0;
+            flags.zeta = (bits & 4) != 0;
+            flags.count = bits;
+            for (Flags read : new Flags[]{RoundTrips.tree(flags, Flags.class), RoundTrips.stream(flags, Flags.class)}) {
+                assertEquals(flags.alpha, read.alpha);
+                assertEquals(flags.mu, read.mu);
+                assertEquals(flags.zeta, read.zeta);
+                assertEquals(bits, read.count);
+            }
+            assertArrayEquals(RoundTrips.writeTree(flags, Flags.class), RoundTrips.write(flags, Flags.class));
+        }
+    }
+
+    @Test
+    public void flagsCanBeProjected() {
+        Flags flags = new Flags();
+        flags.mu = true;
+        NBTBase nbt = NBTSerialization.toNBT(flags, Flags.class);
+        assertEquals(Boolean.TRUE, NBTSerialization.project(nbt, Flags.class, "mu"));
+        assertEquals(Boolean.FALSE, NBTSerialization.project(nbt, Flags.class, "zeta"));
+    }
+
+    @Test
+    public void wideFlagsUseWiderTags() {
+        ManyFlags flags = new ManyFlags();
+        flags.high = true;
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(flags, ManyFlags.class);
+        assertEquals(new NBTTagShort((short) (1 << 8)), nbt.getTag(CompactNBT.FLAGS_KEY));
+        assertTrue(RoundTrips.tree(flags, ManyFlags.class).high);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateBitsFail() {
+        TagAdapters.getNBTAdapter(TypeToken.get(DuplicateFlags.class), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bitsBeyondALongFail() {
+        TagAdapters.getNBTAdapter(TypeToken.get(OutOfRangeFlags.class), false);
+    }
+
+    @Test
+    public void compactValues() throws IOException {
+        Ids ids = new Ids();
+        ids.owner = new UUID(1, 2);
+        ids.block = new ResourceLocation("minecraft", "stone");
+        ids.item = new ResourceLocation("ladylib", "wand");
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(ids, Ids.class);
+        assertEquals(new NBTTagLongArray(new long[]{1, 2}), nbt.getTag("owner"));
+        assertEquals("stone", nbt.getString("block"));
+        assertEquals("ladylib:wand", nbt.getString("item"));
+        for (Ids read : new Ids[]{RoundTrips.tree(ids, Ids.class), RoundTrips.stream(ids, Ids.class)}) {
+            assertEquals(ids.owner, read.owner);
+            assertEquals(ids.block, read.block);
+            assertEquals(ids.item, read.item);
+        }
+    }
+
+    @Test
+    public void defaultProfileDataIsRead() {
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setString("owner", new UUID(3, 4).toString());
+        nbt.setString("block", "minecraft:dirt");
+        nbt.setString("item", "ladylib:wand");
+        Ids read = NBTSerialization.fromNBT(nbt, Ids.class);
+        assertEquals(new UUID(3, 4), read.owner);
+        assertEquals(new ResourceLocation("minecraft", "dirt"), read.block);
+    }
+
+    @CompactNBT
+    public static class Flags {
+        @PackedFlag(2)
+        boolean zeta;
+        int count;
+        @PackedFlag(0)
+        boolean alpha;
+        @PackedFlag(1)
+        boolean mu;
+        boolean plain;
+    }
+
+    @CompactNBT
+    public static class ManyFlags {
+        @PackedFlag(0)
+        boolean low;
+        @PackedFlag(8)
+        boolean high;
+    }
+
+    @CompactNBT
+    public static class DuplicateFlags {
+        @PackedFlag(3)
+        boolean first;
+        @PackedFlag(3)
+        boolean second;
+    }
+
+    @CompactNBT
+    public static class OutOfRangeFlags {
+        @PackedFlag(64)
+        boolean overflowing;
+    }
+
+    public static class Ids {
+        @CompactNBT
+        UUID owner = new UUID(0, 0);
+        @CompactNBT
+        ResourceLocation block = new ResourceLocation("air");
+        @CompactNBT
+        ResourceLocation item = new ResourceLocation("air");
+    }
+}
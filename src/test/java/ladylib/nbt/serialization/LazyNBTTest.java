@@ -0,0 +1,108 @@
+package ladylib.nbt.serialization;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LazyNBTTest {
+
+    @Test
+    public void valuesAreDecodedOnFirstAccess() {
+        Research research = new Research();
+        research.unlocked.get().put("fire", 3);
+        Research read = NBTSerialization.fromNBT(NBTSerialization.toNBT(research, Research.class), Research.class);
+        assertFalse(read.unlocked.isDecoded());
+        assertEquals(Integer.valueOf(3), read.unlocked.get().get("fire"));
+        assertTrue(read.unlocked.isDecoded());
+    }
+
+    @Test
+    public void untouchedValuesWriteBackTheirTag() {
+        Research research = new Research();
+        research.unlocked.get().put("fire", 3);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(research, Research.class);
+        Research read = NBTSerialization.fromNBT(nbt, Research.class);
+        NBTTagCompound written = (NBTTagCompound) NBTSerialization.toNBT(read, Research.class);
+        assertSame(nbt.getTag("unlocked"), written.getTag("unlocked"));
+        assertFalse(read.unlocked.isDecoded());
+    }
+
+    @Test
+    public void modifiedValuesAreReencoded() {
+        Research research = new Research();
+        Research read = NBTSerialization.fromNBT(NBTSerialization.toNBT(research, Research.class), Research.class);
+        read.unlocked.get().put("water", 1);
+        Research reread = RoundTrips.tree(read, Research.class);
+        assertEquals(Integer.valueOf(1), reread.unlocked.get().get("water"));
+    }
+
+    @Test
+    public void streamingMatchesTheTree() throws IOException {
+        Research research = new Research();
+        research.unlocked.get().put("fire", 3);
+        research.notes.set("draft");
+        assertArrayEquals(RoundTrips.writeTree(research, Research.class), RoundTrips.write(research, Research.class));
+        Research read = RoundTrips.stream(research, Research.class);
+        assertEquals("draft", read.notes.get());
+        assertEquals(research.unlocked.get(), read.unlocked.get());
+        assertEquals(NBTSerialization.sizeOf(research, Research.class), RoundTrips.write(research, Research.class).length);
+    }
+
+    @Test
+    public void undecodedSizesAreExact() throws IOException {
+        Research research = new Research();
+        research.unlocked.get().put("fire", 3);
+        Research read = NBTSerialization.fromNBT(NBTSerialization.toNBT(research, Research.class), Research.class);
+        assertEquals(RoundTrips.write(read, Research.class).length, NBTSerialization.sizeOf(read, Research.class));
+        assertFalse(read.unlocked.isDecoded());
+    }
+
+    @Test
+    public void failedDecodingKeepsTheTag() {
+        LazyNBT<Integer> lazy = new LazyNBT<>();
+        NBTBase tag = new NBTTagString("not a number");
+        lazy.setUndecoded(tag, nbt -> {
+            throw new NBTDeserializationException("Cannot decode " + nbt);
+        });
+        try {
+            lazy.get();
+            fail();
+        } catch (NBTDeserializationException expected) {
+            assertSame(tag, lazy.getUndecodedTag());
+        }
+    }
+
+    @Test
+    public void setDiscardsTheTag() {
+        LazyNBT<String> lazy = new LazyNBT<>();
+        lazy.setUndecoded(new NBTTagString("old"), NBTBase::toString);
+        lazy.set("new");
+        assertTrue(lazy.isDecoded());
+        assertEquals("new", lazy.get());
+    }
+
+    @Test
+    public void snapshotsKeepTheTag() {
+        Research research = new Research();
+        research.unlocked.get().put("fire", 3);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(research, Research.class);
+        Research read = NBTSerialization.fromNBT(nbt, Research.class);
+        NBTSnapshot<Research> snapshot = NBTSerialization.snapshot(read, Research.class);
+        assertEquals(nbt, snapshot.toNBT());
+        assertFalse(read.unlocked.isDecoded());
+    }
+
+    public static class Research {
+        final LazyNBT<Map<String, Integer>> unlocked = new LazyNBT<>(new HashMap<>());
+        LazyNBT<String> notes = new LazyNBT<>();
+    }
+}
@@ -0,0 +1,109 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NBTMetricsTest {
+
+    static {
+        TagAdapters.setDefaultValue(TypeToken.get(Phase.class), () -> Phase.NEW);
+    }
+
+    @Before
+    public void enable() {
+        NBTMetrics.reset();
+        NBTMetrics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        NBTMetrics.setEnabled(false);
+        NBTMetrics.reset();
+    }
+
+    @Test
+    public void nothingIsRecordedWhileDisabled() {
+        NBTMetrics.setEnabled(false);
+        NBTSerialization.fromNBT(NBTSerialization.toNBT(new Quest(), Quest.class), Quest.class);
+        assertTrue(NBTMetrics.getSnapshot().isEmpty());
+    }
+
+    @Test
+    public void operationsAreCounted() throws IOException {
+        Quest quest = new Quest();
+        quest.goals.add("kill the dragon");
+        for (int i = 0; i < 3; i++) {
+            NBTSerialization.fromNBT(NBTSerialization.toNBT(quest, Quest.class), Quest.class);
+        }
+        RoundTrips.stream(quest, Quest.class);
+        NBTMetrics.TypeStats stats = NBTMetrics.getSnapshot(TypeToken.get(Quest.class));
+        assertNotNull(stats);
+        assertEquals(4, stats.getWrites().getCount());
+        assertEquals(4, stats.getReads().getCount());
+        assertEquals(0, stats.getFailures());
+        assertTrue(stats.getWrites().getPercentileNanos(50) <= stats.getWrites().getPercentileNanos(99));
+        assertTrue(stats.getWrites().getMeanNanos() <= stats.getWrites().getTotalNanos());
+    }
+
+    @Test
+    public void outputSizesMatchTheWrittenData() throws IOException {
+        Quest quest = new Quest();
+        quest.goals.add("find the grail");
+        NBTSerialization.toNBT(quest, Quest.class);
+        NBTSerialization.toNBT(quest, Quest.class);
+        NBTMetrics.TypeStats stats = NBTMetrics.getSnapshot(TypeToken.get(Quest.class));
+        assertEquals(2 * RoundTrips.write(quest, Quest.class).length, stats.getOutputBytes());
+    }
+
+    @Test
+    public void failuresAreCounted() {
+        Quest quest = new Quest();
+        // null strings cannot be written, the field is skipped
+        quest.name = null;
+        NBTSerialization.toNBT(quest, Quest.class);
+        assertEquals(1, NBTMetrics.getSnapshot(TypeToken.get(Quest.class)).getFailures());
+    }
+
+    @Test
+    public void defaultFallbacksAreCounted() {
+        NBTBase invalid = new NBTTagString("UNKNOWN");
+        assertEquals(Phase.NEW, NBTSerialization.fromNBT(invalid, Phase.class));
+        assertEquals(1, NBTMetrics.getSnapshot(TypeToken.get(Phase.class)).getDefaultFallbacks());
+    }
+
+    @Test
+    public void snapshotsAreSortedByTime() {
+        for (int i = 0; i < 100; i++) {
+            NBTSerialization.toNBT(new Quest(), Quest.class);
+        }
+        NBTSerialization.toNBT(1, Integer.class);
+        long previous = Long.MAX_VALUE;
+        for (NBTMetrics.TypeStats stats : NBTMetrics.getSnapshot().values()) {
+            long total = stats.getWrites().getTotalNanos() + stats.getReads().getTotalNanos();
+            assertTrue(total <= previous);
+            previous = total;
+        }
+    }
+
+    public static class Quest {
+        String name = "quest";
+        Phase phase = Phase.STARTED;
+        List<String> goals = new ArrayList<>();
+    }
+
+    public enum Phase {
+        NEW, STARTED, DONE
+    }
+}
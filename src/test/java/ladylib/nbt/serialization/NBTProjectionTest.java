@@ -0,0 +1,116 @@
+package ladylib.nbt.serialization;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NBTProjectionTest {
+
+    @Test
+    public void projectTopLevelAndNestedFields() throws IOException {
+        PlayerData data = new PlayerData();
+        data.name = "steve";
+        data.stats.level = 12;
+        data.stats.home = new BlockPos(1, 2, 3);
+        data.stats.inner.label = "deep";
+        assertProjection(data, "name", "steve");
+        assertProjection(data, "stats.level", 12);
+        assertProjection(data, "stats.home", new BlockPos(1, 2, 3));
+        assertProjection(data, "stats.inner.label", "deep");
+        assertProjection(data, "tags", Arrays.asList("a", "b"));
+    }
+
+    @Test
+    public void streamConsumesTheWholeObject() throws IOException {
+        PlayerData data = new PlayerData();
+        data.stats.level = 5;
+        byte[] first = RoundTrips.write(data, PlayerData.class);
+        byte[] second = RoundTrips.write("after", String.class);
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        DataInputStream in = RoundTrips.input(both);
+        assertEquals(Integer.valueOf(5), NBTSerialization.project(in, PlayerData.class, "stats.level"));
+        assertEquals("after", NBTSerialization.readNBT(in, String.class));
+    }
+
+    @Test
+    public void missingValuesAreNull() throws IOException {
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setTag("stats", new NBTTagString("not a compound"));
+        assertNull(NBTSerialization.project(nbt, PlayerData.class, "name"));
+        assertNull(NBTSerialization.project(nbt, PlayerData.class, "stats.level"));
+        assertNull(NBTSerialization.project((NBTBase) null, PlayerData.class, "name"));
+        byte[] bytes = RoundTrips.write(nbt, NBTTagCompound.class);
+        assertNull(NBTSerialization.project(RoundTrips.input(bytes), PlayerData.class, "stats.level"));
+        byte[] string = RoundTrips.write("plain", String.class);
+        assertNull(NBTSerialization.project(RoundTrips.input(string), PlayerData.class, "name"));
+    }
+
+    @Test
+    public void projectionsAreCached() {
+        assertSame(NBTProjection.of(PlayerData.class, "stats.level"), NBTProjection.of(PlayerData.class, "stats.level"));
+        assertEquals("stats.level", NBTProjection.of(PlayerData.class, "stats.level").getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField() {
+        NBTProjection.of(PlayerData.class, "stats.experience");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transientField() {
+        NBTProjection.of(PlayerData.class, "cache");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pathThroughValueType() {
+        NBTProjection.of(PlayerData.class, "stats.home.x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pathThroughSharedReferences() {
+        NBTProjection.of(Party.class, "leader.name");
+    }
+
+    private static void assertProjection(PlayerData data, String path, Object expected) throws IOException {
+        assertEquals(expected, NBTSerialization.project(NBTSerialization.toNBT(data, PlayerData.class), PlayerData.class, path));
+        assertEquals(expected, NBTSerialization.project(RoundTrips.input(RoundTrips.write(data, PlayerData.class)), PlayerData.class, path));
+    }
+
+    public static class PlayerData {
+        String name = "";
+        Stats stats = new Stats();
+        List<String> tags = Arrays.asList("a", "b");
+        transient int cache;
+    }
+
+    public static class Stats {
+        int level;
+        BlockPos home = BlockPos.ORIGIN;
+        Inner inner = new Inner();
+    }
+
+    public static class Inner {
+        String label = "";
+    }
+
+    public static class Party {
+        Member leader = new Member();
+    }
+
+    @SharedReferences
+    public static class Member {
+        String name = "";
+    }
+}
@@ -0,0 +1,135 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.common.util.INBTSerializable;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class NBTSnapshotTest {
+
+    @Test
+    public void snapshotsIgnoreLaterChanges() throws IOException {
+        Progress progress = Progress.filled();
+        NBTBase expected = NBTSerialization.toNBT(progress, Progress.class);
+        byte[] expectedBytes = RoundTrips.write(progress, Progress.class);
+        NBTSnapshot<Progress> snapshot = NBTSerialization.snapshot(progress, Progress.class);
+
+        progress.level++;
+        progress.names.add("late");
+        progress.grid[0][0] = 99;
+        progress.counts.put(1, 42);
+        progress.inner.path.clear();
+        progress.byPos.put(BlockPos.ORIGIN, "late");
+        progress.counter.count = 12;
+
+        assertEquals(expected, snapshot.toNBT());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(bytes));
+        assertArrayEquals(expectedBytes, bytes.toByteArray());
+    }
+
+    @Test
+    public void snapshotsCanBeSerializedOffThread() throws Exception {
+        Progress progress = Progress.filled();
+        NBTBase expected = NBTSerialization.toNBT(progress, Progress.class);
+        NBTSnapshot<Progress> snapshot = NBTSerialization.snapshot(progress, Progress.class);
+        assertEquals(expected, CompletableFuture.supplyAsync(snapshot::toNBT).get());
+        // more than once
+        assertEquals(expected, snapshot.toNBT());
+    }
+
+    @Test
+    public void containersKeepTheirClass() {
+        Progress progress = Progress.filled();
+        Progress copy = TagAdapters.<Progress, NBTBase>getNBTAdapter(TypeToken.get(Progress.class), false).snapshot(progress);
+        assertNotSame(progress.names, copy.names);
+        assertSame(progress.names.getClass(), copy.names.getClass());
+        assertNotSame(progress.counts, copy.counts);
+        assertSame(progress.counts.getClass(), copy.counts.getClass());
+        assertNotSame(progress.grid[0], copy.grid[0]);
+        assertNotSame(progress.inner, copy.inner);
+        // immutable values are shared
+        assertSame(progress.inner.path.get(0), copy.inner.path.get(0));
+    }
+
+    @Test
+    public void sharedReferencesAreCopiedOnce() {
+        Node node = new Node();
+        node.self = node;
+        Node copy = TagAdapters.<Node, NBTBase>getNBTAdapter(TypeToken.get(Node.class), false).snapshot(node);
+        assertNotSame(node, copy);
+        assertSame(copy, copy.self);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.snapshot(node, Node.class).toNBT();
+        assertEquals(NBTSerialization.toNBT(node, Node.class), nbt);
+    }
+
+    @Test
+    public void nullSnapshots() throws IOException {
+        NBTSnapshot<Progress> snapshot = NBTSerialization.snapshot(null, Progress.class);
+        assertNull(snapshot.toNBT());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(new DataOutputStream(bytes));
+        assertArrayEquals(RoundTrips.write(null, Progress.class), bytes.toByteArray());
+    }
+
+    public static class Progress {
+        int level;
+        List<String> names = new ArrayList<>();
+        int[][] grid = new int[2][2];
+        Int2IntOpenHashMap counts = new Int2IntOpenHashMap();
+        Map<BlockPos, String> byPos = new HashMap<>();
+        Inner inner = new Inner();
+        Counter counter = new Counter();
+
+        static Progress filled() {
+            Progress ret = new Progress();
+            ret.level = 3;
+            ret.names.add("first");
+            ret.grid[1][1] = 4;
+            ret.counts.put(1, 2);
+            ret.byPos.put(new BlockPos(1, 2, 3), "somewhere");
+            ret.inner.path.add(new BlockPos(4, 5, 6));
+            ret.counter.count = 5;
+            return ret;
+        }
+    }
+
+    public static class Inner {
+        List<BlockPos> path = new ArrayList<>();
+    }
+
+    /** copied by serializing and deserializing it */
+    public static class Counter implements INBTSerializable<NBTTagInt> {
+        int count;
+
+        @Override
+        public NBTTagInt serializeNBT() {
+            return new NBTTagInt(count);
+        }
+
+        @Override
+        public void deserializeNBT(NBTTagInt nbt) {
+            count = nbt.getInt();
+        }
+    }
+
+    @SharedReferences
+    public static class Node {
+        String name = "node";
+        Node self;
+    }
+}
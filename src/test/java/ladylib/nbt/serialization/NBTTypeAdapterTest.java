@@ -0,0 +1,75 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.adapter.MapNBTTypeAdapterFactory;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagList;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class NBTTypeAdapterTest {
+
+    @Test
+    public void objectsAreWrittenIntoTheTarget() {
+        Stats stats = new Stats();
+        stats.level = 7;
+        stats.name = "miner";
+        NBTTypeAdapter<Stats, NBTTagCompound> adapter = TagAdapters.getNBTAdapter(TypeToken.get(Stats.class), false);
+        NBTTagCompound target = new NBTTagCompound();
+        target.setString("stale", "entry");
+        target.setInteger("level", -1);
+        assertSame(target, adapter.toNBT(stats, target));
+        assertEquals(adapter.toNBT(stats), target);
+        assertFalse(target.hasKey("stale"));
+    }
+
+    @Test
+    public void targetsCanBeReused() {
+        Stats stats = new Stats();
+        NBTTypeAdapter<Stats, NBTTagCompound> adapter = TagAdapters.getNBTAdapter(TypeToken.get(Stats.class), true);
+        NBTTagCompound target = new NBTTagCompound();
+        for (int i = 0; i < 3; i++) {
+            stats.level = i;
+            stats.name = i % 2 == 0 ? "even" : "odd";
+            stats.titles.add("title" + i);
+            adapter.toNBT(stats, target);
+            assertEquals(adapter.toNBT(stats), target);
+        }
+    }
+
+    @Test
+    public void mapsAreWrittenIntoTheTarget() {
+        TypeToken<Map<String, Integer>> type = new TypeToken<Map<String, Integer>>() { };
+        // maps are only written as compounds with compact keys
+        NBTTypeAdapter<Map, NBTBase> adapter = new MapNBTTypeAdapterFactory(true).create(type, false);
+        Map<String, Integer> map = new HashMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        NBTTagCompound target = new NBTTagCompound();
+        target.setInteger("c", 3);
+        assertSame(target, adapter.toNBT(map, target));
+        assertEquals(adapter.toNBT(map), target);
+    }
+
+    @Test
+    public void otherTagsIgnoreTheTarget() {
+        NBTTypeAdapter<List<Integer>, NBTBase> adapter = TagAdapters.getNBTAdapter(new TypeToken<List<Integer>>() { }, false);
+        NBTTagCompound target = new NBTTagCompound();
+        target.setInteger("kept", 1);
+        NBTBase ret = adapter.toNBT(Arrays.asList(1, 2), target);
+        assertTrue(ret instanceof NBTTagList);
+        assertEquals(2, ((NBTTagList) ret).tagCount());
+        assertEquals(new NBTTagInt(1), target.getTag("kept"));
+    }
+
+    public static class Stats {
+        int level;
+        String name;
+        List<String> titles = new ArrayList<>();
+    }
+}
@@ -0,0 +1,138 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.NBTSerialization;
+import net.minecraft.nbt.*;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NBTWriterTest {
+
+    @Test
+    public void writtenBytesMatchTree() throws IOException {
+        NBTTagCompound compound = new NBTTagCompound();
+        compound.setByte("b", (byte) 1);
+        compound.setInteger("i", 42);
+        compound.setString("s", "text");
+        compound.setTag("ints", new NBTTagIntArray(new int[]{1, 2, 3}));
+        NBTTagList list = new NBTTagList();
+        list.appendTag(new NBTTagString("a"));
+        list.appendTag(new NBTTagString("b"));
+        compound.setTag("list", list);
+        compound.setTag("empty", new NBTTagList());
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        NBTWriter out = new NBTWriter(new DataOutputStream(streamed));
+        out.beginCompound();
+        for (String key : compound.getKeySet()) {
+            out.name(key).writeTag(compound.getTag(key));
+        }
+        out.endCompound();
+
+        ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        CompressedStreamTools.write(compound, new DataOutputStream(tree));
+        assertArrayEquals(tree.toByteArray(), streamed.toByteArray());
+    }
+
+    @Test
+    public void readerRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NBTWriter out = new NBTWriter(new DataOutputStream(bytes));
+        out.beginCompound();
+        out.name("list").beginList(2).writeInt(3).writeInt(4).endList();
+        out.name("long").writeLong(Long.MAX_VALUE);
+        out.name("nested").beginCompound().name("name").writeString("value").endCompound();
+        out.endCompound();
+
+        NBTReader in = new NBTReader(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        in.beginCompound();
+        assertEquals("list", in.nextName());
+        assertEquals(2, in.beginList());
+        assertEquals(3, in.readInt());
+        assertEquals(4, in.readInt());
+        in.endList();
+        assertEquals("long", in.nextName());
+        assertEquals(Long.MAX_VALUE, in.readLong());
+        assertEquals("nested", in.nextName());
+        NBTTagCompound nested = (NBTTagCompound) in.readTag();
+        assertEquals("value", nested.getString("name"));
+        assertFalse(in.hasNext());
+        in.endCompound();
+    }
+
+    @Test
+    public void bufferedValueIsCopied() throws IOException {
+        NBTWriter buffer = NBTWriter.buffered();
+        buffer.beginList(2).writeString("a").writeString("b").endList();
+
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        new NBTWriter(new DataOutputStream(direct)).beginCompound().name("list").beginList(2).writeString("a").writeString("b").endList().endCompound();
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+        new NBTWriter(new DataOutputStream(copied)).beginCompound().name("list").writeBuffered(buffer).endCompound();
+        assertArrayEquals(direct.toByteArray(), copied.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteBufferIsRejected() throws IOException {
+        NBTWriter buffer = NBTWriter.buffered();
+        buffer.beginList(2).writeString("a");
+        new NBTWriter(new DataOutputStream(new ByteArrayOutputStream())).beginCompound().name("list").writeBuffered(buffer);
+    }
+
+    @Test
+    public void streamedFieldFailureIsPropagated() throws IOException {
+        Holder holder = new Holder();
+        // the tree path skips the failing field
+        assertFalse(((NBTTagCompound) NBTSerialization.toNBT(holder, Holder.class)).hasKey("failing"));
+        NBTTypeAdapter<Holder, NBTBase> adapter = TagAdapters.getNBTAdapter(TypeToken.get(Holder.class), false);
+        try {
+            // written outside of a reference graph, so that fields are streamed
+            adapter.write(holder, new NBTWriter(new DataOutputStream(new ByteArrayOutputStream())));
+            fail("A partially written field should fail the write");
+        } catch (IllegalStateException expected) {
+            assertEquals("Failing element", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void sizeOfPropagatesFieldFailures() {
+        try {
+            NBTSerialization.sizeOf(new Holder(), Holder.class);
+            fail("A field that cannot be measured should fail the computation");
+        } catch (IllegalStateException expected) {
+            assertEquals("Failing element", expected.getMessage());
+        }
+    }
+
+    public static class Holder {
+        public int value = 3;
+        public List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+        public List<String> failing = new FailingList();
+        public String text = "text";
+    }
+
+    /**
+     * A list whose second element cannot be read, making its adapter fail after writing the start of the list
+     */
+    private static class FailingList extends AbstractList<String> {
+        @Override
+        public String get(int index) {
+            if (index > 0) {
+                throw new IllegalStateException("Failing element");
+            }
+            return "first";
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ladylib.nbt.serialization;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NetworkProfileTest {
+
+    @Test
+    public void scopesNest() {
+        assertFalse(NetworkProfile.isActive());
+        try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+            try (NetworkProfile.Scope ignored1 = NetworkProfile.open()) {
+                assertTrue(NetworkProfile.isActive());
+            }
+            assertTrue(NetworkProfile.isActive());
+        }
+        assertFalse(NetworkProfile.isActive());
+    }
+
+    @Test
+    public void closingTwiceHasNoEffect() {
+        NetworkProfile.Scope outer = NetworkProfile.open();
+        NetworkProfile.Scope inner = NetworkProfile.open();
+        inner.close();
+        inner.close();
+        assertTrue(NetworkProfile.isActive());
+        outer.close();
+        assertFalse(NetworkProfile.isActive());
+        outer.close();
+        assertFalse(NetworkProfile.isActive());
+        // the depth did not go negative
+        try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+            assertTrue(NetworkProfile.isActive());
+        }
+    }
+
+    @Test
+    public void profilesAreThreadLocal() throws InterruptedException {
+        boolean[] activeElsewhere = new boolean[1];
+        try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+            Thread thread = new Thread(() -> activeElsewhere[0] = NetworkProfile.isActive());
+            thread.start();
+            thread.join();
+        }
+        assertFalse(activeElsewhere[0]);
+    }
+}
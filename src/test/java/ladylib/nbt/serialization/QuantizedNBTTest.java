@@ -0,0 +1,96 @@
+package ladylib.nbt.serialization;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.*;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class QuantizedNBTTest {
+
+    @Test
+    public void tagsFollowTheNumberOfBits() {
+        Angles angles = new Angles();
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(angles, Angles.class);
+        assertTrue(nbt.getTag("ratio") instanceof NBTTagByte);
+        assertTrue(nbt.getTag("yaw") instanceof NBTTagShort);
+        assertTrue(nbt.getTag("precise") instanceof NBTTagInt);
+        assertEquals(3 * 2, nbt.getByteArray("path").length);
+    }
+
+    @Test
+    public void roundTripWithinOneStep() throws IOException {
+        Angles angles = new Angles();
+        angles.ratio = 0.3f;
+        angles.yaw = 123.4f;
+        angles.precise = -0.123456789;
+        angles.boxed = 0.75;
+        angles.path = new float[]{0, 180.1f, 359.9f};
+        for (Angles read : new Angles[]{RoundTrips.tree(angles, Angles.class), RoundTrips.stream(angles, Angles.class)}) {
+            assertEquals(angles.ratio, read.ratio, 1.0 / 255);
+            assertEquals(angles.yaw, read.yaw, 360.0 / 4095);
+            assertEquals(angles.precise, read.precise, 2.0 / 0xFFFFFFFFL);
+            assertEquals(angles.boxed, read.boxed, 1.0 / 255);
+            assertArrayEquals(angles.path, read.path, 360f / 4095);
+        }
+        assertArrayEquals(RoundTrips.writeTree(angles, Angles.class), RoundTrips.write(angles, Angles.class));
+        assertEquals(RoundTrips.write(angles, Angles.class).length, NBTSerialization.sizeOf(angles, Angles.class));
+    }
+
+    @Test
+    public void boundsAreExactAndOutOfRangeValuesClamped() {
+        Angles angles = new Angles();
+        angles.ratio = 2;
+        angles.yaw = -10;
+        angles.precise = 1;
+        Angles read = RoundTrips.tree(angles, Angles.class);
+        assertEquals(1f, read.ratio, 0);
+        assertEquals(0f, read.yaw, 0);
+        assertEquals(1.0, read.precise, 0);
+    }
+
+    @Test
+    public void plainDataIsRead() throws IOException {
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setFloat("ratio", 0.123f);
+        nbt.setFloat("yaw", 45.5f);
+        nbt.setDouble("precise", 0.5);
+        nbt.setDouble("boxed", 0.25);
+        nbt.setTag("path", NBTSerialization.toNBT(new float[]{90.25f}, float[].class));
+        Angles tree = NBTSerialization.fromNBT(nbt, Angles.class);
+        Angles stream = NBTSerialization.readNBT(RoundTrips.input(RoundTrips.write(nbt, NBTTagCompound.class)), Angles.class);
+        for (Angles read : new Angles[]{tree, stream}) {
+            // read as is, without any quantization
+            assertEquals(0.123f, read.ratio, 0);
+            assertEquals(45.5f, read.yaw, 0);
+            assertEquals(0.5, read.precise, 0);
+            assertArrayEquals(new float[]{90.25f}, read.path, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBits() {
+        NBTSerialization.toNBT(new InvalidBits(), InvalidBits.class);
+    }
+
+    public static class Angles {
+        @QuantizedNBT(min = 0, max = 1, bits = 8)
+        float ratio;
+        @QuantizedNBT(min = 0, max = 360, bits = 12)
+        float yaw;
+        @QuantizedNBT(min = -1, max = 1, bits = 32)
+        double precise;
+        @QuantizedNBT(min = 0, max = 1, bits = 8)
+        Double boxed = 0.0;
+        @QuantizedNBT(min = 0, max = 360, bits = 12)
+        float[] path = new float[3];
+    }
+
+    public static class InvalidBits {
+        @QuantizedNBT(min = 0, max = 1, bits = 33)
+        float value;
+    }
+}
@@ -0,0 +1,119 @@
+package ladylib.nbt.serialization;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ReconcileNBTTest {
+
+    @Test
+    public void elementsAreUpdatedInPlace() throws IOException {
+        Route source = new Route();
+        source.fill(3, 10);
+        for (boolean stream : new boolean[]{false, true}) {
+            Route target = new Route();
+            target.fill(2, 0);
+            Point first = target.points.get(0);
+            Point second = target.points.get(1);
+            Point origin = target.named.get("p0");
+            Point atOne = target.located.get(new BlockPos(1, 0, 0));
+            deserialize(target, source, stream);
+            assertSame(first, target.points.get(0));
+            assertSame(second, target.points.get(1));
+            assertSame(origin, target.named.get("p0"));
+            assertSame(atOne, target.located.get(new BlockPos(1, 0, 0)));
+            assertSameData(source, target);
+        }
+    }
+
+    @Test
+    public void extraElementsAreRemoved() throws IOException {
+        Route source = new Route();
+        source.fill(1, 10);
+        for (boolean stream : new boolean[]{false, true}) {
+            Route target = new Route();
+            target.fill(4, 0);
+            Point first = target.points.get(0);
+            deserialize(target, source, stream);
+            assertSame(first, target.points.get(0));
+            assertSameData(source, target);
+        }
+    }
+
+    @Test
+    public void formatIsUnchanged() throws IOException {
+        Route route = new Route();
+        route.fill(3, 5);
+        PlainRoute plain = new PlainRoute();
+        plain.points.addAll(route.points);
+        plain.named.putAll(route.named);
+        plain.located.putAll(route.located);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(route, Route.class);
+        assertTrue(nbt.getTag("named") instanceof NBTTagCompound);
+        assertEquals(NBTSerialization.toNBT(plain, PlainRoute.class), nbt);
+        assertArrayEquals(RoundTrips.write(plain, PlainRoute.class), RoundTrips.write(route, Route.class));
+    }
+
+    private static void deserialize(Route target, Route source, boolean stream) throws IOException {
+        if (stream) {
+            NBTSerialization.deserializeNBT(target, RoundTrips.input(RoundTrips.write(source, Route.class)));
+        } else {
+            NBTSerialization.deserializeNBT(target, NBTSerialization.toNBT(source, Route.class));
+        }
+    }
+
+    private static void assertSameData(Route expected, Route actual) {
+        NBTBase expectedNbt = NBTSerialization.toNBT(expected, Route.class);
+        assertEquals(expectedNbt, NBTSerialization.toNBT(actual, Route.class));
+        assertEquals(expected.points.size(), actual.points.size());
+        assertEquals(expected.named.keySet(), actual.named.keySet());
+        assertEquals(expected.located.keySet(), actual.located.keySet());
+    }
+
+    public static class Route {
+        @ReconcileNBT
+        final List<Point> points = new ArrayList<>();
+        /** Stored as a compound keyed by name */
+        @ReconcileNBT
+        @CompactNBT
+        final Map<String, Point> named = new HashMap<>();
+        /** Stored as a list of key and value pairs */
+        @ReconcileNBT
+        final Map<BlockPos, Point> located = new HashMap<>();
+
+        void fill(int count, int offset) {
+            for (int i = 0; i < count; i++) {
+                points.add(new Point(i + offset, "point " + (i + offset)));
+                named.put("p" + i, new Point(i * 2 + offset, "named " + i));
+                located.put(new BlockPos(i, 0, 0), new Point(i * 3 + offset, "located " + i));
+            }
+        }
+    }
+
+    public static class PlainRoute {
+        final List<Point> points = new ArrayList<>();
+        @CompactNBT
+        final Map<String, Point> named = new HashMap<>();
+        final Map<BlockPos, Point> located = new HashMap<>();
+    }
+
+    public static class Point {
+        int x;
+        String label = "";
+
+        public Point() { }
+
+        Point(int x, String label) {
+            this.x = x;
+            this.label = label;
+        }
+    }
+}
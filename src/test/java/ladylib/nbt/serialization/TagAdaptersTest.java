@@ -0,0 +1,208 @@
+package ladylib.nbt.serialization;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.serialization.adapter.BaseNBTAdapters;
+import net.minecraft.nbt.NBTBase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TagAdaptersTest {
+    private final List<NBTTypeAdapterFactory> factories = new ArrayList<>();
+
+    @After
+    public void removeFactories() {
+        factories.forEach(TagAdapters::removeAdapterFactory);
+    }
+
+    private void addAdapterFactory(NBTTypeAdapterFactory factory) {
+        factories.add(factory);
+        TagAdapters.addAdapterFactory(factory);
+    }
+
+    @Test
+    public void concurrentLookupsShareOneAdapter() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<NBTTypeAdapter<Concurrent, NBTBase>>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return TagAdapters.getNBTAdapter(TypeToken.get(Concurrent.class), true);
+                }));
+            }
+            start.countDown();
+            Set<NBTTypeAdapter> adapters = ConcurrentHashMap.newKeySet();
+            for (Future<NBTTypeAdapter<Concurrent, NBTBase>> result : results) {
+                adapters.add(result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, adapters.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void differentTypesAreBuiltConcurrently() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch fastBuilt = new CountDownLatch(1);
+        AtomicBoolean overlapped = new AtomicBoolean();
+        addAdapterFactory((type, allowMutating) -> {
+            if (type.getRawType() == Slow.class) {
+                slowStarted.countDown();
+                // the fast type must be buildable while this build is in progress
+                overlapped.set(awaitQuietly(fastBuilt));
+                return new BaseNBTAdapters.IntAdapter();
+            } else if (type.getRawType() == Fast.class) {
+                return new BaseNBTAdapters.IntAdapter();
+            }
+            return null;
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<NBTTypeAdapter<Slow, NBTBase>> slow = executor.submit(() -> TagAdapters.getNBTAdapter(TypeToken.get(Slow.class), false));
+            assertTrue(awaitQuietly(slowStarted));
+            TagAdapters.getNBTAdapter(TypeToken.get(Fast.class), false);
+            fastBuilt.countDown();
+            assertNotNull(slow.get(10, TimeUnit.SECONDS));
+            assertTrue(overlapped.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void threadsBuildingEachOthersTypesDoNotDeadlock() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        AtomicInteger overlapped = new AtomicInteger();
+        addAdapterFactory((type, allowMutating) -> {
+            Class<?> other = type.getRawType() == CycleA.class ? CycleB.class : type.getRawType() == CycleB.class ? CycleA.class : null;
+            if (other == null) {
+                return null;
+            }
+            bothStarted.countDown();
+            if (awaitQuietly(bothStarted)) {
+                overlapped.incrementAndGet();
+            }
+            // each thread needs the adapter the other thread is building
+            NBTTypeAdapter<?, NBTBase> dependency = TagAdapters.getNBTAdapter(TypeToken.get(other), false);
+            assertNotNull(dependency);
+            return new BaseNBTAdapters.IntAdapter();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> a = executor.submit(() -> TagAdapters.getNBTAdapter(TypeToken.get(CycleA.class), false));
+            Future<?> b = executor.submit(() -> TagAdapters.getNBTAdapter(TypeToken.get(CycleB.class), false));
+            assertNotNull(a.get(10, TimeUnit.SECONDS));
+            assertNotNull(b.get(10, TimeUnit.SECONDS));
+            assertEquals(2, overlapped.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Test
+    public void recursiveTypeRoundTrip() {
+        Node root = new Node();
+        root.value = 1;
+        root.children.add(new Node());
+        root.children.get(0).value = 2;
+        root.children.get(0).children.add(new Node());
+        root.children.get(0).children.get(0).value = 3;
+        NBTTypeAdapter<Node, NBTBase> adapter = TagAdapters.getNBTAdapter(TypeToken.get(Node.class), false);
+        NBTBase nbt = adapter.toNBT(root);
+        Node read = adapter.fromNBT(nbt);
+        assertEquals(3, read.children.get(0).children.get(0).value);
+        assertEquals(nbt, adapter.toNBT(read));
+    }
+
+    @Test
+    public void recursiveElementsAreUpdatedInPlace() {
+        assertNotNull(TagAdapters.getMutatingAdapter(TypeToken.get(Node.class)));
+        Node root = new Node();
+        Node child = new Node();
+        root.children.add(child);
+        NBTMutatingTypeAdapter<Node, NBTBase> adapter = (NBTMutatingTypeAdapter<Node, NBTBase>) TagAdapters.getNBTAdapter(TypeToken.get(Node.class), true);
+        Node source = new Node();
+        source.children.add(new Node());
+        source.children.get(0).value = 5;
+        adapter.fromNBT(root, adapter.toNBT(source));
+        // the child is reconciled even though its adapter was still being built when the list adapter was created
+        assertSame(child, root.children.get(0));
+        assertEquals(5, child.value);
+    }
+
+    @Test
+    public void failedBuildDoesNotPoisonRecursiveAdapters() {
+        addAdapterFactory((type, allowMutating) -> {
+            if (type.getRawType() == Unstable.class && Unstable.failing) {
+                throw new BuildFailure();
+            }
+            return null;
+        });
+        Unstable.failing = true;
+        try {
+            TagAdapters.getNBTAdapter(TypeToken.get(Failing.class), true);
+            fail("The build should have failed");
+        } catch (BuildFailure expected) {
+            // the list adapter built in the meantime references the failed placeholder
+        }
+        Unstable.failing = false;
+        NBTTypeAdapter<List<Failing>, NBTBase> listAdapter = TagAdapters.getNBTAdapter(new TypeToken<List<Failing>>() {}, false);
+        List<Failing> list = new ArrayList<>();
+        list.add(new Failing());
+        list.get(0).value = 4;
+        assertEquals(4, listAdapter.fromNBT(listAdapter.toNBT(list)).get(0).value);
+    }
+
+    public static class Concurrent {
+        public int a;
+        public String b = "b";
+        public List<Integer> c = new ArrayList<>();
+    }
+
+    public static class Slow { }
+
+    public static class Fast { }
+
+    public static class CycleA { }
+
+    public static class CycleB { }
+
+    public static class Node {
+        public int value;
+        @ReconcileNBT
+        public final List<Node> children = new ArrayList<>();
+    }
+
+    public static class Failing {
+        public int value;
+        public List<Failing> children = new ArrayList<>();
+        public Unstable unstable = new Unstable();
+    }
+
+    public static class Unstable {
+        static volatile boolean failing;
+        public int value;
+    }
+
+    private static class BuildFailure extends Error { }
+}
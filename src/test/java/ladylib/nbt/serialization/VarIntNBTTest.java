@@ -0,0 +1,99 @@
+package ladylib.nbt.serialization;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.*;
+import net.minecraftforge.common.util.Constants;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VarIntNBTTest {
+
+    @Test
+    public void sequencesAreStoredAsByteArrays() {
+        Sequences sequences = new Sequences();
+        sequences.fill();
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(sequences, Sequences.class);
+        for (String key : new String[]{"shorts", "ints", "longs", "boxed", "stamps"}) {
+            assertEquals(key, Constants.NBT.TAG_BYTE_ARRAY, nbt.getTagId(key));
+        }
+        // 1 byte per small value
+        assertEquals(4, nbt.getByteArray("ints").length);
+        assertEquals(sequences.stamps.size() + 5, nbt.getByteArray("stamps").length);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Sequences sequences = new Sequences();
+        sequences.fill();
+        for (Sequences read : new Sequences[]{RoundTrips.tree(sequences, Sequences.class), RoundTrips.stream(sequences, Sequences.class)}) {
+            assertArrayEquals(sequences.shorts, read.shorts);
+            assertArrayEquals(sequences.ints, read.ints);
+            assertArrayEquals(sequences.longs, read.longs);
+            assertEquals(sequences.boxed, read.boxed);
+            assertEquals(sequences.stamps, read.stamps);
+        }
+        assertArrayEquals(RoundTrips.writeTree(sequences, Sequences.class), RoundTrips.write(sequences, Sequences.class));
+        assertEquals(RoundTrips.write(sequences, Sequences.class).length, NBTSerialization.sizeOf(sequences, Sequences.class));
+    }
+
+    @Test
+    public void collectionsAreUpdatedInPlace() {
+        Sequences sequences = new Sequences();
+        sequences.fill();
+        NBTBase nbt = NBTSerialization.toNBT(sequences, Sequences.class);
+        Sequences target = new Sequences();
+        LongList stamps = target.stamps;
+        stamps.add(12L);
+        NBTSerialization.deserializeNBT(target, nbt);
+        assertSame(stamps, target.stamps);
+        assertEquals(sequences.stamps, stamps);
+    }
+
+    @Test
+    public void plainDataIsRead() throws IOException {
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setIntArray("ints", new int[]{5, 6});
+        NBTTagList boxed = new NBTTagList();
+        boxed.appendTag(new NBTTagInt(7));
+        nbt.setTag("boxed", boxed);
+        nbt.setTag("stamps", NBTSerialization.toNBT(new LongArrayList(new long[]{8}), LongList.class));
+        Sequences tree = NBTSerialization.fromNBT(nbt, Sequences.class);
+        Sequences stream = NBTSerialization.readNBT(RoundTrips.input(RoundTrips.write(nbt, NBTTagCompound.class)), Sequences.class);
+        for (Sequences read : new Sequences[]{tree, stream}) {
+            assertArrayEquals(new int[]{5, 6}, read.ints);
+            assertEquals(Arrays.asList(7), read.boxed);
+            assertEquals(new LongArrayList(new long[]{8}), read.stamps);
+        }
+    }
+
+    public static class Sequences {
+        @VarIntNBT
+        short[] shorts = new short[0];
+        @VarIntNBT
+        int[] ints = new int[0];
+        @VarIntNBT
+        long[] longs = new long[0];
+        @VarIntNBT
+        List<Integer> boxed = new ArrayList<>();
+        @VarIntNBT(delta = true)
+        final LongList stamps = new LongArrayList();
+
+        void fill() {
+            shorts = new short[]{Short.MIN_VALUE, -1, 0, Short.MAX_VALUE};
+            ints = new int[]{0, 3, -3, 63};
+            longs = new long[]{Long.MIN_VALUE, 0, Long.MAX_VALUE};
+            boxed.addAll(Arrays.asList(1, -200, 70000));
+            // a large first value, then small steps
+            stamps.addAll(LongArrayList.wrap(new long[]{1L << 40, (1L << 40) + 1, (1L << 40) + 5, (1L << 40) + 60}));
+        }
+    }
+}
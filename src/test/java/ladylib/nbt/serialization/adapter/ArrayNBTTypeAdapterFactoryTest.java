@@ -0,0 +1,81 @@
+package ladylib.nbt.serialization.adapter;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ArrayNBTTypeAdapterFactoryTest {
+
+    @Test
+    public void primitiveArraysRoundTrip() throws IOException {
+        assertRoundTrip(new int[]{1, -2, Integer.MAX_VALUE}, int[].class);
+        assertRoundTrip(new long[]{1L, Long.MIN_VALUE}, long[].class);
+        assertRoundTrip(new byte[]{1, -1, 0}, byte[].class);
+        assertRoundTrip(new float[]{1.5f, Float.NaN, -0f}, float[].class);
+        assertRoundTrip(new double[]{0.1, Double.NEGATIVE_INFINITY}, double[].class);
+        assertRoundTrip(new short[]{1, -1, Short.MIN_VALUE, Short.MAX_VALUE, 0x00FF}, short[].class);
+        assertRoundTrip(new char[]{'a', '\u00e9', '\uffff', 0}, char[].class);
+        assertRoundTrip(new short[0], short[].class);
+        for (int length = 0; length < 18; length++) {
+            boolean[] booleans = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                booleans[i] = i % 3 == 0;
+            }
+            assertRoundTrip(booleans, boolean[].class);
+        }
+    }
+
+    @Test
+    public void objectArraysRoundTrip() throws IOException {
+        assertRoundTrip(new String[]{"a", "b"}, String[].class);
+        assertRoundTrip(new int[][]{{1, 2}, {3}}, int[][].class);
+        assertRoundTrip(new String[0], String[].class);
+    }
+
+    @Test
+    public void primitiveArraysArePacked() {
+        assertTrue(NBTSerialization.toNBT(new int[]{1}, int[].class) instanceof NBTTagIntArray);
+        assertTrue(NBTSerialization.toNBT(new long[]{1L}, long[].class) instanceof NBTTagLongArray);
+        assertTrue(NBTSerialization.toNBT(new byte[]{1}, byte[].class) instanceof NBTTagByteArray);
+        NBTTagIntArray floats = (NBTTagIntArray) NBTSerialization.toNBT(new float[]{1.5f}, float[].class);
+        assertEquals(Float.floatToRawIntBits(1.5f), floats.getIntArray()[0]);
+        assertTrue(NBTSerialization.toNBT(new double[]{1.5}, double[].class) instanceof NBTTagLongArray);
+        // 10 booleans take 2 bytes, plus the padding length
+        NBTTagByteArray booleans = (NBTTagByteArray) NBTSerialization.toNBT(new boolean[10], boolean[].class);
+        assertEquals(3, booleans.getByteArray().length);
+        assertEquals(6, booleans.getByteArray()[0]);
+        // shorts and chars take 2 big-endian bytes each
+        NBTTagByteArray shorts = (NBTTagByteArray) NBTSerialization.toNBT(new short[]{0x1234, -1}, short[].class);
+        assertArrayEquals(new byte[]{0x12, 0x34, -1, -1}, shorts.getByteArray());
+        NBTTagByteArray chars = (NBTTagByteArray) NBTSerialization.toNBT(new char[]{'\u00e9'}, char[].class);
+        assertArrayEquals(new byte[]{0x00, (byte) 0xe9}, chars.getByteArray());
+        assertTrue(NBTSerialization.toNBT(new String[]{"a"}, String[].class) instanceof NBTTagList);
+    }
+
+    @Test
+    public void legacyCompoundsReadAsEmptyArrays() {
+        assertArrayEquals(new int[0], NBTSerialization.fromNBT(new NBTTagCompound(), int[].class));
+        assertArrayEquals(new String[0], NBTSerialization.fromNBT(new NBTTagCompound(), String[].class));
+    }
+
+    @Test
+    public void serializedArraysAreCopies() {
+        int[] array = {1, 2};
+        NBTTagIntArray tag = (NBTTagIntArray) NBTSerialization.toNBT(array, int[].class);
+        array[0] = 5;
+        assertEquals(1, tag.getIntArray()[0]);
+    }
+
+    private static void assertRoundTrip(Object array, Class<?> type) throws IOException {
+        assertTrue(Arrays.deepEquals(new Object[]{array}, new Object[]{RoundTrips.tree(array, type)}));
+        assertTrue(Arrays.deepEquals(new Object[]{array}, new Object[]{RoundTrips.stream(array, type)}));
+        assertArrayEquals(RoundTrips.writeTree(array, type), RoundTrips.write(array, type));
+        assertEquals(RoundTrips.write(array, type).length, NBTSerialization.sizeOf(array, type));
+    }
+}
@@ -0,0 +1,202 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import ladylib.nbt.serialization.NBTCreator;
+import ladylib.nbt.serialization.NBTSnapshot;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import ladylib.nbt.serialization.TagAdapters;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.BlockPos;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConstructorNBTAdapterFactoryTest {
+
+    @Test
+    public void parametersAreBoundByName() throws IOException {
+        Range range = new Range(3, 7, "range");
+        for (Range read : new Range[]{RoundTrips.tree(range, Range.class), RoundTrips.stream(range, Range.class)}) {
+            assertEquals(3, read.min);
+            assertEquals(7, read.max);
+            assertEquals("range", read.label);
+        }
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(range, Range.class);
+        assertEquals(3, nbt.getInteger("min"));
+        assertEquals(7, nbt.getInteger("max"));
+    }
+
+    @Test
+    public void parametersAreBoundByType() throws IOException {
+        Waypoint waypoint = Waypoint.of(new BlockPos(1, 2, 3), "home");
+        for (Waypoint read : new Waypoint[]{RoundTrips.tree(waypoint, Waypoint.class), RoundTrips.stream(waypoint, Waypoint.class)}) {
+            assertEquals("home", read.name);
+            assertEquals(new BlockPos(1, 2, 3), read.pos);
+        }
+    }
+
+    @Test
+    public void canonicalConstructor() throws IOException {
+        Tagged tagged = new Tagged(Arrays.asList("a", "b"), 4);
+        for (Tagged read : new Tagged[]{RoundTrips.tree(tagged, Tagged.class), RoundTrips.stream(tagged, Tagged.class)}) {
+            assertEquals(tagged.tags, read.tags);
+            assertEquals(4, read.weight);
+        }
+    }
+
+    @Test
+    public void treeAndStreamMatch() throws IOException {
+        Tagged tagged = new Tagged(Arrays.asList("a", "b"), 4);
+        assertArrayEquals(RoundTrips.writeTree(tagged, Tagged.class), RoundTrips.write(tagged, Tagged.class));
+        assertEquals(RoundTrips.write(tagged, Tagged.class).length, NBTSerialization.sizeOf(tagged, Tagged.class));
+    }
+
+    @Test
+    public void snapshotCopiesTheArguments() {
+        Tagged tagged = new Tagged(new ArrayList<>(Arrays.asList("a", "b")), 4);
+        NBTTagCompound expected = (NBTTagCompound) NBTSerialization.toNBT(tagged, Tagged.class);
+        NBTTypeAdapter<Tagged, ?> adapter = TagAdapters.getNBTAdapter(TypeToken.get(Tagged.class), false);
+        Tagged copy = adapter.snapshot(tagged);
+        assertNotSame(tagged.tags, copy.tags);
+        assertEquals(4, copy.weight);
+        NBTSnapshot<Tagged> snapshot = NBTSerialization.snapshot(tagged, Tagged.class);
+        tagged.tags.add("c");
+        assertEquals(Arrays.asList("a", "b"), copy.tags);
+        assertEquals(expected, snapshot.toNBT());
+    }
+
+    @Test
+    public void ambiguousCanonicalConstructorIsOnlyAnErrorIfNeeded() {
+        // has a no-argument constructor and only updatable fields, so the reflective adapters are used
+        Updatable updatable = new Updatable(new ArrayList<>(Collections.singletonList("a")), new ArrayList<>());
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(updatable, Updatable.class);
+        assertEquals(Collections.singletonList("a"), RoundTrips.tree(updatable, Updatable.class).first);
+        assertTrue(nbt.hasKey("second"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ambiguousCreator() {
+        create(Ambiguous.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ambiguousCanonicalConstructor() {
+        create(AmbiguousCanonical.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownName() {
+        create(UnknownName.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingName() {
+        create(MissingName.class);
+    }
+
+    private static void create(Class<?> type) {
+        new ConstructorNBTAdapterFactory().create(TypeToken.get(type), false);
+    }
+
+    public static class Range {
+        // declared in a different order than the creator parameters
+        private final String label;
+        private final int max;
+        private final int min;
+
+        @NBTCreator({"min", "max", "label"})
+        Range(int min, int max, String label) {
+            this.min = min;
+            this.max = max;
+            this.label = label;
+        }
+    }
+
+    public static class Waypoint {
+        private final String name;
+        private final BlockPos pos;
+
+        private Waypoint(String name, BlockPos pos) {
+            this.name = name;
+            this.pos = pos;
+        }
+
+        @NBTCreator
+        static Waypoint of(BlockPos pos, String name) {
+            return new Waypoint(name, pos);
+        }
+    }
+
+    public static class Tagged {
+        private final int weight;
+        private final List<String> tags;
+
+        Tagged(List<String> tags, int weight) {
+            this.tags = tags;
+            this.weight = weight;
+        }
+    }
+
+    public static class Updatable {
+        private final List<String> first;
+        private final List<String> second;
+
+        public Updatable() {
+            this(new ArrayList<>(), new ArrayList<>());
+        }
+
+        Updatable(List<String> first, List<String> second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    public static class Ambiguous {
+        private final int x;
+        private final int y;
+
+        @NBTCreator
+        Ambiguous(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class AmbiguousCanonical {
+        private final int x;
+        private final int y;
+
+        AmbiguousCanonical(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class UnknownName {
+        private final int x;
+
+        @NBTCreator("y")
+        UnknownName(int x) {
+            this.x = x;
+        }
+    }
+
+    public static class MissingName {
+        private final int x;
+        private final int y;
+
+        @NBTCreator("x")
+        MissingName(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
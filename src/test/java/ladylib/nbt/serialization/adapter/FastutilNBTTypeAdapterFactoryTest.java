@@ -0,0 +1,84 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagLongArray;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import static org.junit.Assert.*;
+
+public class FastutilNBTTypeAdapterFactoryTest {
+
+    @Test
+    public void collectionsRoundTrip() throws IOException {
+        assertRoundTrip(new IntArrayList(new int[]{3, 1, 2}), IntArrayList.class);
+        assertRoundTrip(new IntOpenHashSet(new int[]{5, 6}), IntSet.class);
+        assertRoundTrip(new LongArrayList(new long[]{1L << 40, -1L}), LongArrayList.class);
+        assertRoundTrip(new LongOpenHashSet(new long[]{7L}), LongSet.class);
+        assertRoundTrip(new IntArrayList(), IntList.class);
+    }
+
+    @Test
+    public void mapsRoundTrip() throws IOException {
+        Int2IntMap ints = new Int2IntOpenHashMap();
+        ints.put(1, 10);
+        ints.put(-2, 20);
+        assertRoundTrip(ints, Int2IntMap.class);
+
+        Long2ObjectMap<String> longs = new Long2ObjectOpenHashMap<>();
+        longs.put(3L, "three");
+        assertRoundTrip(longs, new TypeToken<Long2ObjectMap<String>>() {}.getType());
+
+        Object2IntMap<String> objects = new Object2IntOpenHashMap<>();
+        objects.put("a", 1);
+        objects.put("b", 2);
+        assertRoundTrip(objects, new TypeToken<Object2IntMap<String>>() {}.getType());
+    }
+
+    @Test
+    public void collectionsArePacked() {
+        assertTrue(NBTSerialization.toNBT(new IntArrayList(new int[]{1, 2}), IntList.class) instanceof NBTTagIntArray);
+        assertTrue(NBTSerialization.toNBT(new LongArrayList(new long[]{1L}), LongArrayList.class) instanceof NBTTagLongArray);
+        Int2IntMap map = new Int2IntOpenHashMap();
+        map.put(1, 2);
+        NBTTagCompound compound = (NBTTagCompound) NBTSerialization.toNBT(map, Int2IntMap.class);
+        assertArrayEquals(new int[]{1}, compound.getIntArray(FastutilNBTTypeAdapterFactory.KEYS_TAG));
+        assertArrayEquals(new int[]{2}, compound.getIntArray(FastutilNBTTypeAdapterFactory.VALUES_TAG));
+    }
+
+    @Test
+    public void existingCollectionsAreUpdatedInPlace() {
+        Holder holder = new Holder();
+        holder.ids.add(4);
+        holder.ids.add(8);
+        Holder target = new Holder();
+        target.ids.add(1);
+        IntList ids = target.ids;
+        NBTSerialization.deserializeNBT(target, NBTSerialization.serializeNBT(holder));
+        assertSame(ids, target.ids);
+        assertEquals(holder.ids, target.ids);
+    }
+
+    public static class Holder {
+        private final IntList ids = new IntArrayList();
+    }
+
+    private static void assertRoundTrip(Object value, Type type) throws IOException {
+        assertEquals(value, RoundTrips.tree(value, type));
+        assertEquals(value, RoundTrips.stream(value, type));
+    }
+}
@@ -0,0 +1,134 @@
+package ladylib.nbt.serialization.adapter;
+
+import com.google.gson.reflect.TypeToken;
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import ladylib.nbt.serialization.CompactNBT;
+import ladylib.nbt.serialization.NBTTypeAdapter;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.ResourceLocation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MapNBTTypeAdapterFactoryTest {
+    private static final Type STRING_MAP = new TypeToken<Map<String, Integer>>() {}.getType();
+    private static final Type PAIR_MAP = new TypeToken<Map<Integer, String>>() {}.getType();
+
+    @Test
+    public void compactMapsRoundTrip() throws IOException {
+        assertRoundTrip(CompactMaps.filled(), CompactMaps.class);
+    }
+
+    @Test
+    public void compactMapsAreCompounds() {
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(CompactMaps.filled(), CompactMaps.class);
+        assertEquals(1, nbt.getCompoundTag("strings").getInteger("a"));
+        assertEquals("green", nbt.getCompoundTag("enums").getString("GREEN"));
+        assertTrue(nbt.getTag("locations") instanceof NBTTagCompound);
+        assertTrue(nbt.getTag("uuids") instanceof NBTTagCompound);
+    }
+
+    @Test
+    public void mapsArePairListsByDefault() throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        strings.put("a", 1);
+        strings.put("b", 2);
+        assertTrue(NBTSerialization.toNBT(strings, STRING_MAP) instanceof NBTTagList);
+        assertRoundTrip(strings, STRING_MAP);
+    }
+
+    @Test
+    public void compactKeysCanBeSelectedForTheFactory() {
+        NBTTypeAdapter<Map, NBTBase> adapter = new MapNBTTypeAdapterFactory(true).create(TypeToken.get(STRING_MAP), false);
+        NBTBase nbt = adapter.toNBT(Collections.singletonMap("a", 1));
+        assertEquals(1, ((NBTTagCompound) nbt).getInteger("a"));
+    }
+
+    @Test
+    public void otherMapsArePairLists() throws IOException {
+        Map<Integer, String> pairs = new HashMap<>();
+        pairs.put(1, "one");
+        pairs.put(2, "two");
+        assertTrue(NBTSerialization.toNBT(pairs, PAIR_MAP) instanceof NBTTagList);
+        assertRoundTrip(pairs, PAIR_MAP);
+    }
+
+    @Test
+    public void compactMapsReadPairLists() {
+        NBTTagList pairs = new NBTTagList();
+        NBTTagCompound pair = new NBTTagCompound();
+        pair.setString("key", "a");
+        pair.setInteger("value", 5);
+        pairs.appendTag(pair);
+        NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setTag("strings", pairs);
+        CompactMaps read = NBTSerialization.fromNBT(nbt, CompactMaps.class);
+        assertEquals(Collections.singletonMap("a", 5), read.strings);
+    }
+
+    @Test
+    public void nullValuesAreKept() throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        strings.put("a", 1);
+        strings.put("missing", null);
+        assertRoundTrip(strings, STRING_MAP);
+
+        CompactMaps compact = CompactMaps.filled();
+        compact.strings.put("missing", null);
+        // the pair list layout is used to keep the null value
+        assertTrue(((NBTTagCompound) NBTSerialization.toNBT(compact, CompactMaps.class)).getTag("strings") instanceof NBTTagList);
+        assertRoundTrip(compact, CompactMaps.class);
+    }
+
+    public enum Color {
+        RED, GREEN, BLUE
+    }
+
+    @CompactNBT
+    public static class CompactMaps {
+        Map<String, Integer> strings = new HashMap<>();
+        EnumMap<Color, String> enums = new EnumMap<>(Color.class);
+        Map<ResourceLocation, List<String>> locations = new HashMap<>();
+        Map<UUID, Integer> uuids = new HashMap<>();
+
+        static CompactMaps filled() {
+            CompactMaps ret = new CompactMaps();
+            ret.strings.put("a", 1);
+            ret.strings.put("b", 2);
+            ret.enums.put(Color.RED, "red");
+            ret.enums.put(Color.GREEN, "green");
+            ret.locations.put(new ResourceLocation("ladylib", "test"), Arrays.asList("x", "y"));
+            ret.uuids.put(new UUID(1, 2), 3);
+            return ret;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CompactMaps)) {
+                return false;
+            }
+            CompactMaps that = (CompactMaps) o;
+            return strings.equals(that.strings) && enums.equals(that.enums)
+                    && locations.equals(that.locations) && uuids.equals(that.uuids);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(strings, enums, locations, uuids);
+        }
+    }
+
+    private static void assertRoundTrip(Object value, Type type) throws IOException {
+        assertEquals(value, RoundTrips.tree(value, type));
+        assertEquals(value, RoundTrips.stream(value, type));
+        assertArrayEquals(RoundTrips.writeTree(value, type), RoundTrips.write(value, type));
+        assertEquals(RoundTrips.write(value, type).length, NBTSerialization.sizeOf(value, type));
+    }
+}
@@ -0,0 +1,62 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NetworkProfile;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class BulkConversionTest {
+
+    @Test
+    public void resultsFollowTheSourceOrder() {
+        List<Integer> sources = range(BulkConversion.SEQUENTIAL_THRESHOLD * 20);
+        List<String> results = BulkConversion.convertAll(sources, String::valueOf);
+        assertEquals(sources.size(), results.size());
+        for (int i = 0; i < sources.size(); i++) {
+            assertEquals(String.valueOf(i), results.get(i));
+        }
+    }
+
+    @Test
+    public void smallBatchesStayOnTheCallingThread() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        BulkConversion.convertAll(range(BulkConversion.SEQUENTIAL_THRESHOLD), i -> threads.add(Thread.currentThread()));
+        assertEquals(1, threads.size());
+        assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failuresReachTheCaller() {
+        BulkConversion.convertAll(range(BulkConversion.SEQUENTIAL_THRESHOLD * 20), i -> {
+            if (i == 4000) {
+                throw new IllegalStateException();
+            }
+            return i;
+        });
+    }
+
+    @Test
+    public void networkProfileReachesEveryChunk() {
+        List<Integer> sources = range(BulkConversion.SEQUENTIAL_THRESHOLD * 20);
+        List<Boolean> results;
+        try (NetworkProfile.Scope ignored = NetworkProfile.open()) {
+            results = BulkConversion.convertAll(sources, i -> NetworkProfile.isActive());
+        }
+        assertFalse(results.contains(false));
+        // pool threads do not keep the profile afterwards
+        assertFalse(BulkConversion.convertAll(sources, i -> NetworkProfile.isActive()).contains(true));
+    }
+
+    private static List<Integer> range(int size) {
+        List<Integer> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(i);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,101 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import ladylib.nbt.serialization.EnumIds;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagShort;
+import net.minecraft.nbt.NBTTagString;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class EnumTableTest {
+
+    @Test
+    public void listedIds() {
+        EnumTable<Direction> table = EnumTable.get(Direction.class);
+        assertTrue(table.hasIds());
+        assertTrue(table.hasByteIds());
+        assertEquals(1, table.getId(Direction.SOUTH));
+        assertEquals(Direction.EAST, table.byId(2));
+        assertNull(table.byId(4));
+        assertNull(table.byId(-1));
+        assertEquals(Direction.WEST, table.byName("WEST"));
+        assertNull(table.byName("UP"));
+    }
+
+    @Test
+    public void unlistedConstantsHaveNoId() {
+        EnumTable<Partial> table = EnumTable.get(Partial.class);
+        assertEquals(0, table.getId(Partial.KEPT));
+        assertEquals(-1, table.getId(Partial.LEFT_OUT));
+    }
+
+    @Test
+    public void ordinalIds() {
+        EnumTable<Ordered> table = EnumTable.get(Ordered.class);
+        for (Ordered value : Ordered.values()) {
+            assertEquals(value.ordinal(), table.getId(value));
+            assertEquals(value, table.byId(value.ordinal()));
+        }
+    }
+
+    @Test
+    public void enumsWithoutIds() {
+        EnumTable<Plain> table = EnumTable.get(Plain.class);
+        assertFalse(table.hasIds());
+        assertFalse(table.hasByteIds());
+        assertEquals(-1, table.getId(Plain.A));
+        assertNull(table.byId(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicateIdsAreRejected() {
+        EnumTable.get(Duplicated.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownNamesAreRejected() {
+        EnumTable.get(Misspelled.class);
+    }
+
+    @Test
+    public void idsRoundTrip() throws IOException {
+        assertEquals(new NBTTagByte((byte) 2), NBTSerialization.toNBT(Direction.EAST, Direction.class));
+        assertEquals(new NBTTagString("LEFT_OUT"), NBTSerialization.toNBT(Partial.LEFT_OUT, Partial.class));
+        for (Direction direction : Direction.values()) {
+            assertSame(direction, RoundTrips.tree(direction, Direction.class));
+            assertSame(direction, RoundTrips.stream(direction, Direction.class));
+        }
+        for (Partial partial : Partial.values()) {
+            assertSame(partial, RoundTrips.tree(partial, Partial.class));
+            assertSame(partial, RoundTrips.stream(partial, Partial.class));
+        }
+    }
+
+    @Test
+    public void namesAndWiderIdsAreRead() {
+        assertSame(Direction.WEST, NBTSerialization.fromNBT(new NBTTagString("WEST"), Direction.class));
+        assertSame(Direction.SOUTH, NBTSerialization.fromNBT(new NBTTagShort((short) 1), Direction.class));
+    }
+
+    @EnumIds({"NORTH", "SOUTH", "EAST", "WEST"})
+    public enum Direction { NORTH, EAST, SOUTH, WEST }
+
+    @EnumIds({"KEPT"})
+    public enum Partial { KEPT, LEFT_OUT }
+
+    @EnumIds
+    public enum Ordered { FIRST, SECOND, THIRD }
+
+    public enum Plain { A, B }
+
+    @EnumIds({"A", "B", "A"})
+    public enum Duplicated { A, B }
+
+    @EnumIds({"A", "C"})
+    public enum Misspelled { A, B }
+}
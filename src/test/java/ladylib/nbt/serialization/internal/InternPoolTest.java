@@ -0,0 +1,94 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.NBTSerialization;
+import ladylib.nbt.RoundTrips;
+import ladylib.nbt.serialization.adapter.BaseNBTAdapters;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.util.ResourceLocation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class InternPoolTest {
+
+    @Test
+    public void equalValuesArePooled() {
+        InternPool<String> pool = new InternPool<>(16);
+        String first = new String("value");
+        String second = new String("value");
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+    }
+
+    @Test
+    public void collidingValuesReplaceEachOther() {
+        // a single slot
+        InternPool<String> pool = new InternPool<>(1);
+        String a = new String("a");
+        String b = new String("b");
+        assertSame(a, pool.intern(a));
+        assertSame(b, pool.intern(b));
+        assertSame(b, pool.intern(new String("b")));
+        String otherA = new String("a");
+        assertSame(otherA, pool.intern(otherA));
+    }
+
+    @Test
+    public void emptyPoolDoesNotIntern() {
+        InternPool<String> pool = new InternPool<>(0);
+        String first = new String("value");
+        pool.intern(first);
+        String second = new String("value");
+        assertSame(second, pool.intern(second));
+    }
+
+    @Test
+    public void readValuesAreInterned() throws IOException {
+        Named source = new Named();
+        source.name = "shared name";
+        source.location = new ResourceLocation("ladylib", "shared");
+        source.byName.put("shared key", 1);
+        byte[] bytes = RoundTrips.write(source, Named.class);
+        NBTTagCompound nbt = (NBTTagCompound) NBTSerialization.toNBT(source, Named.class);
+        Named[] reads = {
+                NBTSerialization.readNBT(RoundTrips.input(bytes), Named.class),
+                NBTSerialization.readNBT(RoundTrips.input(bytes), Named.class),
+                NBTSerialization.fromNBT(nbt, Named.class),
+        };
+        for (Named read : reads) {
+            assertSame(reads[0].name, read.name);
+            assertSame(reads[0].location, read.location);
+            assertSame(reads[0].byName.keySet().iterator().next(), read.byName.keySet().iterator().next());
+        }
+    }
+
+    @Test
+    public void readTagKeysAreInterned() throws IOException {
+        NBTTagCompound compound = new NBTTagCompound();
+        compound.setInteger("some key", 1);
+        byte[] bytes = RoundTrips.write(compound, NBTTagCompound.class);
+        NBTTagCompound first = NBTSerialization.readNBT(RoundTrips.input(bytes), NBTTagCompound.class);
+        NBTTagCompound second = NBTSerialization.readNBT(RoundTrips.input(bytes), NBTTagCompound.class);
+        assertSame(first.getKeySet().iterator().next(), second.getKeySet().iterator().next());
+    }
+
+    @Test
+    public void adaptersWithoutPool() {
+        BaseNBTAdapters.StringAdapter adapter = new BaseNBTAdapters.StringAdapter(null);
+        String first = adapter.fromNBT(new NBTTagString(new String("unpooled")));
+        String second = adapter.fromNBT(new NBTTagString(new String("unpooled")));
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+
+    public static class Named {
+        String name = "";
+        ResourceLocation location = new ResourceLocation("air");
+        Map<String, Integer> byName = new HashMap<>();
+    }
+}
@@ -0,0 +1,104 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NBTMutatingTypeAdapter;
+import ladylib.nbt.serialization.adapter.ReflectiveNBTAdapterFactory;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagInt;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class NBTAdapterGeneratorTest {
+
+    @Test
+    public void generatedMatchesReflective() throws Exception {
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> generated = generate();
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> reflective = new ReflectiveNBTAdapterFactory.MutatingReflectiveNBTAdapter<>(Sample.class);
+        Sample sample = Sample.filled();
+        assertEquals(reflective.toNBT(sample), generated.toNBT(sample));
+    }
+
+    @Test
+    public void generatedRoundTrip() {
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> generated = generate();
+        Sample sample = Sample.filled();
+        NBTTagCompound nbt = generated.toNBT(sample);
+        Sample read = generated.fromNBT(new Sample(), nbt);
+        assertEquals(sample, read);
+        assertEquals(nbt, generated.toNBT(read));
+    }
+
+    @Test
+    public void generatedReadsLikeReflective() throws Exception {
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> generated = generate();
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> reflective = new ReflectiveNBTAdapterFactory.MutatingReflectiveNBTAdapter<>(Sample.class);
+        NBTTagCompound nbt = reflective.toNBT(Sample.filled());
+        // only 1 is true for booleans
+        nbt.setByte("flag", (byte) 2);
+        // boxed values use the regular adapters
+        nbt.setTag("boxed", new NBTTagInt(7));
+        assertEquals(reflective.fromNBT(new Sample(), nbt), generated.fromNBT(new Sample(), nbt));
+    }
+
+    private static NBTMutatingTypeAdapter<Sample, NBTTagCompound> generate() {
+        Assume.assumeTrue(NBTAdapterGenerator.isAvailable());
+        NBTMutatingTypeAdapter<Sample, NBTTagCompound> ret = NBTAdapterGenerator.generate(Sample.class);
+        assertNotNull(ret);
+        return ret;
+    }
+
+    public static class Sample {
+        private byte b;
+        private short s;
+        private int i;
+        private long l;
+        private float f;
+        private double d;
+        private boolean flag;
+        private Integer boxed;
+        private String name;
+        private List<String> names = new ArrayList<>();
+
+        static Sample filled() {
+            Sample ret = new Sample();
+            ret.b = -3;
+            ret.s = 1234;
+            ret.i = Integer.MIN_VALUE;
+            ret.l = 1L << 40;
+            ret.f = 1.5f;
+            ret.d = -0.25;
+            ret.flag = true;
+            ret.boxed = 42;
+            ret.name = "sample";
+            ret.names.addAll(Arrays.asList("a", "b", "c"));
+            return ret;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Sample)) return false;
+            Sample other = (Sample) o;
+            return b == other.b && s == other.s && i == other.i && l == other.l
+                    && Float.compare(f, other.f) == 0 && Double.compare(d, other.d) == 0 && flag == other.flag
+                    && java.util.Objects.equals(boxed, other.boxed) && java.util.Objects.equals(name, other.name)
+                    && names.equals(other.names);
+        }
+
+        @Override
+        public int hashCode() {
+            return java.util.Objects.hash(b, s, i, l, f, d, flag, boxed, name, names);
+        }
+
+        @Override
+        public String toString() {
+            return "Sample{" + b + ", " + s + ", " + i + ", " + l + ", " + f + ", " + d + ", " + flag + ", " + boxed + ", " + name + ", " + names + "}";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package ladylib.nbt.serialization.internal;
+
+import ladylib.nbt.serialization.NBTDeserializationException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class VarIntsTest {
+
+    @Test
+    public void smallValuesTakeOneByte() {
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 126, 127}, VarInts.encode(new long[]{0, -1, 1, -2, 63, -64}, false));
+        assertEquals(2, VarInts.sizeOf(new long[]{64}, false));
+        assertEquals(10, VarInts.sizeOf(new long[]{Long.MIN_VALUE}, false));
+    }
+
+    @Test
+    public void roundTrip() {
+        long[] values = {0, 1, -1, 63, -64, 64, -65, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (boolean delta : new boolean[]{false, true}) {
+            byte[] encoded = VarInts.encode(values, delta);
+            assertEquals(encoded.length, VarInts.sizeOf(values, delta));
+            assertArrayEquals(values, VarInts.decode(encoded, delta));
+        }
+        assertArrayEquals(new long[0], VarInts.decode(VarInts.encode(new long[0], false), false));
+    }
+
+    @Test
+    public void deltaShrinksSortedSequences() {
+        long[] timestamps = {1_500_000_000_000L, 1_500_000_000_010L, 1_500_000_000_025L, 1_500_000_000_030L};
+        byte[] encoded = VarInts.encode(timestamps, true);
+        // only the first element is large
+        assertEquals(VarInts.sizeOf(new long[]{timestamps[0]}, false) + 3, encoded.length);
+        assertTrue(encoded.length < VarInts.sizeOf(timestamps, false));
+    }
+
+    @Test(expected = NBTDeserializationException.class)
+    public void truncatedSequence() {
+        VarInts.decode(new byte[]{1, (byte) 0x80}, false);
+    }
+
+    @Test(expected = NBTDeserializationException.class)
+    public void overlongElement() {
+        byte[] data = new byte[11];
+        Arrays.fill(data, (byte) 0x80);
+        data[10] = 1;
+        VarInts.decode(data, false);
+    }
+}